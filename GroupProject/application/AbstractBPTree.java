@@ -0,0 +1,2327 @@
+/**
+ * Filename:   AbstractBPTree.java
+ * Project:    Group Project
+ * Authors:    sapan (sapan@cs.wisc.edu), Soua Lor, Maria Helgeson, Daniel Walter, & Will Hickman
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400 - Lecutre 46373
+ *
+ * Due Date:   12/16/18
+ * Version:    1.0
+ *
+ * Credits:    Wikipedia, for a definition of the structure
+ *
+ * Bugs:       No known bugs
+ */
+
+package application;
+import java.lang.reflect.Array;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+
+/**
+ * The parts of a B+ tree that don't depend on the type of its keys, shared by
+ * BPTree and DoubleBPTree: the nodes, splitting them and rebalancing them, the
+ * value counts and summaries kept in internal nodes, walking the leaves for
+ * range searches and iterators, bulk loading, and copy-on-write snapshots.
+ *
+ * Each node keeps its keys in an array of type A, like K[] for BPTree or
+ * double[] for DoubleBPTree. Nothing here compares keys: they're only ever
+ * moved from slot to slot with System.arraycopy. Each tree searches its own
+ * keys, walks down to the leaf for a key, and calls on the nodes here to
+ * make the change there and fix up the path on the way back up. Ranges of
+ * keys are the same: each tree has its own KeyRange, which checks its keys
+ * against the bounds, and the searches here just walk the leaves it picks.
+ *
+ * @author sapan (sapan@cs.wisc.edu), Soua Lor, Maria Helgeson, Daniel Walter, & Will Hickman
+ *
+ * @param <A> array type the nodes keep their keys in
+ * @param <V> value - expect a user-defined type that stores all data for a food item
+ */
+abstract class AbstractBPTree<A, V> {
+
+    // Root of the tree
+    Node root;
+
+    // Branching factor is the number of children nodes
+    // for internal nodes of the tree
+    final int branchingFactor;
+
+    // for determining size of sibling during split
+    // if branchingFactor is even, then siblingSize = branchingFactor / 2
+    // if branchingFactor is odd, then siblingSize = (branchingFactor + 1) / 2
+    final int siblingSize;
+
+    // summarizes the values under each key and child, so ranges can be summarized
+    // without visiting every value - null if the tree doesn't keep summaries
+    final Aggregator<? super V, Object> aggregator;
+
+    // numbers the values, so each key's values can be stored as row ids - null
+    // if the tree stores lists of values
+    final RowIds<V> rowIds;
+
+    // nodes made before the latest snapshot have an older version, and may be shared
+    // with the snapshot - they're copied before they're changed
+    int version;
+
+    // true if this tree is a snapshot of another one, so it can't be changed
+    final boolean isSnapshot;
+
+    /**
+     * Package constructor for an empty tree
+     *
+     * @param branchingFactor
+     * @param aggregator - how to summarize values, or null to not keep summaries
+     * @param rowIds - row ids of the values, or null to store lists of values
+     */
+    @SuppressWarnings("unchecked")
+	AbstractBPTree(int branchingFactor, Aggregator<? super V, ?> aggregator, RowIds<V> rowIds) {
+        if (branchingFactor <= 2) {
+            throw new IllegalArgumentException("Illegal branching factor: " + branchingFactor);
+        }
+        this.branchingFactor = branchingFactor;
+        this.siblingSize = (branchingFactor + 1) / 2;	// integer division, so remainder gets dropped
+        this.aggregator = (Aggregator<? super V, Object>) aggregator;
+        this.rowIds = rowIds;
+        this.isSnapshot = false;
+
+        this.root = new LeafNode();
+    }
+
+    /**
+     * Package constructor for a snapshot, which shares all of its nodes with the source tree
+     *
+     * @param source - tree to take the snapshot of
+     * @param rowIds - row ids for the snapshot to look up its values with
+     * @throws IllegalArgumentException if rowIds is null and the source tree stores row ids, or the other way around
+     */
+    AbstractBPTree(AbstractBPTree<A, V> source, RowIds<V> rowIds) {
+    	if ((rowIds == null) != (source.rowIds == null))
+    	{
+    		throw new IllegalArgumentException("Snapshot must store row ids if and only if the tree does");
+    	}
+    	this.branchingFactor = source.branchingFactor;
+    	this.siblingSize = source.siblingSize;
+    	this.aggregator = source.aggregator;
+    	this.rowIds = rowIds;
+    	this.root = source.root;
+    	this.isSnapshot = true;
+    }
+
+    /**
+     * Makes an empty array for the keys of a node
+     *
+     * @param capacity - number of key slots
+     * @return array with capacity slots
+     */
+    abstract A newKeys(int capacity);
+
+    /**
+     * Index of the child of an internal node whose sub-tree would hold one of
+     * the keys of a leaf. Lets a snapshot walk down to the leaf next to one it
+     * has without knowing what type its keys are.
+     *
+     * @param node - internal node to look in
+     * @param leaf - leaf the key is in
+     * @param idx - index of the key in leaf
+     * @return index into node's children
+     */
+    abstract int childIndexOf(InternalNode node, LeafNode leaf, int idx);
+
+    /**
+     * Bytes each key slot of a node takes up, for stats
+     *
+     * @return 8 for primitive doubles, 4 for references
+     */
+    abstract int keyBytes();
+
+    /**
+     * Number of values in the tree, summed from the counts kept in the root
+     *
+     * @return number of values
+     */
+    public int size() {
+    	return this.root.numValues();
+    }
+
+    /**
+     * Gets the value at the given position in key order. Walks down the tree
+     * skipping over whole children by their value counts, so only one leaf
+     * is visited.
+     *
+     * @param rank - position of the value, starting from 0
+     * @return value at that position
+     * @throws IndexOutOfBoundsException if rank is negative or not less than size()
+     */
+    public V select(int rank) {
+    	int[] slot = new int[2];
+    	LeafNode leaf = locate(rank, slot);
+    	return readable(leaf.values[slot[0]]).get(slot[1]);
+    }
+
+    /**
+     * Walks down to the leaf holding the value at the given position in key order
+     *
+     * @param rank - position of the value, starting from 0
+     * @param slot - set to the index of the value's key in the leaf, then
+     * the position of the value among that key's values
+     * @return leaf holding the value
+     * @throws IndexOutOfBoundsException if rank is negative or not less than size()
+     */
+    LeafNode locate(int rank, int[] slot)
+    {
+    	if (rank < 0 || rank >= size())
+    	{
+    		throw new IndexOutOfBoundsException("Rank: " + rank + ", Size: " + size());
+    	}
+
+    	Node node = this.root;
+    	while (!node.isLeaf())
+    	{
+    		InternalNode asInt = (InternalNode) node;
+    		int i = 0;
+    		while (rank >= asInt.counts[i])
+    		{
+    			rank -= asInt.counts[i];
+    			i++;
+    		}
+    		node = asInt.children[i];
+    	}
+
+    	LeafNode leaf = (LeafNode) node;
+    	int i = 0;
+    	while (rank >= leaf.values[i].size())
+    	{
+    		rank -= leaf.values[i].size();
+    		i++;
+    	}
+    	slot[0] = i;
+    	slot[1] = rank;
+    	return leaf;
+    }
+
+    /**
+     * Gets the values in a range, in key order
+     *
+     * @param range - range of keys to get the values for
+     * @return list of values in range; if nothing found, return empty list
+     */
+    List<V> rangeSearch(KeyRange range) {
+    	LeafNode startLeaf = range.startLeaf();
+    	int start = range.startIndex(startLeaf);
+
+    	// first pass - walk the leaves to find where the range ends and how many values are in it
+    	int size = 0;
+    	LeafNode endLeaf = null;
+    	int endIdx = 0;
+    	LeafNode leaf = startLeaf;
+    	int i = start;
+    	while (leaf != null && endLeaf == null)
+    	{
+    		for (; i < leaf.numKeys; i++)
+    		{
+    			if (!range.isBelowHi(leaf, i))
+    			{
+    				endLeaf = leaf;
+    				endIdx = i;
+    				break;
+    			}
+    			if (!range.isExcluded(leaf, i))
+    			{
+    				size += leaf.values[i].size();
+    			}
+    		}
+    		leaf = nextLeaf(leaf);
+    		i = 0;
+    	}
+
+    	// second pass - copy the values into a list that's already big enough to hold them all
+    	List<V> rtnList = new ArrayList<V>(size);
+    	leaf = startLeaf;
+    	i = start;
+    	while (leaf != null)
+    	{
+    		int end = (leaf == endLeaf) ? endIdx : leaf.numKeys;
+    		for (; i < end; i++)
+    		{
+    			if (range.isExcluded(leaf, i))
+    			{
+    				continue;
+    			}
+    			for (V nxt: readable(leaf.values[i]))
+    			{
+    				rtnList.add(nxt);
+    			}
+    		}
+    		if (leaf == endLeaf)
+    		{
+    			break;
+    		}
+    		leaf = nextLeaf(leaf);
+    		i = 0;
+    	}
+    	return rtnList;
+    }
+
+    /**
+     * Performs the given action for each value in a range, in key order
+     *
+     * @param range - range of keys to visit the values for
+     * @param action to perform on each value
+     */
+    void forEach(KeyRange range, Consumer<? super V> action) {
+    	LeafNode leaf = range.startLeaf();
+    	int i = range.startIndex(leaf);
+    	while (leaf != null)
+    	{
+    		for (; i < leaf.numKeys; i++)
+    		{
+    			if (!range.isBelowHi(leaf, i))
+    			{
+    				return;
+    			}
+    			if (range.isExcluded(leaf, i))
+    			{
+    				continue;
+    			}
+    			for (V nxt: readable(leaf.values[i]))
+    			{
+    				action.accept(nxt);
+    			}
+    		}
+    		leaf = nextLeaf(leaf);
+    		i = 0;
+    	}
+    }
+
+    /**
+     * Gets the summary of the values in a range. A != range is summarized
+     * as the range below the excluded key followed by the range above it.
+     *
+     * @param aggregator - the aggregator the tree was made with
+     * @param range - range of keys to summarize the values for
+     * @return summary of the values in range
+     */
+    @SuppressWarnings("unchecked")
+	<S> S aggregate(Aggregator<? super V, S> aggregator, KeyRange range) {
+    	KeyRange below = range.belowExcluded();
+    	if (below != null)
+    	{
+    		S belowTotal = (S) aggregate(this.root, below, true, true);
+    		S aboveTotal = (S) aggregate(this.root, range.aboveExcluded(), true, true);
+    		return aggregator.combine(belowTotal, aboveTotal);
+    	}
+    	return (S) aggregate(this.root, range, true, true);
+    }
+
+    /**
+     * Gets the summary of the values in a range, within the sub-tree with the
+     * given node as its root. Children that are entirely inside the range
+     * aren't visited, their summaries are used instead.
+     *
+     * @param node - root of the sub-tree to summarize
+     * @param range - range of keys to summarize the values for
+     * @param checkLo - false if every key in the sub-tree is known to be inside the lower bound
+     * @param checkHi - false if every key in the sub-tree is known to be inside the upper bound
+     * @return summary of the values in range
+     */
+    private Object aggregate(Node node, KeyRange range, boolean checkLo, boolean checkHi)
+    {
+    	Object total = this.aggregator.identity();
+    	if (node.isLeaf())
+    	{
+    		LeafNode leaf = (LeafNode) node;
+    		for (int i = checkLo ? range.startIndex(leaf) : 0; i < leaf.numKeys; i++)
+    		{
+    			if (checkHi && !range.isBelowHi(leaf, i))
+    			{
+    				break;
+    			}
+    			total = this.aggregator.combine(total, leaf.summaries[i]);
+    		}
+    		return total;
+    	}
+
+    	InternalNode asInt = (InternalNode) node;
+    	int first = checkLo ? range.firstChild(asInt) : 0;
+    	int last = checkHi ? range.lastChild(asInt) : asInt.numKeys;
+    	for (int i = first; i <= last; i++)
+    	{
+    		// only the children at either end can hold keys outside the range
+    		boolean childCheckLo = checkLo && i == first;
+    		boolean childCheckHi = checkHi && i == last;
+    		Object childTotal = (childCheckLo || childCheckHi)
+    				? aggregate(asInt.children[i], range, childCheckLo, childCheckHi)
+    				: asInt.summaries[i];
+    		total = this.aggregator.combine(total, childTotal);
+    	}
+    	return total;
+    }
+
+    /**
+     * Make sure the tree can be changed
+     *
+     * @throws UnsupportedOperationException if the tree is a snapshot
+     */
+    void checkWritable()
+    {
+    	if (this.isSnapshot)
+    	{
+    		throw new UnsupportedOperationException("Snapshots can't be changed");
+    	}
+    }
+
+    /**
+     * Gets a node that can be changed without changing any snapshot - the
+     * node itself, unless it's shared with a snapshot, in which case a copy.
+     * The caller has to put the copy in the node's place.
+     *
+     * @param node - node about to be changed
+     * @return node, or a copy of it
+     */
+    Node writable(Node node)
+    {
+    	return node.version == this.version ? node : node.copy();
+    }
+
+    /**
+     * Splits the root if an insert left it too full, so the tree grows a level
+     */
+    void splitRoot()
+    {
+    	if (this.root.shouldSplit())
+    	{
+    		InternalNode newRoot = new InternalNode();
+    		Node oldRoot = this.root;
+    		Node newSibling = this.root.split();
+
+			// the old root keeps the lower half and becomes our least child, and the new sibling goes to its right
+    		newRoot.children[0] = oldRoot;
+    		newRoot.counts[0] = oldRoot.numValues();
+    		newRoot.refreshSummary(0);
+    		newRoot.insertChild(0, newSibling);
+
+    		this.root = newRoot;
+    	}
+    }
+
+    /**
+     * Drops the root if a remove left it with a single child, which becomes
+     * the new root, so the tree shrinks a level
+     */
+    void collapseRoot()
+    {
+    	if (!this.root.isLeaf() && this.root.numKeys == 0)
+    	{
+    		this.root = ((InternalNode) this.root).children[0];
+    	}
+    }
+
+    /**
+     * Gets the leaf after the given one. A snapshot can't follow the next
+     * links, since the tree it was taken from relinks shared leaves to its
+     * own copies, so it walks down from the root instead: the next leaf is
+     * the leftmost one under the nearest child to the right of the path.
+     *
+     * @param leaf - leaf to get the one after
+     * @return next leaf, or null if leaf is the last one
+     */
+    LeafNode nextLeaf(LeafNode leaf)
+    {
+    	if (!this.isSnapshot)
+    	{
+    		return leaf.next;
+    	}
+    	if (leaf.numKeys == 0)
+    	{
+    		// only an empty root leaf has no keys
+    		return null;
+    	}
+
+    	Node nextBranch = null;
+    	Node node = this.root;
+    	while (!node.isLeaf())
+    	{
+    		InternalNode asInt = (InternalNode) node;
+    		int idx = childIndexOf(asInt, leaf, leaf.numKeys - 1);
+    		if (idx < asInt.numKeys)
+    		{
+    			nextBranch = asInt.children[idx + 1];
+    		}
+    		node = asInt.children[idx];
+    	}
+    	if (nextBranch == null)
+    	{
+    		return null;
+    	}
+    	while (!nextBranch.isLeaf())
+    	{
+    		nextBranch = ((InternalNode) nextBranch).children[0];
+    	}
+    	return (LeafNode) nextBranch;
+    }
+
+    /**
+     * Gets the leaf before the given one. Like nextLeaf, a snapshot walks down
+     * from the root instead of following the previous links: the previous leaf
+     * is the rightmost one under the nearest child to the left of the path.
+     *
+     * @param leaf - leaf to get the one before
+     * @return previous leaf, or null if leaf is the first one
+     */
+    LeafNode previousLeaf(LeafNode leaf)
+    {
+    	if (!this.isSnapshot)
+    	{
+    		return leaf.previous;
+    	}
+    	if (leaf.numKeys == 0)
+    	{
+    		// only an empty root leaf has no keys
+    		return null;
+    	}
+
+    	Node previousBranch = null;
+    	Node node = this.root;
+    	while (!node.isLeaf())
+    	{
+    		InternalNode asInt = (InternalNode) node;
+    		int idx = childIndexOf(asInt, leaf, 0);
+    		if (idx > 0)
+    		{
+    			previousBranch = asInt.children[idx - 1];
+    		}
+    		node = asInt.children[idx];
+    	}
+    	if (previousBranch == null)
+    	{
+    		return null;
+    	}
+    	while (!previousBranch.isLeaf())
+    	{
+    		InternalNode asInt = (InternalNode) previousBranch;
+    		previousBranch = asInt.children[asInt.numKeys];
+    	}
+    	return (LeafNode) previousBranch;
+    }
+
+    /**
+     * Replaces the contents of the tree with the given keys and values,
+     * building it bottom-up instead of inserting one pair at a time. Leaves
+     * are packed left to right and linked together, then each level of
+     * internal nodes is built over the level below it until a single root is
+     * left, so no node ever needs to split. Each tree checks its keys are
+     * sorted and gathers up the duplicates before calling this.
+     *
+     * @param keys - distinct keys, in ascending order, in their first distinct slots
+     * @param runs - number of values for each distinct key, which is how many keys there are
+     * @param values - values, in key order
+     * @param fillFactor - fraction of each node to fill, between 0.5 and 1
+     * @throws IllegalArgumentException if fillFactor is out of range
+     */
+    void bulkLoad(A keys, int[] runs, Iterator<V> values, double fillFactor)
+    {
+    	checkWritable();
+    	TreeNode.checkFillFactor(fillFactor);
+    	if (runs.length == 0)
+    	{
+    		this.root = new LeafNode();
+    		return;
+    	}
+
+    	// pack the leaves
+    	int[] leafSizes = TreeNode.packSizes(runs.length, fillFactor, 1, this.branchingFactor);
+    	List<Node> level = new ArrayList<Node>(leafSizes.length);
+    	int pos = 0;
+    	LeafNode previous = null;
+    	for (int size: leafSizes)
+    	{
+    		LeafNode leaf = new LeafNode();
+    		System.arraycopy(keys, pos, leaf.keys, 0, size);
+    		for (; leaf.numKeys < size; leaf.numKeys++, pos++)
+    		{
+    			// gather up all of the values for this key
+    			List<V> postings = newPostings();
+    			for (int i = 0; i < runs[pos]; i++)
+    			{
+    				postings.add(values.next());
+    			}
+    			leaf.values[leaf.numKeys] = postings;
+    			leaf.refreshSummary(leaf.numKeys);
+    		}
+    		leaf.previous = previous;
+    		if (previous != null)
+    		{
+    			previous.next = leaf;
+    		}
+    		previous = leaf;
+    		level.add(leaf);
+    	}
+
+    	// build internal levels until we're down to a single root
+    	while (level.size() > 1)
+    	{
+    		int[] parentSizes = TreeNode.packSizes(level.size(), fillFactor, 2, this.branchingFactor);
+    		List<Node> parents = new ArrayList<Node>(parentSizes.length);
+    		Iterator<Node> childIt = level.iterator();
+    		for (int size: parentSizes)
+    		{
+    			InternalNode parent = new InternalNode();
+    			parent.children[0] = childIt.next();
+    			parent.counts[0] = parent.children[0].numValues();
+    			parent.refreshSummary(0);
+    			for (int i = 1; i < size; i++)
+    			{
+    				parent.insertChild(i - 1, childIt.next());
+    			}
+    			parents.add(parent);
+    		}
+    		level = parents;
+    	}
+    	this.root = level.get(0);
+    }
+
+    /**
+     * Makes an empty list for the values of a new key
+     *
+     * @return list of row ids if the tree has them, otherwise a linked list
+     */
+    List<V> newPostings()
+    {
+    	if (this.rowIds != null)
+    	{
+    		return new Postings<V>(this.rowIds);
+    	}
+    	return new LinkedList<V>();
+    }
+
+    /**
+     * Copies the values of a key, for a copy of the leaf they're in
+     *
+     * @param postings - list of values from newPostings
+     * @return copy of the list, of the same kind
+     */
+    List<V> copyPostings(List<V> postings)
+    {
+    	if (this.rowIds != null)
+    	{
+    		return new Postings<V>((Postings<V>) postings);
+    	}
+    	return new LinkedList<V>(postings);
+    }
+
+    /**
+     * Gets the values of a key as this tree reads them. A snapshot shares its
+     * leaves with the tree it was taken from, so a list of row ids may have
+     * been made by that tree and look its values up in that tree's row ids;
+     * the snapshot reads the same row ids through its own instead.
+     *
+     * @param postings - list of values from newPostings
+     * @return the list itself, or a view of its row ids through this tree's row ids
+     */
+    List<V> readable(List<V> postings)
+    {
+    	if (this.rowIds != null && ((Postings<V>) postings).rowIds != this.rowIds)
+    	{
+    		return new Postings<V>((Postings<V>) postings, this.rowIds);
+    	}
+    	return postings;
+    }
+
+    /**
+     * Gets an iterator over the values of a key, last to first. A list that
+     * isn't row ids is walked back from its end, whatever kind of list it is.
+     *
+     * @param postings - list of values from newPostings
+     * @return iterator over the list in reverse order
+     */
+    Iterator<V> descendingPostings(List<V> postings)
+    {
+    	if (this.rowIds != null)
+    	{
+    		return ((Postings<V>) postings).descendingIterator();
+    	}
+    	ListIterator<V> it = postings.listIterator(postings.size());
+    	return new Iterator<V>()
+    		{
+    			@Override
+    			public boolean hasNext() {
+    				return it.hasPrevious();
+    			}
+
+    			@Override
+    			public V next() {
+    				return it.previous();
+    			}
+    		};
+    }
+
+    /**
+     * Gets the shape and memory use of the tree: height, nodes on each level,
+     * how full nodes are, how many keys have how many values, and an estimate
+     * of the bytes the tree takes up. Visits each node and key once, but not
+     * the values, so it is cheap enough to check regularly.
+     *
+     * Nodes shared with a snapshot are counted in full for both trees.
+     *
+     * @return stats for the tree as it is now
+     */
+    public TreeStats stats() {
+    	TreeStats stats = new TreeStats();
+    	addStats(this.root, 0, stats);
+    	return stats;
+    }
+
+    /**
+     * Adds a sub-tree to the stats
+     *
+     * @param node - root of the sub-tree
+     * @param level - level of node, 0 for the root
+     * @param stats - stats to add to
+     */
+    private void addStats(Node node, int level, TreeStats stats)
+    {
+    	long arrays = TreeStats.arrayBytes(Array.getLength(node.keys), keyBytes());
+    	if (node.summaries != null)
+    	{
+    		arrays += TreeStats.arrayBytes(node.summaries.length, 4);
+    	}
+
+    	if (!node.isLeaf())
+    	{
+    		InternalNode asInt = (InternalNode) node;
+    		// keys, numKeys, summaries, version, children, counts and the reference to the tree
+    		long bytes = TreeStats.objectBytes(7 * 4) + arrays
+    				+ TreeStats.arrayBytes(asInt.children.length, 4) + TreeStats.arrayBytes(asInt.counts.length, 4);
+    		stats.addNode(level, (asInt.numKeys + 1) / (double) this.branchingFactor, bytes);
+    		for (int i = 0; i <= asInt.numKeys; i++)
+    		{
+    			addStats(asInt.children[i], level + 1, stats);
+    		}
+    	}
+    	else
+    	{
+    		LeafNode asLeaf = (LeafNode) node;
+    		// keys, numKeys, summaries, version, values, next, previous and the reference to the tree
+    		long bytes = TreeStats.objectBytes(8 * 4) + arrays + TreeStats.arrayBytes(asLeaf.values.length, 4);
+    		stats.addNode(level, asLeaf.numKeys / (double) this.branchingFactor, bytes);
+    		for (int i = 0; i < asLeaf.numKeys; i++)
+    		{
+    			stats.addKey(asLeaf.values[i].size(), postingsBytes(asLeaf.values[i]));
+    		}
+    	}
+    }
+
+    /**
+     * Estimates the bytes the values of a key take up
+     *
+     * @param postings - list of values from newPostings
+     * @return estimated bytes of the list, not counting the values themselves
+     */
+    private long postingsBytes(List<V> postings)
+    {
+    	if (this.rowIds != null)
+    	{
+    		Postings<V> asPostings = (Postings<V>) postings;
+    		// modification count, size, first, last, gaps, length and the row ids
+    		long bytes = TreeStats.objectBytes(7 * 4);
+    		if (asPostings.gaps != null)
+    		{
+    			bytes += TreeStats.arrayBytes(asPostings.gaps.length, 1);
+    		}
+    		return bytes;
+    	}
+    	// a linked list has its size, modification count, first and last, and a node of three references per value
+    	return TreeStats.objectBytes(4 * 4) + postings.size() * TreeStats.objectBytes(3 * 4);
+    }
+
+    /*
+     * String representation of the tree, for testing
+     */
+	@Override
+    public String toString() {
+        Queue<List<Node>> queue = new LinkedList<List<Node>>();
+        queue.add(Arrays.asList(root));
+        StringBuilder sb = new StringBuilder();
+        while (!queue.isEmpty()) {
+            Queue<List<Node>> nextQueue = new LinkedList<List<Node>>();
+            while (!queue.isEmpty()) {
+                List<Node> nodes = queue.remove();
+                sb.append('{');
+                Iterator<Node> it = nodes.iterator();
+                while (it.hasNext()) {
+                    Node node = it.next();
+                    sb.append(node.toString());
+                    if (it.hasNext())
+                        sb.append(", ");
+                    if (!node.isLeaf())
+                    {
+                    	InternalNode asInt = (InternalNode) node;
+                    	for (int i = 0; i <= asInt.numKeys; i++)
+                    	{
+                    		nextQueue.add(Arrays.asList(asInt.children[i]));
+                    	}
+                    }
+
+                }
+                sb.append('}');
+                if (!queue.isEmpty())
+                    sb.append(", ");
+                else {
+                    sb.append('\n');
+                }
+            }
+            queue = nextQueue;
+        }
+        return sb.toString();
+    }
+
+
+    /**
+     * This abstract class represents any type of node in the tree
+     * This class is a super class of the LeafNode and InternalNode types.
+     *
+     * Keys are kept in a sorted array (keys[0..numKeys)) so that the position
+     * of a key within a node can be found with a binary search. Both node types
+     * allocate one slot more than they may hold, so that a node can overflow
+     * by one key before its parent splits it.
+     */
+    abstract class Node extends TreeNode {
+
+        // sorted keys of this node - only the first numKeys slots are in use
+        final A keys;
+
+        // version of the tree this node was made in - see AbstractBPTree#writable
+        final int version = AbstractBPTree.this.version;
+
+        /**
+         * Package constructor
+         *
+         * @param capacity - number of key slots to allocate
+         */
+		Node(int capacity) {
+            super(aggregator, branchingFactor + 1);
+            this.keys = newKeys(capacity);
+        }
+
+        /**
+         * Copies keys from this node into a node (this one or another), the
+         * same way System.arraycopy would
+         *
+         * @param srcPos - first key of this node to copy
+         * @param dest - node to copy into
+         * @param destPos - where the first key goes in dest
+         * @param length - number of keys to copy
+         */
+        void copyKeys(int srcPos, Node dest, int destPos, int length)
+        {
+        	System.arraycopy(this.keys, srcPos, dest.keys, destPos, length);
+        }
+
+        /**
+         * Drops the keys in slots [from, to), if they're references, so
+         * they aren't held onto
+         *
+         * @param from - first slot to clear
+         * @param to - slot just past the last one to clear
+         */
+        void clearKeys(int from, int to)
+        {
+        	if (this.keys instanceof Object[])
+        	{
+        		Arrays.fill((Object[]) this.keys, from, to, null);
+        	}
+        }
+
+        /**
+         * tell whether this is a leaf or an internal node
+         * @return true for a leaf, false otherwise
+         */
+        abstract boolean isLeaf();
+
+        /**
+         * Gets the first leaf of the sub-tree with this node as its root
+         *
+         * @return leaf holding the least key of the sub-tree
+         */
+        abstract LeafNode firstLeaf();
+
+        /**
+         * Gets the new sibling created after splitting the node
+         *
+         * @return Node
+         */
+        abstract Node split();
+
+        /**
+         * tell parent whether you need to split
+         * Will be different criteria for leaf vs. internal, since internal
+         * can have branchingFactor - 1 number of keys, but leaf can have
+         * branchingFactor number of keys
+         * @return true if should split, false otherwise
+         */
+        abstract boolean shouldSplit();
+
+        /**
+         * Number of values stored in the sub-tree with this node as its root
+         * @return number of values
+         */
+        abstract int numValues();
+
+        /**
+         * Summary of all of the values in the sub-tree with this node as its root
+         * @return summary
+         */
+        abstract Object summarize();
+
+        /**
+         * Works out the summary for one slot again after the values under it have
+         * changed. Does nothing if the tree doesn't keep summaries.
+         *
+         * @param idx - index of the key (leaf) or child (internal) to summarize
+         */
+        abstract void refreshSummary(int idx);
+
+        /**
+         * tell parent whether you have too few keys and need to borrow or merge.
+         * Fewest keys allowed is what's left in the smaller half after a split.
+         * @return true if too few keys, false otherwise
+         */
+        abstract boolean isUnderflow();
+
+        /**
+         * tell a sibling whether you can give up a key without underflowing yourself
+         * @return true if a key can be borrowed, false otherwise
+         */
+        abstract boolean canLend();
+
+        /**
+         * Moves the last key (and its child or values) of the sibling to the left
+         * of this node into this node, and puts the new key between them in the parent
+         *
+         * @param left - sibling to the left of this node
+         * @param parent - parent of both nodes
+         * @param separator - index of the parent key between left and this node
+         */
+        abstract void borrowFromLeft(Node left, InternalNode parent, int separator);
+
+        /**
+         * Moves the first key (and its child or values) of the sibling to the right
+         * of this node into this node, and puts the new key between them in the parent
+         *
+         * @param right - sibling to the right of this node
+         * @param parent - parent of both nodes
+         * @param separator - index of the parent key between this node and right
+         */
+        abstract void borrowFromRight(Node right, InternalNode parent, int separator);
+
+        /**
+         * Moves all keys of the sibling to the right of this node into this node,
+         * after which the parent should drop the sibling
+         *
+         * @param right - sibling to the right of this node
+         * @param parent - parent of both nodes
+         * @param separator - index of the parent key between this node and right
+         */
+        abstract void mergeFromRight(Node right, InternalNode parent, int separator);
+
+        /**
+         * Copies this node, to be changed in its place while snapshots keep this one
+         *
+         * @return copy of this node, made in the current version of the tree
+         */
+        abstract Node copy();
+
+        /**
+         * String representation of node's keys
+         * @return String representation of node's keys
+         */
+        public String toString() {
+        	StringBuilder sb = new StringBuilder("[");
+        	for (int i = 0; i < this.numKeys; i++)
+        	{
+        		if (i > 0)
+        		{
+        			sb.append(", ");
+        		}
+        		sb.append(Array.get(this.keys, i));
+        	}
+            return sb.append(']').toString();
+        }
+
+    } // End of abstract class Node
+
+    /**
+     * This class represents an internal node of the tree.
+     *
+     * children[i] holds the keys that are >= keys[i - 1] and < keys[i],
+     * so an internal node with numKeys keys has numKeys + 1 children.
+     */
+    class InternalNode extends Node {
+
+    	// child nodes, parallel to keys but with one extra slot at the front for the least child
+        final Node[] children;
+
+        // number of values in the sub-tree under each child, parallel to children
+        final int[] counts;
+
+        /**
+         * Package constructor
+         */
+        @SuppressWarnings("unchecked")
+		InternalNode() {
+            super(branchingFactor);
+            this.children = (Node[]) Array.newInstance(Node.class, branchingFactor + 1);
+            this.counts = new int[branchingFactor + 1];
+        }
+
+        boolean isLeaf()
+        {
+        	return false;
+        }
+
+        LeafNode firstLeaf()
+        {
+        	return this.children[0].firstLeaf();
+        }
+
+        /**
+         * Gets a child that can be changed, copying it in place first if it's
+         * shared with a snapshot
+         *
+         * @param idx - index of the child
+         * @return the child, or the copy that took its place
+         */
+        Node writableChild(int idx)
+        {
+        	this.children[idx] = writable(this.children[idx]);
+        	return this.children[idx];
+        }
+
+        /**
+         * Adds a new child to the right of the given child index, with the
+         * first key of its first leaf as its separator
+         *
+         * @param idx - index of the child the new child is being added after
+         * @param child - the new child
+         */
+        void insertChild(int idx, Node child)
+        {
+        	copyKeys(idx, this, idx + 1, this.numKeys - idx);
+        	System.arraycopy(this.children, idx + 1, this.children, idx + 2, this.numKeys - idx);
+        	System.arraycopy(this.counts, idx + 1, this.counts, idx + 2, this.numKeys - idx);
+        	LeafNode first = child.firstLeaf();
+        	if (first.numKeys == 0)
+        	{
+        		throw new NoSuchElementException();
+        	}
+        	first.copyKeys(0, this, idx, 1);
+        	this.children[idx + 1] = child;
+        	this.counts[idx + 1] = child.numValues();
+        	copySummaries(idx + 1, this, idx + 2, this.numKeys - idx);
+        	this.numKeys++;
+        	refreshSummary(idx + 1);
+        }
+
+        /**
+         * Fixes up this node after a value was inserted under one of its
+         * children: counts the value, and splits the child if it's now too full
+         *
+         * @param idx - index of the child the value went into
+         */
+        void childInserted(int idx)
+        {
+        	this.counts[idx]++;
+        	Node child = this.children[idx];
+			if (child.shouldSplit())
+			{
+				Node sibling = child.split();
+				insertChild(idx, sibling);
+				this.counts[idx] -= this.counts[idx + 1];
+			}
+			refreshSummary(idx);
+        }
+
+        /**
+         * Fixes up this node after a value was removed from under one of its
+         * children: counts the value, and rebalances the child if it's left
+         * with too few keys
+         *
+         * @param idx - index of the child the value came out of
+         */
+        void childRemoved(int idx)
+        {
+        	this.counts[idx]--;
+        	if (this.children[idx].isUnderflow())
+        	{
+        		rebalanceChild(idx);
+        	}
+        	else
+        	{
+        		refreshSummary(idx);
+        	}
+        }
+
+        /**
+         * tell parent whether you need to split
+         * @return true if should split, false otherwise
+         */
+        boolean shouldSplit()
+        {
+        	// we should split when # children larger than branching factor
+        	return this.numKeys + 1 > branchingFactor;
+        }
+
+        /**
+         * Splits node and returns the new sibling created from the split.
+         * The new sibling takes the upper half of the keys and children, and the
+         * key between the two halves moves up to the parent.
+         *
+         * @return new sibling Node
+         */
+        Node split() {
+
+        	InternalNode newSibling = new InternalNode();
+        	// the key at mid moves up to the parent, so it's dropped from both halves
+        	int mid = siblingSize - 1;
+        	int moved = this.numKeys - mid - 1;
+        	copyKeys(mid + 1, newSibling, 0, moved);
+        	System.arraycopy(this.children, mid + 1, newSibling.children, 0, moved + 1);
+        	System.arraycopy(this.counts, mid + 1, newSibling.counts, 0, moved + 1);
+        	copySummaries(mid + 1, newSibling, 0, moved + 1);
+        	newSibling.numKeys = moved;
+
+        	clearKeys(mid, this.numKeys);
+        	Arrays.fill(this.children, mid + 1, this.numKeys + 1, null);
+        	Arrays.fill(this.counts, mid + 1, this.numKeys + 1, 0);
+        	clearSummaries(mid + 1, this.numKeys + 1);
+        	this.numKeys = mid;
+
+            return newSibling;
+        }
+
+        /**
+         * Number of values stored in the sub-tree with this node as its root,
+         * summed from the counts kept for each child
+         * @return number of values
+         */
+        int numValues()
+        {
+        	return sumCounts(this.counts, this.numKeys + 1);
+        }
+
+        /**
+         * Gives a child with too few keys more, by borrowing from a sibling that has
+         * keys to spare, or merging it with a sibling if neither of them does
+         *
+         * @param idx - index of the child with too few keys
+         */
+        void rebalanceChild(int idx)
+        {
+        	Node child = this.children[idx];
+        	Node left = idx > 0 ? this.children[idx - 1] : null;
+        	Node right = idx < this.numKeys ? this.children[idx + 1] : null;
+
+        	if (left != null && left.canLend())
+        	{
+        		left = writableChild(idx - 1);
+        		child.borrowFromLeft(left, this, idx - 1);
+        		this.counts[idx - 1] = left.numValues();
+        		this.counts[idx] = child.numValues();
+        		refreshSummary(idx - 1);
+        		refreshSummary(idx);
+        	}
+        	else if (right != null && right.canLend())
+        	{
+        		right = writableChild(idx + 1);
+        		child.borrowFromRight(right, this, idx);
+        		this.counts[idx] = child.numValues();
+        		this.counts[idx + 1] = right.numValues();
+        		refreshSummary(idx);
+        		refreshSummary(idx + 1);
+        	}
+        	else if (left != null)
+        	{
+        		left = writableChild(idx - 1);
+        		left.mergeFromRight(child, this, idx - 1);
+        		this.counts[idx - 1] += this.counts[idx];
+        		removeChild(idx);
+        		refreshSummary(idx - 1);
+        	}
+        	else if (right != null)
+        	{
+        		// right's values end up in child, so they can't still be shared with a snapshot
+        		right = writableChild(idx + 1);
+        		child.mergeFromRight(right, this, idx);
+        		this.counts[idx] += this.counts[idx + 1];
+        		removeChild(idx + 1);
+        		refreshSummary(idx);
+        	}
+        }
+
+        /**
+         * Drops a child and the key to its left from this node
+         *
+         * @param idx - index of the child to drop - never 0
+         */
+        void removeChild(int idx)
+        {
+        	copyKeys(idx, this, idx - 1, this.numKeys - idx);
+        	System.arraycopy(this.children, idx + 1, this.children, idx, this.numKeys - idx);
+        	System.arraycopy(this.counts, idx + 1, this.counts, idx, this.numKeys - idx);
+        	copySummaries(idx + 1, this, idx, this.numKeys - idx);
+        	this.numKeys--;
+        	clearKeys(this.numKeys, this.numKeys + 1);
+        	this.children[this.numKeys + 1] = null;
+        	this.counts[this.numKeys + 1] = 0;
+        	clearSummaries(this.numKeys + 1, this.numKeys + 2);
+        }
+
+        /**
+         * tell parent whether you have too few children
+         * @return true if too few keys, false otherwise
+         */
+        boolean isUnderflow()
+        {
+        	return this.numKeys + 1 < siblingSize;
+        }
+
+        /**
+         * tell a sibling whether you can give up a child
+         * @return true if a child can be borrowed, false otherwise
+         */
+        boolean canLend()
+        {
+        	return this.numKeys + 1 > siblingSize;
+        }
+
+        /**
+         * Rotates the last child of the left sibling through the parent and into
+         * the front of this node
+         *
+         * @param left - sibling to the left of this node
+         * @param parent - parent of both nodes
+         * @param separator - index of the parent key between left and this node
+         */
+        void borrowFromLeft(Node left, InternalNode parent, int separator)
+        {
+        	InternalNode asInt = (InternalNode) left;
+        	copyKeys(0, this, 1, this.numKeys);
+        	System.arraycopy(this.children, 0, this.children, 1, this.numKeys + 1);
+        	System.arraycopy(this.counts, 0, this.counts, 1, this.numKeys + 1);
+        	copySummaries(0, this, 1, this.numKeys + 1);
+        	parent.copyKeys(separator, this, 0, 1);
+        	this.children[0] = asInt.children[asInt.numKeys];
+        	this.counts[0] = asInt.counts[asInt.numKeys];
+        	asInt.copySummaries(asInt.numKeys, this, 0, 1);
+        	this.numKeys++;
+
+        	asInt.copyKeys(asInt.numKeys - 1, parent, separator, 1);
+        	asInt.children[asInt.numKeys] = null;
+        	asInt.counts[asInt.numKeys] = 0;
+        	asInt.clearSummaries(asInt.numKeys, asInt.numKeys + 1);
+        	asInt.clearKeys(asInt.numKeys - 1, asInt.numKeys);
+        	asInt.numKeys--;
+        }
+
+        /**
+         * Rotates the first child of the right sibling through the parent and onto
+         * the end of this node
+         *
+         * @param right - sibling to the right of this node
+         * @param parent - parent of both nodes
+         * @param separator - index of the parent key between this node and right
+         */
+        void borrowFromRight(Node right, InternalNode parent, int separator)
+        {
+        	InternalNode asInt = (InternalNode) right;
+        	parent.copyKeys(separator, this, this.numKeys, 1);
+        	this.children[this.numKeys + 1] = asInt.children[0];
+        	this.counts[this.numKeys + 1] = asInt.counts[0];
+        	asInt.copySummaries(0, this, this.numKeys + 1, 1);
+        	this.numKeys++;
+
+        	asInt.copyKeys(0, parent, separator, 1);
+        	asInt.copyKeys(1, asInt, 0, asInt.numKeys - 1);
+        	System.arraycopy(asInt.children, 1, asInt.children, 0, asInt.numKeys);
+        	System.arraycopy(asInt.counts, 1, asInt.counts, 0, asInt.numKeys);
+        	asInt.copySummaries(1, asInt, 0, asInt.numKeys);
+        	asInt.numKeys--;
+        	asInt.clearKeys(asInt.numKeys, asInt.numKeys + 1);
+        	asInt.children[asInt.numKeys + 1] = null;
+        	asInt.counts[asInt.numKeys + 1] = 0;
+        	asInt.clearSummaries(asInt.numKeys + 1, asInt.numKeys + 2);
+        }
+
+        /**
+         * Pulls the parent key down and appends all of the right sibling's keys
+         * and children to this node
+         *
+         * @param right - sibling to the right of this node
+         * @param parent - parent of both nodes
+         * @param separator - index of the parent key between this node and right
+         */
+        void mergeFromRight(Node right, InternalNode parent, int separator)
+        {
+        	InternalNode asInt = (InternalNode) right;
+        	parent.copyKeys(separator, this, this.numKeys, 1);
+        	asInt.copyKeys(0, this, this.numKeys + 1, asInt.numKeys);
+        	System.arraycopy(asInt.children, 0, this.children, this.numKeys + 1, asInt.numKeys + 1);
+        	System.arraycopy(asInt.counts, 0, this.counts, this.numKeys + 1, asInt.numKeys + 1);
+        	asInt.copySummaries(0, this, this.numKeys + 1, asInt.numKeys + 1);
+        	this.numKeys += asInt.numKeys + 1;
+        }
+
+        /**
+         * Summary of all of the values in the sub-tree with this node as its root,
+         * combined from the summaries kept for each child
+         * @return summary
+         */
+        Object summarize()
+        {
+        	return combineSummaries(aggregator, 0, this.numKeys + 1);
+        }
+
+        /**
+         * Copies this node's keys, children, counts and summaries. The children
+         * themselves are still shared.
+         *
+         * @return copy of this node
+         */
+        Node copy()
+        {
+        	InternalNode copy = new InternalNode();
+        	copyKeys(0, copy, 0, this.numKeys);
+        	System.arraycopy(this.children, 0, copy.children, 0, this.numKeys + 1);
+        	System.arraycopy(this.counts, 0, copy.counts, 0, this.numKeys + 1);
+        	copySummaries(0, copy, 0, this.numKeys + 1);
+        	copy.numKeys = this.numKeys;
+        	return copy;
+        }
+
+        /**
+         * Works out the summary of a child again
+         *
+         * @param idx - index of the child to summarize
+         */
+        void refreshSummary(int idx)
+        {
+        	if (this.summaries != null)
+        	{
+        		this.summaries[idx] = this.children[idx].summarize();
+        	}
+        }
+
+    } // End of class InternalNode
+
+
+    /**
+     * This class represents a leaf node of the tree.
+     */
+    class LeafNode extends Node {
+
+        // list of all records that match each key, parallel to keys
+    	final List<V>[] values;
+
+        // Reference to the next leaf node
+        LeafNode next;
+
+        // Reference to the previous leaf node
+        LeafNode previous;
+
+        /**
+         * Package constructor
+         */
+        @SuppressWarnings("unchecked")
+		LeafNode() {
+            super(branchingFactor + 1);
+            this.values = (List<V>[]) new List<?>[branchingFactor + 1];
+        }
+
+        boolean isLeaf()
+        {
+        	return true;
+        }
+
+        LeafNode firstLeaf()
+        {
+        	return this;
+        }
+
+        /**
+         * tell parent whether you need to split
+         * @return true if should split, false otherwise
+         */
+        boolean shouldSplit()
+        {
+        	return this.numKeys > branchingFactor;
+        }
+
+        /**
+         * Makes room for a new key, with no values yet. The caller puts the
+         * key in the slot, then adds its first value with addValue.
+         *
+         * @param idx - index the new key goes in
+         */
+        void insertKey(int idx)
+        {
+        	copyKeys(idx, this, idx + 1, this.numKeys - idx);
+        	System.arraycopy(this.values, idx, this.values, idx + 1, this.numKeys - idx);
+        	copySummaries(idx, this, idx + 1, this.numKeys - idx);
+        	this.values[idx] = newPostings();
+        	if (this.summaries != null)
+        	{
+        		this.summaries[idx] = aggregator.identity();
+        	}
+        	this.numKeys++;
+        }
+
+        /**
+         * Adds a value under one of the keys of this node
+         *
+         * @param idx - index of the key
+         * @param value - value to add
+         */
+        void addValue(int idx, V value)
+        {
+        	this.values[idx].add(value);
+        	if (this.summaries != null)
+        	{
+        		this.summaries[idx] = aggregator.combine(this.summaries[idx], aggregator.of(value));
+        	}
+        }
+
+        /**
+         * Check whether a value is stored under one of the keys of this node
+         *
+         * @param idx - index of the key, or negative if it isn't in this node
+         * @param value - value to look for
+         * @return true if the key is here and value is one of its values
+         */
+        boolean contains(int idx, V value)
+        {
+        	return idx >= 0 && this.values[idx].contains(value);
+        }
+
+        /**
+         * Removes one value stored under one of the keys of this node, and the
+         * key too if it has no values left
+         *
+         * @param idx - index of the key, or negative if it isn't in this node
+         * @param value - value to remove
+         * @return true if the value was found and removed, false otherwise
+         */
+        boolean removeValue(int idx, V value)
+        {
+        	if (idx < 0 || !this.values[idx].remove(value))
+        	{
+        		return false;
+        	}
+        	if (this.values[idx].isEmpty())
+        	{
+        		copyKeys(idx + 1, this, idx, this.numKeys - idx - 1);
+        		System.arraycopy(this.values, idx + 1, this.values, idx, this.numKeys - idx - 1);
+        		copySummaries(idx + 1, this, idx, this.numKeys - idx - 1);
+        		this.numKeys--;
+        		clearKeys(this.numKeys, this.numKeys + 1);
+        		this.values[this.numKeys] = null;
+        		clearSummaries(this.numKeys, this.numKeys + 1);
+        	}
+        	else
+        	{
+        		refreshSummary(idx);
+        	}
+        	return true;
+        }
+
+        /**
+         * Splits node and returns the new sibling created from the split. Takes care
+         * of setting the previous and next fields appropriately for both this node
+         * and the new sibling. The new sibling takes the upper keys and goes to the
+         * right of this node.
+         *
+         * @return new sibling Node
+         */
+        Node split() {
+
+        	LeafNode newSibling = new LeafNode();
+        	int kept = this.numKeys - siblingSize;
+        	copyKeys(kept, newSibling, 0, siblingSize);
+        	System.arraycopy(this.values, kept, newSibling.values, 0, siblingSize);
+        	copySummaries(kept, newSibling, 0, siblingSize);
+        	newSibling.numKeys = siblingSize;
+        	clearKeys(kept, this.numKeys);
+        	Arrays.fill(this.values, kept, this.numKeys, null);
+        	clearSummaries(kept, this.numKeys);
+        	this.numKeys = kept;
+
+            newSibling.previous = this;
+            LeafNode next = this.next;
+            newSibling.next = next;
+            if (next != null)
+            {
+            	next.previous = newSibling;
+            }
+            this.next = newSibling;
+
+            return newSibling;
+        }
+
+        /**
+         * Number of values stored in this node, across all of its keys
+         * @return number of values
+         */
+        int numValues()
+        {
+        	return countBefore(this.numKeys);
+        }
+
+        /**
+         * Number of values stored under the first end keys of this node
+         *
+         * @param end - index just past the last key to count values for
+         * @return number of values
+         */
+        int countBefore(int end)
+        {
+        	int total = 0;
+        	for (int i = 0; i < end; i++)
+        	{
+        		total += this.values[i].size();
+        	}
+        	return total;
+        }
+
+        /**
+         * tell parent whether you have too few keys
+         * @return true if too few keys, false otherwise
+         */
+        boolean isUnderflow()
+        {
+        	return this.numKeys < siblingSize;
+        }
+
+        /**
+         * tell a sibling whether you can give up a key
+         * @return true if a key can be borrowed, false otherwise
+         */
+        boolean canLend()
+        {
+        	return this.numKeys > siblingSize;
+        }
+
+        /**
+         * Moves the last key and its values from the left sibling to the front of this node
+         *
+         * @param left - sibling to the left of this node
+         * @param parent - parent of both nodes
+         * @param separator - index of the parent key between left and this node
+         */
+        void borrowFromLeft(Node left, InternalNode parent, int separator)
+        {
+        	LeafNode asLeaf = (LeafNode) left;
+        	copyKeys(0, this, 1, this.numKeys);
+        	System.arraycopy(this.values, 0, this.values, 1, this.numKeys);
+        	copySummaries(0, this, 1, this.numKeys);
+        	asLeaf.numKeys--;
+        	asLeaf.copySummaries(asLeaf.numKeys, this, 0, 1);
+        	asLeaf.copyKeys(asLeaf.numKeys, this, 0, 1);
+        	this.values[0] = asLeaf.values[asLeaf.numKeys];
+        	this.numKeys++;
+        	asLeaf.clearKeys(asLeaf.numKeys, asLeaf.numKeys + 1);
+        	asLeaf.values[asLeaf.numKeys] = null;
+        	asLeaf.clearSummaries(asLeaf.numKeys, asLeaf.numKeys + 1);
+        	copyKeys(0, parent, separator, 1);
+        }
+
+        /**
+         * Moves the first key and its values from the right sibling to the end of this node
+         *
+         * @param right - sibling to the right of this node
+         * @param parent - parent of both nodes
+         * @param separator - index of the parent key between this node and right
+         */
+        void borrowFromRight(Node right, InternalNode parent, int separator)
+        {
+        	LeafNode asLeaf = (LeafNode) right;
+        	asLeaf.copyKeys(0, this, this.numKeys, 1);
+        	this.values[this.numKeys] = asLeaf.values[0];
+        	asLeaf.copySummaries(0, this, this.numKeys, 1);
+        	this.numKeys++;
+        	asLeaf.copyKeys(1, asLeaf, 0, asLeaf.numKeys - 1);
+        	System.arraycopy(asLeaf.values, 1, asLeaf.values, 0, asLeaf.numKeys - 1);
+        	asLeaf.copySummaries(1, asLeaf, 0, asLeaf.numKeys - 1);
+        	asLeaf.numKeys--;
+        	asLeaf.clearKeys(asLeaf.numKeys, asLeaf.numKeys + 1);
+        	asLeaf.values[asLeaf.numKeys] = null;
+        	asLeaf.clearSummaries(asLeaf.numKeys, asLeaf.numKeys + 1);
+        	asLeaf.copyKeys(0, parent, separator, 1);
+        }
+
+        /**
+         * Appends all of the right sibling's keys and values to this node, and
+         * unlinks the sibling from the leaf chain. The parent key between them
+         * isn't needed, since a leaf holds all of its keys itself.
+         *
+         * @param right - sibling to the right of this node
+         * @param parent - parent of both nodes
+         * @param separator - index of the parent key between this node and right
+         */
+        void mergeFromRight(Node right, InternalNode parent, int separator)
+        {
+        	LeafNode asLeaf = (LeafNode) right;
+        	asLeaf.copyKeys(0, this, this.numKeys, asLeaf.numKeys);
+        	System.arraycopy(asLeaf.values, 0, this.values, this.numKeys, asLeaf.numKeys);
+        	asLeaf.copySummaries(0, this, this.numKeys, asLeaf.numKeys);
+        	this.numKeys += asLeaf.numKeys;
+
+        	this.next = asLeaf.next;
+        	if (this.next != null)
+        	{
+        		this.next.previous = this;
+        	}
+        }
+
+        /**
+         * Summary of all of the values in this node, combined from the summaries
+         * kept for each key
+         * @return summary
+         */
+        Object summarize()
+        {
+        	return combineSummaries(aggregator, 0, this.numKeys);
+        }
+
+        /**
+         * Copies this node's keys, summaries and values, and links the copy into
+         * the leaf chain in place of this node. Postings are copied too, since
+         * they're changed in place.
+         *
+         * @return copy of this node
+         */
+        Node copy()
+        {
+        	LeafNode copy = new LeafNode();
+        	copyKeys(0, copy, 0, this.numKeys);
+        	for (int i = 0; i < this.numKeys; i++)
+        	{
+        		copy.values[i] = copyPostings(this.values[i]);
+        	}
+        	copySummaries(0, copy, 0, this.numKeys);
+        	copy.numKeys = this.numKeys;
+
+        	// snapshots never follow the links, so relinking the neighbours doesn't affect them
+        	copy.previous = this.previous;
+        	copy.next = this.next;
+        	if (this.previous != null)
+        	{
+        		this.previous.next = copy;
+        	}
+        	if (this.next != null)
+        	{
+        		this.next.previous = copy;
+        	}
+        	return copy;
+        }
+
+        /**
+         * Works out the summary of the values stored under a key again
+         *
+         * @param idx - index of the key to summarize
+         */
+        void refreshSummary(int idx)
+        {
+        	if (this.summaries != null)
+        	{
+        		Object total = aggregator.identity();
+        		for (V nxt: this.values[idx])
+        		{
+        			total = aggregator.combine(total, aggregator.of(nxt));
+        		}
+        		this.summaries[idx] = total;
+        	}
+        }
+
+    } // End of class LeafNode
+
+    /**
+     * Values stored under one key of a tree with row ids, kept as their row ids
+     * in increasing order. The first row id is stored as is, and each one after
+     * it as its gap from the one before, in as few bytes as it fits in - seven
+     * bits to a byte, with the top bit set on every byte but the last. Row ids
+     * are mostly handed out in increasing order, so the gaps in a long run of
+     * duplicates are small, and cost a byte or two each rather than a list node.
+     *
+     * Adding a row id greater than the last one just adds its gap on the end.
+     * Anything else decodes the list and encodes it again.
+     *
+     * @param <V> value the row ids stand for
+     */
+    static class Postings<V> extends AbstractList<V> {
+
+    	// looks up the values the row ids stand for
+    	final RowIds<V> rowIds;
+
+    	// number of row ids, counting repeats
+    	int size;
+
+    	// first and last row id
+    	int first;
+    	int last;
+
+    	// gaps between the row ids after the first, and how many bytes of it are
+    	// in use - null until there's a second row id
+    	byte[] gaps;
+    	int length;
+
+    	/**
+    	 * Package constructor for an empty list
+    	 *
+    	 * @param rowIds - row ids of the values
+    	 */
+    	Postings(RowIds<V> rowIds) {
+    		this.rowIds = rowIds;
+    	}
+
+    	/**
+    	 * Package constructor for a copy of another list
+    	 *
+    	 * @param source - list to copy
+    	 */
+    	Postings(Postings<V> source) {
+    		this.rowIds = source.rowIds;
+    		this.size = source.size;
+    		this.first = source.first;
+    		this.last = source.last;
+    		this.length = source.length;
+    		if (source.gaps != null)
+    		{
+    			this.gaps = Arrays.copyOf(source.gaps, source.length);
+    		}
+    	}
+
+    	/**
+    	 * Package constructor for a read-only view of another list's row ids
+    	 * through other row ids. The gaps are shared rather than copied, which
+    	 * is safe because a tree copies the lists of a leaf it shares with a
+    	 * snapshot before changing them.
+    	 *
+    	 * @param source - list to view
+    	 * @param rowIds - row ids to look the values up in
+    	 */
+    	Postings(Postings<V> source, RowIds<V> rowIds) {
+    		this.rowIds = rowIds;
+    		this.size = source.size;
+    		this.first = source.first;
+    		this.last = source.last;
+    		this.length = source.length;
+    		this.gaps = source.gaps;
+    	}
+
+    	@Override
+    	public int size() {
+    		return this.size;
+    	}
+
+    	/**
+    	 * Gets a value by its position in the list. Has to decode the row ids
+    	 * before it, so iterate rather than call this in a loop.
+    	 *
+    	 * @param index - position of the value
+    	 * @return value at that position
+    	 */
+    	@Override
+    	public V get(int index) {
+    		if (index < 0 || index >= this.size)
+    		{
+    			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+    		}
+    		Iterator<V> it = iterator();
+    		for (int i = 0; i < index; i++)
+    		{
+    			it.next();
+    		}
+    		return it.next();
+    	}
+
+    	/**
+    	 * Adds a value by its row id
+    	 *
+    	 * @param value - value to add
+    	 * @return true
+    	 * @throws IllegalArgumentException if the value doesn't have a row id
+    	 */
+    	@Override
+    	public boolean add(V value) {
+    		int rowId = this.rowIds.rowIdOf(value);
+    		if (rowId < 0)
+    		{
+    			throw new IllegalArgumentException("No row id for value: " + value);
+    		}
+    		if (this.size == 0 || rowId >= this.last)
+    		{
+    			append(rowId);
+    			return true;
+    		}
+
+    		int[] all = toRowIds(1);
+    		int idx = this.size;
+    		while (idx > 0 && all[idx - 1] > rowId)
+    		{
+    			all[idx] = all[idx - 1];
+    			idx--;
+    		}
+    		all[idx] = rowId;
+    		encode(all, this.size + 1);
+    		return true;
+    	}
+
+    	/**
+    	 * Removes one value by its row id
+    	 *
+    	 * @param value - value to remove
+    	 * @return true if the value was in the list, false otherwise
+    	 */
+    	@Override
+    	@SuppressWarnings("unchecked")
+    	public boolean remove(Object value) {
+    		int rowId = this.rowIds.rowIdOf((V) value);
+    		if (this.size == 0 || rowId < this.first || rowId > this.last)
+    		{
+    			return false;
+    		}
+    		int[] all = toRowIds(0);
+    		int idx = Arrays.binarySearch(all, rowId);
+    		if (idx < 0)
+    		{
+    			return false;
+    		}
+    		System.arraycopy(all, idx + 1, all, idx, this.size - idx - 1);
+    		encode(all, this.size - 1);
+    		return true;
+    	}
+
+    	/**
+    	 * Checks for a value by its row id, without looking up any values
+    	 *
+    	 * @param value - value to look for
+    	 * @return true if the value's row id is in the list, false otherwise
+    	 */
+    	@Override
+    	@SuppressWarnings("unchecked")
+    	public boolean contains(Object value) {
+    		int rowId = this.rowIds.rowIdOf((V) value);
+    		if (this.size == 0 || rowId < this.first || rowId > this.last)
+    		{
+    			return false;
+    		}
+    		return Arrays.binarySearch(toRowIds(0), rowId) >= 0;
+    	}
+
+    	/**
+    	 * Decodes the row ids, and looks up each value as it's handed out
+    	 *
+    	 * @return iterator over the values in order of row id
+    	 */
+    	@Override
+    	public Iterator<V> iterator() {
+    		return new Iterator<V>()
+    			{
+    				// number of row ids handed out, and where the next gap starts
+    				int pos = 0;
+    				int offset = 0;
+
+    				// row id handed out last
+    				int rowId;
+
+    				@Override
+    				public boolean hasNext() {
+    					return this.pos < Postings.this.size;
+    				}
+
+    				@Override
+    				public V next() {
+    					if (!hasNext())
+    					{
+    						throw new NoSuchElementException();
+    					}
+    					if (this.pos == 0)
+    					{
+    						this.rowId = Postings.this.first;
+    					}
+    					else
+    					{
+    						int gap = 0;
+    						int shift = 0;
+    						byte nxt;
+    						do
+    						{
+    							nxt = Postings.this.gaps[this.offset++];
+    							gap |= (nxt & 0x7F) << shift;
+    							shift += 7;
+    						} while (nxt < 0);
+    						this.rowId += gap;
+    					}
+    					this.pos++;
+    					return Postings.this.rowIds.valueOf(this.rowId);
+    				}
+    			};
+    	}
+
+    	/**
+    	 * Decodes the row ids up front, since the gaps can only be read forwards
+    	 *
+    	 * @return iterator over the values in reverse order of row id
+    	 */
+    	Iterator<V> descendingIterator() {
+    		int[] all = toRowIds(0);
+    		return new Iterator<V>()
+    			{
+    				// number of row ids not handed out yet
+    				int pos = all.length;
+
+    				@Override
+    				public boolean hasNext() {
+    					return this.pos > 0;
+    				}
+
+    				@Override
+    				public V next() {
+    					if (this.pos == 0)
+    					{
+    						throw new NoSuchElementException();
+    					}
+    					return Postings.this.rowIds.valueOf(all[--this.pos]);
+    				}
+    			};
+    	}
+
+    	/**
+    	 * Decodes the row ids straight into a bitmap
+    	 *
+    	 * @param rows - bitmap to add the row ids to
+    	 */
+    	void addTo(RowBitmap rows) {
+    		visit(rowId ->
+    			{
+    				rows.add(rowId);
+    				return true;
+    			});
+    	}
+
+    	/**
+    	 * Hands each row id to a visitor, in increasing order, decoding them one
+    	 * at a time so a visitor that stops early doesn't pay for the rest
+    	 *
+    	 * @param visitor - takes each row id, and returns false to stop
+    	 * @return false if the visitor asked to stop, true otherwise
+    	 */
+    	boolean visit(IntPredicate visitor) {
+    		if (this.size == 0)
+    		{
+    			return true;
+    		}
+    		int rowId = this.first;
+    		if (!visitor.test(rowId))
+    		{
+    			return false;
+    		}
+    		int offset = 0;
+    		for (int i = 1; i < this.size; i++)
+    		{
+    			int gap = 0;
+    			int shift = 0;
+    			byte nxt;
+    			do
+    			{
+    				nxt = this.gaps[offset++];
+    				gap |= (nxt & 0x7F) << shift;
+    				shift += 7;
+    			} while (nxt < 0);
+    			rowId += gap;
+    			if (!visitor.test(rowId))
+    			{
+    				return false;
+    			}
+    		}
+    		return true;
+    	}
+
+    	/**
+    	 * Hands each row id to a visitor, in decreasing order. Decodes the row
+    	 * ids up front, since the gaps can only be read forwards.
+    	 *
+    	 * @param visitor - takes each row id, and returns false to stop
+    	 * @return false if the visitor asked to stop, true otherwise
+    	 */
+    	boolean visitDescending(IntPredicate visitor) {
+    		if (this.size == 0)
+    		{
+    			return true;
+    		}
+    		int[] all = toRowIds(0);
+    		for (int i = all.length - 1; i >= 0; i--)
+    		{
+    			if (!visitor.test(all[i]))
+    			{
+    				return false;
+    			}
+    		}
+    		return true;
+    	}
+
+    	/**
+    	 * Adds a row id that's no less than the last one
+    	 *
+    	 * @param rowId - row id to add
+    	 */
+    	private void append(int rowId) {
+    		if (this.size == 0)
+    		{
+    			this.first = rowId;
+    		}
+    		else
+    		{
+    			// a gap takes at most 5 bytes
+    			if (this.gaps == null)
+    			{
+    				this.gaps = new byte[5];
+    			}
+    			else if (this.length + 5 > this.gaps.length)
+    			{
+    				this.gaps = Arrays.copyOf(this.gaps, Math.max(this.gaps.length * 2, this.length + 5));
+    			}
+    			int gap = rowId - this.last;
+    			while ((gap & ~0x7F) != 0)
+    			{
+    				this.gaps[this.length++] = (byte) (gap | 0x80);
+    				gap >>>= 7;
+    			}
+    			this.gaps[this.length++] = (byte) gap;
+    		}
+    		this.last = rowId;
+    		this.size++;
+    	}
+
+    	/**
+    	 * Decodes all of the row ids
+    	 *
+    	 * @param extra - room to leave at the end of the array
+    	 * @return row ids in increasing order
+    	 */
+    	private int[] toRowIds(int extra) {
+    		int[] all = new int[this.size + extra];
+    		int rowId = this.first;
+    		all[0] = rowId;
+    		int offset = 0;
+    		for (int i = 1; i < this.size; i++)
+    		{
+    			int gap = 0;
+    			int shift = 0;
+    			byte nxt;
+    			do
+    			{
+    				nxt = this.gaps[offset++];
+    				gap |= (nxt & 0x7F) << shift;
+    				shift += 7;
+    			} while (nxt < 0);
+    			rowId += gap;
+    			all[i] = rowId;
+    		}
+    		return all;
+    	}
+
+    	/**
+    	 * Replaces the list with the given row ids
+    	 *
+    	 * @param all - row ids in increasing order
+    	 * @param count - number of them to use
+    	 */
+    	private void encode(int[] all, int count) {
+    		this.size = 0;
+    		this.length = 0;
+    		this.gaps = null;
+    		for (int i = 0; i < count; i++)
+    		{
+    			append(all[i]);
+    		}
+    	}
+
+    } // End of class Postings
+
+    /**
+     * Range of keys to search, worked out once from the search arguments
+     * so that walking the leaves is just a couple of compares per key.
+     * Every comparison is a range with open, inclusive or exclusive ends,
+     * plus != which also has one key in the middle to skip over. Each tree
+     * keeps the bounds as its own type of key, and checks its keys against them.
+     */
+    abstract class KeyRange {
+
+    	/**
+    	 * Walks down to the leaf the range starts in
+    	 *
+    	 * @return leaf that would hold the lower bound, or the first leaf if there isn't one
+    	 */
+    	abstract LeafNode startLeaf();
+
+    	/**
+    	 * Walks down to the leaf the range ends in
+    	 *
+    	 * @return leaf that would hold the upper bound, or the last leaf if there isn't one
+    	 */
+    	abstract LeafNode endLeaf();
+
+    	/**
+    	 * Index of the first key in a leaf that is inside the lower bound.
+    	 * May be past the end of the leaf, if the range starts in the next one.
+    	 *
+    	 * @param leaf - leaf the range starts in
+    	 * @return index into the leaf's keys
+    	 */
+    	abstract int startIndex(LeafNode leaf);
+
+    	/**
+    	 * Index just past the last key in a leaf that is inside the upper bound.
+    	 * May be 0, if the range ends in the leaf before.
+    	 *
+    	 * @param leaf - leaf the range ends in
+    	 * @return index into the leaf's keys
+    	 */
+    	abstract int endIndex(LeafNode leaf);
+
+    	/**
+    	 * Check a key against the upper bound
+    	 *
+    	 * @param leaf - leaf the key is in
+    	 * @param idx - index of the key
+    	 * @return true if key is not past the upper bound
+    	 */
+    	abstract boolean isBelowHi(LeafNode leaf, int idx);
+
+    	/**
+    	 * Check a key against the lower bound
+    	 *
+    	 * @param leaf - leaf the key is in
+    	 * @param idx - index of the key
+    	 * @return true if key is not past the lower bound
+    	 */
+    	abstract boolean isAboveLo(LeafNode leaf, int idx);
+
+    	/**
+    	 * Check whether a key inside the bounds should still be skipped
+    	 *
+    	 * @param leaf - leaf the key is in
+    	 * @param idx - index of the key
+    	 * @return true if this is a != search for key
+    	 */
+    	abstract boolean isExcluded(LeafNode leaf, int idx);
+
+    	/**
+    	 * Index of the child of an internal node that the lower bound is in
+    	 *
+    	 * @param node - internal node to look in
+    	 * @return index into node's children, 0 if there's no lower bound
+    	 */
+    	abstract int firstChild(InternalNode node);
+
+    	/**
+    	 * Index of the child of an internal node that the upper bound is in
+    	 *
+    	 * @param node - internal node to look in
+    	 * @return index into node's children, the last one if there's no upper bound
+    	 */
+    	abstract int lastChild(InternalNode node);
+
+    	/**
+    	 * For a != search, the range of keys below the excluded key
+    	 *
+    	 * @return range below the excluded key, or null if this isn't a != search
+    	 */
+    	abstract KeyRange belowExcluded();
+
+    	/**
+    	 * For a != search, the range of keys above the excluded key
+    	 *
+    	 * @return range above the excluded key, or null if this isn't a != search
+    	 */
+    	abstract KeyRange aboveExcluded();
+
+    } // End of class KeyRange
+
+    /**
+     * Iterator over the values in a range of the tree. Keeps its place as a
+     * leaf, a key index in that leaf and an iterator over that key's values, and
+     * only moves on to the next leaf when the current key runs out of values.
+     */
+    class RangeIterator implements Iterator<V> {
+
+    	// range of keys we're iterating over
+    	private KeyRange range;
+
+    	// leaf we're currently in - null once the range is used up
+    	private LeafNode leaf;
+
+    	// index of the next key to visit in leaf
+    	private int idx;
+
+    	// values for the key we're currently on
+    	private Iterator<V> postings;
+
+    	/**
+    	 * Package constructor - positions the iterator at the start of the range
+    	 *
+    	 * @param range - range of keys to iterate over
+    	 */
+    	RangeIterator(KeyRange range)
+    	{
+    		this.range = range;
+    		this.leaf = range.startLeaf();
+    		this.idx = range.startIndex(this.leaf);
+    		advance();
+    	}
+
+    	/**
+    	 * Move to the next key in range that has values left, if there is one
+    	 */
+    	private void advance()
+    	{
+    		while (this.postings == null || !this.postings.hasNext())
+    		{
+    			if (this.leaf == null)
+    			{
+    				this.postings = null;
+    				return;
+    			}
+    			if (this.idx >= this.leaf.numKeys)
+    			{
+    				this.leaf = nextLeaf(this.leaf);
+    				this.idx = 0;
+    				continue;
+    			}
+    			if (!this.range.isBelowHi(this.leaf, this.idx))
+    			{
+    				this.leaf = null;
+    				continue;
+    			}
+    			if (!this.range.isExcluded(this.leaf, this.idx))
+    			{
+    				this.postings = readable(this.leaf.values[this.idx]).iterator();
+    			}
+    			this.idx++;
+    		}
+    	}
+
+    	@Override
+    	public boolean hasNext()
+    	{
+    		return this.postings != null;
+    	}
+
+    	@Override
+    	public V next()
+    	{
+    		if (this.postings == null)
+    		{
+    			throw new NoSuchElementException();
+    		}
+    		V rtn = this.postings.next();
+    		advance();
+    		return rtn;
+    	}
+
+    } // End of class RangeIterator
+
+    /**
+     * Iterator over the values in a range of the tree, from the greatest key
+     * down. Works like RangeIterator, but starts at the top of the range and
+     * walks back through the leaves, handing out each key's values last to first.
+     */
+    class DescendingIterator implements Iterator<V> {
+
+    	// range of keys we're iterating over
+    	private KeyRange range;
+
+    	// leaf we're currently in - null once the range is used up
+    	private LeafNode leaf;
+
+    	// index of the next key to visit in leaf - -1 once we've visited all of them
+    	private int idx;
+
+    	// values for the key we're currently on, last to first
+    	private Iterator<V> postings;
+
+    	/**
+    	 * Package constructor - positions the iterator at the end of the range
+    	 *
+    	 * @param range - range of keys to iterate over
+    	 */
+    	DescendingIterator(KeyRange range)
+    	{
+    		this.range = range;
+    		this.leaf = range.endLeaf();
+    		this.idx = range.endIndex(this.leaf) - 1;
+    		advance();
+    	}
+
+    	/**
+    	 * Move to the next key down in range that has values left, if there is one
+    	 */
+    	private void advance()
+    	{
+    		while (this.postings == null || !this.postings.hasNext())
+    		{
+    			if (this.leaf == null)
+    			{
+    				this.postings = null;
+    				return;
+    			}
+    			if (this.idx < 0)
+    			{
+    				this.leaf = previousLeaf(this.leaf);
+    				this.idx = this.leaf == null ? -1 : this.leaf.numKeys - 1;
+    				continue;
+    			}
+    			if (!this.range.isAboveLo(this.leaf, this.idx))
+    			{
+    				this.leaf = null;
+    				continue;
+    			}
+    			if (!this.range.isExcluded(this.leaf, this.idx))
+    			{
+    				this.postings = descendingPostings(readable(this.leaf.values[this.idx]));
+    			}
+    			this.idx--;
+    		}
+    	}
+
+    	@Override
+    	public boolean hasNext()
+    	{
+    		return this.postings != null;
+    	}
+
+    	@Override
+    	public V next()
+    	{
+    		if (this.postings == null)
+    		{
+    			throw new NoSuchElementException();
+    		}
+    		V rtn = this.postings.next();
+    		advance();
+    		return rtn;
+    	}
+
+    } // End of class DescendingIterator
+
+} // End of class AbstractBPTree
@@ -0,0 +1,63 @@
+/**
+ * Filename:   Aggregator.java
+ * Project:    Group Project
+ * Authors:    sapan (sapan@cs.wisc.edu), Soua Lor, Maria Helgeson, Daniel Walter, & Will Hickman
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400 - Lecutre 46373
+ *
+ * Due Date:   12/16/18
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       No known bugs
+ */
+
+package application;
+
+/**
+ * A summary of values that a B+ tree can keep up to date in each of its
+ * nodes, so the summary of a whole range of keys can be put together from
+ * a few node summaries rather than by visiting every value in the range.
+ *
+ * Summaries have to form a monoid: combine must be associative, and
+ * combining any summary with identity() must give back the same summary.
+ * Sums, minimums, maximums and counts all work. Summaries are always
+ * combined in key order, so combine doesn't need to be commutative.
+ *
+ * Trees hold on to the summaries they are given and share them between
+ * nodes, so a summary should never be changed once it has been made.
+ *
+ * @param <V> type of values being summarized
+ * @param <A> type of the summary
+ */
+public interface Aggregator<V, A> {
+
+    /**
+     * Gets the summary of no values at all
+     *
+     * @return identity summary
+     */
+    public A identity();
+
+
+    /**
+     * Gets the summary of a single value
+     *
+     * @param value to summarize
+     * @return summary of value
+     */
+    public A of(V value);
+
+
+    /**
+     * Gets the summary of two groups of values, the first coming
+     * before the second in key order
+     *
+     * @param left summary of the first group
+     * @param right summary of the second group
+     * @return summary of both groups together
+     */
+    public A combine(A left, A right);
+}
@@ -17,12 +17,12 @@
 package application;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
-import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import application.Constants.Comparison;
 
 /**
  * Implementation of a B+ tree to allow efficient access to
@@ -35,45 +35,66 @@ import java.util.TreeMap;
  * sizes. But in this application, it should meet the needs efficiently and without a lot of
  * complexity in implementation.
  * 
+ * The nodes, splitting and rebalancing them, counts, iterators and snapshots 
+ * are shared with DoubleBPTree through AbstractBPTree. This class has the 
+ * searches that compare keys, with a null bound meaning that side of a range 
+ * is open.
+ * 
  * @author sapan (sapan@cs.wisc.edu), Soua Lor, Maria Helgeson, Daniel Walter, & Will Hickman
  *
  * @param <K> key - expect a string that is the type of id for each item
  * @param <V> value - expect a user-defined type that stores all data for a food item
  */
-public class BPTree<K extends Comparable<K>, V> implements BPTreeADT<K, V> {
-	
-	// for quick (no casting needed) classification of a node as internal vs. leaf for splitting operations
-	enum NodeType
-	{
-		Internal,
-		Leaf
-	}
-	
-    // Root of the tree
-    private Node root;
-    
-    // Branching factor is the number of children nodes 
-    // for internal nodes of the tree
-    private int branchingFactor;
-    
-    // for determining size of sibling during split
-    // if branchingFactor is even, then siblingSize = branchingFactor / 2
-    // if branchingFactor is odd, then siblingSize = (branchingFactor + 1) / 2 
-    private int siblingSize;
-    
+public class BPTree<K extends Comparable<K>, V> extends AbstractBPTree<K[], V> implements BPTreeADT<K, V> {
+
     /**
      * Public constructor
      * 
      * @param branchingFactor 
      */
     public BPTree(int branchingFactor) {
-        if (branchingFactor <= 2) {
-            throw new IllegalArgumentException("Illegal branching factor: " + branchingFactor);
-        }
-        this.branchingFactor = branchingFactor;
-        this.siblingSize = (branchingFactor + 1) / 2;	// integer division, so remainder gets dropped
-        
-        this.root = new LeafNode();
+        super(branchingFactor, null, null);
+    }
+    
+    /**
+     * Public constructor for a tree that keeps a summary of the values under each 
+     * of its keys and nodes, so that aggregate can summarize any range of keys 
+     * by combining a few summaries instead of visiting every value in the range.
+     * 
+     * @param branchingFactor 
+     * @param aggregator - how to summarize values
+     */
+    public BPTree(int branchingFactor, Aggregator<? super V, ?> aggregator) {
+    	super(branchingFactor, aggregator, null);
+    }
+    
+    /**
+     * Private constructor for a snapshot, which shares all of its nodes with the source tree
+     * 
+     * @param source - tree to take the snapshot of
+     */
+    private BPTree(BPTree<K, V> source) {
+    	super(source, null);
+    }
+    
+    /**
+     * Gets a read-only copy of the tree as it is now, which later changes to 
+     * this tree don't show up in. Nothing is copied up front: the snapshot 
+     * shares every node with this tree, and this tree copies a node before 
+     * changing one that it shares.
+     * 
+     * @return snapshot of the tree - changing it throws UnsupportedOperationException
+     * @see DoubleBPTree#snapshot()
+     */
+    public BPTree<K, V> snapshot() {
+    	if (this.isSnapshot)
+    	{
+    		return this;
+    	}
+    	BPTree<K, V> snapshot = new BPTree<K, V>(this);
+    	// every node there is now is shared with the snapshot
+    	this.version++;
+    	return snapshot;
     }
     
     /**
@@ -86,577 +107,784 @@ public class BPTree<K extends Comparable<K>, V> implements BPTreeADT<K, V> {
      */
     @Override
     public void insert(K key, V value) {
+    	checkWritable();
+    	
+    	this.root = writable(this.root);
+    	insert(this.root, key, value);
+    	// special case of the root being too full, in which case it splits and the tree grows a level
+    	splitRoot();
+    }
+    
+    /**
+     * Removes one value stored under the given key. If that was the last value
+     * for the key, the key is removed too, and the tree rebalances itself on the 
+     * way back up by borrowing keys from or merging with sibling nodes, so it 
+     * stays as shallow as it would be had the pair never been inserted.
+     * 
+     * Values are matched with equals.
+     * 
+     * @param key - key the value is stored under
+     * @param value - value to remove
+     * @return true if the value was found and removed, false otherwise
+     */
+    @Override
+    public boolean remove(K key, V value) {
+    	if (key == null)
+    	{
+    		return false;
+    	}
+    	checkWritable();
+    	LeafNode leaf = findLeaf(key);
+    	if (leaf.version != this.version && !leaf.contains(indexOf(leaf, key), value))
+    	{
+    		// the path down to the leaf is shared with a snapshot, so only copy it if there's something to remove
+    		return false;
+    	}
+    	this.root = writable(this.root);
+    	boolean removed = remove(this.root, key, value);
     	
-    	// special case of the root being a leafNode, in which case we need to update the root to be an internal node
-    	this.root.insert(key, value);
-    	if (this.root.shouldSplit())
+    	// if the root is down to a single child, that child becomes the new root
+    	collapseRoot();
+    	return removed;
+    }
+    
+    /**
+     * Moves a value from one key to another, like when the amount of a 
+     * nutrient changes for a food item
+     * 
+     * @param oldKey - key the value is stored under now
+     * @param newKey - key the value should be stored under
+     * @param value - value to move
+     * @return true if the value was found and moved, false if it wasn't 
+     * found under oldKey (in which case nothing changes)
+     */
+    @Override
+    public boolean update(K oldKey, K newKey, V value) {
+    	if (newKey == null || !remove(oldKey, value))
     	{
-    		InternalNode newRoot = new InternalNode();
-    		Node oldRoot = this.root;
-    		Node newSibling = this.root.split();
-    		
-    		K middleKey = oldRoot.getFirstLeafKey();
-			// least child will be the new sibling, and we need to set the old root as our second child (using its first leaf key as the index)
-    		newRoot.leastChild = newSibling;
-			newRoot.childMap.put(middleKey, oldRoot);
-			
-    		this.root = newRoot;
+    		return false;
     	}
+    	insert(newKey, value);
+    	return true;
     }
     
     /**
      * Gets the values that satisfy the given range 
      * search arguments.
      * 
-     * Value of comparator can be one of these: 
-     * "<=", "==", ">="
+     * Strict comparisons and != are handled in the same single
+     * walk along the leaves as the inclusive ones.
      * 
-     * Example:
-     *     If given key = 2.5 and comparator = ">=":
-     *         return all the values with the corresponding 
-     *      keys >= 2.5
-     *      
-     * If key is null or not found, return empty list.
-     * If comparator is null, empty, or not according
-     * to required form, return empty list.
+     * If key or comparison is null, return empty list.
      * 
      * @param key to be searched
-     * @param comparator is a string
+     * @param comparison to compare keys against key with
      * @return list of values that are the result of the 
      * range search; if nothing found, return empty list
      */
     @Override
-    public List<V> rangeSearch(K key, String comparator) {
-    	if (key == null || comparator == null)
-        {
-        	return new ArrayList<V>();
-        }
-    	if (!comparator.contentEquals(">=") && 
-            !comparator.contentEquals("==") && 
-            !comparator.contentEquals("<=") )
+    public List<V> rangeSearchBy(K key, Comparison comparison) {
+    	if (key == null || comparison == null)
         {
         	return new ArrayList<V>();
         }
-        
-    	return this.root.rangeSearch(key, comparator);
+    	return rangeSearch(new Range(key, comparison));
     }
     
     /**
-     * print tag for testing the LeafNode links for in-order printing
-     * @return print all values in the tree in key order
+     * Gets the values with keys between lo and hi, in key order. 
+     * Descends the tree once to the first key in range, then walks 
+     * the leaves until it passes hi.
+     * 
+     * A null bound leaves that side of the range open, so 
+     * rangeSearch(null, true, hi, true) is the same as 
+     * rangeSearch(hi, "<=").
+     * 
+     * @param lo - lower bound, or null for no lower bound
+     * @param loInclusive - true if keys equal to lo are in range
+     * @param hi - upper bound, or null for no upper bound
+     * @param hiInclusive - true if keys equal to hi are in range
+     * @return list of values that are the result of the 
+     * range search; if nothing found, return empty list
      */
-    private String inOrderPrint()
+    @Override
+    public List<V> rangeSearch(K lo, boolean loInclusive, K hi, boolean hiInclusive) {
+    	return rangeSearch(new Range(lo, loInclusive, hi, hiInclusive));
+    }
+    
+    /**
+     * Gets an iterator over the values that satisfy the given range 
+     * search arguments, in key order, walking the leaves as it goes.
+     * 
+     * @param key to be searched
+     * @param comparison to compare keys against key with
+     * @return iterator over the values that are the result of the 
+     * range search; empty if key or comparison is null
+     * @see BPTree#rangeSearchBy(Comparable, Comparison)
+     */
+    @Override
+    public Iterator<V> rangeIteratorBy(K key, Comparison comparison) {
+    	if (key == null || comparison == null)
+    	{
+    		return Collections.emptyIterator();
+    	}
+    	return new RangeIterator(new Range(key, comparison));
+    }
+    
+    /**
+     * Gets an iterator over the values that satisfy the given range 
+     * search arguments, from the greatest key down. Starts at the leaf 
+     * holding the top of the range and walks the previous links, so a 
+     * <= search near the high end only visits the leaves it needs.
+     * 
+     * @param key to be searched
+     * @param comparison to compare keys against key with
+     * @return iterator over the values that are the result of the 
+     * range search, in reverse order; empty if key or comparison is null
+     * @see BPTree#rangeIteratorBy(Comparable, Comparison)
+     */
+    @Override
+    public Iterator<V> descendingIteratorBy(K key, Comparison comparison) {
+    	if (key == null || comparison == null)
+    	{
+    		return Collections.emptyIterator();
+    	}
+    	return new DescendingIterator(new Range(key, comparison));
+    }
+    
+    /**
+     * Gets an iterator over the values with keys between lo and hi, 
+     * from the greatest key down
+     * 
+     * @param lo - lower bound, or null for no lower bound
+     * @param loInclusive - true if keys equal to lo are in range
+     * @param hi - upper bound, or null for no upper bound
+     * @param hiInclusive - true if keys equal to hi are in range
+     * @return iterator over the values in range, in reverse order
+     * @see BPTree#descendingIteratorBy(Comparable, Comparison)
+     */
+    @Override
+    public Iterator<V> descendingIterator(K lo, boolean loInclusive, K hi, boolean hiInclusive) {
+    	return new DescendingIterator(new Range(lo, loInclusive, hi, hiInclusive));
+    }
+    
+    /**
+     * Performs the given action for each value that satisfies the given 
+     * range search arguments, in key order
+     * 
+     * @param key to be searched
+     * @param comparison to compare keys against key with
+     * @param action to perform on each value
+     * @see BPTree#rangeSearchBy(Comparable, Comparison)
+     */
+    @Override
+    public void forEachBy(K key, Comparison comparison, Consumer<? super V> action) {
+    	if (key == null || comparison == null)
+    	{
+    		return;
+    	}
+    	forEach(new Range(key, comparison), action);
+    }
+    
+    /**
+     * Performs the given action for each value with a key between lo and hi,
+     * in key order
+     * 
+     * @param lo - lower bound, or null for no lower bound
+     * @param loInclusive - true if keys equal to lo are in range
+     * @param hi - upper bound, or null for no upper bound
+     * @param hiInclusive - true if keys equal to hi are in range
+     * @param action to perform on each value
+     * @see BPTree#rangeSearch(Comparable, boolean, Comparable, boolean)
+     */
+    public void forEach(K lo, boolean loInclusive, K hi, boolean hiInclusive, Consumer<? super V> action) {
+    	forEach(new Range(lo, loInclusive, hi, hiInclusive), action);
+    }
+    
+    /**
+     * Gets the number of values that satisfy the given range search arguments.
+     * Uses the value counts kept in each internal node, so it only walks down 
+     * the tree once or twice and never visits the leaves in between.
+     * 
+     * @param key to be searched
+     * @param comparison to compare keys against key with
+     * @return number of values that are the result of the range search; 
+     * 0 if key or comparison is null
+     */
+    @Override
+    public int countBy(K key, Comparison comparison) {
+    	if (key == null || comparison == null)
+    	{
+    		return 0;
+    	}
+    	return count(new Range(key, comparison));
+    }
+    
+    /**
+     * Gets the number of values with keys between lo and hi
+     * 
+     * @param lo - lower bound, or null for no lower bound
+     * @param loInclusive - true if keys equal to lo are in range
+     * @param hi - upper bound, or null for no upper bound
+     * @param hiInclusive - true if keys equal to hi are in range
+     * @return number of values that are the result of the range search
+     * @see BPTree#countBy(Comparable, Comparison)
+     */
+    @Override
+    public int count(K lo, boolean loInclusive, K hi, boolean hiInclusive) {
+    	return count(new Range(lo, loInclusive, hi, hiInclusive));
+    }
+    
+    /**
+     * Gets the number of values in a range - the number at or below its upper
+     * bound less the number below its lower bound
+     * 
+     * @param range - range of keys to count the values for
+     * @return number of values in range
+     */
+    private int count(Range range) {
+    	int upTo = range.hi == null ? size() : countBelow(range.hi, range.hiInclusive);
+    	int below = range.lo == null ? 0 : countBelow(range.lo, !range.loInclusive);
+    	int total = Math.max(0, upTo - below);
+    	if (range.excluded != null)
+    	{
+    		total -= countBelow(range.excluded, true) - countBelow(range.excluded, false);
+    	}
+    	return total;
+    }
+    
+    /**
+     * Gets the number of values with keys less than the given key
+     * 
+     * @param key to be ranked
+     * @return number of values with keys less than key; 0 if key is null
+     */
+    @Override
+    public int rank(K key) {
+    	if (key == null)
+    	{
+    		return 0;
+    	}
+    	return countBelow(key, false);
+    }
+    
+    /**
+     * Number of values with keys less than (or equal to, if inclusive) the given
+     * key. Adds up the counts of the children to the left of the path down to 
+     * the key's leaf, then the values before the key within that leaf.
+     * 
+     * @param key - key to count the values below
+     * @param inclusive - true to count the values stored under key as well
+     * @return number of values
+     */
+    private int countBelow(K key, boolean inclusive)
+    {
+    	int total = 0;
+    	Node node = this.root;
+    	while (!node.isLeaf())
+    	{
+    		InternalNode asInt = (InternalNode) node;
+    		// an exact match on a separator means every key below it is in the children to its left
+    		int idx = inclusive ? upperBound(asInt, key) : lowerBound(asInt, key);
+    		total += TreeNode.sumCounts(asInt.counts, idx);
+    		node = asInt.children[idx];
+    	}
+    	LeafNode leaf = (LeafNode) node;
+    	return total + leaf.countBefore(inclusive ? upperBound(leaf, key) : lowerBound(leaf, key));
+    }
+    
+    /**
+     * Gets the summary of the values that satisfy the given range search
+     * arguments. Only works for a tree made with an aggregator.
+     * 
+     * @param aggregator - the aggregator the tree was made with
+     * @param key to be searched
+     * @param comparator is a string
+     * @return summary of the values that are the result of the range search
+     * @throws IllegalArgumentException if the tree wasn't made with aggregator
+     * @see BPTree#aggregateBy(Aggregator, Comparable, Comparison)
+     */
+    public <A> A aggregate(Aggregator<? super V, A> aggregator, K key, String comparator) {
+    	return aggregateBy(aggregator, key, Comparison.fromSymbol(comparator));
+    }
+     
+    /**
+     * Gets the summary of the values that satisfy the given range search 
+     * arguments. Only works for a tree made with an aggregator.
+     * 
+     * @param aggregator - the aggregator the tree was made with
+     * @param key to be searched
+     * @param comparison to compare keys against key with
+     * @return summary of the values that are the result of the range search;
+     * the identity summary if key or comparison is null
+     * @throws IllegalArgumentException if the tree wasn't made with aggregator
+     */
+    public <A> A aggregateBy(Aggregator<? super V, A> aggregator, K key, Comparison comparison) {
+    	TreeNode.checkAggregator(aggregator, this.aggregator);
+    	if (key == null || comparison == null)
+    	{
+    		return aggregator.identity();
+    	}
+    	return aggregate(aggregator, new Range(key, comparison));
+    }
+    
+    /**
+     * Gets the summary of the values with keys between lo and hi. Walks 
+     * down the tree along the paths to lo and hi only, and takes the 
+     * summaries kept for every child in between as they are, so the cost
+     * doesn't depend on how many values are in range.
+     * 
+     * @param aggregator - the aggregator the tree was made with
+     * @param lo - lower bound, or null for no lower bound
+     * @param loInclusive - true if keys equal to lo are in range
+     * @param hi - upper bound, or null for no upper bound
+     * @param hiInclusive - true if keys equal to hi are in range
+     * @return summary of the values that are the result of the range search
+     * @throws IllegalArgumentException if the tree wasn't made with aggregator
+     */
+    public <A> A aggregate(Aggregator<? super V, A> aggregator, K lo, boolean loInclusive, K hi, boolean hiInclusive) {
+    	TreeNode.checkAggregator(aggregator, this.aggregator);
+    	return aggregate(aggregator, new Range(lo, loInclusive, hi, hiInclusive));
+    }
+    
+    /**
+     * Works out the summaries along the path to a key again. Call this after 
+     * changing a value stored under key in a way that changes its summary, 
+     * so later aggregates see the change. Does nothing if the tree doesn't 
+     * keep summaries.
+     * 
+     * @param key - key the changed value is stored under
+     */
+    public void refreshSummaries(K key) {
+    	checkWritable();
+    	if (key != null && this.aggregator != null)
+    	{
+    		this.root = writable(this.root);
+    		refreshSummaries(this.root, key);
+    	}
+    }
+    
+    /**
+     * Inserts key and value in the sub-tree with the given node as its root, 
+     * splitting any child that ends up too full on the way back up. The node 
+     * itself is left for its parent to split.
+     * 
+     * @param node - root of the sub-tree, which must already be writable
+     * @param key
+     * @param value
+     */
+    private void insert(Node node, K key, V value)
     {
-    	List<V> rtnList = this.rangeSearch(this.root.getFirstLeafKey(), ">=");
+    	if (node.isLeaf())
+    	{
+    		LeafNode leaf = (LeafNode) node;
+    		int idx = indexOf(leaf, key);
+    		if (idx < 0)
+    		{
+    			idx = -idx - 1;
+    			leaf.insertKey(idx);
+    			leaf.keys[idx] = key;
+    		}
+    		leaf.addValue(idx, value);
+    		return;
+    	}
     	
-    	StringBuilder sb = new StringBuilder();
+    	InternalNode asInt = (InternalNode) node;
+    	int idx = childIndex(asInt, key);
+    	insert(asInt.writableChild(idx), key, value);
+    	asInt.childInserted(idx);
+    }
+    
+    /**
+     * Removes one value stored under the given key from the sub-tree with the 
+     * given node as its root. Children that end up with too few keys are 
+     * rebalanced, but the node itself is left for its parent to rebalance.
+     * 
+     * @param node - root of the sub-tree, which must already be writable
+     * @param key
+     * @param value
+     * @return true if the value was found and removed, false otherwise
+     */
+    private boolean remove(Node node, K key, V value)
+    {
+    	if (node.isLeaf())
+    	{
+    		LeafNode leaf = (LeafNode) node;
+    		return leaf.removeValue(indexOf(leaf, key), value);
+    	}
     	
-    	for (V val: rtnList)
+    	InternalNode asInt = (InternalNode) node;
+    	int idx = childIndex(asInt, key);
+    	if (!remove(asInt.writableChild(idx), key, value))
     	{
-    		sb.append(val.toString());
-    		sb.append(", ");
+    		return false;
+    	}
+    	asInt.childRemoved(idx);
+    	return true;
+    }
+    
+    /**
+     * Works out the summaries again along the path down to the given key, 
+     * within the sub-tree with the given node as its root
+     * 
+     * @param node - root of the sub-tree, which must already be writable
+     * @param key - key the changed value is stored under
+     */
+    private void refreshSummaries(Node node, K key)
+    {
+    	if (node.isLeaf())
+    	{
+    		int idx = indexOf(node, key);
+    		if (idx >= 0)
+    		{
+    			node.refreshSummary(idx);
+    		}
+    		return;
     	}
     	
-    	return sb.toString();
+    	InternalNode asInt = (InternalNode) node;
+    	int idx = childIndex(asInt, key);
+    	refreshSummaries(asInt.writableChild(idx), key);
+    	asInt.refreshSummary(idx);
     }
     
-    /*
-     * String representation of the tree, for testing
+    /**
+     * Walk down from the root to the leaf whose range covers the given key
+     * 
+     * @param key - key to look for, or null for the leftmost leaf
+     * @return leaf node that would hold the key
      */
-    @SuppressWarnings("unchecked")
-	@Override
-    public String toString() {
-        Queue<List<Node>> queue = new LinkedList<List<Node>>();
-        queue.add(Arrays.asList(root));
-        StringBuilder sb = new StringBuilder();
-        while (!queue.isEmpty()) {
-            Queue<List<Node>> nextQueue = new LinkedList<List<Node>>();
-            while (!queue.isEmpty()) {
-                List<Node> nodes = queue.remove();
-                sb.append('{');
-                Iterator<Node> it = nodes.iterator();
-                while (it.hasNext()) {
-                    Node node = it.next();
-                    sb.append(node.toString());
-                    if (it.hasNext())
-                        sb.append(", ");
-                    if (node instanceof BPTree.InternalNode)
-                    {
-                    	InternalNode asInt = (InternalNode) node;
-                    	nextQueue.add(Arrays.asList(asInt.leastChild));
-                    	for (Node nxt: asInt.childMap.values())
-                    	{
-                    		nextQueue.add(Arrays.asList(nxt));
-                    	}
-                    }
-                        
-                }
-                sb.append('}');
-                if (!queue.isEmpty())
-                    sb.append(", ");
-                else {
-                    sb.append('\n');
-                }
-            }
-            queue = nextQueue;
-        }
-        return sb.toString();
+    private LeafNode findLeaf(K key)
+    {
+    	Node node = this.root;
+    	while (!node.isLeaf())
+    	{
+    		InternalNode asInt = (InternalNode) node;
+    		node = asInt.children[key == null ? 0 : childIndex(asInt, key)];
+    	}
+    	return (LeafNode) node;
     }
     
+    /**
+     * Walk down from the root to the leaf whose range covers the given key, 
+     * or to the rightmost leaf if there's no key
+     * 
+     * @param key - key to look for, or null for the rightmost leaf
+     * @return leaf node that would hold the key
+     */
+    private LeafNode findLastLeaf(K key)
+    {
+    	Node node = this.root;
+    	while (!node.isLeaf())
+    	{
+    		InternalNode asInt = (InternalNode) node;
+    		node = asInt.children[key == null ? asInt.numKeys : childIndex(asInt, key)];
+    	}
+    	return (LeafNode) node;
+    }
     
     /**
-     * This abstract class represents any type of node in the tree
-     * This class is a super class of the LeafNode and InternalNode types.
+     * Binary search over the keys in use in a node
      * 
-     * @author sapan
+     * @param node - node to look in
+     * @param key - key to look for
+     * @return index of the key, if found; otherwise (-(insertion point) - 1)
      */
-    private abstract class Node {
-        
-    	// internal or leafnode - used for quick (no casting) check when doing splitting operations
-        @SuppressWarnings("unused")
-		NodeType type;
-        
-        /**
-         * Package constructor
-         */
-        Node() {
-            
-        }
-        
-        /**
-         * The keys of this node as a collection
-         * @return collection of K
-         */
-        abstract Collection<K> getKeyColl();
-        
-        /**
-         * Inserts key and value in the appropriate leaf node 
-         * and balances the tree if required by splitting
-         *  
-         * @param key
-         * @param value
-         */
-        abstract void insert(K key, V value);
-
-        /**
-         * Gets the first leaf key of the sub-tree with this node as its root
-         * 
-         * @return key
-         */
-        abstract K getFirstLeafKey();
-        
-        /**
-         * Gets the new sibling created after splitting the node
-         * 
-         * @return Node
-         */
-        abstract Node split();
-        
-        /**
-         * Gets the values that satisfy the given range 
-         * search arguments.
-         * 
-         * @param key to be searched
-         * @param comparator is a string
-         * @return list of values that are the result of the 
-         * range search; if nothing found, return empty list
-         * @see BPTree#rangeSearch(java.lang.Object, java.lang.String)
-         */
-        abstract List<V> rangeSearch(K key, String comparator);
-        
-        /**
-         * tell parent whether you need to split
-         * Will be different criteria for leaf vs. internal, since internal 
-         * can have branchingFactor - 1 number of keys, but leaf can have 
-         * branchingFactor number of keys
-         * @return true if should split, false otherwise
-         */
-        abstract boolean shouldSplit();
-        
-        /**
-         * String representation of node's keys
-         * @return String representation of node's keys
-         */
-        public String toString() {
-            return getKeyColl().toString();
-        }
+    private int indexOf(Node node, K key)
+    {
+    	K[] keys = node.keys;
+    	int low = 0;
+    	int high = node.numKeys - 1;
+    	while (low <= high)
+    	{
+    		int mid = (low + high) >>> 1;
+    		int cmp = keys[mid].compareTo(key);
+    		if (cmp < 0)
+    		{
+    			low = mid + 1;
+    		}
+    		else if (cmp > 0)
+    		{
+    			high = mid - 1;
+    		}
+    		else
+    		{
+    			return mid;
+    		}
+    	}
+    	return -(low + 1);
+    }
     
-    } // End of abstract class Node
+    /**
+     * Index of the first key in a node that is >= the given key
+     * 
+     * @param node - node to look in
+     * @param key - key to look for
+     * @return index of the key, or where it would go if it's not in the node
+     */
+    private int lowerBound(Node node, K key)
+    {
+    	int idx = indexOf(node, key);
+    	return idx >= 0 ? idx : -idx - 1;
+    }
     
     /**
-     * This class represents an internal node of the tree.
-     * This class is a concrete sub class of the abstract Node class
-     * and provides implementation of the operations
-     * required for internal (non-leaf) nodes.
+     * Index of the first key in a node that is > the given key
      * 
-     * @author sapan, Soua Lor, Maria Helgeson, Daniel Walter, & Will Hickman
+     * @param node - node to look in
+     * @param key - key to look for
+     * @return index just past the key, or where it would go if it's not in the node
      */
-    private class InternalNode extends Node {
-    	
-    	// map of keys to associated child node (where child node is to the right of the key)
-        TreeMap<K, Node> childMap;
-        
-        // first child - not associated with a key (it comes before the first key)
-        Node leastChild;
-        
-        /**
-         * Package constructor
-         */
-        InternalNode() {
-            super();
-            this.childMap = new TreeMap<K, Node>();
-            this.type = NodeType.Internal;
-        }
-        
-        /**
-         * Gets the first leaf key of the sub-tree with this node as its root
-         * 
-         * @return key
-         */
-        K getFirstLeafKey() {
-            return this.leastChild.getFirstLeafKey();
-        }
-        
-        /**
-         * The keys of this node as a collection
-         * @return collection of K
-         */
-        Collection<K> getKeyColl() {
-            return this.childMap.keySet();
-        }
-        
-        /**
-         * tell parent whether you need to split
-         * @return true if should split, false otherwise
-         */
-        boolean shouldSplit()
-        {
-        	// we should split when # children larger than branching factor, and our child list is the leastChild + all children in the childMap
-        	if (this.childMap.keySet().size() + 1 > branchingFactor)
-        	{
-        		return true;
-        	}
-        	else
-        	{
-        		return false;
-        	}
-        }
-        
-        /**
-         * Inserts key and value in the appropriate leaf node 
-         * and balances the tree if required by splitting
-         *  
-         * @param key
-         * @param value
-         */
-        void insert(K key, V value) {
-        	
-        	K nxtKey = this.childMap.firstKey();
-        	K lastKey = null;
-        	
-        	Node childToUpdate = null;
-        	
-        	if (key.compareTo(nxtKey) < 0)
-        	{
-        		childToUpdate = this.leastChild;
-        	}
-        	else
-        	{
-        		lastKey = nxtKey;
-        		nxtKey = this.childMap.higherKey(nxtKey);
-        		while (nxtKey != null)
-            	{
-        			if (key.compareTo(nxtKey) < 0)
-            		{
-            			childToUpdate = this.childMap.get(lastKey);
-            			break;
-            		}
-        			else
-        			{
-        				lastKey = nxtKey;
-        				nxtKey = this.childMap.higherKey(nxtKey);
-        			}
-            	}
-        		if (childToUpdate == null)
-        		{
-        			// if we got here, then the key is larger than our largest key, so go with the last child
-        			childToUpdate = this.childMap.lastEntry().getValue();
-        		}
-        	}
-        	
-        	childToUpdate.insert(key, value);
-			if (childToUpdate.shouldSplit())  // should be == ?
-			{
-				Node sibling = childToUpdate.split();
-								
-				K newKey = childToUpdate.getFirstLeafKey();
-				// if child that split was our least child, then we need to make a new least child, etc.
-				if (lastKey == null)
-				{
-					this.leastChild = sibling;
-					this.childMap.put(newKey, childToUpdate);
-				}
-				// otherwise, the new sibling goes at our old key (lastKey), and our original child goes at a new key
-				else
-				{
-					this.childMap.put(newKey, childToUpdate);
-					this.childMap.put(lastKey, sibling);
-				}
-			}
-        }
-        
-        /**
-         * Splits node and returns the new sibling created from the split
-         * 
-         * @return new sibling Node
-         */
-        Node split() {
-        	
-        	InternalNode newSibling = new InternalNode();
-        	newSibling.leastChild = this.leastChild;
-            for (int i = 0; i < siblingSize - 1; i++)
-            {
-            	K nxtKey = this.childMap.firstKey();	// linked list, so this is fast
-            	Node nxtChild = this.childMap.remove(nxtKey);
-            	newSibling.childMap.put(nxtKey, nxtChild);
-            }
-            
-			// We now have one more key than we need and our least child needs to be updated, now that we've split it, so remove it and set our least child to that key's value
-			K firstKey = this.childMap.firstKey();
-			Node newLeastChild = this.childMap.get(firstKey);
-			this.childMap.remove(firstKey);
-			this.leastChild = newLeastChild;
-            
-            return newSibling;
-        }
-        
-        /**
-         * Gets the values that satisfy the given range 
-         * search arguments.
-         * 
-         * @param key to be searched
-         * @param comparator is a string
-         * @return list of values that are the result of the 
-         * range search; if nothing found, return empty list
-         * @see BPTree#rangeSearch(java.lang.Object, java.lang.String)
-         */
-        List<V> rangeSearch(K key, String comparator) {
-        	// if less than, then we just need to get to the beginning of the list. 
-        	if (comparator.contentEquals("<="))
-        	{
-    			Node child = this.leastChild;
-    			return child.rangeSearch(key, comparator);
-        	}
-        	// if >= or ==, we need to go find a leaf with that key (or maybe one that's just smaller or just bigger, if it's not in the list)
-        	else
-        	{
-        		K nxtKey = this.childMap.firstKey();
-        		
-        		if (key.compareTo(nxtKey) < 0)
-        		{
-        			return this.leastChild.rangeSearch(key, comparator);
-        		}
-        		
-        		K lastKey = nxtKey;
-        		while (nxtKey != null)
-            	{
-        			if (key.compareTo(nxtKey) >= 0)
-        			{
-        				lastKey = nxtKey;
-        				nxtKey = this.childMap.higherKey(nxtKey);
-        			}
-        			else
-        			{
-        				break;
-        			}
-            	}
-        		return this.childMap.get(lastKey).rangeSearch(key, comparator);
-        	}
-        }
+    private int upperBound(Node node, K key)
+    {
+    	int idx = indexOf(node, key);
+    	return idx >= 0 ? idx + 1 : -idx - 1;
+    }
+    
+    /**
+     * Index of the child of an internal node whose sub-tree would hold the given key
+     * 
+     * @param node - internal node to look in
+     * @param key
+     * @return index into node's children
+     */
+    private int childIndex(InternalNode node, K key)
+    {
+    	// an exact match belongs to the child to the right of the key
+    	return upperBound(node, key);
+    }
+    
+    @Override
+    int childIndexOf(InternalNode node, LeafNode leaf, int idx)
+    {
+    	return childIndex(node, leaf.keys[idx]);
+    }
     
-    } // End of class InternalNode
+    @SuppressWarnings("unchecked")
+	@Override
+    K[] newKeys(int capacity)
+    {
+    	return (K[]) new Comparable<?>[capacity];
+    }
     
+    @Override
+    int keyBytes()
+    {
+    	return 4;
+    }
     
     /**
-     * This class represents a leaf node of the tree.
-     * This class is a concrete sub class of the abstract Node class
-     * and provides implementation of the operations that
-     * required for leaf nodes.
+     * Replaces the contents of the tree with the given key-value pairs, building it 
+     * bottom-up instead of inserting one pair at a time. Leaves are packed left to right
+     * and linked together, then each level of internal nodes is built over the level 
+     * below it until a single root is left, so no node ever needs to split.
      * 
-     * @author sapan
+     * Keys must already be sorted in ascending order. Duplicate keys are kept in the 
+     * order they're given, just as if they had been inserted in that order.
+     * 
+     * @param keys - sorted keys, one for each value
+     * @param values - values, parallel to keys
+     * @param fillFactor - fraction of each node to fill, between 0.5 and 1
+     * @throws IllegalArgumentException if keys and values don't match up, keys are null
+     * or not sorted, or fillFactor is out of range
      */
-    private class LeafNode extends Node {
-        
-        // key based tree that maps to list of all records that match that key
-    	TreeMap<K, List<V>> valueMap;
-        
-        // Reference to the next leaf node
-        LeafNode next;
-        
-        // Reference to the previous leaf node
-        LeafNode previous;
-        
-        /**
-         * Package constructor
-         */
-        LeafNode() {
-            super();
-            this.valueMap = new TreeMap<K, List<V>>();
-            this.type = NodeType.Leaf;
-        }
-        
-        /**
-         * Gets the first leaf key of the sub-tree with this node as its root
-         * 
-         * @return key
-         */
-        K getFirstLeafKey() {
-            return this.valueMap.firstKey();
-        }
-        
-        /**
-         * The keys of this node as a collection
-         * @return collection of K
-         */
-        Collection<K> getKeyColl() {
-        	return this.valueMap.keySet();
-        }
-        
-        /**
-         * tell parent whether you need to split
-         * @return true if should split, false otherwise
-         */
-        boolean shouldSplit()
-        {
-        	if (this.valueMap.keySet().size() > branchingFactor)
-        	{
-        		return true;
-        	}
-        	else
-        	{
-        		return false;
-        	}
-        }
-        
-        /**
-         * Inserts key and value in this node
-         *  
-         * @param key
-         * @param value
-         */
-        void insert(K key, V value) {
-    		
-        	if (!this.valueMap.containsKey(key))
-        	{
-        		List<V> newList = new LinkedList<V>();
-        		newList.add(value);
-        		this.valueMap.put(key, newList);
-        	}
-        	else
-        	{
-        		this.valueMap.get(key).add(value);
-        	}
-        }
-        
-        /**
-         * Splits node and returns the new sibling created from the split. Takes care
-         * of setting the previous and next fields appropriately for both this node
-         * and the new sibling
-         * 
-         * @return new sibling Node
-         */
-        Node split() {
-        	
-        	LeafNode newSibling = new LeafNode();
-        	int taken = 0;
-            while (taken < siblingSize)
-            {
-            	K nxtKey = this.valueMap.firstKey();
-            	List<V> nxtValList = this.valueMap.remove(nxtKey);
-            	newSibling.valueMap.put(nxtKey, nxtValList);
-            	taken++;
-            }
-            newSibling.next = this;
-            LeafNode previous = this.previous;
-            newSibling.previous = previous;
-            if (previous != null)
-            {
-            	previous.next = newSibling;
-            }
-            this.previous = newSibling;
-            
-            return newSibling;
-        }
-        
-        /**
-         * Gets the values that satisfy the given range 
-         * search arguments.
-         * 
-         * @param key to be searched
-         * @param comparator is a string
-         * @return list of values that are the result of the 
-         * range search; if nothing found, return empty list
-         * @see BPTree#rangeSearch(java.lang.Object, java.lang.String)
-         */
-        List<V> rangeSearch(K key, String comparator) {
-        	
-        	List<V> rtnList = new LinkedList<V>(); // use linked list because adding should be fast
-        	// if less than, then start at the beginning of our list
-        	if (comparator.contentEquals("<="))
-        	{
-        		
-        		// if we have an internal node parent, then this check has already been performed for us, but not if the root is a leaf
-        		if (key.compareTo(this.getFirstLeafKey()) >= 0) // make sure we have something to return
-        		{
-        			boolean contToNxt = true;
-            		for (K nxtKey: this.valueMap.keySet())
-            		{
-            			if (nxtKey.compareTo(key) <= 0)
-            			{
-            				rtnList.addAll(this.valueMap.get(nxtKey));
-            			}
-            			else
-            			{
-            				contToNxt = false;
-            				break;
-            			}
-            		}
-            		if (contToNxt && (this.next != null))
-            		{
-            			rtnList.addAll(this.next.rangeSearch(key, comparator));
-            		}
-        		}
-        	}
-        	// if ==, go find it!
-        	else if (comparator.contentEquals("=="))
-        	{
-        		List<V> list = this.valueMap.get(key);
-        		if (list != null)
-        		{
-        			rtnList.addAll(list);
-        		}
-        	}
-        	// greater than or equal to
-        	else
-        	{
-        		
-        		K nxtKey = this.valueMap.ceilingKey(key);
-        		
-        		while (nxtKey != null)
-        		{
-        			rtnList.addAll(this.valueMap.get(nxtKey));
-        			nxtKey = this.valueMap.higherKey(nxtKey);
-        		}
-        		
-        		if (this.next != null)
-        		{
-        			rtnList.addAll(this.next.rangeSearch(key, comparator));
-        		}
-        	}
-        	return rtnList;
-        }
-        
-    } // End of class LeafNode
+    public void bulkLoad(List<K> keys, List<V> values, double fillFactor) {
+    	checkWritable();
+    	if (keys == null || values == null || keys.size() != values.size())
+    	{
+    		throw new IllegalArgumentException("Keys and values must be the same size");
+    	}
+    	TreeNode.checkFillFactor(fillFactor);
+    	
+    	// make sure keys are sorted and gather up the duplicates, so leaves can be evenly sized
+    	K[] distinctKeys = newKeys(keys.size());
+    	int[] runs = new int[keys.size()];
+    	int distinct = 0;
+    	K last = null;
+    	for (K nxt: keys)
+    	{
+    		if (nxt == null)
+    		{
+    			throw new IllegalArgumentException("Keys can't be null");
+    		}
+    		if (last == null || last.compareTo(nxt) < 0)
+    		{
+    			distinctKeys[distinct++] = nxt;
+    		}
+    		else if (last.compareTo(nxt) > 0)
+    		{
+    			throw new IllegalArgumentException("Keys must be sorted: " + nxt + " follows " + last);
+    		}
+    		runs[distinct - 1]++;
+    		last = nxt;
+    	}
+    	bulkLoad(distinctKeys, Arrays.copyOf(runs, distinct), values.iterator(), fillFactor);
+    }
+    
+    /**
+     * print tag for testing the LeafNode links for in-order printing
+     * @return print all values in the tree in key order
+     */
+    private String inOrderPrint()
+    {
+    	List<V> rtnList = this.rangeSearch(null, true, null, true);
+    	
+    	StringBuilder sb = new StringBuilder();
+    	
+    	for (V val: rtnList)
+    	{
+    		sb.append(val.toString());
+    		sb.append(", ");
+    	}
+    	
+    	return sb.toString();
+    }
+    
+    /**
+     * Range of keys to search, worked out once from the search arguments 
+     * so that walking the leaves is just a couple of compares per key. 
+     * Every comparison is a range with open, inclusive or exclusive ends, 
+     * plus != which also has one key in the middle to skip over.
+     */
+    private class Range extends KeyRange {
+    	
+    	// lower bound - null for no lower bound
+    	K lo;
+    	boolean loInclusive;
+    	
+    	// upper bound - null for no upper bound
+    	K hi;
+    	boolean hiInclusive;
+    	
+    	// key to skip over - null unless this is a != search
+    	K excluded;
+    	
+    	/**
+    	 * Package constructor for a range between two bounds
+    	 * 
+    	 * @param lo - lower bound, or null for no lower bound
+    	 * @param loInclusive - true if keys equal to lo are in range
+    	 * @param hi - upper bound, or null for no upper bound
+    	 * @param hiInclusive - true if keys equal to hi are in range
+    	 */
+    	Range(K lo, boolean loInclusive, K hi, boolean hiInclusive)
+    	{
+    		this.lo = lo;
+    		this.loInclusive = loInclusive;
+    		this.hi = hi;
+    		this.hiInclusive = hiInclusive;
+    	}
+    	
+    	/**
+    	 * Package constructor for the range matching a comparison with a key
+    	 * 
+    	 * @param key to be searched
+    	 * @param comparison to compare keys against key with
+    	 */
+    	Range(K key, Comparison comparison)
+    	{
+    		switch (comparison)
+    		{
+    			case LessThan:
+    				this.hi = key;
+    				break;
+    			case LessThanOrEqual:
+    				this.hi = key;
+    				this.hiInclusive = true;
+    				break;
+    			case EqualTo:
+    				this.lo = key;
+    				this.loInclusive = true;
+    				this.hi = key;
+    				this.hiInclusive = true;
+    				break;
+    			case NotEqualTo:
+    				this.excluded = key;
+    				break;
+    			case GreaterThanOrEqual:
+    				this.lo = key;
+    				this.loInclusive = true;
+    				break;
+    			case GreaterThan:
+    				this.lo = key;
+    				break;
+    		}
+    	}
+    	
+    	LeafNode startLeaf()
+    	{
+    		return findLeaf(this.lo);
+    	}
+    	
+    	LeafNode endLeaf()
+    	{
+    		return findLastLeaf(this.hi);
+    	}
+    	
+    	int startIndex(LeafNode leaf)
+    	{
+    		if (this.lo == null)
+    		{
+    			return 0;
+    		}
+    		return this.loInclusive ? lowerBound(leaf, this.lo) : upperBound(leaf, this.lo);
+    	}
+    	
+    	int endIndex(LeafNode leaf)
+    	{
+    		if (this.hi == null)
+    		{
+    			return leaf.numKeys;
+    		}
+    		return this.hiInclusive ? upperBound(leaf, this.hi) : lowerBound(leaf, this.hi);
+    	}
+    	
+    	boolean isBelowHi(LeafNode leaf, int idx)
+    	{
+    		if (this.hi == null)
+    		{
+    			return true;
+    		}
+    		int cmp = leaf.keys[idx].compareTo(this.hi);
+    		return cmp < 0 || (this.hiInclusive && cmp == 0);
+    	}
+    	
+    	boolean isAboveLo(LeafNode leaf, int idx)
+    	{
+    		if (this.lo == null)
+    		{
+    			return true;
+    		}
+    		int cmp = leaf.keys[idx].compareTo(this.lo);
+    		return cmp > 0 || (this.loInclusive && cmp == 0);
+    	}
+    	
+    	boolean isExcluded(LeafNode leaf, int idx)
+    	{
+    		return this.excluded != null && leaf.keys[idx].compareTo(this.excluded) == 0;
+    	}
+    	
+    	int firstChild(InternalNode node)
+    	{
+    		return this.lo == null ? 0 : childIndex(node, this.lo);
+    	}
+    	
+    	int lastChild(InternalNode node)
+    	{
+    		return this.hi == null ? node.numKeys : childIndex(node, this.hi);
+    	}
+    	
+    	KeyRange belowExcluded()
+    	{
+    		return this.excluded == null ? null : new Range(null, true, this.excluded, false);
+    	}
+    	
+    	KeyRange aboveExcluded()
+    	{
+    		return this.excluded == null ? null : new Range(this.excluded, false, null, true);
+    	}
+    	
+    } // End of class Range
     
     /**
      * Contains a basic test scenario for a BPTree instance.
@@ -1,5 +1,14 @@
 package application;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import application.Constants.Comparison;
 
 /**
  * A generic B+ Tree interface (DO NOT edit this file)
@@ -19,12 +28,42 @@ public interface BPTreeADT<K, V> {
     public void insert(K key, V value);
     
     
+    /**
+     * Removes one value stored under the given key, and the
+     * key itself if no other values are stored under it.
+     * Values are matched with equals.
+     * 
+     * If key is null or the value isn't stored under it,
+     * the tree is unchanged.
+     * 
+     * @param key the value is stored under
+     * @param value to remove
+     * @return true if the value was removed, false otherwise
+     */
+    public boolean remove(K key, V value);
+    
+    
+    /**
+     * Moves one value from oldKey to newKey, as if it were
+     * removed and inserted again.
+     * 
+     * If the value isn't stored under oldKey, or newKey is
+     * null, the tree is unchanged.
+     * 
+     * @param oldKey the value is stored under now
+     * @param newKey the value should be stored under
+     * @param value to move
+     * @return true if the value was moved, false otherwise
+     */
+    public boolean update(K oldKey, K newKey, V value);
+    
+    
     /**
      * Gets the values that satisfy the given range 
      * search arguments.
      * 
      * Value of comparator can be one of these: 
-     * "<=", "==", ">="
+     * "<=", "==", ">=", "<", ">", "!="
      * 
      * Example:
      *     If given key = 2.5 and comparator = ">=":
@@ -39,8 +78,277 @@ public interface BPTreeADT<K, V> {
      * @param comparator is a string
      * @return list of values that are the result of the 
      * range search; if nothing found, return empty list
+     * @see BPTreeADT#rangeSearchBy(Object, Comparison)
+     */
+    public default List<V> rangeSearch(K key, String comparator) {
+        return rangeSearchBy(key, Comparison.fromSymbol(comparator));
+    }
+    
+    
+    /**
+     * Gets the values that satisfy the given range 
+     * search arguments.
+     * 
+     * If key or comparison is null, return empty list.
+     * 
+     * This and the other methods taking a Comparison are named apart from 
+     * the ones taking a comparator string (rangeSearchBy, rangeIteratorBy, 
+     * forEachBy, and so on), so a call with a null comparator still 
+     * compiles and picks the string version.
+     * 
+     * @param key to be searched
+     * @param comparison to compare keys against key with
+     * @return list of values that are the result of the 
+     * range search; if nothing found, return empty list
+     */
+    public List<V> rangeSearchBy(K key, Comparison comparison);
+    
+    
+    /**
+     * Gets the values with keys in the range from lo to hi,
+     * in key order. Lets a band like "keys >= 10 and keys <= 25"
+     * be found with a single search instead of two.
+     * 
+     * Either bound can be inclusive or exclusive. If lo or hi
+     * is null, that side of the range has no bound. If lo is
+     * greater than hi, return empty list.
+     * 
+     * @param lo lower bound of the range, or null
+     * @param loInclusive true if keys equal to lo are included
+     * @param hi upper bound of the range, or null
+     * @param hiInclusive true if keys equal to hi are included
+     * @return list of values that are the result of the 
+     * range search; if nothing found, return empty list
+     */
+    public List<V> rangeSearch(K lo, boolean loInclusive, K hi, boolean hiInclusive);
+    
+    
+    /**
+     * Gets an iterator over the values that satisfy the given
+     * range search arguments, in key order. Values are found
+     * as the iterator advances rather than all up front, so
+     * a caller that stops early only pays for what it used.
+     * 
+     * Arguments are the same as for rangeSearch, and the 
+     * iterator is empty in the same cases that rangeSearch
+     * returns an empty list. The tree should not be changed
+     * while the iterator is in use.
+     * 
+     * @param key to be searched
+     * @param comparator is a string
+     * @return iterator over the values that are the result of 
+     * the range search
+     */
+    public default Iterator<V> rangeIterator(K key, String comparator) {
+        return rangeIteratorBy(key, Comparison.fromSymbol(comparator));
+    }
+    
+    
+    /**
+     * Gets an iterator over the values that satisfy the given
+     * range search arguments, in key order.
+     * 
+     * @param key to be searched
+     * @param comparison to compare keys against key with
+     * @return iterator over the values that are the result of 
+     * the range search
+     * @see BPTreeADT#rangeIterator(Object, String)
+     */
+    public Iterator<V> rangeIteratorBy(K key, Comparison comparison);
+    
+    
+    /**
+     * Gets an iterator over the values that satisfy the given
+     * range search arguments, from the greatest key down - the
+     * exact reverse of rangeIterator. Lets a caller after the
+     * values with the greatest keys in range, like "the items
+     * with the most protein", stop once it has enough.
+     * 
+     * @param key to be searched
+     * @param comparator is a string
+     * @return iterator over the values that are the result of 
+     * the range search, in reverse order
+     */
+    public default Iterator<V> descendingIterator(K key, String comparator) {
+        return descendingIteratorBy(key, Comparison.fromSymbol(comparator));
+    }
+    
+    
+    /**
+     * Gets an iterator over the values that satisfy the given
+     * range search arguments, from the greatest key down.
+     * 
+     * By default this finds the whole range and walks it 
+     * backwards. Trees whose leaves are linked both ways should
+     * instead start at the top of the range and walk the links
+     * down, so values are found as the iterator advances.
+     * 
+     * @param key to be searched
+     * @param comparison to compare keys against key with
+     * @return iterator over the values that are the result of 
+     * the range search, in reverse order
+     * @see BPTreeADT#descendingIterator(Object, String)
+     */
+    public default Iterator<V> descendingIteratorBy(K key, Comparison comparison) {
+        List<V> values = rangeSearchBy(key, comparison);
+        Collections.reverse(values);
+        return values.iterator();
+    }
+    
+    
+    /**
+     * Gets an iterator over the values with keys in the range 
+     * from lo to hi, from the greatest key down. Arguments are
+     * the same as for the matching rangeSearch.
+     * 
+     * @param lo lower bound of the range, or null
+     * @param loInclusive true if keys equal to lo are included
+     * @param hi upper bound of the range, or null
+     * @param hiInclusive true if keys equal to hi are included
+     * @return iterator over the values that are the result of 
+     * the range search, in reverse order
+     * @see BPTreeADT#descendingIteratorBy(Object, Comparison)
+     */
+    public default Iterator<V> descendingIterator(K lo, boolean loInclusive, K hi, boolean hiInclusive) {
+        List<V> values = rangeSearch(lo, loInclusive, hi, hiInclusive);
+        Collections.reverse(values);
+        return values.iterator();
+    }
+    
+    
+    /**
+     * Performs the given action for each value that satisfies
+     * the given range search arguments, in key order, without
+     * building a list of the values first.
+     * 
+     * @param key to be searched
+     * @param comparator is a string
+     * @param action to perform on each value
+     */
+    public default void forEach(K key, String comparator, Consumer<? super V> action) {
+        forEachBy(key, Comparison.fromSymbol(comparator), action);
+    }
+    
+    
+    /**
+     * Performs the given action for each value that satisfies
+     * the given range search arguments, in key order, without
+     * building a list of the values first.
+     * 
+     * @param key to be searched
+     * @param comparison to compare keys against key with
+     * @param action to perform on each value
+     */
+    public void forEachBy(K key, Comparison comparison, Consumer<? super V> action);
+    
+    
+    /**
+     * Gets a sequential stream over the values that satisfy the
+     * given range search arguments, in key order. The stream is
+     * backed by rangeIterator, so short-circuiting operations
+     * like limit or anyMatch stop walking the tree early.
+     * 
+     * @param key to be searched
+     * @param comparator is a string
+     * @return stream of values that are the result of the 
+     * range search
+     */
+    public default Stream<V> rangeStream(K key, String comparator) {
+        return rangeStreamBy(key, Comparison.fromSymbol(comparator));
+    }
+    
+    
+    /**
+     * Gets a sequential stream over the values that satisfy the
+     * given range search arguments, in key order.
+     * 
+     * @param key to be searched
+     * @param comparison to compare keys against key with
+     * @return stream of values that are the result of the 
+     * range search
+     * @see BPTreeADT#rangeStream(Object, String)
+     */
+    public default Stream<V> rangeStreamBy(K key, Comparison comparison) {
+        Spliterator<V> spliterator = Spliterators.spliteratorUnknownSize(
+                rangeIteratorBy(key, comparison), Spliterator.ORDERED);
+        return StreamSupport.stream(spliterator, false);
+    }
+    
+    
+    /**
+     * Gets the number of values in the tree.
+     * 
+     * @return number of values
+     */
+    public int size();
+    
+    
+    /**
+     * Gets the number of values that satisfy the given range 
+     * search arguments, without finding the values themselves.
+     * Same as rangeSearch(key, comparator).size().
+     * 
+     * @param key to be searched
+     * @param comparator is a string
+     * @return number of values that are the result of the 
+     * range search; 0 in the cases rangeSearch returns empty list
+     */
+    public default int count(K key, String comparator) {
+        return countBy(key, Comparison.fromSymbol(comparator));
+    }
+    
+    
+    /**
+     * Gets the number of values that satisfy the given range 
+     * search arguments, without finding the values themselves.
+     * 
+     * @param key to be searched
+     * @param comparison to compare keys against key with
+     * @return number of values that are the result of the 
+     * range search
+     * @see BPTreeADT#count(Object, String)
+     */
+    public int countBy(K key, Comparison comparison);
+    
+    
+    /**
+     * Gets the number of values with keys in the range from lo 
+     * to hi. Arguments are the same as for the matching 
+     * rangeSearch.
+     * 
+     * @param lo lower bound of the range, or null
+     * @param loInclusive true if keys equal to lo are included
+     * @param hi upper bound of the range, or null
+     * @param hiInclusive true if keys equal to hi are included
+     * @return number of values that are the result of the 
+     * range search
+     */
+    public int count(K lo, boolean loInclusive, K hi, boolean hiInclusive);
+    
+    
+    /**
+     * Gets the rank of a key: the number of values with keys
+     * less than it. That is also the position in key order
+     * of the first value stored under the key, if any are.
+     * 
+     * @param key to be ranked
+     * @return number of values with keys less than key
+     */
+    public int rank(K key);
+    
+    
+    /**
+     * Gets the value at the given position in key order, so
+     * select(0) is a value with the least key and 
+     * select(size() - 1) is one with the greatest. Values
+     * with the same key are in the order they were inserted.
+     * 
+     * @param rank position of the value, starting from 0
+     * @return value at that position
+     * @throws IndexOutOfBoundsException if rank is negative
+     * or not less than size()
      */
-    public List<V> rangeSearch(K key, String comparator);
+    public V select(int rank);
     
     
     /**
@@ -2,9 +2,25 @@ package application;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import application.Constants.Comparison;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -503,4 +519,1978 @@ public class BPTreeTest {
 		
 		assertEquals(expected, actual);
 	}
+	
+	@Test
+	public void test22InsertRandomOrderKeepsKeysSorted() {
+		Random rng = new Random(400);
+		for (int branchingFactor = 3; branchingFactor <= 11; branchingFactor++)
+		{
+			BPTreeADT<Double, Double> testTree = new BPTree<Double, Double>(branchingFactor);
+			List<Double> expected = new ArrayList<Double>();
+			for (int i = 0; i < 500; i++)
+			{
+				double nxt = rng.nextInt(200);
+				testTree.insert(nxt, nxt);
+				expected.add(nxt);
+			}
+			Collections.sort(expected);
+			
+			List<Double> actual = testTree.rangeSearch(-1d, ">=");
+			assertEquals(expected, actual);
+			
+			// duplicates of a key are all kept together in the same leaf
+			int count = 0;
+			for (double nxt: expected)
+			{
+				if (nxt == 100)
+				{
+					count++;
+				}
+			}
+			assertEquals(count, testTree.rangeSearch(100d, "==").size());
+		}
+	}
+	
+	@Test
+	public void test23DoubleTreeMatchesGenericTree() {
+		Random rng = new Random(400);
+		BPTree<Double, Double> genericTree = new BPTree<Double, Double>(5);
+		DoubleBPTree<Double> doubleTree = new DoubleBPTree<Double>(5);
+		for (int i = 0; i < 500; i++)
+		{
+			double nxt = rng.nextInt(200) / 2.0;
+			genericTree.insert(nxt, nxt);
+			doubleTree.insert(nxt, (Double) nxt);
+		}
+		for (double key = -1; key <= 101; key += 0.5)
+		{
+			for (String comparator: Constants.Comparators)
+			{
+				assertEquals(genericTree.rangeSearch(key, comparator), doubleTree.rangeSearch(key, comparator));
+			}
+		}
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void test24DoubleTreeRejectsNaN() {
+		DoubleBPTree<FoodItem> testTree = new DoubleBPTree<FoodItem>(3);
+		testTree.insert(Double.NaN, foodItems.get(0));
+	}
+	
+	@Test
+	public void test25BulkLoadMatchesInserts() {
+		Random rng = new Random(400);
+		List<Double> keys = new ArrayList<Double>();
+		for (int i = 0; i < 1000; i++)
+		{
+			keys.add((double) rng.nextInt(300));
+		}
+		Collections.sort(keys);
+		double[] primitiveKeys = new double[keys.size()];
+		for (int i = 0; i < primitiveKeys.length; i++)
+		{
+			primitiveKeys[i] = keys.get(i);
+		}
+		
+		for (int branchingFactor = 3; branchingFactor <= 11; branchingFactor++)
+		{
+			for (double fillFactor: new double[] { 0.5, 0.75, 1 })
+			{
+				BPTree<Double, Double> inserted = new BPTree<Double, Double>(branchingFactor);
+				BPTree<Double, Double> loaded = new BPTree<Double, Double>(branchingFactor);
+				DoubleBPTree<Double> loadedDouble = new DoubleBPTree<Double>(branchingFactor);
+				for (double nxt: keys)
+				{
+					inserted.insert(nxt, nxt);
+				}
+				loaded.bulkLoad(keys, keys, fillFactor);
+				loadedDouble.bulkLoad(primitiveKeys, keys, fillFactor);
+				
+				// still has to work with inserts after a bulk load
+				loaded.insert(150.5, 150.5);
+				loadedDouble.insert(150.5, (Double) 150.5);
+				inserted.insert(150.5, 150.5);
+				
+				for (double key = -1; key <= 301; key += 7.5)
+				{
+					for (String comparator: Constants.Comparators)
+					{
+						assertEquals(inserted.rangeSearch(key, comparator), loaded.rangeSearch(key, comparator));
+						assertEquals(inserted.rangeSearch(key, comparator), loadedDouble.rangeSearch(key, comparator));
+					}
+				}
+			}
+		}
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void test26BulkLoadRejectsUnsortedKeys() {
+		BPTree<Double, Double> testTree = new BPTree<Double, Double>(3);
+		List<Double> keys = new ArrayList<Double>();
+		keys.add(2d);
+		keys.add(1d);
+		testTree.bulkLoad(keys, keys, 1);
+	}
+	
+	@Test
+	public void test27WideRangeSearchOverManyLeaves() {
+		// small branching factor means lots of leaves to walk, which used to mean lots of recursion
+		BPTree<Double, Double> testTree = new BPTree<Double, Double>(3);
+		DoubleBPTree<Double> doubleTree = new DoubleBPTree<Double>(3);
+		int numKeys = 200000;
+		for (int i = 0; i < numKeys; i++)
+		{
+			testTree.insert((double) i, (double) i);
+			doubleTree.insert((double) i, (Double) (double) i);
+		}
+		assertEquals(numKeys, testTree.rangeSearch(0d, ">=").size());
+		assertEquals(numKeys, testTree.rangeSearch((double) numKeys, "<=").size());
+		assertEquals(numKeys, doubleTree.rangeSearch(0d, ">=").size());
+		assertEquals(numKeys, doubleTree.rangeSearch((double) numKeys, "<=").size());
+	}
+	
+	@Test
+	public void test28RangeIteratorMatchesRangeSearch() {
+		Random rng = new Random(400);
+		BPTree<Double, Double> testTree = new BPTree<Double, Double>(4);
+		DoubleBPTree<Double> doubleTree = new DoubleBPTree<Double>(4);
+		for (int i = 0; i < 500; i++)
+		{
+			double nxt = rng.nextInt(100);
+			testTree.insert(nxt, nxt);
+			doubleTree.insert(nxt, (Double) nxt);
+		}
+		for (double key = -1; key <= 101; key += 0.5)
+		{
+			for (String comparator: Constants.Comparators)
+			{
+				List<Double> expected = testTree.rangeSearch(key, comparator);
+				
+				List<Double> iterated = new ArrayList<Double>();
+				testTree.rangeIterator(key, comparator).forEachRemaining(iterated::add);
+				assertEquals(expected, iterated);
+				
+				List<Double> consumed = new ArrayList<Double>();
+				testTree.forEach(key, comparator, consumed::add);
+				assertEquals(expected, consumed);
+				
+				List<Double> doubleIterated = new ArrayList<Double>();
+				doubleTree.rangeIterator(key, comparator).forEachRemaining(doubleIterated::add);
+				assertEquals(expected, doubleIterated);
+				
+				List<Double> doubleConsumed = new ArrayList<Double>();
+				doubleTree.forEach(key, comparator, doubleConsumed::add);
+				assertEquals(expected, doubleConsumed);
+				
+				assertEquals(expected, testTree.rangeStream(key, comparator).collect(Collectors.toList()));
+			}
+		}
+		assertFalse(testTree.rangeIterator(null, ">=").hasNext());
+		assertFalse(testTree.rangeIterator(10d, "<>").hasNext());
+	}
+	
+	@Test
+	public void test29RangeStreamStopsEarly() {
+		BPTree<Double, Double> testTree = new BPTree<Double, Double>(3);
+		for (int i = 0; i < 1000; i++)
+		{
+			testTree.insert((double) i, (double) i);
+		}
+		List<Double> firstFew = testTree.rangeStream(500d, ">=").limit(3).collect(Collectors.toList());
+		assertEquals(Arrays.asList(500d, 501d, 502d), firstFew);
+	}
+	
+	@Test
+	public void test30ClosedRangeSearchMatchesFilteredInserts() {
+		Random rng = new Random(400);
+		BPTree<Double, Double> testTree = new BPTree<Double, Double>(4);
+		DoubleBPTree<Double> doubleTree = new DoubleBPTree<Double>(4);
+		List<Double> sorted = new ArrayList<Double>();
+		for (int i = 0; i < 500; i++)
+		{
+			double nxt = rng.nextInt(100);
+			testTree.insert(nxt, nxt);
+			doubleTree.insert(nxt, (Double) nxt);
+			sorted.add(nxt);
+		}
+		Collections.sort(sorted);
+		
+		for (int i = 0; i < 200; i++)
+		{
+			double lo = rng.nextInt(110) - 5;
+			double hi = rng.nextInt(110) - 5;
+			boolean loInclusive = rng.nextBoolean();
+			boolean hiInclusive = rng.nextBoolean();
+			List<Double> expected = new ArrayList<Double>();
+			for (double nxt: sorted)
+			{
+				if ((nxt > lo || (loInclusive && nxt == lo)) && (nxt < hi || (hiInclusive && nxt == hi)))
+				{
+					expected.add(nxt);
+				}
+			}
+			assertEquals(expected, testTree.rangeSearch(lo, loInclusive, hi, hiInclusive));
+			assertEquals(expected, doubleTree.rangeSearch(lo, loInclusive, hi, hiInclusive));
+		}
+		
+		// open bounds
+		assertEquals(sorted, testTree.rangeSearch(null, true, null, true));
+		assertEquals(sorted, doubleTree.rangeSearch((Double) null, false, (Double) null, false));
+	}
+	
+	@Test
+	public void test31FilterByNutrientsBand() {
+		List<FoodItem> items = largeDataLargeBranch.getAllFoodItems();
+		int expected = 0;
+		for (FoodItem nxt: items)
+		{
+			double protein = nxt.getNutrientValue("protein");
+			double calories = nxt.getNutrientValue("calories");
+			if (protein >= 5 && protein <= 10 && calories <= 200)
+			{
+				expected++;
+			}
+		}
+		List<String> rules = new LinkedList<String>();
+		rules.add("protein >= 5");
+		rules.add("calories <= 200");
+		rules.add("Protein <= 10");
+		List<FoodItem> actual = largeDataLargeBranch.filterByNutrients(rules);
+		
+		assertEquals(expected, actual.size());
+	}
+	
+	@Test
+	public void test32StrictAndNotEqualComparators() {
+		Random rng = new Random(400);
+		BPTree<Double, Double> testTree = new BPTree<Double, Double>(4);
+		DoubleBPTree<Double> doubleTree = new DoubleBPTree<Double>(4);
+		List<Double> sorted = new ArrayList<Double>();
+		for (int i = 0; i < 500; i++)
+		{
+			double nxt = rng.nextInt(100);
+			testTree.insert(nxt, nxt);
+			doubleTree.insert(nxt, (Double) nxt);
+			sorted.add(nxt);
+		}
+		Collections.sort(sorted);
+		
+		for (double key = -1; key <= 101; key += 0.5)
+		{
+			for (Constants.Comparison comparison: Constants.Comparison.values())
+			{
+				List<Double> expected = new ArrayList<Double>();
+				for (double nxt: sorted)
+				{
+					boolean keep = false;
+					switch (comparison)
+					{
+						case LessThan:           keep = nxt < key;  break;
+						case LessThanOrEqual:    keep = nxt <= key; break;
+						case EqualTo:            keep = nxt == key; break;
+						case NotEqualTo:         keep = nxt != key; break;
+						case GreaterThanOrEqual: keep = nxt >= key; break;
+						case GreaterThan:        keep = nxt > key;  break;
+					}
+					if (keep)
+					{
+						expected.add(nxt);
+					}
+				}
+				assertEquals(expected, testTree.rangeSearch(key, comparison.getSymbol()));
+				assertEquals(expected, doubleTree.rangeSearchBy(key, comparison));
+				
+				List<Double> iterated = new ArrayList<Double>();
+				doubleTree.rangeIteratorBy(key, comparison).forEachRemaining(iterated::add);
+				assertEquals(expected, iterated);
+			}
+		}
+	}
+	
+	@Test
+	public void test33FilterByNutrientsStrictRules() {
+		List<FoodItem> items = largeDataLargeBranch.getAllFoodItems();
+		int expected = 0;
+		for (FoodItem nxt: items)
+		{
+			double fat = nxt.getNutrientValue("fat");
+			double fiber = nxt.getNutrientValue("fiber");
+			if (fat > 0 && fat < 10 && fiber != 0)
+			{
+				expected++;
+			}
+		}
+		List<String> rules = new LinkedList<String>();
+		rules.add("fat > 0");
+		rules.add("fat < 10");
+		rules.add("fiber != 0");
+		List<FoodItem> actual = largeDataLargeBranch.filterByNutrients(rules);
+		
+		assertEquals(expected, actual.size());
+	}
+	
+	@Test
+	public void test34RemoveKeepsTreeConsistent() {
+		for (int branchingFactor = 3; branchingFactor <= 8; branchingFactor++)
+		{
+			for (boolean bulkLoaded: new boolean[] { false, true })
+			{
+				Random rng = new Random(400 + branchingFactor);
+				BPTree<Integer, Integer> testTree = new BPTree<Integer, Integer>(branchingFactor);
+				DoubleBPTree<Integer> doubleTree = new DoubleBPTree<Integer>(branchingFactor);
+				TreeMap<Integer, List<Integer>> expected = new TreeMap<Integer, List<Integer>>();
+				List<int[]> pairs = new ArrayList<int[]>();
+				for (int i = 0; i < 600; i++)
+				{
+					int key = rng.nextInt(150);
+					pairs.add(new int[] { key, i });
+					expected.computeIfAbsent(key, k -> new ArrayList<Integer>()).add(i);
+				}
+				
+				if (bulkLoaded)
+				{
+					List<Integer> keys = new ArrayList<Integer>();
+					List<Integer> values = new ArrayList<Integer>();
+					for (Integer key: expected.keySet())
+					{
+						for (Integer value: expected.get(key))
+						{
+							keys.add(key);
+							values.add(value);
+						}
+					}
+					double[] primitiveKeys = new double[keys.size()];
+					for (int i = 0; i < primitiveKeys.length; i++)
+					{
+						primitiveKeys[i] = keys.get(i);
+					}
+					testTree.bulkLoad(keys, values, 1);
+					doubleTree.bulkLoad(primitiveKeys, values, 1);
+				}
+				else
+				{
+					for (int[] nxt: pairs)
+					{
+						testTree.insert(nxt[0], nxt[1]);
+						doubleTree.insertDouble(nxt[0], nxt[1]);
+					}
+				}
+				
+				// not stored, or stored under a different key
+				assertFalse(testTree.remove(-1, 0));
+				assertFalse(doubleTree.removeDouble(pairs.get(0)[0] + 0.5, pairs.get(0)[1]));
+				
+				Collections.shuffle(pairs, rng);
+				for (int i = 0; i < pairs.size(); i++)
+				{
+					int[] nxt = pairs.get(i);
+					assertTrue(testTree.remove(nxt[0], nxt[1]));
+					assertTrue(doubleTree.removeDouble(nxt[0], nxt[1]));
+					assertFalse(testTree.remove(nxt[0], nxt[1]));
+					List<Integer> posting = expected.get(nxt[0]);
+					posting.remove((Integer) nxt[1]);
+					if (posting.isEmpty())
+					{
+						expected.remove(nxt[0]);
+					}
+					
+					if (i % 25 == 0 || i == pairs.size() - 1)
+					{
+						List<Integer> all = new ArrayList<Integer>();
+						expected.values().forEach(all::addAll);
+						assertEquals(all, testTree.rangeSearch(Integer.MIN_VALUE, ">="));
+						assertEquals(all, doubleTree.rangeSearch(Double.NEGATIVE_INFINITY, ">="));
+						
+						int probe = rng.nextInt(150);
+						List<Integer> below = new ArrayList<Integer>();
+						expected.headMap(probe, true).values().forEach(below::addAll);
+						assertEquals(below, testTree.rangeSearch(probe, "<="));
+						assertEquals(below, doubleTree.rangeSearch((double) probe, "<="));
+					}
+				}
+				
+				// the emptied trees are still usable
+				testTree.insert(5, 5);
+				doubleTree.insertDouble(5, 5);
+				assertEquals(Arrays.asList(5), testTree.rangeSearch(5, "=="));
+				assertEquals(Arrays.asList(5), doubleTree.rangeSearch(5d, "=="));
+			}
+		}
+	}
+	
+	@Test
+	public void test35RemoveAndUpdateFoodItems() {
+		FoodData testData = new FoodData();
+		testData.loadFoodItems(largeItemListPath);
+		List<FoodItem> items = new ArrayList<FoodItem>(testData.getAllFoodItems());
+		List<String> rules = new LinkedList<String>();
+		rules.add("fiber >= 0");
+		int total = testData.filterByNutrients(rules).size();
+		
+		FoodItem removed = items.get(0);
+		assertTrue(testData.removeFoodItem(removed));
+		assertFalse(testData.removeFoodItem(removed));
+		assertFalse(testData.getAllFoodItems().contains(removed));
+		assertEquals(total - 1, testData.filterByNutrients(rules).size());
+		assertFalse(testData.updateNutrient(removed, "fiber", 1));
+		
+		FoodItem updated = items.get(1);
+		assertTrue(testData.updateNutrient(updated, "Fiber", 12345));
+		assertEquals(12345, updated.getNutrientValue("fiber"), 0);
+		rules.clear();
+		rules.add("fiber == 12345");
+		assertEquals(Arrays.asList(updated), testData.filterByNutrients(rules));
+		assertFalse(testData.updateNutrient(updated, "sugar", 1));
+		assertFalse(testData.updateNutrient(updated, "fiber", Double.NaN));
+	}
+	
+	@Test
+	public void test36CountRankAndSelectMatchRangeSearch() {
+		for (int branchingFactor = 3; branchingFactor <= 6; branchingFactor++)
+		{
+			Random rng = new Random(400 + branchingFactor);
+			BPTree<Integer, Integer> testTree = new BPTree<Integer, Integer>(branchingFactor);
+			DoubleBPTree<Integer> doubleTree = new DoubleBPTree<Integer>(branchingFactor);
+			List<int[]> pairs = new ArrayList<int[]>();
+			for (int i = 0; i < 800; i++)
+			{
+				int key = rng.nextInt(200);
+				pairs.add(new int[] { key, i });
+				testTree.insert(key, i);
+				doubleTree.insertDouble(key, i);
+			}
+			// removes shift the counts around through borrows and merges
+			Collections.shuffle(pairs, rng);
+			for (int[] nxt: pairs.subList(0, 500))
+			{
+				testTree.remove(nxt[0], nxt[1]);
+				doubleTree.removeDouble(nxt[0], nxt[1]);
+			}
+			
+			List<int[]> left = new ArrayList<int[]>(pairs.subList(500, 800));
+			left.sort((a, b) -> Integer.compare(a[0], b[0]));
+			double[] keys = new double[left.size()];
+			List<Integer> values = new ArrayList<Integer>();
+			for (int i = 0; i < keys.length; i++)
+			{
+				keys[i] = left.get(i)[0];
+				values.add(left.get(i)[1]);
+			}
+			DoubleBPTree<Integer> loadedTree = new DoubleBPTree<Integer>(branchingFactor);
+			loadedTree.bulkLoad(keys, values, 0.75);
+			
+			List<Integer> all = testTree.rangeSearch(Integer.MIN_VALUE, ">=");
+			assertEquals(300, all.size());
+			assertEquals(300, loadedTree.size());
+			assertEquals(300, testTree.size());
+			assertEquals(300, doubleTree.size());
+			for (int i = 0; i < all.size(); i++)
+			{
+				assertEquals(all.get(i), testTree.select(i));
+				assertEquals(all.get(i), doubleTree.select(i));
+			}
+			
+			for (int key = -1; key <= 201; key++)
+			{
+				for (Constants.Comparison comparison: Constants.Comparison.values())
+				{
+					int expected = testTree.rangeSearchBy(key, comparison).size();
+					assertEquals(expected, testTree.countBy(key, comparison));
+					assertEquals(expected, doubleTree.countBy((double) key, comparison));
+					assertEquals(expected, loadedTree.countBy((double) key, comparison));
+				}
+				assertEquals(testTree.count(key, "<"), testTree.rank(key));
+				assertEquals(testTree.rank(key), doubleTree.rank((double) key));
+				assertEquals(testTree.rangeSearch(key, true, key + 20, false).size(),
+						doubleTree.count(key, true, key + 20, false));
+			}
+		}
+	}
+	
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void test37SelectPastEndThrows() {
+		DoubleBPTree<Double> doubleTree = new DoubleBPTree<Double>(3);
+		doubleTree.insertDouble(1, 1.0);
+		doubleTree.select(1);
+	}
+	
+	@Test
+	public void test38AggregateMatchesRangeSearch() {
+		// joining values in key order checks both which values are summarized and their order
+		Aggregator<Integer, String> joiner = new Aggregator<Integer, String>()
+		{
+			public String identity() { return ""; }
+			public String of(Integer value) { return value + ","; }
+			public String combine(String left, String right) { return left + right; }
+		};
+		for (int branchingFactor = 3; branchingFactor <= 6; branchingFactor++)
+		{
+			Random rng = new Random(400 + branchingFactor);
+			BPTree<Integer, Integer> testTree = new BPTree<Integer, Integer>(branchingFactor, joiner);
+			DoubleBPTree<Integer> doubleTree = new DoubleBPTree<Integer>(branchingFactor, joiner);
+			List<int[]> pairs = new ArrayList<int[]>();
+			for (int i = 0; i < 800; i++)
+			{
+				int key = rng.nextInt(200);
+				pairs.add(new int[] { key, i });
+				testTree.insert(key, i);
+				doubleTree.insertDouble(key, i);
+			}
+			Collections.shuffle(pairs, rng);
+			for (int[] nxt: pairs.subList(0, 500))
+			{
+				testTree.remove(nxt[0], nxt[1]);
+				doubleTree.removeDouble(nxt[0], nxt[1]);
+			}
+			
+			for (int key = -1; key <= 201; key++)
+			{
+				for (Constants.Comparison comparison: Constants.Comparison.values())
+				{
+					StringBuilder expected = new StringBuilder();
+					testTree.rangeSearchBy(key, comparison).forEach(nxt -> expected.append(nxt + ","));
+					assertEquals(expected.toString(), testTree.aggregateBy(joiner, key, comparison));
+					assertEquals(expected.toString(), doubleTree.aggregateBy(joiner, key, comparison));
+				}
+				StringBuilder expected = new StringBuilder();
+				testTree.rangeSearch(key, false, key + 30, true).forEach(nxt -> expected.append(nxt + ","));
+				assertEquals(expected.toString(), testTree.aggregate(joiner, key, false, key + 30, true));
+				assertEquals(expected.toString(), doubleTree.aggregate(joiner, key, false, key + 30, true));
+			}
+		}
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void test39AggregateNeedsTreeAggregator() {
+		BPTree<Double, Double> testTree = new BPTree<Double, Double>(3);
+		testTree.insert(1.0, 1.0);
+		testTree.aggregate(new Aggregator<Double, Double>()
+		{
+			public Double identity() { return 0.0; }
+			public Double of(Double value) { return value; }
+			public Double combine(Double left, Double right) { return left + right; }
+		}, 0.0, ">=");
+	}
+	
+	@Test
+	public void test40SummarizeByNutrients() {
+		FoodData testData = new FoodData();
+		testData.loadFoodItems(largeItemListPath);
+		// make sure summaries stay right after edits
+		FoodItem updated = testData.getAllFoodItems().get(3);
+		assertTrue(testData.updateNutrient(updated, "fat", 150));
+		testData.removeFoodItem(testData.getAllFoodItems().get(7));
+		
+		List<List<String>> ruleSets = new ArrayList<List<String>>();
+		ruleSets.add(Arrays.asList("calories <= 200"));
+		ruleSets.add(Arrays.asList("calories > 50", "calories <= 300", "calories != 100", "calories != 400"));
+		ruleSets.add(Arrays.asList("fat >= 2", "protein < 10"));
+		ruleSets.add(new ArrayList<String>());
+		for (List<String> rules: ruleSets)
+		{
+			List<FoodItem> matched = testData.filterByNutrients(rules);
+			NutrientSummary summary = testData.summarizeByNutrients(rules);
+			assertEquals(matched.size(), summary.getCount());
+			for (Constants.Nutrient nutrient: Constants.Nutrient.values())
+			{
+				double sum = 0;
+				double max = Double.NEGATIVE_INFINITY;
+				for (FoodItem nxt: matched)
+				{
+					sum += nxt.getNutrientValue(nutrient.toString());
+					max = Math.max(max, nxt.getNutrientValue(nutrient.toString()));
+				}
+				assertEquals(sum, summary.getSum(nutrient.toString()), 1e-6);
+				assertEquals(max, summary.getMax(nutrient.toString()), 0);
+			}
+		}
+	}
+	
+	@Test
+	public void test41ConcurrentInsertsAndRangeSearches() throws InterruptedException {
+		ConcurrentBPTree<Integer, Integer> testTree = new ConcurrentBPTree<Integer, Integer>(4);
+		int writers = 8;
+		int perWriter = 3000;
+		List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int w = 0; w < writers; w++)
+		{
+			int first = w * perWriter;
+			threads.add(new Thread(() ->
+				{
+					for (int v = first; v < first + perWriter; v++)
+					{
+						testTree.insert(v % 997, v);
+					}
+				}));
+		}
+		for (int r = 0; r < 2; r++)
+		{
+			threads.add(new Thread(() ->
+				{
+					try
+					{
+						for (int i = 0; i < 300; i++)
+						{
+							// keys come back in order, and each value under the key it was inserted with
+							List<Integer> found = testTree.rangeSearch(100, true, 400, false);
+							for (int j = 0; j < found.size(); j++)
+							{
+								int key = found.get(j) % 997;
+								assertTrue(key >= 100 && key < 400);
+								if (j > 0)
+								{
+									assertTrue(found.get(j - 1) % 997 <= key);
+								}
+							}
+						}
+					}
+					catch (Throwable e)
+					{
+						failures.add(e);
+					}
+				}));
+		}
+		for (Thread nxt: threads)
+		{
+			nxt.start();
+		}
+		for (Thread nxt: threads)
+		{
+			nxt.join();
+		}
+		
+		assertTrue(failures.toString(), failures.isEmpty());
+		assertEquals(writers * perWriter, testTree.size());
+		for (int key = 0; key < 997; key++)
+		{
+			List<Integer> found = testTree.rangeSearch(key, "==");
+			Collections.sort(found);
+			List<Integer> expected = new ArrayList<Integer>();
+			for (int v = key; v < writers * perWriter; v += 997)
+			{
+				expected.add(v);
+			}
+			assertEquals(expected, found);
+		}
+	}
+	
+	@Test
+	public void test42ConcurrentTreeMatchesBPTree() {
+		Random rng = new Random(400);
+		BPTree<Integer, Integer> expectedTree = new BPTree<Integer, Integer>(5);
+		ConcurrentBPTree<Integer, Integer> testTree = new ConcurrentBPTree<Integer, Integer>(5);
+		List<int[]> pairs = new ArrayList<int[]>();
+		for (int i = 0; i < 2000; i++)
+		{
+			int key = rng.nextInt(300);
+			pairs.add(new int[] { key, i });
+			expectedTree.insert(key, i);
+			testTree.insert(key, i);
+		}
+		Collections.shuffle(pairs, rng);
+		for (int[] nxt: pairs.subList(0, 1200))
+		{
+			assertTrue(testTree.remove(nxt[0], nxt[1]));
+			assertFalse(testTree.remove(nxt[0], nxt[1]));
+			expectedTree.remove(nxt[0], nxt[1]);
+		}
+		assertEquals(expectedTree.size(), testTree.size());
+		
+		for (int key = -1; key <= 301; key += 7)
+		{
+			for (String comparator: Constants.Comparators)
+			{
+				List<Integer> expected = expectedTree.rangeSearch(key, comparator);
+				assertEquals(expected, testTree.rangeSearch(key, comparator));
+				assertEquals(expected.size(), testTree.count(key, comparator));
+				List<Integer> iterated = new ArrayList<Integer>();
+				testTree.forEach(key, comparator, iterated::add);
+				assertEquals(expected, iterated);
+			}
+			assertEquals(expectedTree.rangeSearch(key, true, key + 40, false),
+					testTree.rangeSearch(key, true, key + 40, false));
+			assertEquals(expectedTree.rank(key), testTree.rank(key));
+		}
+		for (int i = 0; i < testTree.size(); i += 13)
+		{
+			assertEquals(expectedTree.select(i), testTree.select(i));
+		}
+	}
+	
+	@Test
+	public void test43SnapshotIsNotChangedByLaterWrites() {
+		Random rng = new Random(400);
+		Aggregator<Integer, Integer> sum = new Aggregator<Integer, Integer>()
+			{
+				public Integer identity() { return 0; }
+				public Integer of(Integer value) { return value; }
+				public Integer combine(Integer left, Integer right) { return left + right; }
+			};
+		DoubleBPTree<Integer> testTree = new DoubleBPTree<Integer>(4, sum);
+		List<int[]> pairs = new ArrayList<int[]>();
+		for (int i = 0; i < 500; i++)
+		{
+			int key = rng.nextInt(200);
+			pairs.add(new int[] { key, i });
+			testTree.insertDouble(key, i);
+		}
+		
+		// take a snapshot partway through each round of changes, and check them all at the end
+		List<DoubleBPTree<Integer>> snapshots = new ArrayList<DoubleBPTree<Integer>>();
+		List<List<Integer>> expected = new ArrayList<List<Integer>>();
+		List<Integer> expectedSums = new ArrayList<Integer>();
+		Collections.shuffle(pairs, rng);
+		for (int round = 0; round < 5; round++)
+		{
+			snapshots.add(testTree.snapshot());
+			expected.add(testTree.rangeSearch(Double.NEGATIVE_INFINITY, true, Double.POSITIVE_INFINITY, true));
+			expectedSums.add(testTree.aggregate(sum, 50, true, 150, false));
+			for (int[] nxt: pairs.subList(round * 80, round * 80 + 80))
+			{
+				assertTrue(testTree.removeDouble(nxt[0], nxt[1]));
+				testTree.insertDouble(nxt[0] + 0.5, nxt[1] + 1000);
+			}
+		}
+		
+		for (int i = 0; i < snapshots.size(); i++)
+		{
+			DoubleBPTree<Integer> snapshot = snapshots.get(i);
+			assertEquals(expected.get(i), snapshot.rangeSearch(Double.NEGATIVE_INFINITY, true, Double.POSITIVE_INFINITY, true));
+			assertEquals(expected.get(i).size(), snapshot.size());
+			List<Integer> iterated = new ArrayList<Integer>();
+			snapshot.rangeIterator(100d, "<").forEachRemaining(iterated::add);
+			assertEquals(snapshot.rangeSearch(100d, "<"), iterated);
+			assertEquals(iterated.size(), snapshot.count(100d, "<"));
+			assertEquals(expectedSums.get(i), snapshot.aggregate(sum, 50, true, 150, false));
+		}
+		try
+		{
+			snapshots.get(0).insert(1d, 1);
+			fail("Snapshot shouldn't be changeable");
+		}
+		catch (UnsupportedOperationException e) { }
+	}
+	
+	@Test
+	public void test44FoodDataSnapshotDuringAdds() throws InterruptedException {
+		FoodData testData = new FoodData();
+		testData.loadFoodItems(largeItemListPath);
+		FoodData snapshot = testData.snapshot();
+		List<String> rules = Arrays.asList("calories >= 100", "fat < 20");
+		List<FoodItem> expected = snapshot.filterByNutrients(rules);
+		int numItems = snapshot.getAllFoodItems().size();
+		
+		// keep adding items that pass the rules while another thread filters the snapshot
+		List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+		Thread reader = new Thread(() ->
+			{
+				try
+				{
+					for (int i = 0; i < 200; i++)
+					{
+						assertEquals(expected.size(), snapshot.filterByNutrients(rules).size());
+					}
+				}
+				catch (Throwable e)
+				{
+					failures.add(e);
+				}
+			});
+		reader.start();
+		for (int i = 0; i < 2000; i++)
+		{
+			FoodItem nxt = new FoodItem("snapshot" + i, "Snapshot" + i);
+			for (Constants.Nutrient nutrient: Constants.Nutrient.values())
+			{
+				nxt.addNutrient(nutrient.toString(), 100 + i % 7);
+			}
+			nxt.addNutrient("fat", i % 20);
+			testData.addFoodItem(nxt);
+		}
+		reader.join();
+		
+		assertTrue(failures.toString(), failures.isEmpty());
+		assertEquals(numItems, snapshot.getAllFoodItems().size());
+		assertEquals(numItems + 2000, testData.getAllFoodItems().size());
+		assertEquals(expected.size() + 2000, testData.filterByNutrients(rules).size());
+		assertEquals(new HashSet<FoodItem>(expected), new HashSet<FoodItem>(snapshot.filterByNutrients(rules)));
+		try
+		{
+			snapshot.addFoodItem(new FoodItem("snapshot", "Snapshot"));
+			fail("Snapshot shouldn't be changeable");
+		}
+		catch (UnsupportedOperationException e) { }
+	}
+	
+	@Test
+	public void test45PagedTreeSurvivesReopening() throws IOException {
+		File file = File.createTempFile("pagedtree", ".idx");
+		file.delete();
+		file.deleteOnExit();
+		Random rng = new Random(400);
+		List<double[]> pairs = new ArrayList<double[]>();
+		PagedBPTree testTree = new PagedBPTree(file.getPath(), 6);
+		for (int i = 0; i < 3000; i++)
+		{
+			// lots of duplicate keys, so runs of them span several leaves
+			double key = rng.nextInt(40) / 2.0;
+			pairs.add(new double[] { key, i });
+			testTree.insert(key, i);
+		}
+		testTree.close();
+		
+		testTree = new PagedBPTree(file.getPath(), 100);
+		Collections.shuffle(pairs, rng);
+		for (double[] nxt: pairs.subList(0, 1000))
+		{
+			assertTrue(testTree.remove(nxt[0], (int) nxt[1]));
+			assertFalse(testTree.remove(nxt[0], (int) nxt[1]));
+		}
+		List<double[]> remaining = new ArrayList<double[]>(pairs.subList(1000, pairs.size()));
+		remaining.sort((left, right) -> left[0] != right[0] ? Double.compare(left[0], right[0]) : Double.compare(left[1], right[1]));
+		assertEquals(remaining.size(), testTree.size());
+		
+		for (double key = -0.5; key <= 20.5; key += 0.5)
+		{
+			for (String comparator: Constants.Comparators)
+			{
+				Comparison comparison = Comparison.fromSymbol(comparator);
+				List<Integer> expected = new ArrayList<Integer>();
+				for (double[] nxt: remaining)
+				{
+					int cmp = Double.compare(nxt[0], key);
+					if (comparison == Comparison.LessThan ? cmp < 0 : comparison == Comparison.LessThanOrEqual ? cmp <= 0
+							: comparison == Comparison.EqualTo ? cmp == 0 : comparison == Comparison.GreaterThanOrEqual ? cmp >= 0
+							: comparison == Comparison.GreaterThan ? cmp > 0 : cmp != 0)
+					{
+						expected.add((int) nxt[1]);
+					}
+				}
+				assertEquals(expected, testTree.rangeSearchBy(key, comparison));
+				assertEquals(expected.size(), testTree.countBy(key, comparison));
+				List<Integer> iterated = new ArrayList<Integer>();
+				testTree.rangeIteratorBy(key, comparison).forEachRemaining(iterated::add);
+				assertEquals(expected, iterated);
+			}
+		}
+		for (int i = 0; i < remaining.size(); i += 97)
+		{
+			assertEquals((int) remaining.get(i)[1], (int) testTree.select(i));
+		}
+		testTree.close();
+	}
+	
+	@Test
+	public void test46OffHeapTreeMatchesBPTree() throws IOException {
+		Random rng = new Random(460);
+		PagedBPTree testTree = new PagedBPTree(new OffHeapPageStore(), 32);
+		BPTree<Double, Integer> expectedTree = new BPTree<Double, Integer>(32);
+		for (int i = 0; i < 20000; i++)
+		{
+			// values go in increasing, so duplicates come back in the same order from both trees
+			double key = rng.nextInt(5000) / 10.0;
+			testTree.insert(key, i);
+			expectedTree.insert(key, i);
+		}
+		for (int i = 0; i < 20000; i += 3)
+		{
+			assertEquals(expectedTree.remove(i / 50.0, i), testTree.remove(i / 50.0, i));
+		}
+		assertEquals(expectedTree.size(), testTree.size());
+		
+		for (int i = 0; i < 200; i++)
+		{
+			double lo = rng.nextInt(5200) / 10.0 - 10;
+			double hi = lo + rng.nextInt(500) / 10.0;
+			List<Integer> found = new ArrayList<Integer>();
+			testTree.forEach(lo, i % 2 == 0, hi, i % 3 == 0, found::add);
+			assertEquals(expectedTree.rangeSearch(lo, i % 2 == 0, hi, i % 3 == 0), found);
+			assertEquals(expectedTree.rangeSearchBy(lo, Comparison.GreaterThan), testTree.rangeSearchBy(lo, Comparison.GreaterThan));
+		}
+		testTree.close();
+	}
+	
+	@Test
+	public void test47RowIdPostingsMatchInsertedValues() {
+		// values are strings that carry their own row id
+		RowIds<String> rowIds = new RowIds<String>()
+			{
+				@Override
+				public int rowIdOf(String value) {
+					return Integer.parseInt(value.substring(3));
+				}
+				
+				@Override
+				public String valueOf(int rowId) {
+					return "row" + rowId;
+				}
+			};
+		Random rng = new Random(470);
+		DoubleBPTree<String> testTree = new DoubleBPTree<String>(8, null, rowIds);
+		List<int[]> pairs = new ArrayList<int[]>();
+		for (int i = 0; i < 5000; i++)
+		{
+			// a few keys with long runs of duplicates, and row ids out of order with gaps of every size
+			int key = rng.nextInt(6);
+			int rowId = i % 3 == 0 ? rng.nextInt(1 << 30) : i * 37;
+			pairs.add(new int[] { key, rowId });
+			testTree.insertDouble(key, "row" + rowId);
+		}
+		DoubleBPTree<String> snapshot = testTree.snapshot();
+		List<int[]> snapshotPairs = new ArrayList<int[]>(pairs);
+		Collections.shuffle(pairs, rng);
+		for (int[] nxt: pairs.subList(0, 2000))
+		{
+			assertTrue(testTree.removeDouble(nxt[0], "row" + nxt[1]));
+		}
+		assertFalse(testTree.remove(2.0, "row1"));
+		pairs = pairs.subList(2000, pairs.size());
+		
+		for (List<int[]> expected: Arrays.asList(pairs, snapshotPairs))
+		{
+			DoubleBPTree<String> tree = expected == pairs ? testTree : snapshot;
+			expected.sort((left, right) -> left[0] != right[0] ? Integer.compare(left[0], right[0]) : Integer.compare(left[1], right[1]));
+			List<String> expectedValues = new ArrayList<String>();
+			for (int[] nxt: expected)
+			{
+				expectedValues.add("row" + nxt[1]);
+			}
+			assertEquals(expected.size(), tree.size());
+			assertEquals(expectedValues, tree.rangeSearchBy(0.0, Comparison.GreaterThanOrEqual));
+			for (int i = 0; i < expected.size(); i += 101)
+			{
+				assertEquals(expectedValues.get(i), tree.select(i));
+			}
+		}
+	}
+	
+	@Test
+	public void test48SearchCostFlatAcrossBranchingFactors() {
+		// child routing is one binary search per level, so a wider node means fewer levels
+		// that each cost a little more, and the total number of comparisons stays about log2(n)
+		int numKeys = 1 << 15;
+		List<Integer> keys = new ArrayList<Integer>();
+		for (int i = 0; i < numKeys; i++)
+		{
+			keys.add(i);
+		}
+		Collections.shuffle(keys, new Random(480));
+		double log2 = Math.log(numKeys) / Math.log(2);
+		
+		double least = Double.MAX_VALUE;
+		double most = 0;
+		for (int branchingFactor: new int[] { 4, 16, 64, 256, 1024 })
+		{
+			BPTree<CountingKey, Integer> testTree = new BPTree<CountingKey, Integer>(branchingFactor);
+			CountingKey.comparisons = 0;
+			for (int nxt: keys)
+			{
+				testTree.insert(new CountingKey(nxt), nxt);
+			}
+			double perInsert = (double) CountingKey.comparisons / numKeys;
+			
+			CountingKey.comparisons = 0;
+			for (int nxt: keys)
+			{
+				assertEquals(1, testTree.rangeSearchBy(new CountingKey(nxt), Comparison.EqualTo).size());
+			}
+			double perSearch = (double) CountingKey.comparisons / numKeys;
+			
+			assertTrue("Branching factor " + branchingFactor + ": " + perInsert + " comparisons per insert", perInsert < log2 + 5);
+			assertTrue("Branching factor " + branchingFactor + ": " + perSearch + " comparisons per search", perSearch < log2 + 5);
+			least = Math.min(least, perSearch);
+			most = Math.max(most, perSearch);
+		}
+		// walking the keys of each node instead would make the widest tree many times slower
+		assertTrue("Comparisons per search ranged from " + least + " to " + most, most < 1.5 * least);
+	}
+	
+	@Test
+	public void test49DescendingIteratorsReverseRangeSearch() throws IOException {
+		Random rng = new Random(490);
+		BPTree<Double, Integer> testTree = new BPTree<Double, Integer>(4);
+		DoubleBPTree<Integer> doubleTree = new DoubleBPTree<Integer>(4);
+		ConcurrentBPTree<Double, Integer> concurrentTree = new ConcurrentBPTree<Double, Integer>(4);
+		PagedBPTree pagedTree = new PagedBPTree(new OffHeapPageStore(), 4);
+		for (int i = 0; i < 2000; i++)
+		{
+			double key = rng.nextInt(300) / 2.0;
+			testTree.insert(key, i);
+			doubleTree.insert(key, (Integer) i);
+			concurrentTree.insert(key, i);
+			pagedTree.insert(key, i);
+		}
+		for (int i = 0; i < 2000; i += 4)
+		{
+			testTree.remove(i / 2.0, i);
+			doubleTree.remove(i / 2.0, (Integer) i);
+		}
+		DoubleBPTree<Integer> snapshot = doubleTree.snapshot();
+		doubleTree.insert(75.0, (Integer) (-1));
+		
+		List<BPTreeADT<Double, Integer>> trees = Arrays.asList(testTree, doubleTree, snapshot, concurrentTree, pagedTree);
+		for (BPTreeADT<Double, Integer> tree: trees)
+		{
+			for (double key = -0.5; key <= 150.5; key += 7.5)
+			{
+				for (String comparator: Constants.Comparators)
+				{
+					List<Integer> expected = tree.rangeSearch(key, comparator);
+					Collections.reverse(expected);
+					List<Integer> actual = new ArrayList<Integer>();
+					tree.descendingIterator(key, comparator).forEachRemaining(actual::add);
+					assertEquals(expected, actual);
+				}
+				List<Integer> expected = tree.rangeSearch(key, false, key + 20, true);
+				Collections.reverse(expected);
+				List<Integer> actual = new ArrayList<Integer>();
+				tree.descendingIterator(key, false, key + 20, true).forEachRemaining(actual::add);
+				assertEquals(expected, actual);
+			}
+		}
+		pagedTree.close();
+		
+		// stopping early only takes the values at the top
+		Iterator<Integer> it = testTree.descendingIteratorBy(1000.0, Comparison.LessThanOrEqual);
+		assertEquals(testTree.select(testTree.size() - 1), it.next());
+		assertFalse(testTree.descendingIteratorBy(-1.0, Comparison.LessThan).hasNext());
+	}
+	
+	@Test
+	public void test50TopKMatchesSortedFilter() {
+		List<List<String>> ruleSets = Arrays.asList(
+				Arrays.asList("calories < 300"),
+				Arrays.asList("protein >= 2", "Protein <= 10", "protein != 5", "fat > 1"),
+				Arrays.asList("fiber == 0"),
+				new ArrayList<String>());
+		for (String nutrient: new String[] { "protein", "Fiber" })
+		{
+			for (List<String> rules: ruleSets)
+			{
+				HashSet<FoodItem> matches = new HashSet<FoodItem>(largeDataLargeBranch.filterByNutrients(rules));
+				List<Double> amounts = new ArrayList<Double>();
+				for (FoodItem nxt: matches)
+				{
+					amounts.add(nxt.getNutrientValue(nutrient.toLowerCase()));
+				}
+				for (boolean ascending: new boolean[] { true, false })
+				{
+					amounts.sort(ascending ? Comparator.naturalOrder() : Comparator.reverseOrder());
+					for (int k: new int[] { 1, 20, matches.size() + 5 })
+					{
+						List<FoodItem> actual = largeDataLargeBranch.topK(nutrient, k, ascending, rules);
+						assertEquals(Math.min(k, matches.size()), actual.size());
+						assertEquals(actual.size(), new HashSet<FoodItem>(actual).size());
+						for (int i = 0; i < actual.size(); i++)
+						{
+							assertTrue(matches.contains(actual.get(i)));
+							assertEquals(amounts.get(i), actual.get(i).getNutrientValue(nutrient.toLowerCase()), 0);
+						}
+					}
+				}
+			}
+		}
+		assertTrue(largeDataLargeBranch.topK("sugar", 5, true, new ArrayList<String>()).isEmpty());
+		assertTrue(largeDataLargeBranch.topK("protein", 0, true, new ArrayList<String>()).isEmpty());
+	}
+	
+	@Test
+	public void test51PagesMatchFullFilters() {
+		List<FoodItem> byName = largeDataLargeBranch.filterByName("a");
+		List<String> rules = Arrays.asList("calories >= 100", "protein > 3", "calories != 150");
+		HashSet<FoodItem> byRules = new HashSet<FoodItem>(largeDataLargeBranch.filterByNutrients(rules));
+		
+		List<FoodItem> namePages = new ArrayList<FoodItem>();
+		List<FoodItem> rulePages = new ArrayList<FoodItem>();
+		for (int offset = 0; offset < byName.size() + 30; offset += 30)
+		{
+			List<FoodItem> namePage = largeDataLargeBranch.filterByName("A", offset, 30);
+			assertEquals(byName.subList(Math.min(offset, byName.size()), Math.min(offset + 30, byName.size())), namePage);
+			namePages.addAll(namePage);
+		}
+		for (int offset = 0; offset < byRules.size() + 30; offset += 30)
+		{
+			List<FoodItem> rulePage = largeDataLargeBranch.filterByNutrients(rules, offset, 30);
+			assertEquals(Math.max(0, Math.min(30, byRules.size() - offset)), rulePage.size());
+			rulePages.addAll(rulePage);
+		}
+		assertEquals(byName, namePages);
+		// pages come in order of calories, the nutrient in the first rule, and together cover every match once
+		assertEquals(byRules, new HashSet<FoodItem>(rulePages));
+		assertEquals(byRules.size(), rulePages.size());
+		for (int i = 1; i < rulePages.size(); i++)
+		{
+			assertTrue(rulePages.get(i - 1).getNutrientValue("calories") <= rulePages.get(i).getNutrientValue("calories"));
+		}
+		
+		List<FoodItem> all = largeDataLargeBranch.getAllFoodItems();
+		assertEquals(all.subList(5, 15), largeDataLargeBranch.filterByNutrients(new ArrayList<String>(), 5, 10));
+		assertTrue(largeDataLargeBranch.filterByNutrients(rules, 0, 0).isEmpty());
+		try
+		{
+			largeDataLargeBranch.filterByName("a", -1, 10);
+			fail("Negative offset should be rejected");
+		}
+		catch (IllegalArgumentException e) { }
+	}
+	
+	@Test
+	public void test52StatsDescribeTreeShape() {
+		BPTree<Double, Integer> testTree = new BPTree<Double, Integer>(4);
+		DoubleBPTree<Integer> doubleTree = new DoubleBPTree<Integer>(4);
+		DoubleBPTree<Integer> rowIdTree = new DoubleBPTree<Integer>(4, null, new RowIds<Integer>()
+			{
+				@Override
+				public int rowIdOf(Integer value) {
+					return value;
+				}
+				
+				@Override
+				public Integer valueOf(int rowId) {
+					return rowId;
+				}
+			});
+		// key i has i + 1 values
+		for (int key = 0; key < 100; key++)
+		{
+			for (int i = 0; i <= key; i++)
+			{
+				testTree.insert((double) key, key * 1000 + i);
+				doubleTree.insertDouble(key, key * 1000 + i);
+				rowIdTree.insertDouble(key, key * 1000 + i);
+			}
+		}
+		
+		for (TreeStats stats: Arrays.asList(testTree.stats(), doubleTree.stats(), rowIdTree.stats()))
+		{
+			int[] levels = stats.getNodesPerLevel();
+			assertEquals(1, levels[0]);
+			assertEquals(levels.length, stats.getHeight());
+			for (int i = 1; i < levels.length; i++)
+			{
+				assertTrue(levels[i] > levels[i - 1]);
+			}
+			assertEquals(100, stats.getDistinctKeys());
+			assertEquals(testTree.size(), stats.getSize());
+			// 1 key with 1 value, 2 with 2 or 3, 4 with 4 to 7 ... and 37 with 64 to 100
+			assertArrayEquals(new long[] { 1, 2, 4, 8, 16, 32, 37 }, stats.getDuplicateHistogram());
+			
+			int inHistogram = 0;
+			for (int nxt: stats.getFillHistogram())
+			{
+				inHistogram += nxt;
+			}
+			assertEquals(stats.getNodeCount(), inHistogram);
+			assertTrue(stats.getAverageFill() >= 0.5 && stats.getAverageFill() <= 1);
+		}
+		// row ids a byte apart take far less room than a list node per value
+		assertTrue(rowIdTree.stats().getEstimatedBytes() * 4 < doubleTree.stats().getEstimatedBytes());
+		
+		TreeStats fiber = largeDataLargeBranch.getIndexStats("Fiber");
+		assertEquals(largeDataLargeBranch.getAllFoodItems().size(), fiber.getSize());
+		assertNull(largeDataLargeBranch.getIndexStats("sugar"));
+	}
+	
+	@Test
+	public void test53ColumnarItemsMatchFile() throws Exception {
+		FoodData testData = new FoodData();
+		testData.loadFoodItems(largeItemListPath);
+		HashMap<String, String[]> lines = new HashMap<String, String[]>();
+		for (String nxt: Files.readAllLines(Paths.get(largeItemListPath)))
+		{
+			String[] pieces = nxt.split(",");
+			if (pieces.length >= 12)
+			{
+				lines.put(pieces[0], pieces);
+			}
+		}
+		
+		HashMap<String, String> names = new HashMap<String, String>();
+		for (FoodItem nxt: testData.getAllFoodItems())
+		{
+			String[] pieces = lines.get(nxt.getID());
+			assertEquals(pieces[1], nxt.getName());
+			assertEquals(5, nxt.getNutrients().size());
+			for (int i = 2; i < 12; i += 2)
+			{
+				String nutrient = pieces[i].toLowerCase();
+				assertTrue(nxt.hasNutrient(nutrient));
+				assertEquals(Double.parseDouble(pieces[i + 1]), nxt.getNutrientValue(nutrient), 0);
+			}
+			// a name that comes up again is the same string
+			String first = names.putIfAbsent(nxt.getName(), nxt.getName());
+			assertTrue(first == null || first == nxt.getName());
+		}
+		
+		// items added with their own storage, changed, and removed stay in step with the columns
+		FoodItem added = new FoodItem("added", "Added Item");
+		added.addNutrient("Calories", 120);
+		added.addNutrient("fat", 2);
+		testData.addFoodItem(added);
+		FoodItem loaded = testData.getAllFoodItems().get(10);
+		String loadedName = loaded.getName();
+		assertTrue(testData.updateNutrient(added, "protein", 9));
+		assertTrue(testData.updateNutrient(loaded, "protein", 9.5));
+		assertEquals(9.5, loaded.getNutrientValue("protein"), 0);
+		assertTrue(testData.filterByNutrients(Arrays.asList("protein == 9")).contains(added));
+		assertTrue(testData.removeFoodItem(loaded));
+		assertEquals(loadedName, loaded.getName());
+		
+		List<String> rules = Arrays.asList("calories >= 100", "fat <= 10");
+		NutrientSummary summary = testData.summarizeByNutrients(rules);
+		List<FoodItem> matches = testData.filterByNutrients(rules);
+		assertTrue(matches.contains(added));
+		assertEquals(matches.size(), summary.getCount());
+		for (Constants.Nutrient nxt: Constants.Nutrient.values())
+		{
+			double sum = 0;
+			for (FoodItem itm: matches)
+			{
+				sum += itm.getNutrientValue(nxt.toString());
+			}
+			assertEquals(sum, summary.getSum(nxt.toString()), 1e-6);
+		}
+	}
+	
+	@Test
+	public void test54NutrientSlotsMatchStringApi() {
+		FoodItem item = new FoodItem("slots", "Slots");
+		item.addNutrient(Constants.Nutrient.fat, 3.5);
+		item.addNutrient("PROTEIN", 7);
+		item.addNutrient("sodium", 12);
+		
+		assertEquals(3.5, item.getNutrientValue("fat"), 0);
+		assertEquals(7, item.getNutrientValue(Constants.Nutrient.protein), 0);
+		assertTrue(item.hasNutrient(Constants.Nutrient.protein));
+		assertFalse(item.hasNutrient(Constants.Nutrient.fiber));
+		assertEquals(0, item.getNutrientValue(Constants.Nutrient.fiber), 0);
+		// nutrients we don't keep a slot for still work through the names
+		assertTrue(item.hasNutrient("sodium"));
+		assertEquals(12, item.getNutrientValue("sodium"), 0);
+		HashMap<String, Double> nutrients = item.getNutrients();
+		assertEquals(3, nutrients.size());
+		assertEquals(Double.valueOf(3.5), nutrients.get("fat"));
+		assertEquals(Double.valueOf(12), nutrients.get("sodium"));
+		
+		// a loaded item reads and writes the same slots through its row
+		FoodData testData = new FoodData();
+		testData.loadFoodItems(largeItemListPath);
+		FoodItem loaded = testData.getAllFoodItems().get(0);
+		for (Constants.Nutrient nxt: Constants.Nutrient.values())
+		{
+			assertEquals(loaded.getNutrientValue(nxt.toString()), loaded.getNutrientValue(nxt), 0);
+		}
+		loaded.addNutrient(Constants.Nutrient.fiber, 4.25);
+		assertEquals(4.25, loaded.getNutrientValue("fiber"), 0);
+		try
+		{
+			loaded.addNutrient("sodium", 1);
+			fail("Loaded items only have room for Constants.Nutrient");
+		}
+		catch (IllegalArgumentException e) { }
+	}
+	
+	@Test
+	public void test55RowBitmapsMatchSets() {
+		Random rnd = new Random(55);
+		RowBitmap sparse = new RowBitmap();
+		RowBitmap dense = new RowBitmap();
+		TreeSet<Integer> sparseSet = new TreeSet<Integer>();
+		TreeSet<Integer> denseSet = new TreeSet<Integer>();
+		for (int i = 0; i < 3000; i++)
+		{
+			int rowId = rnd.nextInt(300000);
+			sparse.add(rowId);
+			sparseSet.add(rowId);
+		}
+		// enough in the first two blocks that they turn into bitmaps
+		for (int i = 0; i < 60000; i++)
+		{
+			int rowId = rnd.nextInt(140000);
+			dense.add(rowId);
+			denseSet.add(rowId);
+		}
+		
+		TreeSet<Integer> both = new TreeSet<Integer>(sparseSet);
+		both.retainAll(denseSet);
+		TreeSet<Integer> either = new TreeSet<Integer>(sparseSet);
+		either.addAll(denseSet);
+		TreeSet<Integer> firstHalf = new TreeSet<Integer>(denseSet.headSet(70000));
+		RowBitmap denseHalf = new RowBitmap();
+		firstHalf.forEach(denseHalf::add);
+		
+		assertEquals(sparseSet, toSet(sparse));
+		assertEquals(denseSet, toSet(dense));
+		assertEquals(both, toSet(sparse.and(dense)));
+		assertEquals(both, toSet(dense.and(sparse)));
+		assertEquals(either, toSet(sparse.or(dense)));
+		assertEquals(either, toSet(dense.or(sparse)));
+		assertEquals(firstHalf, toSet(dense.and(denseHalf)));
+		assertEquals(denseSet, toSet(dense.or(denseHalf)));
+		assertEquals(either.size(), sparse.or(dense).cardinality());
+		for (int i = 0; i < 1000; i++)
+		{
+			int rowId = rnd.nextInt(300000);
+			assertEquals(denseSet.contains(rowId), dense.contains(rowId));
+		}
+		assertTrue(new RowBitmap().and(dense).isEmpty());
+		
+		// bitmap filters find the same food items as checking every one
+		List<String> rules = Arrays.asList("calories >= 50", "fat < 20", "protein != 0", "fiber <= 30", "calories != 100");
+		HashSet<FoodItem> expected = new HashSet<FoodItem>();
+		for (FoodItem nxt: largeDataLargeBranch.getAllFoodItems())
+		{
+			if (nxt.getNutrientValue("calories") >= 50 && nxt.getNutrientValue("calories") != 100 
+					&& nxt.getNutrientValue("fat") < 20 && nxt.getNutrientValue("protein") != 0 
+					&& nxt.getNutrientValue("fiber") <= 30)
+			{
+				expected.add(nxt);
+			}
+		}
+		List<FoodItem> actual = largeDataLargeBranch.filterByNutrients(rules);
+		assertEquals(expected.size(), actual.size());
+		assertEquals(expected, new HashSet<FoodItem>(actual));
+	}
+	
+	@Test
+	public void test56PlannedFiltersMatchEveryOrder() {
+		FoodItem sample = largeDataLargeBranch.getAllFoodItems().get(17);
+		double protein = sample.getNutrientValue("protein");
+		List<List<String>> ruleSets = new ArrayList<List<String>>();
+		// unselective rules first, so the plan has to move the selective one up
+		ruleSets.add(Arrays.asList("calories >= 0", "fat >= 0", "protein == " + protein));
+		ruleSets.add(Arrays.asList("calories >= 0", "fiber <= 1000", "carbohydrate != 0", "protein <= " + protein));
+		ruleSets.add(Arrays.asList("fat > 5", "fat != 10", "calories < 300", "carbohydrate >= 10", "fiber > 1"));
+		ruleSets.add(Arrays.asList("protein < 0", "calories >= 0"));
+		
+		for (List<String> rules: ruleSets)
+		{
+			HashSet<FoodItem> expected = null;
+			for (String rule: rules)
+			{
+				HashSet<FoodItem> matches = new HashSet<FoodItem>(largeDataLargeBranch.filterByNutrients(Arrays.asList(rule)));
+				if (expected == null)
+				{
+					expected = matches;
+				}
+				else
+				{
+					expected.retainAll(matches);
+				}
+			}
+			
+			List<String> reversed = new ArrayList<String>(rules);
+			Collections.reverse(reversed);
+			for (List<String> order: Arrays.asList(rules, reversed))
+			{
+				List<FoodItem> actual = largeDataLargeBranch.filterByNutrients(order);
+				assertEquals(expected.size(), actual.size());
+				assertEquals(expected, new HashSet<FoodItem>(actual));
+				assertEquals(expected.size(), largeDataLargeBranch.summarizeByNutrients(order).getCount());
+			}
+		}
+		assertTrue(largeDataLargeBranch.filterByNutrients(ruleSets.get(0)).contains(sample));
+	}
+	
+	@Test
+	public void test57StatisticsTrackChanges() {
+		FoodData testData = new FoodData();
+		testData.loadFoodItems(largeItemListPath);
+		checkStatistics(testData);
+		
+		NutrientStatistics fat = testData.getStatistics(Constants.Nutrient.fat);
+		int total = fat.getCount();
+		double[] bounds = fat.getBucketBounds();
+		int[] counts = fat.getBucketCounts();
+		for (int i = 0; i < bounds.length; i++)
+		{
+			// about one bucket's share each, unless one amount fills more than that
+			double low = i == 0 ? fat.getMin() : bounds[i - 1];
+			assertTrue(counts[i] <= 2 * total / NutrientStatistics.NUM_BUCKETS || bounds[i] == low
+					|| testData.filterByNutrients(Arrays.asList("fat == " + bounds[i])).size() > total / NutrientStatistics.NUM_BUCKETS);
+		}
+		double estimate = fat.estimateCount(fat.getMin(), true, fat.getMax(), true);
+		assertEquals(total, estimate, 1e-6);
+		int actual = testData.filterByNutrients(Arrays.asList("fat >= 2", "fat < 15")).size();
+		assertEquals(actual, fat.estimateCount(2, true, 15, false), total / 5.0);
+		
+		// add, change and remove food items, some without every nutrient
+		Random rnd = new Random(57);
+		List<FoodItem> added = new ArrayList<FoodItem>();
+		for (int i = 0; i < 400; i++)
+		{
+			FoodItem nxt = new FoodItem("stats" + i, "Stats " + i);
+			nxt.addNutrient(Constants.Nutrient.fat, rnd.nextInt(50));
+			nxt.addNutrient(Constants.Nutrient.calories, i % 3 == 0 ? 0 : 1000 + i);
+			if (i % 4 != 0)
+			{
+				nxt.addNutrient(Constants.Nutrient.protein, rnd.nextDouble() * 10);
+			}
+			testData.addFoodItem(nxt);
+			added.add(nxt);
+		}
+		checkStatistics(testData);
+		for (int i = 0; i < 100; i++)
+		{
+			testData.updateNutrient(added.get(i), "protein", i % 7);
+			testData.updateNutrient(added.get(i + 100), "fat", added.get(i + 100).getNutrientValue("fat"));
+			testData.removeFoodItem(added.get(i + 200));
+			testData.removeFoodItem(testData.getAllFoodItems().get(i));
+		}
+		checkStatistics(testData);
+		
+		// a snapshot keeps the statistics it was taken with
+		FoodData snapshot = testData.snapshot();
+		int before = snapshot.getStatistics(Constants.Nutrient.fat).getCount();
+		testData.removeFoodItem(added.get(399));
+		assertEquals(before, snapshot.getStatistics(Constants.Nutrient.fat).getCount());
+		assertEquals(before - 1, testData.getStatistics(Constants.Nutrient.fat).getCount());
+	}
+	
+	@Test
+	public void test58ColumnSnapshotsCopyChangedChunks() {
+		FoodColumns columns = new FoodColumns();
+		double[] amounts = new double[Constants.Nutrient.values().length];
+		for (int i = 0; i < 3000; i++)
+		{
+			Arrays.fill(amounts, i);
+			columns.add("id" + i, "Item" + i, amounts);
+		}
+		int fat = Constants.Nutrient.fat.ordinal();
+		FoodItem changed = columns.valueOf(5);
+		FoodItem released = columns.valueOf(2500);
+		
+		FoodColumns snapshot = columns.snapshot();
+		columns.setAmount(5, fat, -1);
+		columns.release(2500);
+		int added = columns.add("added", "Added", amounts);
+		
+		// the source sees its changes, and lets go of the released row
+		assertEquals(-1, columns.getAmount(5, fat), 0);
+		assertEquals(-1, changed.getNutrientValue(Constants.Nutrient.fat), 0);
+		assertNull(columns.valueOf(2500));
+		// the snapshot keeps the rows it was taken with
+		assertEquals(5, snapshot.getAmount(5, fat), 0);
+		assertSame(changed, snapshot.valueOf(5));
+		assertSame(released, snapshot.valueOf(2500));
+		assertEquals(2500, snapshot.rowIdOf(released));
+		assertEquals(3000, snapshot.getNumRows());
+		assertEquals(-1, snapshot.rowIdOf(columns.valueOf(added)));
+		// rows in chunks nothing changed are still the same for both
+		assertEquals(1500, snapshot.getAmount(1500, fat), 0);
+		
+		// changes to chunks that were already copied don't reach the snapshot either
+		columns.setAmount(6, fat, -2);
+		columns.release(2501);
+		assertNull(columns.valueOf(2501));
+		assertEquals(6, snapshot.getAmount(6, fat), 0);
+		assertNotNull(snapshot.valueOf(2501));
+		
+		// a later snapshot sees every change before it
+		FoodColumns later = columns.snapshot();
+		columns.setAmount(6, fat, -3);
+		assertEquals(-2, later.getAmount(6, fat), 0);
+		assertEquals(6, snapshot.getAmount(6, fat), 0);
+		assertNull(later.valueOf(2500));
+		assertSame(columns.valueOf(added), later.valueOf(added));
+	}
+	
+	@Test
+	public void test59FoodDataSnapshotDuringUpdates() {
+		FoodData testData = new FoodData();
+		testData.loadFoodItems(largeItemListPath);
+		double protein = testData.getAllFoodItems().get(0).getNutrientValue(Constants.Nutrient.protein);
+		// the protein rule is so much narrower that the calories rules get checked item by item
+		List<String> kept = Arrays.asList("protein == " + protein, "calories >= 0");
+		List<String> none = Arrays.asList("protein == " + protein, "calories < 0");
+		FoodData snapshot = testData.snapshot();
+		List<FoodItem> expected = snapshot.filterByNutrients(kept);
+		NutrientSummary expectedSummary = snapshot.summarizeByNutrients(kept);
+		assertFalse(expected.isEmpty());
+		assertTrue(snapshot.filterByNutrients(none).isEmpty());
+		
+		// move every matching item out of "calories >= 0" and into "calories < 0"
+		for (FoodItem nxt: expected)
+		{
+			assertTrue(testData.updateNutrient(nxt, "calories", -1));
+			assertEquals(-1, nxt.getNutrientValue(Constants.Nutrient.calories), 0);
+		}
+		assertTrue(testData.filterByNutrients(kept).isEmpty());
+		assertEquals(new HashSet<FoodItem>(expected), new HashSet<FoodItem>(testData.filterByNutrients(none)));
+		
+		// the items show the update, but the snapshot still filters them by the amounts it was taken with
+		assertEquals(new HashSet<FoodItem>(expected), new HashSet<FoodItem>(snapshot.filterByNutrients(kept)));
+		assertTrue(snapshot.filterByNutrients(none).isEmpty());
+		NutrientSummary summary = snapshot.summarizeByNutrients(kept);
+		assertEquals(expectedSummary.getCount(), summary.getCount());
+		assertEquals(expectedSummary.getSum("calories"), summary.getSum("calories"), 1e-9);
+		assertEquals(expectedSummary.getMin("calories"), summary.getMin("calories"), 0);
+	}
+	
+	@Test
+	public void test60SnapshotScansUseIndexedAmounts() {
+		FoodData testData = new FoodData();
+		testData.loadFoodItems(largeItemListPath);
+		// no item has -1 of anything, so the != rule rules out nothing until the updates below
+		List<String> rules = Arrays.asList("protein != -1", "calories >= 0");
+		FoodData snapshot = testData.snapshot();
+		List<FoodItem> top = snapshot.topK("protein", 20, false, rules);
+		List<FoodItem> bottom = snapshot.topK("protein", 20, true, rules);
+		List<FoodItem> page = snapshot.filterByNutrients(rules, 5, 10);
+		assertEquals(20, top.size());
+		assertEquals(10, page.size());
+		
+		// move the items out of range on the source, on both the scanned nutrient and the other one
+		List<FoodItem> changed = new ArrayList<FoodItem>(top);
+		changed.addAll(bottom);
+		changed.addAll(page);
+		for (int i = 0; i < changed.size(); i++)
+		{
+			testData.updateNutrient(changed.get(i), i % 2 == 0 ? "protein" : "calories", -1);
+		}
+		assertTrue(Collections.disjoint(top, testData.topK("protein", 20, false, rules)));
+		
+		// the snapshot still scans and checks the amounts it was taken with
+		assertEquals(top, snapshot.topK("protein", 20, false, rules));
+		assertEquals(bottom, snapshot.topK("protein", 20, true, rules));
+		assertEquals(page, snapshot.filterByNutrients(rules, 5, 10));
+	}
+	
+	@Test
+	public void test61KeyAtMatchesSelect() {
+		DoubleBPTree<Integer> testTree = new DoubleBPTree<Integer>(4);
+		TreeMap<Double, List<Integer>> expected = new TreeMap<Double, List<Integer>>();
+		Random rnd = new Random(61);
+		for (int i = 0; i < 500; i++)
+		{
+			double key = rnd.nextInt(100) / 4.0;
+			testTree.insertDouble(key, i);
+			expected.computeIfAbsent(key, k -> new ArrayList<Integer>()).add(i);
+		}
+		int rank = 0;
+		for (Double key: expected.keySet())
+		{
+			for (Integer value: expected.get(key))
+			{
+				assertEquals(key, testTree.keyAt(rank), 0);
+				assertEquals(value, testTree.select(rank));
+				rank++;
+			}
+		}
+		try
+		{
+			testTree.keyAt(rank);
+			fail("Rank past the last value");
+		}
+		catch (IndexOutOfBoundsException e) { }
+	}
+	
+	@Test
+	public void test62SavedIndexesLoadBack() throws IOException {
+		FoodData testData = new FoodData();
+		testData.loadFoodItems(largeItemListPath);
+		List<FoodItem> all = testData.getAllFoodItems();
+		testData.removeFoodItem(all.get(3));
+		testData.updateNutrient(all.get(10), "protein", 12.34);
+		FoodItem added = new FoodItem("saved", "Saved Item");
+		added.addNutrient("calories", 123.45);
+		added.addNutrient("protein", 6.5);
+		// no fiber, so it's saved without it and left out of the fiber index
+		testData.addFoodItem(added);
+		
+		File dir = Files.createTempDirectory("indexes").toFile();
+		dir.deleteOnExit();
+		// a data file that happens to be in the same directory is left alone
+		File dataFile = new File(dir, "foodItems.csv");
+		Files.write(dataFile.toPath(), Arrays.asList("id,Not Saved,calories,1,fat,1,carbohydrate,1,fiber,1,protein,1"));
+		testData.saveIndexes(dir.getPath());
+		assertEquals(1, Files.readAllLines(dataFile.toPath()).size());
+		for (File nxt: dir.listFiles())
+		{
+			nxt.deleteOnExit();
+		}
+		
+		FoodData loaded = new FoodData();
+		loaded.loadIndexes(dir.getPath());
+		assertEquals(testData.getAllFoodItems().size(), loaded.getAllFoodItems().size());
+		checkStatistics(loaded);
+		List<String> rules = Arrays.asList("calories >= 100", "protein <= 20");
+		assertEquals(ids(testData.filterByNutrients(rules)), ids(loaded.filterByNutrients(rules)));
+		assertEquals(ids(testData.topK("protein", 30, false, rules)), ids(loaded.topK("protein", 30, false, rules)));
+		List<String> fiber = Arrays.asList("fiber <= 0");
+		assertFalse(ids(loaded.filterByNutrients(fiber)).contains("saved"));
+		assertEquals(testData.getStatistics(Constants.Nutrient.fiber).getMissingCount(), 
+				loaded.getStatistics(Constants.Nutrient.fiber).getMissingCount());
+		assertEquals(1, loaded.getStatistics(Constants.Nutrient.fiber).getMissingCount());
+		for (FoodItem nxt: loaded.getAllFoodItems())
+		{
+			assertEquals(nxt.getID().equals("saved"), !nxt.hasNutrient(Constants.Nutrient.fiber));
+		}
+		
+		// a damaged index is sorted again instead, with the same results
+		Files.write(new File(dir, "protein.idx").toPath(), new byte[] { 1, 2, 3 });
+		new File(dir, "fiber.idx").delete();
+		FoodData fallback = new FoodData();
+		fallback.loadIndexes(dir.getPath());
+		checkStatistics(fallback);
+		assertEquals(ids(loaded.filterByNutrients(rules)), ids(fallback.filterByNutrients(rules)));
+		assertEquals(ids(loaded.topK("protein", 30, false, rules)), ids(fallback.topK("protein", 30, false, rules)));
+		assertEquals(ids(loaded.topK("fiber", 30, true, fiber)), ids(fallback.topK("fiber", 30, true, fiber)));
+		
+		// the damaged index isn't a saved index, so saving again won't replace it
+		try
+		{
+			fallback.saveIndexes(dir.getPath());
+			fail("Replaced a file that isn't a saved index");
+		}
+		catch (IOException e) { }
+		assertEquals(3, new File(dir, "protein.idx").length());
+	}
+	
+	@Test
+	public void test63BPTreeSnapshotKeepsItsValues() {
+		BPTree<String, Integer> testTree = new BPTree<String, Integer>(3);
+		for (int i = 0; i < 200; i++)
+		{
+			testTree.insert("key" + (i % 50), i);
+		}
+		BPTree<String, Integer> snapshot = testTree.snapshot();
+		List<Integer> all = snapshot.rangeSearch(null, true, null, true);
+		List<Integer> descending = new ArrayList<Integer>();
+		snapshot.descendingIterator(null, true, null, true).forEachRemaining(descending::add);
+		
+		// rebalance and split shared nodes all over the tree
+		for (int i = 0; i < 200; i += 2)
+		{
+			assertTrue(testTree.remove("key" + (i % 50), i));
+		}
+		for (int i = 200; i < 400; i++)
+		{
+			testTree.insert("key" + (i % 70), i);
+		}
+		assertEquals(all, snapshot.rangeSearch(null, true, null, true));
+		List<Integer> iterated = new ArrayList<Integer>();
+		snapshot.rangeIteratorBy("key0", Comparison.GreaterThanOrEqual).forEachRemaining(iterated::add);
+		assertEquals(all, iterated);
+		iterated.clear();
+		snapshot.descendingIterator(null, true, null, true).forEachRemaining(iterated::add);
+		assertEquals(descending, iterated);
+		assertEquals(200, snapshot.size());
+		assertEquals(300, testTree.size());
+		for (int i = 0; i < all.size(); i++)
+		{
+			assertEquals(all.get(i), snapshot.select(i));
+		}
+		try
+		{
+			snapshot.insert("key1", 1);
+			fail("Snapshots can't be changed");
+		}
+		catch (UnsupportedOperationException e) { }
+	}
+	
+	@Test
+	public void test64FoodDataSnapshotReadsItsOwnRows() {
+		FoodData testData = new FoodData();
+		testData.loadFoodItems(largeItemListPath);
+		FoodData snapshot = testData.snapshot();
+		DoubleBPTree<FoodItem> index = snapshot.getIndex("protein");
+		List<FoodItem> all = index.rangeSearch(Double.NEGATIVE_INFINITY, true, Double.POSITIVE_INFINITY, true);
+		List<FoodItem> range = index.rangeSearch(1, true, 10, false);
+		List<FoodItem> descending = new ArrayList<FoodItem>();
+		index.descendingIterator(Double.NEGATIVE_INFINITY, true, Double.POSITIVE_INFINITY, true).forEachRemaining(descending::add);
+		assertFalse(all.contains(null));
+		
+		// release rows the snapshot still holds, move one between keys and add a new row
+		List<FoodItem> items = testData.getAllFoodItems();
+		FoodItem removed = all.get(0);
+		assertTrue(testData.removeFoodItem(removed));
+		assertTrue(testData.removeFoodItem(range.get(0)));
+		testData.updateNutrient(items.get(5), "protein", 1000);
+		FoodItem added = new FoodItem("snap", "Snapshot Item");
+		added.addNutrient("protein", 5);
+		testData.addFoodItem(added);
+		assertFalse(testData.getIndex("protein").rangeSearch(Double.NEGATIVE_INFINITY, true, Double.POSITIVE_INFINITY, true).contains(removed));
+		
+		// the snapshot still reads the values it was taken with
+		assertEquals(all, index.rangeSearch(Double.NEGATIVE_INFINITY, true, Double.POSITIVE_INFINITY, true));
+		assertEquals(range, index.rangeSearch(1, true, 10, false));
+		List<FoodItem> iterated = new ArrayList<FoodItem>();
+		index.forEach(1, true, 10, false, iterated::add);
+		assertEquals(range, iterated);
+		iterated.clear();
+		index.rangeIterator(Double.NEGATIVE_INFINITY, true, Double.POSITIVE_INFINITY, true).forEachRemaining(iterated::add);
+		assertEquals(all, iterated);
+		iterated.clear();
+		index.descendingIterator(Double.NEGATIVE_INFINITY, true, Double.POSITIVE_INFINITY, true).forEachRemaining(iterated::add);
+		assertEquals(descending, iterated);
+		for (int i = 0; i < all.size(); i++)
+		{
+			assertSame(all.get(i), index.select(i));
+		}
+	}
+	
+	@Test
+	public void test65ConcurrentThroughputAgainstGlobalLock() throws InterruptedException {
+		// the same mixed workload, split over more and more threads - each tree gets
+		// its best of three runs, so one slow run doesn't decide the comparison
+		int totalOps = 64000;
+		for (int threads = 1; threads <= 32; threads *= 2)
+		{
+			double locked = 0;
+			double concurrent = 0;
+			for (int run = 0; run < 3; run++)
+			{
+				locked = Math.max(locked, throughput(new BPTree<Integer, Integer>(16), true, threads, totalOps / threads));
+				concurrent = Math.max(concurrent, throughput(new ConcurrentBPTree<Integer, Integer>(16), false, threads, totalOps / threads));
+			}
+			System.out.printf("%2d threads: locked BPTree %8.1f ops/ms, ConcurrentBPTree %8.1f ops/ms%n", threads, locked, concurrent);
+			
+			// loose bound, since how much the latches win by depends on how many cores there are
+			assertTrue(threads + " threads: " + concurrent + " vs " + locked + " ops/ms", concurrent >= locked / 4);
+		}
+	}
+	
+	@Test
+	public void test66PagedTreeBulkLoadMatchesInserts() throws IOException {
+		Random rng = new Random(66);
+		double[] keys = new double[5000];
+		int[] values = new int[5000];
+		PagedBPTree expectedTree = new PagedBPTree(new OffHeapPageStore(), 8);
+		for (int i = 0; i < keys.length; i++)
+		{
+			// sorted by key and then value, with long runs of duplicates
+			keys[i] = i / 7 / 4.0;
+			values[i] = rng.nextInt(1000) + i * 1000;
+			expectedTree.insert(keys[i], values[i]);
+		}
+		
+		File file = File.createTempFile("bulktree", ".idx");
+		file.delete();
+		file.deleteOnExit();
+		PagedBPTree testTree = new PagedBPTree(file.getPath(), 8);
+		testTree.bulkLoad(keys, values, 0.75);
+		testTree.close();
+		testTree = new PagedBPTree(file.getPath(), 8);
+		assertEquals(keys.length, testTree.size());
+		
+		// still a working tree after more inserts and removes split and empty its pages
+		for (int i = 0; i < 2000; i++)
+		{
+			double key = rng.nextInt(800) / 4.0;
+			testTree.insert(key, -i);
+			expectedTree.insert(key, -i);
+			int victim = rng.nextInt(keys.length);
+			assertEquals(expectedTree.remove(keys[victim], values[victim]), testTree.remove(keys[victim], values[victim]));
+		}
+		assertEquals(expectedTree.size(), testTree.size());
+		for (double key = -1; key <= 200; key += 7.25)
+		{
+			for (String comparator: Constants.Comparators)
+			{
+				assertEquals(expectedTree.rangeSearch(key, comparator), testTree.rangeSearch(key, comparator));
+			}
+		}
+		for (int i = 0; i < testTree.size(); i += 101)
+		{
+			assertEquals(expectedTree.select(i), testTree.select(i));
+		}
+		testTree.close();
+		
+		try
+		{
+			expectedTree.bulkLoad(keys, values, 0.75);
+			fail("Bulk loaded a tree that isn't empty");
+		}
+		catch (IllegalArgumentException e) { }
+		try
+		{
+			new PagedBPTree(new OffHeapPageStore(), 8).bulkLoad(new double[] { 2, 1 }, new int[] { 0, 0 }, 1);
+			fail("Bulk loaded entries out of order");
+		}
+		catch (IllegalArgumentException e) { }
+		expectedTree.close();
+	}
+	
+	/**
+	 * Get the ids of food items, in order
+	 * 
+	 * @param items - food items
+	 * @return their ids
+	 */
+	private static List<String> ids(List<FoodItem> items) {
+		return items.stream().map(FoodItem::getID).collect(Collectors.toList());
+	}
+	
+	/**
+	 * Check each nutrient's statistics against the loaded food items
+	 * 
+	 * @param testData - data to check
+	 */
+	private static void checkStatistics(FoodData testData) {
+		for (Constants.Nutrient nutrient: Constants.Nutrient.values())
+		{
+			int count = 0;
+			int missing = 0;
+			int zeros = 0;
+			HashSet<Double> distinct = new HashSet<Double>();
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for (FoodItem nxt: testData.getAllFoodItems())
+			{
+				if (!nxt.hasNutrient(nutrient))
+				{
+					missing++;
+					continue;
+				}
+				double amt = nxt.getNutrientValue(nutrient);
+				count++;
+				zeros += amt == 0 ? 1 : 0;
+				distinct.add(amt);
+				min = Math.min(min, amt);
+				max = Math.max(max, amt);
+			}
+			
+			NutrientStatistics stats = testData.getStatistics(nutrient);
+			assertEquals(count, stats.getCount());
+			assertEquals(missing, stats.getMissingCount());
+			assertEquals(zeros, stats.getZeroCount());
+			assertEquals(distinct.size(), stats.getDistinctCount());
+			assertEquals(min, stats.getMin(), 0);
+			assertEquals(max, stats.getMax(), 0);
+			int inBuckets = 0;
+			double[] bounds = stats.getBucketBounds();
+			for (int i = 0; i < bounds.length; i++)
+			{
+				inBuckets += stats.getBucketCounts()[i];
+				assertTrue(i == 0 || bounds[i - 1] < bounds[i]);
+			}
+			assertEquals(count, inBuckets);
+		}
+	}
+	
+	/**
+	 * Run a repeatable mix of range searches and inserts on a tree from several
+	 * threads at once. Each thread draws its own operations from its own seed.
+	 * 
+	 * @param testTree - tree to run on, already empty
+	 * @param globalLock - true to hold one lock on the tree for each operation
+	 * @param threads - number of threads to run
+	 * @param opsPerThread - number of operations each thread runs
+	 * @return operations per millisecond over all the threads
+	 * @throws InterruptedException if interrupted waiting for the threads
+	 */
+	private static double throughput(BPTreeADT<Integer, Integer> testTree, boolean globalLock, int threads, int opsPerThread) 
+			throws InterruptedException {
+		int keys = 20000;
+		for (int i = 0; i < keys; i++)
+		{
+			testTree.insert(i, i);
+		}
+		
+		List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int t = 0; t < threads; t++)
+		{
+			Random rnd = new Random(65 + t);
+			int firstValue = keys + t * opsPerThread;
+			workers.add(new Thread(() ->
+				{
+					try
+					{
+						for (int i = 0; i < opsPerThread; i++)
+						{
+							int key = rnd.nextInt(keys);
+							// three range searches to every insert
+							if (rnd.nextInt(4) == 0)
+							{
+								if (globalLock)
+								{
+									synchronized (testTree)
+									{
+										testTree.insert(key, firstValue + i);
+									}
+								}
+								else
+								{
+									testTree.insert(key, firstValue + i);
+								}
+							}
+							else
+							{
+								List<Integer> found;
+								if (globalLock)
+								{
+									synchronized (testTree)
+									{
+										found = testTree.rangeSearch(key, true, key + 20, false);
+									}
+								}
+								else
+								{
+									found = testTree.rangeSearch(key, true, key + 20, false);
+								}
+								assertTrue(found.size() >= Math.min(20, keys - key));
+							}
+						}
+					}
+					catch (Throwable e)
+					{
+						failures.add(e);
+					}
+				}));
+		}
+		
+		long start = System.nanoTime();
+		for (Thread nxt: workers)
+		{
+			nxt.start();
+		}
+		for (Thread nxt: workers)
+		{
+			nxt.join();
+		}
+		long elapsed = Math.max(1, System.nanoTime() - start);
+		assertTrue(failures.toString(), failures.isEmpty());
+		return threads * opsPerThread / (elapsed / 1e6);
+	}
+	
+	/**
+	 * Collect a bitmap's row ids, checking they come out in increasing order
+	 * 
+	 * @param bitmap - bitmap to collect
+	 * @return row ids in the bitmap
+	 */
+	private static TreeSet<Integer> toSet(RowBitmap bitmap) {
+		List<Integer> rowIds = new ArrayList<Integer>();
+		bitmap.forEach(rowIds::add);
+		for (int i = 1; i < rowIds.size(); i++)
+		{
+			assertTrue(rowIds.get(i - 1) < rowIds.get(i));
+		}
+		assertEquals(rowIds.size(), bitmap.cardinality());
+		return new TreeSet<Integer>(rowIds);
+	}
+	
+	/**
+	 * Integer key that counts how many times keys are compared
+	 */
+	private static class CountingKey implements Comparable<CountingKey> {
+		
+		// comparisons made since this was last reset
+		static long comparisons;
+		
+		private final int key;
+		
+		CountingKey(int key) {
+			this.key = key;
+		}
+		
+		@Override
+		public int compareTo(CountingKey other) {
+			comparisons++;
+			return Integer.compare(this.key, other.key);
+		}
+	}
 }
@@ -0,0 +1,1205 @@
+/**
+ * Filename:   ConcurrentBPTree.java
+ * Project:    Group Project
+ * Authors:    sapan (sapan@cs.wisc.edu), Soua Lor, Maria Helgeson, Daniel Walter, & Will Hickman
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400 - Lecutre 46373
+ *
+ * Due Date:   12/16/18
+ * Version:    1.0
+ *
+ * Credits:    Leis et al., "The ART of Practical Synchronization", for optimistic lock coupling;
+ *             Lehman & Yao, for scanning along right-links while nodes split
+ *
+ * Bugs:       No known bugs
+ */
+
+package application;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+import application.Constants.Comparison;
+
+/**
+ * B+ tree that many threads can search and change at the same time, without one
+ * lock around the whole tree.
+ *
+ * Each node has its own versioned latch (a StampedLock). Readers never lock: they
+ * note a node's version, read it, and check the version again afterwards, starting
+ * over if a writer got in between (optimistic lock coupling). Writers walk down the
+ * same way and only write lock the leaf they change, plus its parent when the leaf
+ * has to split. Full nodes are split on the way down, so a split never has to go
+ * back up the tree.
+ *
+ * Range searches read one leaf at a time and follow the next links between leaves,
+ * so a leaf that splits while a search is running is still read correctly: the keys
+ * that moved are in the new sibling, which is linked in right after it. A search
+ * sees every value that was in the tree for the whole search, and may or may not
+ * see values inserted or removed while it runs.
+ *
+ * To keep writers from contending on the root, this tree doesn't keep the value
+ * counts that BPTree does, so count, rank and select walk the leaves. Nodes are
+ * never merged after removes either, as is usual for concurrent B+ trees; space
+ * left by removed keys is reused by later inserts into the same range.
+ *
+ * @author sapan (sapan@cs.wisc.edu), Soua Lor, Maria Helgeson, Daniel Walter, & Will Hickman
+ *
+ * @param <K> key - expect a string that is the type of id for each item
+ * @param <V> value - expect a user-defined type that stores all data for a food item
+ */
+public class ConcurrentBPTree<K extends Comparable<K>, V> implements BPTreeADT<K, V> {
+
+    // Root of the tree - replaced (never changed in place) when the root splits
+    private volatile Node root;
+
+    // Branching factor is the number of children nodes
+    // for internal nodes of the tree
+    private int branchingFactor;
+
+    // number of keys a full leaf gives to its new sibling when it splits
+    private int siblingSize;
+
+    // number of values in the tree, kept apart from the nodes so writers don't contend on it
+    private LongAdder numValues = new LongAdder();
+
+    /**
+     * Public constructor
+     *
+     * @param branchingFactor
+     */
+    public ConcurrentBPTree(int branchingFactor) {
+        if (branchingFactor <= 2) {
+            throw new IllegalArgumentException("Illegal branching factor: " + branchingFactor);
+        }
+        this.branchingFactor = branchingFactor;
+        this.siblingSize = (branchingFactor + 1) / 2;	// integer division, so remainder gets dropped
+
+        this.root = new LeafNode();
+    }
+
+    /**
+     * Inserts the key and value in the appropriate nodes in the tree.
+     * Safe to call from any number of threads at once.
+     *
+     * Note: key-value pairs with duplicate keys can be inserted into the tree.
+     *
+     * @param key
+     * @param value
+     * @throws IllegalArgumentException if key is null
+     */
+    @Override
+    public void insert(K key, V value) {
+    	if (key == null)
+    	{
+    		throw new IllegalArgumentException("Illegal key: null");
+    	}
+    	LeafNode leaf = lockLeaf(key, true);
+    	try
+    	{
+    		leaf.insert(key, value);
+    	}
+    	finally
+    	{
+    		leaf.lock.tryUnlockWrite();
+    	}
+    	this.numValues.increment();
+    }
+
+    /**
+     * Removes one value stored under the given key, and the key too if that
+     * was its last value. Values are matched with equals. The leaf is left
+     * as it is even if it ends up empty.
+     *
+     * @param key - key the value is stored under
+     * @param value - value to remove
+     * @return true if the value was found and removed, false otherwise
+     */
+    @Override
+    public boolean remove(K key, V value) {
+    	if (key == null)
+    	{
+    		return false;
+    	}
+    	boolean removed;
+    	LeafNode leaf = lockLeaf(key, false);
+    	try
+    	{
+    		removed = leaf.remove(key, value);
+    	}
+    	finally
+    	{
+    		leaf.lock.tryUnlockWrite();
+    	}
+    	if (removed)
+    	{
+    		this.numValues.decrement();
+    	}
+    	return removed;
+    }
+
+    /**
+     * Moves a value from one key to another. The remove and insert are done
+     * one after the other, so another thread may briefly see the value under
+     * neither key.
+     *
+     * @param oldKey - key the value is stored under now
+     * @param newKey - key the value should be stored under
+     * @param value - value to move
+     * @return true if the value was found and moved, false otherwise
+     */
+    @Override
+    public boolean update(K oldKey, K newKey, V value) {
+    	if (newKey == null || !remove(oldKey, value))
+    	{
+    		return false;
+    	}
+    	insert(newKey, value);
+    	return true;
+    }
+
+    /**
+     * Gets the values that satisfy the given range
+     * search arguments, in key order.
+     *
+     * If key or comparison is null, return empty list.
+     *
+     * @param key to be searched
+     * @param comparison to compare keys against key with
+     * @return list of values that are the result of the
+     * range search; if nothing found, return empty list
+     */
+    @Override
+    public List<V> rangeSearchBy(K key, Comparison comparison) {
+    	if (key == null || comparison == null)
+    	{
+    		return new ArrayList<V>();
+    	}
+    	return rangeSearch(new Range(key, comparison));
+    }
+
+    /**
+     * Gets the values with keys between lo and hi, in key order.
+     * A null bound leaves that side of the range open.
+     *
+     * @param lo - lower bound, or null for no lower bound
+     * @param loInclusive - true if keys equal to lo are in range
+     * @param hi - upper bound, or null for no upper bound
+     * @param hiInclusive - true if keys equal to hi are in range
+     * @return list of values that are the result of the
+     * range search; if nothing found, return empty list
+     */
+    @Override
+    public List<V> rangeSearch(K lo, boolean loInclusive, K hi, boolean hiInclusive) {
+    	return rangeSearch(new Range(lo, loInclusive, hi, hiInclusive));
+    }
+
+    /**
+     * Gets the values in a range, in key order. Gathers the postings leaf by
+     * leaf first, so the list can be made big enough for all of them at once.
+     *
+     * @param range - range of keys to get the values for
+     * @return list of values in range; if nothing found, return empty list
+     */
+    @SuppressWarnings("unchecked")
+	private List<V> rangeSearch(Range range) {
+    	List<Object[]> postings = new ArrayList<Object[]>();
+    	LeafNode leaf = findLeaf(range.lo);
+    	while (leaf != null)
+    	{
+    		leaf = readLeaf(leaf, range, postings);
+    	}
+
+    	int size = 0;
+    	for (Object[] nxt: postings)
+    	{
+    		size += nxt.length;
+    	}
+    	List<V> rtnList = new ArrayList<V>(size);
+    	for (Object[] nxt: postings)
+    	{
+    		for (Object value: nxt)
+    		{
+    			rtnList.add((V) value);
+    		}
+    	}
+    	return rtnList;
+    }
+
+    /**
+     * Gets an iterator over the values that satisfy the given range
+     * search arguments, in key order. Reads one leaf at a time as it
+     * goes, so it can be used while other threads change the tree.
+     *
+     * @param key to be searched
+     * @param comparison to compare keys against key with
+     * @return iterator over the values that are the result of the
+     * range search; empty if key or comparison is null
+     */
+    @Override
+    public Iterator<V> rangeIteratorBy(K key, Comparison comparison) {
+    	if (key == null || comparison == null)
+    	{
+    		return new ArrayList<V>().iterator();
+    	}
+    	return new RangeIterator(new Range(key, comparison));
+    }
+
+    /**
+     * Performs the given action for each value that satisfies the given
+     * range search arguments, in key order. The action is never run while
+     * a node is locked.
+     *
+     * @param key to be searched
+     * @param comparison to compare keys against key with
+     * @param action to perform on each value
+     */
+    @Override
+    public void forEachBy(K key, Comparison comparison, Consumer<? super V> action) {
+    	if (key == null || comparison == null)
+    	{
+    		return;
+    	}
+    	rangeIteratorBy(key, comparison).forEachRemaining(action);
+    }
+
+    /**
+     * Number of values in the tree
+     *
+     * @return number of values
+     */
+    @Override
+    public int size() {
+    	return this.numValues.intValue();
+    }
+
+    /**
+     * Gets the number of values that satisfy the given range search arguments,
+     * by adding up the postings in range leaf by leaf
+     *
+     * @param key to be searched
+     * @param comparison to compare keys against key with
+     * @return number of values that are the result of the range search;
+     * 0 if key or comparison is null
+     */
+    @Override
+    public int countBy(K key, Comparison comparison) {
+    	if (key == null || comparison == null)
+    	{
+    		return 0;
+    	}
+    	return count(new Range(key, comparison));
+    }
+
+    /**
+     * Gets the number of values with keys between lo and hi
+     *
+     * @param lo - lower bound, or null for no lower bound
+     * @param loInclusive - true if keys equal to lo are in range
+     * @param hi - upper bound, or null for no upper bound
+     * @param hiInclusive - true if keys equal to hi are in range
+     * @return number of values that are the result of the range search
+     */
+    @Override
+    public int count(K lo, boolean loInclusive, K hi, boolean hiInclusive) {
+    	return count(new Range(lo, loInclusive, hi, hiInclusive));
+    }
+
+    /**
+     * Gets the number of values in a range
+     *
+     * @param range - range of keys to count the values for
+     * @return number of values in range
+     */
+    private int count(Range range) {
+    	int total = 0;
+    	List<Object[]> postings = new ArrayList<Object[]>();
+    	LeafNode leaf = findLeaf(range.lo);
+    	while (leaf != null)
+    	{
+    		leaf = readLeaf(leaf, range, postings);
+    		for (Object[] nxt: postings)
+    		{
+    			total += nxt.length;
+    		}
+    		postings.clear();
+    	}
+    	return total;
+    }
+
+    /**
+     * Gets the number of values with keys less than the given key
+     *
+     * @param key to be ranked
+     * @return number of values with keys less than key; 0 if key is null
+     */
+    @Override
+    public int rank(K key) {
+    	if (key == null)
+    	{
+    		return 0;
+    	}
+    	return count(new Range(null, true, key, false));
+    }
+
+    /**
+     * Gets the value at the given position in key order, walking the
+     * leaves from the left
+     *
+     * @param rank - position of the value, starting from 0
+     * @return value at that position
+     * @throws IndexOutOfBoundsException if rank is negative or not less than
+     * the number of values in the tree
+     */
+    @Override
+    public V select(int rank) {
+    	if (rank >= 0)
+    	{
+    		int skipped = 0;
+    		Iterator<V> it = new RangeIterator(new Range(null, true, null, true));
+    		while (it.hasNext())
+    		{
+    			V nxt = it.next();
+    			if (skipped++ == rank)
+    			{
+    				return nxt;
+    			}
+    		}
+    	}
+    	throw new IndexOutOfBoundsException("Rank: " + rank + ", Size: " + size());
+    }
+
+    /**
+     * Walk down to the leaf that covers the given key and write lock it. Each
+     * node on the way is read optimistically, and checked again after the next
+     * one down is found, so a split anywhere on the path sends us back to the root.
+     *
+     * @param key - key to look for
+     * @param splitFull - true to split full nodes on the way down, so the leaf has
+     * room for another key and its parent has room for another child
+     * @return write locked leaf - unlock it with leaf.lock.tryUnlockWrite()
+     */
+    private LeafNode lockLeaf(K key, boolean splitFull)
+    {
+    	while (true)
+    	{
+    		LeafNode leaf = tryLockLeaf(key, splitFull);
+    		if (leaf != null)
+    		{
+    			return leaf;
+    		}
+    		// someone else is changing a node we need - let them finish
+    		Thread.yield();
+    	}
+    }
+
+    /**
+     * One attempt at walking down to the leaf that covers the given key and
+     * write locking it
+     *
+     * @param key - key to look for
+     * @param splitFull - true to split full nodes on the way down
+     * @return write locked leaf, or null if a node changed while we were reading
+     * it, or we split a node, and we have to start over
+     */
+    private LeafNode tryLockLeaf(K key, boolean splitFull)
+    {
+    	Node node = this.root;
+    	long stamp = node.lock.tryOptimisticRead();
+    	if (stamp == 0 || node != this.root)
+    	{
+    		return null;
+    	}
+
+    	InternalNode parent = null;
+    	long parentStamp = 0;
+    	int childIdx = 0;
+    	while (true)
+    	{
+    		if (splitFull && node.isFull())
+    		{
+    			splitFull(parent, parentStamp, childIdx, node, stamp);
+    			return null;
+    		}
+    		if (node instanceof ConcurrentBPTree.LeafNode)
+    		{
+    			break;
+    		}
+
+    		InternalNode asInt = (InternalNode) node;
+    		Node child;
+    		try
+    		{
+    			childIdx = asInt.childIndex(key);
+    			child = asInt.children[childIdx];
+    		}
+    		catch (RuntimeException e)
+    		{
+    			// reading a node halfway through a change can go wrong in all sorts of ways
+    			if (node.lock.validate(stamp))
+    			{
+    				throw e;
+    			}
+    			return null;
+    		}
+    		if (!node.lock.validate(stamp))
+    		{
+    			return null;
+    		}
+    		long childStamp = child.lock.tryOptimisticRead();
+    		// the parent has to be checked after the child's version is noted, since a child only splits with its parent locked
+    		if (childStamp == 0 || !node.lock.validate(stamp))
+    		{
+    			return null;
+    		}
+    		parent = asInt;
+    		parentStamp = stamp;
+    		node = child;
+    		stamp = childStamp;
+    	}
+
+    	// if the leaf hasn't changed since we found it, it still covers key
+    	if (node.lock.tryConvertToWriteLock(stamp) == 0)
+    	{
+    		return null;
+    	}
+    	return (LeafNode) node;
+    }
+
+    /**
+     * Splits a full node. Its parent is write locked too, so the new sibling can be
+     * added to it right away - the parent is never full, since it would have been
+     * split on the way down. Gives up if either node changed since it was read.
+     *
+     * @param parent - parent of node, or null if node is the root
+     * @param parentStamp - version of parent when it was read
+     * @param idx - index of node in parent's children
+     * @param node - full node to split
+     * @param stamp - version of node when it was read
+     */
+    private void splitFull(InternalNode parent, long parentStamp, int idx, Node node, long stamp)
+    {
+    	if (parent == null)
+    	{
+    		long writeStamp = node.lock.tryConvertToWriteLock(stamp);
+    		if (writeStamp == 0)
+    		{
+    			return;
+    		}
+    		try
+    		{
+    			// the root is only replaced by whoever holds its lock, so it's still the root
+    			InternalNode newRoot = new InternalNode();
+    			newRoot.children[0] = node;
+    			K separator = node.splitKey();
+    			newRoot.insertChild(0, separator, node.split());
+    			this.root = newRoot;
+    		}
+    		finally
+    		{
+    			node.lock.unlockWrite(writeStamp);
+    		}
+    		return;
+    	}
+
+    	long parentWriteStamp = parent.lock.tryConvertToWriteLock(parentStamp);
+    	if (parentWriteStamp == 0)
+    	{
+    		return;
+    	}
+    	try
+    	{
+    		long writeStamp = node.lock.tryConvertToWriteLock(stamp);
+    		if (writeStamp == 0)
+    		{
+    			return;
+    		}
+    		try
+    		{
+    			K separator = node.splitKey();
+    			parent.insertChild(idx, separator, node.split());
+    		}
+    		finally
+    		{
+    			node.lock.unlockWrite(writeStamp);
+    		}
+    	}
+    	finally
+    	{
+    		parent.lock.unlockWrite(parentWriteStamp);
+    	}
+    }
+
+    /**
+     * Walk down from the root to a leaf at or to the left of the one that covers
+     * the given key. Since leaves only ever split to the right, a leaf that splits
+     * after we find it still leads to the key through its next link.
+     *
+     * @param key - key to look for, or null for the leftmost leaf
+     * @return leaf to start scanning from
+     */
+    private LeafNode findLeaf(K key)
+    {
+    	while (true)
+    	{
+    		LeafNode leaf = tryFindLeaf(key);
+    		if (leaf != null)
+    		{
+    			return leaf;
+    		}
+    		Thread.yield();
+    	}
+    }
+
+    /**
+     * One attempt at walking down from the root to the leaf that covers the given key
+     *
+     * @param key - key to look for, or null for the leftmost leaf
+     * @return leaf, or null if a node changed while we were reading it
+     */
+    private LeafNode tryFindLeaf(K key)
+    {
+    	Node node = this.root;
+    	long stamp = node.lock.tryOptimisticRead();
+    	if (stamp == 0)
+    	{
+    		return null;
+    	}
+    	while (node instanceof ConcurrentBPTree.InternalNode)
+    	{
+    		InternalNode asInt = (InternalNode) node;
+    		Node child;
+    		try
+    		{
+    			child = asInt.children[key == null ? 0 : asInt.childIndex(key)];
+    		}
+    		catch (RuntimeException e)
+    		{
+    			if (node.lock.validate(stamp))
+    			{
+    				throw e;
+    			}
+    			return null;
+    		}
+    		if (!node.lock.validate(stamp))
+    		{
+    			return null;
+    		}
+    		long childStamp = child.lock.tryOptimisticRead();
+    		if (childStamp == 0 || !node.lock.validate(stamp))
+    		{
+    			return null;
+    		}
+    		node = child;
+    		stamp = childStamp;
+    	}
+    	return (LeafNode) node;
+    }
+
+    /**
+     * Reads the postings in range from one leaf, all from the same version of the
+     * leaf. If a writer changes the leaf partway through, whatever was read is
+     * thrown out and the leaf is read again.
+     *
+     * @param leaf - leaf to read
+     * @param range - range of keys to read the postings for
+     * @param postings - where to add the postings in range
+     * @return next leaf to read, or null if the range ends in this leaf
+     */
+    private LeafNode readLeaf(LeafNode leaf, Range range, List<Object[]> postings)
+    {
+    	int start = postings.size();
+    	while (true)
+    	{
+    		long stamp = leaf.lock.tryOptimisticRead();
+    		if (stamp == 0)
+    		{
+    			Thread.yield();
+    			continue;
+    		}
+
+    		boolean ended = false;
+    		LeafNode next = null;
+    		try
+    		{
+    			int n = leaf.numKeys;
+    			for (int i = 0; i < n; i++)
+    			{
+    				K key = leaf.keys[i];
+    				if (range.isBelowLo(key))
+    				{
+    					continue;
+    				}
+    				if (!range.isBelowHi(key))
+    				{
+    					ended = true;
+    					break;
+    				}
+    				if (!range.isExcluded(key))
+    				{
+    					postings.add(leaf.values[i]);
+    				}
+    			}
+    			next = leaf.next;
+    		}
+    		catch (RuntimeException e)
+    		{
+    			if (leaf.lock.validate(stamp))
+    			{
+    				throw e;
+    			}
+    		}
+
+    		if (leaf.lock.validate(stamp))
+    		{
+    			return ended ? null : next;
+    		}
+    		postings.subList(start, postings.size()).clear();
+    	}
+    }
+
+    /*
+     * String representation of the tree, for testing - only meaningful
+     * while no other threads are changing the tree
+     */
+    @Override
+    public String toString() {
+        Queue<List<Node>> queue = new LinkedList<List<Node>>();
+        queue.add(Arrays.asList(root));
+        StringBuilder sb = new StringBuilder();
+        while (!queue.isEmpty()) {
+            Queue<List<Node>> nextQueue = new LinkedList<List<Node>>();
+            while (!queue.isEmpty()) {
+                List<Node> nodes = queue.remove();
+                sb.append('{');
+                Iterator<Node> it = nodes.iterator();
+                while (it.hasNext()) {
+                    Node node = it.next();
+                    sb.append(node.toString());
+                    if (it.hasNext())
+                        sb.append(", ");
+                    if (node instanceof ConcurrentBPTree.InternalNode)
+                    {
+                    	InternalNode asInt = (InternalNode) node;
+                    	nextQueue.add(Arrays.asList(asInt.children).subList(0, asInt.numKeys + 1));
+                    }
+                }
+                sb.append('}');
+                if (!queue.isEmpty())
+                    sb.append(", ");
+                else {
+                    sb.append('\n');
+                }
+            }
+            queue = nextQueue;
+        }
+        return sb.toString();
+    }
+
+
+    /**
+     * This abstract class represents any type of node in the tree
+     * This class is a super class of the LeafNode and InternalNode types.
+     *
+     * Fields are only changed while the node's write lock is held. They are
+     * read without any lock, so a reader has to check the node's version
+     * afterwards before trusting what it read.
+     */
+    private abstract class Node {
+
+    	// versioned latch - writers hold the write lock, readers validate an optimistic stamp
+    	final StampedLock lock = new StampedLock();
+
+        // sorted keys of this node - only the first numKeys slots are in use
+        K[] keys;
+
+        // number of keys currently stored in keys
+        int numKeys;
+
+        /**
+         * Package constructor
+         *
+         * @param capacity - number of key slots to allocate
+         */
+        @SuppressWarnings("unchecked")
+		Node(int capacity) {
+            this.keys = (K[]) new Comparable<?>[capacity];
+        }
+
+        /**
+         * Binary search over the keys in use in this node
+         *
+         * @param key - key to look for
+         * @return index of the key, if found; otherwise (-(insertion point) - 1)
+         */
+        int indexOf(K key)
+        {
+        	int low = 0;
+        	int high = this.numKeys - 1;
+        	while (low <= high)
+        	{
+        		int mid = (low + high) >>> 1;
+        		int cmp = this.keys[mid].compareTo(key);
+        		if (cmp < 0)
+        		{
+        			low = mid + 1;
+        		}
+        		else if (cmp > 0)
+        		{
+        			high = mid - 1;
+        		}
+        		else
+        		{
+        			return mid;
+        		}
+        	}
+        	return -(low + 1);
+        }
+
+        /**
+         * tell parent whether you have to split before anything more is added
+         * @return true if full, false otherwise
+         */
+        abstract boolean isFull();
+
+        /**
+         * Key that goes to the parent when this node splits - must be
+         * called before split
+         * @return separator between this node and its new sibling
+         */
+        abstract K splitKey();
+
+        /**
+         * Splits node and returns the new sibling, which takes the upper half
+         * of the keys and goes to the right of this node
+         *
+         * @return new sibling Node
+         */
+        abstract Node split();
+
+        /**
+         * String representation of node's keys
+         * @return String representation of node's keys
+         */
+        public String toString() {
+            return Arrays.asList(this.keys).subList(0, this.numKeys).toString();
+        }
+
+    } // End of abstract class Node
+
+    /**
+     * This class represents an internal node of the tree.
+     *
+     * children[i] holds the keys that are >= keys[i - 1] and < keys[i],
+     * so an internal node with numKeys keys has numKeys + 1 children.
+     */
+    private class InternalNode extends Node {
+
+    	// child nodes, parallel to keys but with one extra slot at the front for the least child
+        Node[] children;
+
+        /**
+         * Package constructor
+         */
+        @SuppressWarnings("unchecked")
+		InternalNode() {
+            super(branchingFactor - 1);
+            this.children = (Node[]) Array.newInstance(Node.class, branchingFactor);
+        }
+
+        /**
+         * Index of the child whose sub-tree would hold the given key
+         *
+         * @param key
+         * @return index into children
+         */
+        int childIndex(K key)
+        {
+        	// an exact match belongs to the child to the right of the key
+        	int idx = indexOf(key);
+        	return idx >= 0 ? idx + 1 : -idx - 1;
+        }
+
+        /**
+         * Adds a new child to the right of the given child index, with key as its separator
+         *
+         * @param idx - index of the child the new child is being added after
+         * @param key - separator key for the new child
+         * @param child - the new child
+         */
+        void insertChild(int idx, K key, Node child)
+        {
+        	System.arraycopy(this.keys, idx, this.keys, idx + 1, this.numKeys - idx);
+        	System.arraycopy(this.children, idx + 1, this.children, idx + 2, this.numKeys - idx);
+        	this.keys[idx] = key;
+        	this.children[idx + 1] = child;
+        	this.numKeys++;
+        }
+
+        /**
+         * Full once there are branchingFactor children
+         * @return true if full, false otherwise
+         */
+        boolean isFull()
+        {
+        	return this.numKeys + 1 >= branchingFactor;
+        }
+
+        /**
+         * The middle key moves up to the parent
+         * @return separator between this node and its new sibling
+         */
+        K splitKey()
+        {
+        	return this.keys[this.numKeys / 2];
+        }
+
+        /**
+         * Splits node and returns the new sibling created from the split.
+         * The key between the two halves moves up to the parent.
+         *
+         * @return new sibling Node
+         */
+        Node split() {
+        	InternalNode newSibling = new InternalNode();
+        	int mid = this.numKeys / 2;
+        	int moved = this.numKeys - mid - 1;
+        	System.arraycopy(this.keys, mid + 1, newSibling.keys, 0, moved);
+        	System.arraycopy(this.children, mid + 1, newSibling.children, 0, moved + 1);
+        	newSibling.numKeys = moved;
+
+        	Arrays.fill(this.keys, mid, this.numKeys, null);
+        	Arrays.fill(this.children, mid + 1, this.numKeys + 1, null);
+        	this.numKeys = mid;
+            return newSibling;
+        }
+
+    } // End of class InternalNode
+
+
+    /**
+     * This class represents a leaf node of the tree.
+     *
+     * Postings are arrays that are replaced rather than changed, so a reader
+     * that got one from a valid version of the leaf can use it after the
+     * leaf has moved on.
+     */
+    private class LeafNode extends Node {
+
+        // all records that match each key, parallel to keys
+    	Object[][] values;
+
+        // Reference to the next leaf node - leaves are only ever linked in right after a leaf that splits
+        LeafNode next;
+
+        /**
+         * Package constructor
+         */
+		LeafNode() {
+            super(branchingFactor);
+            this.values = new Object[branchingFactor][];
+        }
+
+        /**
+         * Full once there are branchingFactor keys
+         * @return true if full, false otherwise
+         */
+        boolean isFull()
+        {
+        	return this.numKeys >= branchingFactor;
+        }
+
+        /**
+         * The first key of the new sibling goes to the parent
+         * @return separator between this node and its new sibling
+         */
+        K splitKey()
+        {
+        	return this.keys[this.numKeys - siblingSize];
+        }
+
+        /**
+         * Inserts key and value in this node - caller makes sure there's room
+         *
+         * @param key
+         * @param value
+         */
+        void insert(K key, V value) {
+        	int idx = indexOf(key);
+        	if (idx < 0)
+        	{
+        		idx = -idx - 1;
+        		System.arraycopy(this.keys, idx, this.keys, idx + 1, this.numKeys - idx);
+        		System.arraycopy(this.values, idx, this.values, idx + 1, this.numKeys - idx);
+        		this.keys[idx] = key;
+        		this.values[idx] = new Object[] { value };
+        		this.numKeys++;
+        	}
+        	else
+        	{
+        		Object[] postings = Arrays.copyOf(this.values[idx], this.values[idx].length + 1);
+        		postings[postings.length - 1] = value;
+        		this.values[idx] = postings;
+        	}
+        }
+
+        /**
+         * Removes one value stored under the given key from this node, and the
+         * key too if it has no values left
+         *
+         * @param key
+         * @param value
+         * @return true if the value was found and removed, false otherwise
+         */
+        boolean remove(K key, V value) {
+        	int idx = indexOf(key);
+        	if (idx < 0)
+        	{
+        		return false;
+        	}
+        	Object[] postings = this.values[idx];
+        	int found = 0;
+        	while (found < postings.length && !(value == null ? postings[found] == null : value.equals(postings[found])))
+        	{
+        		found++;
+        	}
+        	if (found == postings.length)
+        	{
+        		return false;
+        	}
+
+        	if (postings.length > 1)
+        	{
+        		Object[] remaining = new Object[postings.length - 1];
+        		System.arraycopy(postings, 0, remaining, 0, found);
+        		System.arraycopy(postings, found + 1, remaining, found, remaining.length - found);
+        		this.values[idx] = remaining;
+        	}
+        	else
+        	{
+        		System.arraycopy(this.keys, idx + 1, this.keys, idx, this.numKeys - idx - 1);
+        		System.arraycopy(this.values, idx + 1, this.values, idx, this.numKeys - idx - 1);
+        		this.numKeys--;
+        		this.keys[this.numKeys] = null;
+        		this.values[this.numKeys] = null;
+        	}
+        	return true;
+        }
+
+        /**
+         * Splits node and returns the new sibling created from the split. The new
+         * sibling takes the upper keys and is linked in right after this node.
+         *
+         * @return new sibling Node
+         */
+        Node split() {
+        	LeafNode newSibling = new LeafNode();
+        	int kept = this.numKeys - siblingSize;
+        	System.arraycopy(this.keys, kept, newSibling.keys, 0, siblingSize);
+        	System.arraycopy(this.values, kept, newSibling.values, 0, siblingSize);
+        	newSibling.numKeys = siblingSize;
+        	newSibling.next = this.next;
+
+        	Arrays.fill(this.keys, kept, this.numKeys, null);
+        	Arrays.fill(this.values, kept, this.numKeys, null);
+        	this.numKeys = kept;
+        	this.next = newSibling;
+            return newSibling;
+        }
+
+    } // End of class LeafNode
+
+    /**
+     * Range of keys to search, worked out once from the search arguments
+     *
+     * @see BPTree.Range
+     */
+    private class Range {
+
+    	// lower bound - null for no lower bound
+    	K lo;
+    	boolean loInclusive;
+
+    	// upper bound - null for no upper bound
+    	K hi;
+    	boolean hiInclusive;
+
+    	// key to skip over - null unless this is a != search
+    	K excluded;
+
+    	/**
+    	 * Package constructor for a range between two bounds
+    	 *
+    	 * @param lo - lower bound, or null for no lower bound
+    	 * @param loInclusive - true if keys equal to lo are in range
+    	 * @param hi - upper bound, or null for no upper bound
+    	 * @param hiInclusive - true if keys equal to hi are in range
+    	 */
+    	Range(K lo, boolean loInclusive, K hi, boolean hiInclusive)
+    	{
+    		this.lo = lo;
+    		this.loInclusive = loInclusive;
+    		this.hi = hi;
+    		this.hiInclusive = hiInclusive;
+    	}
+
+    	/**
+    	 * Package constructor for the range matching a comparison with a key
+    	 *
+    	 * @param key to be searched
+    	 * @param comparison to compare keys against key with
+    	 */
+    	Range(K key, Comparison comparison)
+    	{
+    		switch (comparison)
+    		{
+    			case LessThan:
+    				this.hi = key;
+    				break;
+    			case LessThanOrEqual:
+    				this.hi = key;
+    				this.hiInclusive = true;
+    				break;
+    			case EqualTo:
+    				this.lo = key;
+    				this.loInclusive = true;
+    				this.hi = key;
+    				this.hiInclusive = true;
+    				break;
+    			case NotEqualTo:
+    				this.excluded = key;
+    				break;
+    			case GreaterThanOrEqual:
+    				this.lo = key;
+    				this.loInclusive = true;
+    				break;
+    			case GreaterThan:
+    				this.lo = key;
+    				break;
+    		}
+    	}
+
+    	/**
+    	 * Check a key against the lower bound
+    	 *
+    	 * @param key - key to check
+    	 * @return true if key is before the lower bound
+    	 */
+    	boolean isBelowLo(K key)
+    	{
+    		if (this.lo == null)
+    		{
+    			return false;
+    		}
+    		int cmp = key.compareTo(this.lo);
+    		return cmp < 0 || (cmp == 0 && !this.loInclusive);
+    	}
+
+    	/**
+    	 * Check a key against the upper bound
+    	 *
+    	 * @param key - key to check
+    	 * @return true if key is not past the upper bound
+    	 */
+    	boolean isBelowHi(K key)
+    	{
+    		if (this.hi == null)
+    		{
+    			return true;
+    		}
+    		int cmp = key.compareTo(this.hi);
+    		return cmp < 0 || (cmp == 0 && this.hiInclusive);
+    	}
+
+    	/**
+    	 * Check whether a key inside the bounds should still be skipped
+    	 *
+    	 * @param key - key to check
+    	 * @return true if this is a != search for key
+    	 */
+    	boolean isExcluded(K key)
+    	{
+    		return this.excluded != null && key.compareTo(this.excluded) == 0;
+    	}
+
+    } // End of class Range
+
+    /**
+     * Iterator over the values in a range of the tree. Reads one leaf's worth
+     * of postings at a time, so it never holds anything locked between calls.
+     */
+    private class RangeIterator implements Iterator<V> {
+
+    	// range of keys we're iterating over
+    	private Range range;
+
+    	// next leaf to read - null once the range is used up
+    	private LeafNode leaf;
+
+    	// postings read from the last leaf, and where we are in them
+    	private List<Object[]> postings = new ArrayList<Object[]>();
+    	private int postingIdx;
+    	private int valueIdx;
+
+    	/**
+    	 * Package constructor - positions the iterator at the start of the range
+    	 *
+    	 * @param range - range of keys to iterate over
+    	 */
+    	RangeIterator(Range range)
+    	{
+    		this.range = range;
+    		this.leaf = findLeaf(range.lo);
+    	}
+
+    	/**
+    	 * Read more leaves until there are postings to return, or the range is used up
+    	 */
+    	private void advance()
+    	{
+    		while (this.postingIdx >= this.postings.size() && this.leaf != null)
+    		{
+    			this.postings.clear();
+    			this.postingIdx = 0;
+    			this.valueIdx = 0;
+    			this.leaf = readLeaf(this.leaf, this.range, this.postings);
+    		}
+    	}
+
+    	@Override
+    	public boolean hasNext()
+    	{
+    		advance();
+    		return this.postingIdx < this.postings.size();
+    	}
+
+    	@SuppressWarnings("unchecked")
+		@Override
+    	public V next()
+    	{
+    		if (!hasNext())
+    		{
+    			throw new NoSuchElementException();
+    		}
+    		Object[] current = this.postings.get(this.postingIdx);
+    		V rtn = (V) current[this.valueIdx++];
+    		if (this.valueIdx == current.length)
+    		{
+    			this.postingIdx++;
+    			this.valueIdx = 0;
+    		}
+    		return rtn;
+    	}
+
+    } // End of class RangeIterator
+
+} // End of class ConcurrentBPTree
@@ -32,8 +32,11 @@ public class Constants {
 	// default path to save food options list to
 	public static final String DefaultSavePath = CurrentDirectory + "\\mySave.csv";
 	
-	// list of comparators used for filtering food based on nutrient values
-	public static final String[] Comparators = new String[] { "<=", "==", ">=" };
+	// list of comparators used for filtering food based on nutrient values - same symbols as the Comparison enum
+	public static final String[] Comparators = new String[] { "<=", "==", ">=", "<", ">", "!=" };
+	
+	// how full to pack each node when bulk loading the nutrient indexes - leaves some room for items added later
+	public static final double IndexFillFactor = 0.9;
 	
 	// hex digits - used for generating hex IDs for user-added food items
 	public static final char[] HexDigits = new char[] { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };	
@@ -48,6 +51,57 @@ public class Constants {
 		UnexpectedEx
 	}
 	
+	// comparisons that can be used in a range search or a nutrient rule, and the symbol for each one
+	public enum Comparison
+	{
+		LessThanOrEqual("<="),
+		EqualTo("=="),
+		GreaterThanOrEqual(">="),
+		LessThan("<"),
+		GreaterThan(">"),
+		NotEqualTo("!=");
+		
+		// symbol used for this comparison in rules and in the UI
+		private final String symbol;
+		
+		Comparison(String symbol)
+		{
+			this.symbol = symbol;
+		}
+		
+		/**
+		 * Symbol used for this comparison in rules and in the UI
+		 * @return symbol, like "<="
+		 */
+		public String getSymbol()
+		{
+			return this.symbol;
+		}
+		
+		/**
+		 * Look up a comparison by its symbol
+		 * @param symbol - symbol like "<=" 
+		 * @return matching comparison, or null if symbol is null or not one we know
+		 */
+		public static Comparison fromSymbol(String symbol)
+		{
+			if (symbol == null)
+			{
+				return null;
+			}
+			switch (symbol)
+			{
+				case "<=": return LessThanOrEqual;
+				case "==": return EqualTo;
+				case ">=": return GreaterThanOrEqual;
+				case "<":  return LessThan;
+				case ">":  return GreaterThan;
+				case "!=": return NotEqualTo;
+				default:   return null;
+			}
+		}
+	}
+	
 	// possible nutrient labels from serialized data on file
 	public enum Nutrient
 	{
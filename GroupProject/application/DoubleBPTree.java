@@ -0,0 +1,1297 @@
+/**
+ * Filename:   DoubleBPTree.java
+ * Project:    Group Project
+ * Authors:    sapan (sapan@cs.wisc.edu), Soua Lor, Maria Helgeson, Daniel Walter, & Will Hickman
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400 - Lecutre 46373
+ *
+ * Due Date:   12/16/18
+ * Version:    1.0
+ *
+ * Credits:    Wikipedia, for a definition of the structure
+ *
+ * Bugs:       No known bugs
+ */
+
+package application;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+import application.Constants.Comparison;
+
+/**
+ * B+ tree with primitive double keys, for the nutrient indexes in FoodData.
+ *
+ * Same structure as BPTree, but keys are stored in double[] arrays and compared
+ * with primitive operators, so inserting and searching with a double never boxes
+ * the key. Everything that doesn't depend on the key type - the nodes, splitting
+ * and rebalancing them, counts, iterators and snapshots - lives in
+ * AbstractBPTree, which both trees extend, so this class only has the searches
+ * and compares that work on primitive keys. The BPTreeADT methods are still
+ * available for callers that only have a Double, and simply unbox it. The primitive versions of insert, remove and
+ * update are named insertDouble, removeDouble and updateDouble, since with a
+ * boxed number for a value, like DoubleBPTree<Integer>, a call with a double key
+ * would match both versions.
+ *
+ * NaN is not a valid key, since it can't be ordered against other keys.
+ *
+ * snapshot() hands out read-only copies of the tree that later changes don't
+ * affect. Nodes are shared with the snapshots rather than copied up front, and
+ * a change copies just the nodes it would otherwise change (path copying).
+ *
+ * A tree given RowIds for its values stores each key's values as a compact,
+ * delta-encoded list of row ids rather than a LinkedList, which matters when
+ * thousands of food items share an amount like 0 grams of fiber. Values are
+ * looked up from their row ids only as they're handed out.
+ *
+ * The nodes themselves always stay on the heap, leaves included. What a leaf
+ * holds on the heap is a double[] of keys and one small byte[] of row ids per
+ * key, not an object per value. A tree kept entirely outside the heap is a
+ * PagedBPTree in an OffHeapPageStore, which has no summaries or snapshots.
+ *
+ * @author sapan (sapan@cs.wisc.edu), Soua Lor, Maria Helgeson, Daniel Walter, & Will Hickman
+ *
+ * @param <V> value - expect a user-defined type that stores all data for a food item
+ */
+public class DoubleBPTree<V> extends AbstractBPTree<double[], V> implements BPTreeADT<Double, V> {
+
+    /**
+     * Public constructor
+     *
+     * @param branchingFactor
+     */
+    public DoubleBPTree(int branchingFactor) {
+        super(branchingFactor, null, null);
+    }
+
+    /**
+     * Public constructor for a tree that keeps a summary of the values under each
+     * of its keys and nodes, so that aggregate can summarize any range of keys
+     * by combining a few summaries instead of visiting every value in the range.
+     *
+     * @param branchingFactor
+     * @param aggregator - how to summarize values
+     */
+    public DoubleBPTree(int branchingFactor, Aggregator<? super V, ?> aggregator) {
+    	super(branchingFactor, aggregator, null);
+    }
+
+    /**
+     * Public constructor for a tree that stores row ids in place of its values,
+     * and optionally keeps summaries like the constructor above. Each key's
+     * values come back in order of row id, rather than the order they were
+     * inserted.
+     *
+     * @param branchingFactor
+     * @param aggregator - how to summarize values, or null to not keep summaries
+     * @param rowIds - row ids of the values, which every value inserted must have
+     */
+    public DoubleBPTree(int branchingFactor, Aggregator<? super V, ?> aggregator, RowIds<V> rowIds) {
+    	super(branchingFactor, aggregator, rowIds);
+    }
+
+    /**
+     * Private constructor for a snapshot, which shares all of its nodes with the source tree
+     *
+     * @param source - tree to take the snapshot of
+     * @param rowIds - row ids for the snapshot to look up its values with
+     */
+    private DoubleBPTree(DoubleBPTree<V> source, RowIds<V> rowIds) {
+    	super(source, rowIds);
+    }
+
+    /**
+     * Gets a read-only copy of the tree as it is now, which later changes to
+     * this tree don't show up in. Nothing is copied up front: the snapshot
+     * shares every node with this tree, and this tree copies a node before
+     * changing one that it shares. So a change after a snapshot copies the
+     * nodes on the path down to its key, plus a sibling when it rebalances,
+     * and a snapshot costs nothing until then.
+     *
+     * A snapshot can be searched from another thread while this tree is
+     * changed, as long as the snapshot is taken while no change is under way.
+     *
+     * @return snapshot of the tree - changing it throws UnsupportedOperationException
+     */
+    public DoubleBPTree<V> snapshot() {
+    	return snapshot(this.rowIds);
+    }
+
+    /**
+     * Gets a read-only copy of the tree as it is now, like snapshot(), which
+     * looks up its values from the given row ids rather than this tree's. Used
+     * when the row ids have a snapshot of their own, taken at the same time,
+     * so that values changed or let go of later still come back as they were.
+     *
+     * @param rowIds - snapshot of the row ids this tree was made with, or null
+     * if the tree doesn't store row ids
+     * @return snapshot of the tree - changing it throws UnsupportedOperationException
+     * @see DoubleBPTree#snapshot()
+     */
+    public DoubleBPTree<V> snapshot(RowIds<V> rowIds) {
+    	if (this.isSnapshot)
+    	{
+    		return this;
+    	}
+    	DoubleBPTree<V> snapshot = new DoubleBPTree<V>(this, rowIds);
+    	// every node there is now is shared with the snapshot
+    	this.version++;
+    	return snapshot;
+    }
+
+    /**
+     * Inserts the key and value in the appropriate nodes in the tree
+     *
+     * @param key
+     * @param value
+     * @see DoubleBPTree#insertDouble(double, Object)
+     */
+    @Override
+    public void insert(Double key, V value) {
+    	insertDouble(key.doubleValue(), value);
+    }
+
+    /**
+     * Inserts the key and value in the appropriate nodes in the tree
+     *
+     * Note: key-value pairs with duplicate keys can be inserted into the tree.
+     *
+     * @param key
+     * @param value
+     * @throws IllegalArgumentException if key is NaN
+     */
+    public void insertDouble(double key, V value) {
+    	if (Double.isNaN(key))
+    	{
+    		throw new IllegalArgumentException("Illegal key: " + key);
+    	}
+    	checkWritable();
+
+    	this.root = writable(this.root);
+    	insert(this.root, key, value);
+    	// special case of the root being too full, in which case it splits and the tree grows a level
+    	splitRoot();
+    }
+
+    /**
+     * Removes one value stored under the given key
+     *
+     * @param key
+     * @param value
+     * @return true if the value was found and removed, false otherwise
+     * @see DoubleBPTree#removeDouble(double, Object)
+     */
+    @Override
+    public boolean remove(Double key, V value) {
+    	if (key == null)
+    	{
+    		return false;
+    	}
+    	return removeDouble(key.doubleValue(), value);
+    }
+
+    /**
+     * Removes one value stored under the given key. If that was the last value
+     * for the key, the key is removed too, and the tree rebalances itself on the
+     * way back up by borrowing keys from or merging with sibling nodes.
+     *
+     * Values are matched with equals.
+     *
+     * @param key - key the value is stored under
+     * @param value - value to remove
+     * @return true if the value was found and removed, false otherwise
+     */
+    public boolean removeDouble(double key, V value) {
+    	checkWritable();
+    	if (Double.isNaN(key))
+    	{
+    		return false;
+    	}
+    	LeafNode leaf = findLeaf(key);
+    	if (leaf.version != this.version && !leaf.contains(indexOf(leaf, key), value))
+    	{
+    		// the path down to the leaf is shared with a snapshot, so only copy it if there's something to remove
+    		return false;
+    	}
+    	this.root = writable(this.root);
+    	boolean removed = remove(this.root, key, value);
+
+    	// if the root is down to a single child, that child becomes the new root
+    	collapseRoot();
+    	return removed;
+    }
+
+    /**
+     * Moves a value from one key to another
+     *
+     * @param oldKey
+     * @param newKey
+     * @param value
+     * @return true if the value was found and moved, false otherwise
+     * @see DoubleBPTree#updateDouble(double, double, Object)
+     */
+    @Override
+    public boolean update(Double oldKey, Double newKey, V value) {
+    	if (oldKey == null || newKey == null)
+    	{
+    		return false;
+    	}
+    	return updateDouble(oldKey.doubleValue(), newKey.doubleValue(), value);
+    }
+
+    /**
+     * Moves a value from one key to another, like when the amount of a
+     * nutrient changes for a food item
+     *
+     * @param oldKey - key the value is stored under now
+     * @param newKey - key the value should be stored under
+     * @param value - value to move
+     * @return true if the value was found and moved, false if it wasn't
+     * found under oldKey or newKey is NaN (in which case nothing changes)
+     */
+    public boolean updateDouble(double oldKey, double newKey, V value) {
+    	checkWritable();
+    	if (Double.isNaN(newKey) || !removeDouble(oldKey, value))
+    	{
+    		return false;
+    	}
+    	insertDouble(newKey, value);
+    	return true;
+    }
+
+    /**
+     * Gets the values that satisfy the given range
+     * search arguments.
+     *
+     * @param key to be searched
+     * @param comparison to compare keys against key with
+     * @return list of values that are the result of the
+     * range search; if nothing found, return empty list
+     * @see DoubleBPTree#rangeSearchBy(double, Comparison)
+     */
+    @Override
+    public List<V> rangeSearchBy(Double key, Comparison comparison) {
+    	if (key == null)
+        {
+        	return new ArrayList<V>();
+        }
+    	return rangeSearchBy(key.doubleValue(), comparison);
+    }
+
+    /**
+     * Gets the values that satisfy the given range
+     * search arguments.
+     *
+     * Value of comparator can be one of these:
+     * "<=", "==", ">=", "<", ">", "!="
+     *
+     * @param key to be searched
+     * @param comparator is a string
+     * @return list of values that are the result of the
+     * range search; if nothing found, return empty list
+     * @see DoubleBPTree#rangeSearchBy(double, Comparison)
+     */
+    public List<V> rangeSearch(double key, String comparator) {
+    	return rangeSearchBy(key, Comparison.fromSymbol(comparator));
+    }
+
+    /**
+     * Gets the values that satisfy the given range
+     * search arguments.
+     *
+     * Strict comparisons and != are handled in the same single
+     * walk along the leaves as the inclusive ones.
+     *
+     * If key is NaN or comparison is null, return empty list.
+     *
+     * @param key to be searched
+     * @param comparison to compare keys against key with
+     * @return list of values that are the result of the
+     * range search; if nothing found, return empty list
+     */
+    public List<V> rangeSearchBy(double key, Comparison comparison) {
+    	if (Double.isNaN(key) || comparison == null)
+        {
+        	return new ArrayList<V>();
+        }
+    	return rangeSearch(new Range(key, comparison));
+    }
+
+    /**
+     * Gets the values with keys between lo and hi, in key order.
+     * A null bound leaves that side of the range open.
+     *
+     * @param lo - lower bound, or null for no lower bound
+     * @param loInclusive - true if keys equal to lo are in range
+     * @param hi - upper bound, or null for no upper bound
+     * @param hiInclusive - true if keys equal to hi are in range
+     * @return list of values that are the result of the
+     * range search; if nothing found, return empty list
+     * @see DoubleBPTree#rangeSearch(double, boolean, double, boolean)
+     */
+    @Override
+    public List<V> rangeSearch(Double lo, boolean loInclusive, Double hi, boolean hiInclusive) {
+    	return rangeSearch(lo == null ? Double.NEGATIVE_INFINITY : lo.doubleValue(), loInclusive || lo == null,
+    			hi == null ? Double.POSITIVE_INFINITY : hi.doubleValue(), hiInclusive || hi == null);
+    }
+
+    /**
+     * Gets the values with keys between lo and hi, in key order.
+     * Descends the tree once to the first key in range, then walks
+     * the leaves until it passes hi.
+     *
+     * Use infinite bounds (inclusive) to leave a side of the range open.
+     * If either bound is NaN, return empty list.
+     *
+     * @param lo - lower bound
+     * @param loInclusive - true if keys equal to lo are in range
+     * @param hi - upper bound
+     * @param hiInclusive - true if keys equal to hi are in range
+     * @return list of values that are the result of the
+     * range search; if nothing found, return empty list
+     */
+    public List<V> rangeSearch(double lo, boolean loInclusive, double hi, boolean hiInclusive) {
+    	if (Double.isNaN(lo) || Double.isNaN(hi))
+    	{
+    		return new ArrayList<V>();
+    	}
+    	return rangeSearch(new Range(lo, loInclusive, hi, hiInclusive));
+    }
+
+    /**
+     * Gets an iterator over the values that satisfy the given range
+     * search arguments, in key order.
+     *
+     * @param key to be searched
+     * @param comparison to compare keys against key with
+     * @return iterator over the values that are the result of the
+     * range search; empty if the arguments aren't valid
+     * @see DoubleBPTree#rangeIteratorBy(double, Comparison)
+     */
+    @Override
+    public Iterator<V> rangeIteratorBy(Double key, Comparison comparison) {
+    	if (key == null)
+    	{
+    		return Collections.emptyIterator();
+    	}
+    	return rangeIteratorBy(key.doubleValue(), comparison);
+    }
+
+    /**
+     * Gets an iterator over the values that satisfy the given range
+     * search arguments, in key order, walking the leaves as it goes.
+     *
+     * @param key to be searched
+     * @param comparison to compare keys against key with
+     * @return iterator over the values that are the result of the
+     * range search; empty if the arguments aren't valid
+     * @see DoubleBPTree#rangeSearchBy(double, Comparison)
+     */
+    public Iterator<V> rangeIteratorBy(double key, Comparison comparison) {
+    	if (Double.isNaN(key) || comparison == null)
+    	{
+    		return Collections.emptyIterator();
+    	}
+    	return new RangeIterator(new Range(key, comparison));
+    }
+
+    /**
+     * Gets an iterator over the values with keys between lo and hi,
+     * in key order, walking the leaves as it goes
+     *
+     * @param lo - lower bound
+     * @param loInclusive - true if keys equal to lo are in range
+     * @param hi - upper bound
+     * @param hiInclusive - true if keys equal to hi are in range
+     * @return iterator over the values in range; empty if either bound is NaN
+     * @see DoubleBPTree#rangeSearch(double, boolean, double, boolean)
+     */
+    public Iterator<V> rangeIterator(double lo, boolean loInclusive, double hi, boolean hiInclusive) {
+    	if (Double.isNaN(lo) || Double.isNaN(hi))
+    	{
+    		return Collections.emptyIterator();
+    	}
+    	return new RangeIterator(new Range(lo, loInclusive, hi, hiInclusive));
+    }
+
+    /**
+     * Gets an iterator over the values that satisfy the given range
+     * search arguments, from the greatest key down.
+     *
+     * @param key to be searched
+     * @param comparison to compare keys against key with
+     * @return iterator over the values that are the result of the
+     * range search, in reverse order; empty if the arguments aren't valid
+     * @see DoubleBPTree#descendingIteratorBy(double, Comparison)
+     */
+    @Override
+    public Iterator<V> descendingIteratorBy(Double key, Comparison comparison) {
+    	if (key == null)
+    	{
+    		return Collections.emptyIterator();
+    	}
+    	return descendingIteratorBy(key.doubleValue(), comparison);
+    }
+
+    /**
+     * Gets an iterator over the values that satisfy the given range
+     * search arguments, from the greatest key down. Starts at the leaf
+     * holding the top of the range and walks back through the leaves,
+     * so "the items with the most protein" only visits the last few.
+     *
+     * @param key to be searched
+     * @param comparison to compare keys against key with
+     * @return iterator over the values that are the result of the
+     * range search, in reverse order; empty if the arguments aren't valid
+     * @see DoubleBPTree#rangeIteratorBy(double, Comparison)
+     */
+    public Iterator<V> descendingIteratorBy(double key, Comparison comparison) {
+    	if (Double.isNaN(key) || comparison == null)
+    	{
+    		return Collections.emptyIterator();
+    	}
+    	return new DescendingIterator(new Range(key, comparison));
+    }
+
+    /**
+     * Gets an iterator over the values with keys between lo and hi,
+     * from the greatest key down
+     *
+     * @param lo - lower bound, or null for no lower bound
+     * @param loInclusive - true if keys equal to lo are in range
+     * @param hi - upper bound, or null for no upper bound
+     * @param hiInclusive - true if keys equal to hi are in range
+     * @return iterator over the values in range, in reverse order
+     * @see DoubleBPTree#descendingIterator(double, boolean, double, boolean)
+     */
+    @Override
+    public Iterator<V> descendingIterator(Double lo, boolean loInclusive, Double hi, boolean hiInclusive) {
+    	return descendingIterator(lo == null ? Double.NEGATIVE_INFINITY : lo.doubleValue(), loInclusive || lo == null,
+    			hi == null ? Double.POSITIVE_INFINITY : hi.doubleValue(), hiInclusive || hi == null);
+    }
+
+    /**
+     * Gets an iterator over the values with keys between lo and hi,
+     * from the greatest key down
+     *
+     * @param lo - lower bound
+     * @param loInclusive - true if keys equal to lo are in range
+     * @param hi - upper bound
+     * @param hiInclusive - true if keys equal to hi are in range
+     * @return iterator over the values in range, in reverse order;
+     * empty if either bound is NaN
+     * @see DoubleBPTree#descendingIteratorBy(double, Comparison)
+     */
+    public Iterator<V> descendingIterator(double lo, boolean loInclusive, double hi, boolean hiInclusive) {
+    	if (Double.isNaN(lo) || Double.isNaN(hi))
+    	{
+    		return Collections.emptyIterator();
+    	}
+    	return new DescendingIterator(new Range(lo, loInclusive, hi, hiInclusive));
+    }
+
+    /**
+     * Performs the given action for each value that satisfies the given
+     * range search arguments, in key order
+     *
+     * @param key to be searched
+     * @param comparison to compare keys against key with
+     * @param action to perform on each value
+     * @see DoubleBPTree#forEachBy(double, Comparison, Consumer)
+     */
+    @Override
+    public void forEachBy(Double key, Comparison comparison, Consumer<? super V> action) {
+    	if (key != null)
+    	{
+    		forEachBy(key.doubleValue(), comparison, action);
+    	}
+    }
+
+    /**
+     * Performs the given action for each value that satisfies the given
+     * range search arguments, in key order
+     *
+     * @param key to be searched
+     * @param comparator is a string
+     * @param action to perform on each value
+     * @see DoubleBPTree#forEachBy(double, Comparison, Consumer)
+     */
+    public void forEach(double key, String comparator, Consumer<? super V> action) {
+    	forEachBy(key, Comparison.fromSymbol(comparator), action);
+    }
+
+    /**
+     * Performs the given action for each value that satisfies the given
+     * range search arguments, in key order
+     *
+     * @param key to be searched
+     * @param comparison to compare keys against key with
+     * @param action to perform on each value
+     * @see DoubleBPTree#rangeSearchBy(double, Comparison)
+     */
+    public void forEachBy(double key, Comparison comparison, Consumer<? super V> action) {
+    	if (Double.isNaN(key) || comparison == null)
+    	{
+    		return;
+    	}
+    	forEach(new Range(key, comparison), action);
+    }
+
+    /**
+     * Performs the given action for each value with a key between lo and hi,
+     * in key order
+     *
+     * @param lo - lower bound
+     * @param loInclusive - true if keys equal to lo are in range
+     * @param hi - upper bound
+     * @param hiInclusive - true if keys equal to hi are in range
+     * @param action to perform on each value
+     * @see DoubleBPTree#rangeSearch(double, boolean, double, boolean)
+     */
+    public void forEach(double lo, boolean loInclusive, double hi, boolean hiInclusive, Consumer<? super V> action) {
+    	if (Double.isNaN(lo) || Double.isNaN(hi))
+    	{
+    		return;
+    	}
+    	forEach(new Range(lo, loInclusive, hi, hiInclusive), action);
+    }
+
+    /**
+     * Adds the row id of each value with a key between lo and hi to a bitmap.
+     * Row ids are read straight from the postings lists, without looking up
+     * the values they stand for.
+     *
+     * @param lo - lower bound
+     * @param loInclusive - true if keys equal to lo are in range
+     * @param hi - upper bound
+     * @param hiInclusive - true if keys equal to hi are in range
+     * @param rows - bitmap to add the row ids to
+     * @throws IllegalStateException if the tree wasn't made with RowIds
+     */
+    public void addRowIds(double lo, boolean loInclusive, double hi, boolean hiInclusive, RowBitmap rows) {
+    	if (this.rowIds == null)
+    	{
+    		throw new IllegalStateException("Tree doesn't store row ids");
+    	}
+    	if (Double.isNaN(lo) || Double.isNaN(hi))
+    	{
+    		return;
+    	}
+    	Range range = new Range(lo, loInclusive, hi, hiInclusive);
+    	LeafNode leaf = range.startLeaf();
+    	int i = range.startIndex(leaf);
+    	while (leaf != null)
+    	{
+    		for (; i < leaf.numKeys; i++)
+    		{
+    			if (!range.isBelowHi(leaf.keys[i]))
+    			{
+    				return;
+    			}
+    			((Postings<V>) leaf.values[i]).addTo(rows);
+    		}
+    		leaf = nextLeaf(leaf);
+    		i = 0;
+    	}
+    }
+
+    /**
+     * Walks the values with a key between lo and hi, from the lowest key up or
+     * the highest key down, handing the visitor each key and row id until it
+     * asks to stop. Row ids are read straight from the postings lists, without
+     * looking up the values they stand for. Values with the same key come in
+     * order of row id, or reverse order when walking down.
+     *
+     * @param lo - lower bound
+     * @param loInclusive - true if keys equal to lo are in range
+     * @param hi - upper bound
+     * @param hiInclusive - true if keys equal to hi are in range
+     * @param ascending - true to walk from lo up, false from hi down
+     * @param visitor - visitor to hand each key and row id to
+     * @throws IllegalStateException if the tree wasn't made with RowIds
+     */
+    public void scanRowIds(double lo, boolean loInclusive, double hi, boolean hiInclusive, boolean ascending, RowVisitor visitor) {
+    	if (this.rowIds == null)
+    	{
+    		throw new IllegalStateException("Tree doesn't store row ids");
+    	}
+    	if (Double.isNaN(lo) || Double.isNaN(hi))
+    	{
+    		return;
+    	}
+    	Range range = new Range(lo, loInclusive, hi, hiInclusive);
+    	if (ascending)
+    	{
+    		LeafNode leaf = range.startLeaf();
+    		int i = range.startIndex(leaf);
+    		while (leaf != null)
+    		{
+    			for (; i < leaf.numKeys; i++)
+    			{
+    				double key = leaf.keys[i];
+    				if (!range.isBelowHi(key) || !((Postings<V>) leaf.values[i]).visit(rowId -> visitor.visit(key, rowId)))
+    				{
+    					return;
+    				}
+    			}
+    			leaf = nextLeaf(leaf);
+    			i = 0;
+    		}
+    	}
+    	else
+    	{
+    		LeafNode leaf = range.endLeaf();
+    		int i = range.endIndex(leaf) - 1;
+    		while (leaf != null)
+    		{
+    			for (; i >= 0; i--)
+    			{
+    				double key = leaf.keys[i];
+    				if (!range.isAboveLo(key) || !((Postings<V>) leaf.values[i]).visitDescending(rowId -> visitor.visit(key, rowId)))
+    				{
+    					return;
+    				}
+    			}
+    			leaf = previousLeaf(leaf);
+    			i = leaf == null ? -1 : leaf.numKeys - 1;
+    		}
+    	}
+    }
+
+    /**
+     * Gets the number of values that satisfy the given range search arguments
+     *
+     * @param key to be searched
+     * @param comparison to compare keys against key with
+     * @return number of values that are the result of the range search
+     * @see DoubleBPTree#countBy(double, Comparison)
+     */
+    @Override
+    public int countBy(Double key, Comparison comparison) {
+    	if (key == null)
+    	{
+    		return 0;
+    	}
+    	return countBy(key.doubleValue(), comparison);
+    }
+
+    /**
+     * Gets the number of values that satisfy the given range search arguments
+     *
+     * @param key to be searched
+     * @param comparator is a string
+     * @return number of values that are the result of the range search
+     * @see DoubleBPTree#countBy(double, Comparison)
+     */
+    public int count(double key, String comparator) {
+    	return countBy(key, Comparison.fromSymbol(comparator));
+    }
+
+    /**
+     * Gets the number of values that satisfy the given range search arguments.
+     * Uses the value counts kept in each internal node, so it only walks down
+     * the tree once or twice and never visits the leaves in between.
+     *
+     * @param key to be searched
+     * @param comparison to compare keys against key with
+     * @return number of values that are the result of the range search;
+     * 0 if key is NaN or comparison is null
+     */
+    public int countBy(double key, Comparison comparison) {
+    	if (Double.isNaN(key) || comparison == null)
+    	{
+    		return 0;
+    	}
+    	return count(new Range(key, comparison));
+    }
+
+    /**
+     * Gets the number of values with keys between lo and hi.
+     * A null bound leaves that side of the range open.
+     *
+     * @param lo - lower bound, or null for no lower bound
+     * @param loInclusive - true if keys equal to lo are in range
+     * @param hi - upper bound, or null for no upper bound
+     * @param hiInclusive - true if keys equal to hi are in range
+     * @return number of values that are the result of the range search
+     * @see DoubleBPTree#count(double, boolean, double, boolean)
+     */
+    @Override
+    public int count(Double lo, boolean loInclusive, Double hi, boolean hiInclusive) {
+    	return count(lo == null ? Double.NEGATIVE_INFINITY : lo.doubleValue(), loInclusive || lo == null,
+    			hi == null ? Double.POSITIVE_INFINITY : hi.doubleValue(), hiInclusive || hi == null);
+    }
+
+    /**
+     * Gets the number of values with keys between lo and hi
+     *
+     * @param lo - lower bound
+     * @param loInclusive - true if keys equal to lo are in range
+     * @param hi - upper bound
+     * @param hiInclusive - true if keys equal to hi are in range
+     * @return number of values that are the result of the range search;
+     * 0 if either bound is NaN
+     */
+    public int count(double lo, boolean loInclusive, double hi, boolean hiInclusive) {
+    	if (Double.isNaN(lo) || Double.isNaN(hi))
+    	{
+    		return 0;
+    	}
+    	return count(new Range(lo, loInclusive, hi, hiInclusive));
+    }
+
+    /**
+     * Gets the number of values in a range - the number at or below its upper
+     * bound less the number below its lower bound
+     *
+     * @param range - range of keys to count the values for
+     * @return number of values in range
+     */
+    private int count(Range range) {
+    	int upTo = countBelow(range.hi, range.hiInclusive);
+    	int below = countBelow(range.lo, !range.loInclusive);
+    	int total = Math.max(0, upTo - below);
+    	if (!Double.isNaN(range.excluded))
+    	{
+    		total -= countBelow(range.excluded, true) - countBelow(range.excluded, false);
+    	}
+    	return total;
+    }
+
+    /**
+     * Gets the number of values with keys less than the given key
+     *
+     * @param key to be ranked
+     * @return number of values with keys less than key
+     * @see DoubleBPTree#rank(double)
+     */
+    @Override
+    public int rank(Double key) {
+    	if (key == null)
+    	{
+    		return 0;
+    	}
+    	return rank(key.doubleValue());
+    }
+
+    /**
+     * Gets the number of values with keys less than the given key
+     *
+     * @param key to be ranked
+     * @return number of values with keys less than key; 0 if key is NaN
+     */
+    public int rank(double key) {
+    	if (Double.isNaN(key))
+    	{
+    		return 0;
+    	}
+    	return countBelow(key, false);
+    }
+
+    /**
+     * Gets the key of the value at the given position in key order, the same
+     * way as select, but without looking up the value itself
+     *
+     * @param rank - position of the value, starting from 0
+     * @return key the value at that position is stored under
+     * @throws IndexOutOfBoundsException if rank is negative or not less than size()
+     * @see DoubleBPTree#select(int)
+     */
+    public double keyAt(int rank) {
+    	int[] slot = new int[2];
+    	LeafNode leaf = locate(rank, slot);
+    	return leaf.keys[slot[0]];
+    }
+
+    /**
+     * Number of values with keys less than (or equal to, if inclusive) the given
+     * key. Adds up the counts of the children to the left of the path down to
+     * the key's leaf, then the values before the key within that leaf.
+     *
+     * @param key - key to count the values below
+     * @param inclusive - true to count the values stored under key as well
+     * @return number of values
+     */
+    private int countBelow(double key, boolean inclusive)
+    {
+    	int total = 0;
+    	Node node = this.root;
+    	while (!node.isLeaf())
+    	{
+    		InternalNode asInt = (InternalNode) node;
+    		// an exact match on a separator means every key below it is in the children to its left
+    		int idx = inclusive ? upperBound(asInt, key) : lowerBound(asInt, key);
+    		total += TreeNode.sumCounts(asInt.counts, idx);
+    		node = asInt.children[idx];
+    	}
+    	LeafNode leaf = (LeafNode) node;
+    	return total + leaf.countBefore(inclusive ? upperBound(leaf, key) : lowerBound(leaf, key));
+    }
+
+    /**
+     * Gets the summary of the values that satisfy the given range search
+     * arguments. Only works for a tree made with an aggregator.
+     *
+     * @param aggregator - the aggregator the tree was made with
+     * @param key to be searched
+     * @param comparator is a string
+     * @return summary of the values that are the result of the range search
+     * @throws IllegalArgumentException if the tree wasn't made with aggregator
+     * @see DoubleBPTree#aggregateBy(Aggregator, double, Comparison)
+     */
+    public <A> A aggregate(Aggregator<? super V, A> aggregator, double key, String comparator) {
+    	return aggregateBy(aggregator, key, Comparison.fromSymbol(comparator));
+    }
+
+    /**
+     * Gets the summary of the values that satisfy the given range search
+     * arguments. Only works for a tree made with an aggregator.
+     *
+     * @param aggregator - the aggregator the tree was made with
+     * @param key to be searched
+     * @param comparison to compare keys against key with
+     * @return summary of the values that are the result of the range search;
+     * the identity summary if key is NaN or comparison is null
+     * @throws IllegalArgumentException if the tree wasn't made with aggregator
+     * @see BPTree#aggregateBy(Aggregator, Comparable, Comparison)
+     */
+    public <A> A aggregateBy(Aggregator<? super V, A> aggregator, double key, Comparison comparison) {
+    	TreeNode.checkAggregator(aggregator, this.aggregator);
+    	if (Double.isNaN(key) || comparison == null)
+    	{
+    		return aggregator.identity();
+    	}
+    	return aggregate(aggregator, new Range(key, comparison));
+    }
+
+    /**
+     * Gets the summary of the values with keys between lo and hi. Walks
+     * down the tree along the paths to lo and hi only, and takes the
+     * summaries kept for every child in between as they are, so the cost
+     * doesn't depend on how many values are in range.
+     *
+     * Use infinite bounds (inclusive) to leave a side of the range open.
+     *
+     * @param aggregator - the aggregator the tree was made with
+     * @param lo - lower bound
+     * @param loInclusive - true if keys equal to lo are in range
+     * @param hi - upper bound
+     * @param hiInclusive - true if keys equal to hi are in range
+     * @return summary of the values that are the result of the range search;
+     * the identity summary if either bound is NaN
+     * @throws IllegalArgumentException if the tree wasn't made with aggregator
+     */
+    public <A> A aggregate(Aggregator<? super V, A> aggregator, double lo, boolean loInclusive, double hi, boolean hiInclusive) {
+    	TreeNode.checkAggregator(aggregator, this.aggregator);
+    	if (Double.isNaN(lo) || Double.isNaN(hi))
+    	{
+    		return aggregator.identity();
+    	}
+    	return aggregate(aggregator, new Range(lo, loInclusive, hi, hiInclusive));
+    }
+
+    /**
+     * Works out the summaries along the path to a key again. Call this after
+     * changing a value stored under key in a way that changes its summary,
+     * so later aggregates see the change. Does nothing if the tree doesn't
+     * keep summaries.
+     *
+     * @param key - key the changed value is stored under
+     */
+    public void refreshSummaries(double key) {
+    	checkWritable();
+    	if (!Double.isNaN(key) && this.aggregator != null)
+    	{
+    		this.root = writable(this.root);
+    		refreshSummaries(this.root, key);
+    	}
+    }
+
+    /**
+     * Inserts key and value in the sub-tree with the given node as its root,
+     * splitting any child that ends up too full on the way back up. The node
+     * itself is left for its parent to split.
+     *
+     * @param node - root of the sub-tree, which must already be writable
+     * @param key
+     * @param value
+     */
+    private void insert(Node node, double key, V value)
+    {
+    	if (node.isLeaf())
+    	{
+    		LeafNode leaf = (LeafNode) node;
+    		int idx = indexOf(leaf, key);
+    		if (idx < 0)
+    		{
+    			idx = -idx - 1;
+    			leaf.insertKey(idx);
+    			leaf.keys[idx] = key;
+    		}
+    		leaf.addValue(idx, value);
+    		return;
+    	}
+
+    	InternalNode asInt = (InternalNode) node;
+    	int idx = childIndex(asInt, key);
+    	insert(asInt.writableChild(idx), key, value);
+    	asInt.childInserted(idx);
+    }
+
+    /**
+     * Removes one value stored under the given key from the sub-tree with the
+     * given node as its root. Children that end up with too few keys are
+     * rebalanced, but the node itself is left for its parent to rebalance.
+     *
+     * @param node - root of the sub-tree, which must already be writable
+     * @param key
+     * @param value
+     * @return true if the value was found and removed, false otherwise
+     */
+    private boolean remove(Node node, double key, V value)
+    {
+    	if (node.isLeaf())
+    	{
+    		LeafNode leaf = (LeafNode) node;
+    		return leaf.removeValue(indexOf(leaf, key), value);
+    	}
+
+    	InternalNode asInt = (InternalNode) node;
+    	int idx = childIndex(asInt, key);
+    	if (!remove(asInt.writableChild(idx), key, value))
+    	{
+    		return false;
+    	}
+    	asInt.childRemoved(idx);
+    	return true;
+    }
+
+    /**
+     * Works out the summaries again along the path down to the given key,
+     * within the sub-tree with the given node as its root
+     *
+     * @param node - root of the sub-tree, which must already be writable
+     * @param key - key the changed value is stored under
+     */
+    private void refreshSummaries(Node node, double key)
+    {
+    	if (node.isLeaf())
+    	{
+    		int idx = indexOf(node, key);
+    		if (idx >= 0)
+    		{
+    			node.refreshSummary(idx);
+    		}
+    		return;
+    	}
+
+    	InternalNode asInt = (InternalNode) node;
+    	int idx = childIndex(asInt, key);
+    	refreshSummaries(asInt.writableChild(idx), key);
+    	asInt.refreshSummary(idx);
+    }
+
+    /**
+     * Walk down from the root to the leaf whose range covers the given key
+     *
+     * @param key - key to look for
+     * @return leaf node that would hold the key
+     */
+    private LeafNode findLeaf(double key)
+    {
+    	Node node = this.root;
+    	while (!node.isLeaf())
+    	{
+    		InternalNode asInt = (InternalNode) node;
+    		node = asInt.children[childIndex(asInt, key)];
+    	}
+    	return (LeafNode) node;
+    }
+
+    /**
+     * Binary search over the keys in use in a node
+     *
+     * @param node - node to look in
+     * @param key - key to look for
+     * @return index of the key, if found; otherwise (-(insertion point) - 1)
+     */
+    private int indexOf(Node node, double key)
+    {
+    	double[] keys = node.keys;
+    	int low = 0;
+    	int high = node.numKeys - 1;
+    	while (low <= high)
+    	{
+    		int mid = (low + high) >>> 1;
+    		double midKey = keys[mid];
+    		if (midKey < key)
+    		{
+    			low = mid + 1;
+    		}
+    		else if (midKey > key)
+    		{
+    			high = mid - 1;
+    		}
+    		else
+    		{
+    			return mid;
+    		}
+    	}
+    	return -(low + 1);
+    }
+
+    /**
+     * Index of the first key in a node that is >= the given key
+     *
+     * @param node - node to look in
+     * @param key - key to look for
+     * @return index of the key, or where it would go if it's not in the node
+     */
+    private int lowerBound(Node node, double key)
+    {
+    	int idx = indexOf(node, key);
+    	return idx >= 0 ? idx : -idx - 1;
+    }
+
+    /**
+     * Index of the first key in a node that is > the given key
+     *
+     * @param node - node to look in
+     * @param key - key to look for
+     * @return index just past the key, or where it would go if it's not in the node
+     */
+    private int upperBound(Node node, double key)
+    {
+    	int idx = indexOf(node, key);
+    	return idx >= 0 ? idx + 1 : -idx - 1;
+    }
+
+    /**
+     * Index of the child of an internal node whose sub-tree would hold the given key
+     *
+     * @param node - internal node to look in
+     * @param key
+     * @return index into node's children
+     */
+    private int childIndex(InternalNode node, double key)
+    {
+    	// an exact match belongs to the child to the right of the key
+    	return upperBound(node, key);
+    }
+
+    @Override
+    int childIndexOf(InternalNode node, LeafNode leaf, int idx)
+    {
+    	return childIndex(node, leaf.keys[idx]);
+    }
+
+    @Override
+    double[] newKeys(int capacity)
+    {
+    	return new double[capacity];
+    }
+
+    @Override
+    int keyBytes()
+    {
+    	return 8;
+    }
+
+    /**
+     * Replaces the contents of the tree with the given key-value pairs, building it
+     * bottom-up instead of inserting one pair at a time.
+     *
+     * Keys must already be sorted in ascending order. Duplicate keys are kept in the
+     * order they're given, just as if they had been inserted in that order.
+     *
+     * @param keys - sorted keys, one for each value
+     * @param values - values, parallel to keys
+     * @param fillFactor - fraction of each node to fill, between 0.5 and 1
+     * @throws IllegalArgumentException if keys and values don't match up, keys are NaN
+     * or not sorted, or fillFactor is out of range
+     * @see BPTree#bulkLoad(List, List, double)
+     */
+    public void bulkLoad(double[] keys, List<V> values, double fillFactor) {
+    	checkWritable();
+    	if (keys == null || values == null || keys.length != values.size())
+    	{
+    		throw new IllegalArgumentException("Keys and values must be the same size");
+    	}
+    	TreeNode.checkFillFactor(fillFactor);
+
+    	// make sure keys are sorted and gather up the duplicates, so leaves can be evenly sized
+    	double[] distinctKeys = new double[keys.length];
+    	int[] runs = new int[keys.length];
+    	int distinct = 0;
+    	for (int i = 0; i < keys.length; i++)
+    	{
+    		if (Double.isNaN(keys[i]))
+    		{
+    			throw new IllegalArgumentException("Illegal key: " + keys[i]);
+    		}
+    		if (i == 0 || keys[i - 1] < keys[i])
+    		{
+    			distinctKeys[distinct++] = keys[i];
+    		}
+    		else if (keys[i - 1] > keys[i])
+    		{
+    			throw new IllegalArgumentException("Keys must be sorted: " + keys[i] + " follows " + keys[i - 1]);
+    		}
+    		runs[distinct - 1]++;
+    	}
+    	bulkLoad(distinctKeys, Arrays.copyOf(runs, distinct), values.iterator(), fillFactor);
+    }
+
+    /**
+     * Range of keys to search, worked out once from the search arguments
+     *
+     * @see AbstractBPTree.KeyRange
+     */
+    private class Range extends KeyRange {
+
+    	// lower bound - negative infinity for no lower bound
+    	double lo = Double.NEGATIVE_INFINITY;
+    	boolean loInclusive = true;
+
+    	// upper bound - positive infinity for no upper bound
+    	double hi = Double.POSITIVE_INFINITY;
+    	boolean hiInclusive = true;
+
+    	// key to skip over - NaN (which never equals any key) unless this is a != search
+    	double excluded = Double.NaN;
+
+    	/**
+    	 * Package constructor for a range between two bounds
+    	 *
+    	 * @param lo - lower bound
+    	 * @param loInclusive - true if keys equal to lo are in range
+    	 * @param hi - upper bound
+    	 * @param hiInclusive - true if keys equal to hi are in range
+    	 */
+    	Range(double lo, boolean loInclusive, double hi, boolean hiInclusive)
+    	{
+    		this.lo = lo;
+    		this.loInclusive = loInclusive;
+    		this.hi = hi;
+    		this.hiInclusive = hiInclusive;
+    	}
+
+    	/**
+    	 * Package constructor for the range matching a comparison with a key
+    	 *
+    	 * @param key to be searched
+    	 * @param comparison to compare keys against key with
+    	 */
+    	Range(double key, Comparison comparison)
+    	{
+    		switch (comparison)
+    		{
+    			case LessThan:
+    				this.hi = key;
+    				this.hiInclusive = false;
+    				break;
+    			case LessThanOrEqual:
+    				this.hi = key;
+    				break;
+    			case EqualTo:
+    				this.lo = key;
+    				this.hi = key;
+    				break;
+    			case NotEqualTo:
+    				this.excluded = key;
+    				break;
+    			case GreaterThanOrEqual:
+    				this.lo = key;
+    				break;
+    			case GreaterThan:
+    				this.lo = key;
+    				this.loInclusive = false;
+    				break;
+    		}
+    	}
+
+    	LeafNode startLeaf()
+    	{
+    		return findLeaf(this.lo);
+    	}
+
+    	LeafNode endLeaf()
+    	{
+    		return findLeaf(this.hi);
+    	}
+
+    	int startIndex(LeafNode leaf)
+    	{
+    		return this.loInclusive ? lowerBound(leaf, this.lo) : upperBound(leaf, this.lo);
+    	}
+
+    	int endIndex(LeafNode leaf)
+    	{
+    		return this.hiInclusive ? upperBound(leaf, this.hi) : lowerBound(leaf, this.hi);
+    	}
+
+    	boolean isBelowHi(LeafNode leaf, int idx)
+    	{
+    		return isBelowHi(leaf.keys[idx]);
+    	}
+
+    	/**
+    	 * Check a key against the upper bound
+    	 *
+    	 * @param key - key to check
+    	 * @return true if key is not past the upper bound
+    	 */
+    	boolean isBelowHi(double key)
+    	{
+    		return key < this.hi || (this.hiInclusive && key == this.hi);
+    	}
+
+    	boolean isAboveLo(LeafNode leaf, int idx)
+    	{
+    		return isAboveLo(leaf.keys[idx]);
+    	}
+
+    	/**
+    	 * Check a key against the lower bound
+    	 *
+    	 * @param key - key to check
+    	 * @return true if key is not past the lower bound
+    	 */
+    	boolean isAboveLo(double key)
+    	{
+    		return key > this.lo || (this.loInclusive && key == this.lo);
+    	}
+
+    	boolean isExcluded(LeafNode leaf, int idx)
+    	{
+    		return leaf.keys[idx] == this.excluded;
+    	}
+
+    	int firstChild(InternalNode node)
+    	{
+    		return childIndex(node, this.lo);
+    	}
+
+    	int lastChild(InternalNode node)
+    	{
+    		return childIndex(node, this.hi);
+    	}
+
+    	KeyRange belowExcluded()
+    	{
+    		return Double.isNaN(this.excluded) ? null : new Range(Double.NEGATIVE_INFINITY, true, this.excluded, false);
+    	}
+
+    	KeyRange aboveExcluded()
+    	{
+    		return Double.isNaN(this.excluded) ? null : new Range(this.excluded, false, Double.POSITIVE_INFINITY, true);
+    	}
+
+    } // End of class Range
+
+} // End of class DoubleBPTree
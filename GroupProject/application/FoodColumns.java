@@ -0,0 +1,467 @@
+/**
+ * Filename:   FoodColumns.java
+ * Project:    Group Project
+ * Authors:    sapan (sapan@cs.wisc.edu), Soua Lor, Maria Helgeson, Daniel Walter, & Will Hickman
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400 - Lecutre 46373
+ *
+ * Due Date:   12/16/18
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       No known bugs
+ */
+
+package application;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Columnar storage for the food items in a FoodData. Each food item is a row,
+ * numbered with a dense row id in the order it was added, and each property is
+ * a column: ids, names, and one array of doubles per Constants.Nutrient, with
+ * NaN where an item doesn't have that nutrient.
+ *
+ * A food item loaded from a file is just a view of its row (see FoodItem), so
+ * the amounts live in primitive arrays rather than a map of boxed values per
+ * item, and a pass over one nutrient is a loop over a double[]. Food items added
+ * one at a time keep their own storage, and a copy of their amounts is kept here.
+ *
+ * Columns are kept in fixed-size chunks, so adding a row never moves the rows
+ * before it. Row ids are never reused, so the indexes can store them in place
+ * of the food items.
+ *
+ * snapshot() hands out read-only columns that share every chunk with these
+ * ones. A chunk shared with a snapshot is copied before a row in it is changed
+ * or released, so a snapshot keeps the amounts and food items it was taken
+ * with, and its indexes can keep looking up their row ids in it. Adding a row
+ * fills a slot no snapshot reads, so it doesn't copy anything.
+ *
+ * @author sapan (sapan@cs.wisc.edu), Soua Lor, Maria Helgeson, Daniel Walter, & Will Hickman
+ */
+public class FoodColumns implements RowIds<FoodItem> {
+
+    // number of rows in each chunk
+    private static final int CHUNK_SIZE = 1024;
+
+    // every nutrient, by ordinal - values() makes a new array each call
+    private static final Constants.Nutrient[] NUTRIENTS = Constants.Nutrient.values();
+
+    // chunks of rows - replaced with a new array rather than changed when a chunk is
+    // added or copied, so a filter reading it never sees a partial one
+    private volatile Chunk[] chunks = new Chunk[0];
+
+    // chunks made before the latest snapshot have an older version, and may be shared
+    // with the snapshot - they're copied before they're changed
+    private int version;
+
+    // number of row ids handed out
+    private int numRows;
+
+    // one copy of each name, since names can repeat
+    private HashMap<String, String> names = new HashMap<String, String>();
+
+    // row ids of food items that keep their own storage - views know their own row id
+    private HashMap<FoodItem, Integer> adopted = new HashMap<FoodItem, Integer>();
+
+    // true once a snapshot shares adopted, so it has to be copied before it's changed
+    private boolean adoptedShared;
+
+    // columns that the food item views were made with - these ones, unless this is a snapshot
+    private FoodColumns owner = this;
+
+    /**
+     * Public constructor
+     */
+    public FoodColumns() {
+    }
+
+    /**
+     * Private constructor for a snapshot, which shares its chunks with the source
+     *
+     * @param source - columns to take the snapshot of
+     */
+    private FoodColumns(FoodColumns source) {
+    	this.chunks = source.chunks;
+    	this.numRows = source.numRows;
+    	this.names = source.names;
+    	this.adopted = source.adopted;
+    	this.owner = source;
+    }
+
+    /**
+     * Gets read-only columns with the rows as they are now, which later changes
+     * to these columns don't show up in. Nothing is copied up front: a chunk is
+     * copied the first time one of its rows is changed or released afterwards.
+     *
+     * @return snapshot of the columns - it must not be changed
+     */
+    FoodColumns snapshot() {
+    	FoodColumns snapshot = new FoodColumns(this);
+    	// every chunk there is now is shared with the snapshot
+    	this.version++;
+    	this.adoptedShared = true;
+    	return snapshot;
+    }
+
+    /**
+     * Adds a row for a food item that will be a view of it
+     *
+     * @param id - id of the food item
+     * @param name - name of the food item
+     * @param amounts - amount of each nutrient, by Constants.Nutrient ordinal; NaN if the item doesn't have it
+     * @return row id of the new row
+     */
+    int add(String id, String name, double[] amounts) {
+    	int rowId = addRow(id, name, amounts);
+    	setItem(rowId, new FoodItem(this, rowId));
+    	return rowId;
+    }
+
+    /**
+     * Adds a row holding a copy of a food item that keeps its own storage
+     *
+     * @param item - food item to copy
+     * @return row id of the new row
+     */
+    int adopt(FoodItem item) {
+    	double[] amounts = new double[NUTRIENTS.length];
+    	for (Constants.Nutrient nxt: NUTRIENTS)
+    	{
+    		amounts[nxt.ordinal()] = item.hasNutrient(nxt) ? item.getNutrientValue(nxt) : Double.NaN;
+    	}
+    	int rowId = addRow(item.getID(), item.getName(), amounts);
+    	setItem(rowId, item);
+    	writableAdopted().put(item, rowId);
+    	return rowId;
+    }
+
+    /**
+     * Adds a row, and a chunk to put it in if the last one is full
+     *
+     * @param id - id of the food item
+     * @param name - name of the food item
+     * @param amounts - amount of each nutrient, by Constants.Nutrient ordinal
+     * @return row id of the new row
+     */
+    private int addRow(String id, String name, double[] amounts) {
+    	if (this.numRows == this.chunks.length * CHUNK_SIZE)
+    	{
+    		Chunk[] longer = Arrays.copyOf(this.chunks, this.chunks.length + 1);
+    		longer[this.chunks.length] = new Chunk(this.version);
+    		this.chunks = longer;
+    	}
+    	String interned = this.names.putIfAbsent(name, name);
+    	int rowId = this.numRows++;
+    	// no snapshot reads past its own last row, so a shared chunk can take new rows
+    	Chunk chunk = this.chunks[rowId / CHUNK_SIZE];
+    	int slot = rowId % CHUNK_SIZE;
+    	chunk.ids[slot] = id;
+    	chunk.names[slot] = interned == null ? name : interned;
+    	for (int i = 0; i < amounts.length; i++)
+    	{
+    		chunk.amounts[i][slot] = amounts[i];
+    	}
+    	return rowId;
+    }
+
+    /**
+     * Sets the food item that a row hands out
+     *
+     * @param rowId - row id
+     * @param item - food item for the row
+     */
+    private void setItem(int rowId, FoodItem item) {
+    	this.chunks[rowId / CHUNK_SIZE].items[rowId % CHUNK_SIZE] = item;
+    }
+
+    /**
+     * Let go of a removed row. Its values are kept, since whoever removed the
+     * food item may still be using it. A snapshot that shares the row's chunk
+     * keeps its own copy of the row.
+     *
+     * @param rowId - row id of the removed food item
+     */
+    void release(int rowId) {
+    	Chunk chunk = writable(rowId / CHUNK_SIZE);
+    	int slot = rowId % CHUNK_SIZE;
+    	writableAdopted().remove(chunk.items[slot]);
+    	chunk.items[slot] = null;
+    }
+
+    /**
+     * Gets a chunk that can be changed without changing any snapshot - the
+     * chunk itself, unless it's shared with a snapshot, in which case a copy
+     * that takes its place
+     *
+     * @param index - index of the chunk
+     * @return chunk, or a copy of it
+     */
+    private Chunk writable(int index) {
+    	Chunk chunk = this.chunks[index];
+    	if (chunk.version == this.version)
+    	{
+    		return chunk;
+    	}
+    	Chunk[] replaced = this.chunks.clone();
+    	replaced[index] = new Chunk(chunk, this.version);
+    	this.chunks = replaced;
+    	return replaced[index];
+    }
+
+    /**
+     * Gets the row ids of adopted food items, copying them first if a snapshot
+     * shares them
+     *
+     * @return map that can be changed without changing any snapshot
+     */
+    private HashMap<FoodItem, Integer> writableAdopted() {
+    	if (this.adoptedShared)
+    	{
+    		this.adopted = new HashMap<FoodItem, Integer>(this.adopted);
+    		this.adoptedShared = false;
+    	}
+    	return this.adopted;
+    }
+
+    /**
+     * Gets the number of rows, including removed ones
+     *
+     * @return number of row ids handed out
+     */
+    int getNumRows() {
+    	return this.numRows;
+    }
+
+    /**
+     * Gets the id in a row
+     *
+     * @param rowId - row id
+     * @return id of the food item
+     */
+    String getID(int rowId) {
+    	return this.chunks[rowId / CHUNK_SIZE].ids[rowId % CHUNK_SIZE];
+    }
+
+    /**
+     * Gets the name in a row
+     *
+     * @param rowId - row id
+     * @return name of the food item
+     */
+    String getName(int rowId) {
+    	return this.chunks[rowId / CHUNK_SIZE].names[rowId % CHUNK_SIZE];
+    }
+
+    /**
+     * Gets the amount of a nutrient in a row
+     *
+     * @param rowId - row id
+     * @param nutrient - Constants.Nutrient ordinal
+     * @return amount of the nutrient; NaN if the food item doesn't have it
+     */
+    double getAmount(int rowId, int nutrient) {
+    	return this.chunks[rowId / CHUNK_SIZE].amounts[nutrient][rowId % CHUNK_SIZE];
+    }
+
+    /**
+     * Sets the amount of a nutrient in a row
+     *
+     * @param rowId - row id
+     * @param nutrient - Constants.Nutrient ordinal
+     * @param amount - new amount
+     */
+    void setAmount(int rowId, int nutrient, double amount) {
+    	writable(rowId / CHUNK_SIZE).amounts[nutrient][rowId % CHUNK_SIZE] = amount;
+    }
+
+    /**
+     * Adds the row id of every row still in use - every row that hasn't been released
+     *
+     * @param rows - bitmap to add the row ids to
+     */
+    void addRowIds(RowBitmap rows) {
+    	Chunk[] chunks = this.chunks;
+    	for (int c = 0; c < chunks.length; c++)
+    	{
+    		int end = Math.min(CHUNK_SIZE, this.numRows - c * CHUNK_SIZE);
+    		for (int slot = 0; slot < end; slot++)
+    		{
+    			if (chunks[c].items[slot] != null)
+    			{
+    				rows.add(c * CHUNK_SIZE + slot);
+    			}
+    		}
+    	}
+    }
+
+    /**
+     * Gets the rows that have a nutrient, in order of its amount. Rows with the
+     * same amount stay in order of row id, which is the order they were added.
+     *
+     * @param nutrient - Constants.Nutrient ordinal
+     * @return row ids of the food items with the nutrient, in order of its amount
+     */
+    int[] sortByAmount(int nutrient) {
+    	int[] rows = new int[this.numRows];
+    	double[] amounts = new double[this.numRows];
+    	int length = 0;
+    	Chunk[] chunks = this.chunks;
+    	for (int c = 0; c < chunks.length; c++)
+    	{
+    		double[] column = chunks[c].amounts[nutrient];
+    		int end = Math.min(CHUNK_SIZE, this.numRows - c * CHUNK_SIZE);
+    		for (int slot = 0; slot < end; slot++)
+    		{
+    			if (!Double.isNaN(column[slot]) && chunks[c].items[slot] != null)
+    			{
+    				rows[length] = c * CHUNK_SIZE + slot;
+    				amounts[length] = column[slot];
+    				length++;
+    			}
+    		}
+    	}
+    	mergeSort(rows, amounts, new int[length], new double[length], 0, length);
+    	return Arrays.copyOf(rows, length);
+    }
+
+    /**
+     * Stable sort of rows by amount, merging through the scratch arrays
+     *
+     * @param rows - row ids to sort
+     * @param amounts - amount for each row, sorted along with it
+     * @param rowScratch - scratch space as long as rows
+     * @param amountScratch - scratch space as long as amounts
+     * @param from - start of the part to sort
+     * @param to - end of the part to sort, exclusive
+     */
+    private static void mergeSort(int[] rows, double[] amounts, int[] rowScratch, double[] amountScratch, int from, int to) {
+    	if (to - from < 2)
+    	{
+    		return;
+    	}
+    	int mid = (from + to) >>> 1;
+    	mergeSort(rows, amounts, rowScratch, amountScratch, from, mid);
+    	mergeSort(rows, amounts, rowScratch, amountScratch, mid, to);
+    	if (amounts[mid - 1] <= amounts[mid])
+    	{
+    		// already in order
+    		return;
+    	}
+    	System.arraycopy(rows, from, rowScratch, from, to - from);
+    	System.arraycopy(amounts, from, amountScratch, from, to - from);
+    	int left = from;
+    	int right = mid;
+    	for (int i = from; i < to; i++)
+    	{
+    		// ties go to the left, which keeps the sort stable
+    		if (right >= to || (left < mid && amountScratch[left] <= amountScratch[right]))
+    		{
+    			rows[i] = rowScratch[left];
+    			amounts[i] = amountScratch[left++];
+    		}
+    		else
+    		{
+    			rows[i] = rowScratch[right];
+    			amounts[i] = amountScratch[right++];
+    		}
+    	}
+    }
+
+    /**
+     * Gets the row id of a food item in these columns
+     *
+     * @param value - food item to look up
+     * @return row id; -1 if the food item has no row here
+     */
+    @Override
+    public int rowIdOf(FoodItem value) {
+    	// a view that was removed and added again has a new row with a copy of its amounts
+    	Integer rowId = this.adopted.get(value);
+    	if (rowId != null)
+    	{
+    		return rowId;
+    	}
+    	return value.isViewOf(this.owner) && value.getRowId() < this.numRows ? value.getRowId() : -1;
+    }
+
+    /**
+     * Gets the food item in a row
+     *
+     * @param rowId - row id
+     * @return food item
+     */
+    @Override
+    public FoodItem valueOf(int rowId) {
+    	return this.chunks[rowId / CHUNK_SIZE].items[rowId % CHUNK_SIZE];
+    }
+
+    /**
+     * Position of a nutrient in the amount columns
+     *
+     * @param nutrient - name of the nutrient, in lower case
+     * @return Constants.Nutrient ordinal; -1 if it isn't one of them
+     */
+    static int ordinalOf(String nutrient) {
+    	for (Constants.Nutrient nxt: NUTRIENTS)
+    	{
+    		if (nxt.name().equals(nutrient))
+    		{
+    			return nxt.ordinal();
+    		}
+    	}
+    	return -1;
+    }
+
+    /**
+     * One chunk of rows, with a slice of every column
+     */
+    private static class Chunk {
+
+    	// ids and names of the food items - never changed once a row is added, so copies share them
+    	String[] ids;
+    	String[] names;
+
+    	// amount of each nutrient, by Constants.Nutrient ordinal and then row
+    	double[][] amounts;
+
+    	// food item handed out for each row
+    	FoodItem[] items;
+
+    	// version of the columns this chunk was made in - see FoodColumns#writable
+    	int version;
+
+    	/**
+    	 * Package constructor for an empty chunk
+    	 *
+    	 * @param version - version of the columns making the chunk
+    	 */
+    	Chunk(int version) {
+    		this.ids = new String[CHUNK_SIZE];
+    		this.names = new String[CHUNK_SIZE];
+    		this.amounts = new double[NUTRIENTS.length][CHUNK_SIZE];
+    		this.items = new FoodItem[CHUNK_SIZE];
+    		this.version = version;
+    	}
+
+    	/**
+    	 * Package constructor for a copy of a chunk shared with a snapshot
+    	 *
+    	 * @param source - chunk to copy
+    	 * @param version - version of the columns making the copy
+    	 */
+    	Chunk(Chunk source, int version) {
+    		this.ids = source.ids;
+    		this.names = source.names;
+    		this.amounts = new double[NUTRIENTS.length][];
+    		for (int i = 0; i < this.amounts.length; i++)
+    		{
+    			this.amounts[i] = source.amounts[i].clone();
+    		}
+    		this.items = source.items.clone();
+    		this.version = version;
+    	}
+    }
+}
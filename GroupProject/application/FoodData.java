@@ -20,14 +20,22 @@ import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 
+import application.Constants.Comparison;
+
 /**
  * This class represents the backend for managing all 
  * the operations associated with FoodItems. 
@@ -43,24 +51,107 @@ public class FoodData implements FoodDataADT<FoodItem> {
     // formatter for nutrient values - strips trailing 0s
     private DecimalFormat numFormatter = new DecimalFormat("0.#");
     
-    // hashed set of all of the food items for quick lookup while applying filters
+    // hashed set of all of the food items, for quick checks of whether one is loaded
     private HashSet<FoodItem> foodItemLookup;
     
+    // names, ids and nutrient amounts of the food items in columns, by row id - the indexes 
+    // store row ids in place of the food items
+    private FoodColumns columns;
+    
     // Map of nutrients and their corresponding indices
-    private HashMap<String, BPTree<Double, FoodItem>> indexes;
+    private HashMap<String, DoubleBPTree<FoodItem>> indexes;
+    
+    // statistics on the amounts of each nutrient, kept up to date with its index
+    private EnumMap<Constants.Nutrient, NutrientStatistics> statistics;
+    
+    // true once a snapshot shares foodItemList and foodItemLookup, so they have to be copied before they're changed
+    private boolean itemsShared;
+    
+    // true if this is a snapshot of another FoodData, so it can't be changed
+    private boolean isSnapshot;
+    
+    // checking a food item's amount against a range costs about as much as reading 
+    // this many row ids from an index, when planning filters
+    private static final int RESIDUAL_COST = 4;
+    
+    // file saveIndexes writes the food items to, and the ending of each nutrient's index file
+    private static final String INDEXED_ITEMS_FILE = "indexedItems.csv";
+    private static final String INDEX_FILE_SUFFIX = ".idx";
     
     /**
      * Public constructor
      */
     public FoodData() 
     {
-    	this.foodItemList = new LinkedList<FoodItem>();
-        this.foodItemLookup = new HashSet<FoodItem>();
-        this.indexes = new HashMap<String, BPTree<Double, FoodItem>>();
-        for (Constants.Nutrient nxt: Constants.Nutrient.values())
-        {
-        	this.indexes.put(nxt.toString(), new BPTree<Double, FoodItem>(25));
-        }
+    	clearFoodItems();
+    }
+    
+    /**
+     * Private constructor for a snapshot, which shares its food items and index nodes with the source
+     * 
+     * @param source - FoodData to take the snapshot of
+     */
+    private FoodData(FoodData source)
+    {
+    	this.foodItemList = source.foodItemList;
+    	this.foodItemLookup = source.foodItemLookup;
+    	this.columns = source.columns.snapshot();
+    	this.indexes = new HashMap<String, DoubleBPTree<FoodItem>>();
+    	for (Map.Entry<String, DoubleBPTree<FoodItem>> nxt: source.indexes.entrySet())
+    	{
+    		// the indexes read every value through the snapshot of the columns, which keeps released 
+    		// rows, even in the postings they share with the source's index
+    		this.indexes.put(nxt.getKey(), nxt.getValue().snapshot(this.columns));
+    	}
+    	this.statistics = new EnumMap<Constants.Nutrient, NutrientStatistics>(Constants.Nutrient.class);
+    	for (NutrientStatistics nxt: source.statistics.values())
+    	{
+    		this.statistics.put(nxt.getNutrient(), new NutrientStatistics(nxt));
+    	}
+    	this.isSnapshot = true;
+    }
+    
+    /**
+     * Gets a read-only copy of the loaded data as it is now, for running filters 
+     * on while food items are added, removed or changed here. Adding an item while 
+     * a long filter runs on a snapshot can't leave the filter looking at a half 
+     * split index node, and the filter doesn't hold up the add.
+     * 
+     * The indexes copy only the nodes a change touches (see DoubleBPTree#snapshot), 
+     * and the columns only the chunks of rows a change touches (see FoodColumns#snapshot). 
+     * The food item list and lookup map are copied by the first change after a 
+     * snapshot, and shared again until the next one.
+     * 
+     * @return snapshot of the loaded data - changing it throws UnsupportedOperationException
+     */
+    @Override
+    public synchronized FoodData snapshot() {
+    	if (this.isSnapshot)
+    	{
+    		return this;
+    	}
+    	this.itemsShared = true;
+    	return new FoodData(this);
+    }
+    
+    /**
+     * Get ready for a change to the loaded data. Makes sure this isn't a snapshot, 
+     * and copies the food item list and lookup map if a snapshot shares them.
+     * 
+     * @throws UnsupportedOperationException if this is a snapshot
+     */
+    private void prepareForChange()
+    {
+    	if (this.isSnapshot)
+    	{
+    		throw new UnsupportedOperationException("Snapshots can't be changed");
+    	}
+    	if (this.itemsShared)
+    	{
+    		this.foodItemList = new LinkedList<FoodItem>(this.foodItemList);
+    		this.foodItemLookup = new HashSet<FoodItem>(this.foodItemLookup);
+    		this.itemsShared = false;
+    	}
     }
     
     /**
@@ -70,7 +161,8 @@ public class FoodData implements FoodDataADT<FoodItem> {
      *        (e.g. folder1/subfolder1/.../foodItems.csv) 
      */
     @Override
-    public void loadFoodItems(String filePath) {
+    public synchronized void loadFoodItems(String filePath) {
+    	prepareForChange();
     	// try to load data from file
     	List<String> rawData = null;
     	try
@@ -84,15 +176,28 @@ public class FoodData implements FoodDataADT<FoodItem> {
     		clearFoodItems();
     		// if data exists, parse and add it to our session's food list
         	parseData(rawData);
+        	bulkLoadIndexes();
     	}
     }
     /**
-     *  Reset food item list and hashed set
+     *  Reset food item list, hashed set, columns, indexes and statistics
      */
     private void clearFoodItems()
     {
     	this.foodItemList = new LinkedList<FoodItem>();
         this.foodItemLookup = new HashSet<FoodItem>();
+        this.itemsShared = false;
+        
+        // indexes can only resolve row ids from the columns they were made with, so they start over with them
+        this.columns = new FoodColumns();
+        this.indexes = new HashMap<String, DoubleBPTree<FoodItem>>();
+        this.statistics = new EnumMap<Constants.Nutrient, NutrientStatistics>(Constants.Nutrient.class);
+        for (Constants.Nutrient nxt: Constants.Nutrient.values())
+        {
+        	// each index keeps nutrient summaries, so ranges of it can be summarized quickly
+        	this.indexes.put(nxt.toString(), new DoubleBPTree<FoodItem>(25, NutrientSummary.aggregator(), this.columns));
+        	this.statistics.put(nxt, new NutrientStatistics(nxt));
+        }
     }
     
     /**
@@ -134,15 +239,18 @@ public class FoodData implements FoodDataADT<FoodItem> {
     		boolean valid = true;
     		if (pieces.length >= 12)
     		{
-    			FoodItem nxtItm = new FoodItem(pieces[0], pieces[1]);
+    			// amounts go straight into the columns, so each food item is just a view of its row
+    			double[] amounts = new double[Constants.Nutrient.values().length];
+    			Arrays.fill(amounts, Double.NaN);
     			for (int i = 2; i < 12; i++)
     			{
     				try
     				{
     					String nutrient = pieces[i].toLowerCase();
-    					Constants.Nutrient.valueOf(nutrient);  // throws IllegalArgumentException if not in the list
+    					int ordinal = Constants.Nutrient.valueOf(nutrient).ordinal();  // throws IllegalArgumentException if not in the list
         				double value = Double.parseDouble(pieces[++i]);  // throws NumberFormatException if not parse-able. 
-        				nxtItm.addNutrient(nutrient, value);
+        				// NaN marks a missing amount, as saveIndexes writes it - the food item just doesn't have the nutrient
+        				amounts[ordinal] = value;
     				}
     				catch (Exception e)
     				{
@@ -152,7 +260,9 @@ public class FoodData implements FoodDataADT<FoodItem> {
     			}
     			if (valid)
     			{
-        			this.addFoodItem(nxtItm);
+    				FoodItem nxtItm = this.columns.valueOf(this.columns.add(pieces[0], pieces[1], amounts));
+    				this.foodItemList.add(nxtItm);
+    				this.foodItemLookup.add(nxtItm);
     			}
     		}
     	}
@@ -162,6 +272,216 @@ public class FoodData implements FoodDataADT<FoodItem> {
     		});
     }
     
+    /**
+     * Rebuild every nutrient index from the columns. Each index is bulk loaded from 
+     * the rows sorted by that nutrient, which is much cheaper than inserting them one 
+     * at a time.
+     */
+    private void bulkLoadIndexes()
+    {
+    	for (Constants.Nutrient nxt: Constants.Nutrient.values())
+    	{
+    		// sort is stable, so rows with the same amount stay in the order they were loaded
+    		bulkLoadIndex(nxt, this.columns.sortByAmount(nxt.ordinal()));
+    	}
+    }
+    
+    /**
+     * Rebuild one nutrient's index, and its statistics, from rows already in order
+     * 
+     * @param nutrient - nutrient whose index to rebuild
+     * @param rows - row ids of the food items with the nutrient, in order of its 
+     * amount and then of row id
+     */
+    private void bulkLoadIndex(Constants.Nutrient nutrient, int[] rows)
+    {
+    	double[] keys = new double[rows.length];
+    	List<FoodItem> sorted = new ArrayList<FoodItem>(rows.length);
+    	for (int i = 0; i < rows.length; i++)
+    	{
+    		keys[i] = this.columns.getAmount(rows[i], nutrient.ordinal());
+    		sorted.add(this.columns.valueOf(rows[i]));
+    	}
+    	DoubleBPTree<FoodItem> idx = this.indexes.get(nutrient.toString());
+    	idx.bulkLoad(keys, sorted, Constants.IndexFillFactor);
+    	this.statistics.get(nutrient).rebuild(idx, this.foodItemList.size());
+    }
+    
+    /**
+     * Saves the food items along with an on-disk copy of each nutrient index, so 
+     * loadIndexes can load them back without sorting every nutrient again. Writes 
+     * the food items to indexedItems.csv in the directory, in the same format as 
+     * saveFoodItems but with exact amounts, and each index to a PagedBPTree named 
+     * after its nutrient, like calories.idx, mapping amounts to the line of the 
+     * food item in indexedItems.csv. That line number is the row id the food item 
+     * gets when it's loaded back. Each saved index is bulk built a page at a 
+     * time, straight from the order of the index in memory.
+     * 
+     * A food item without a nutrient is written with NaN for its amount, and 
+     * left out of that nutrient's index, so it's loaded back without it.
+     * 
+     * @param directory - directory to save to, which must exist - indexes saved 
+     * there before are replaced
+     * @throws IOException if a file can't be written, or a file with the name of 
+     * an index is there but isn't a saved index, in which case nothing is written
+     * @see FoodData#loadIndexes(String)
+     */
+    public synchronized void saveIndexes(String directory) throws IOException {
+    	// only replace indexes saved before - anything else with the same name is left alone
+    	for (Constants.Nutrient nxt: Constants.Nutrient.values())
+    	{
+    		File file = new File(directory, nxt + INDEX_FILE_SUFFIX);
+    		if (file.exists() && !PageFile.isPageFile(file))
+    		{
+    			throw new IOException("Not a saved index: " + file.getPath());
+    		}
+    	}
+    	
+    	// rows are numbered again without the removed ones, in the order they're written
+    	RowBitmap rows = new RowBitmap();
+    	this.columns.addRowIds(rows);
+    	int[] lineOf = new int[this.columns.getNumRows()];
+    	List<String> lines = new ArrayList<String>(rows.cardinality());
+    	rows.forEach(rowId -> 
+    		{
+    			lineOf[rowId] = lines.size();
+    			lines.add(serializeRow(rowId));
+    		});
+    	
+    	FileWriter fw = new FileWriter(new File(directory, INDEXED_ITEMS_FILE));
+    	try
+    	{
+    		for (String nxt: lines)
+    		{
+    			fw.write(nxt);
+    			fw.write("\r\n");
+    		}
+    	}
+    	finally
+    	{
+    		fw.close();
+    	}
+    	
+    	for (Constants.Nutrient nxt: Constants.Nutrient.values())
+    	{
+    		// lines go up with row ids, so the entries come out in order of amount and then line
+    		DoubleBPTree<FoodItem> idx = this.indexes.get(nxt.toString());
+    		double[] keys = new double[idx.size()];
+    		int[] values = new int[idx.size()];
+    		int[] length = new int[1];
+    		idx.scanRowIds(Double.NEGATIVE_INFINITY, true, Double.POSITIVE_INFINITY, true, true, 
+    				(key, rowId) -> 
+    				{
+    					keys[length[0]] = key;
+    					values[length[0]++] = lineOf[rowId];
+    					return true;
+    				});
+    		
+    		File file = new File(directory, nxt + INDEX_FILE_SUFFIX);
+    		file.delete();
+    		PagedBPTree paged = new PagedBPTree(file.getPath(), PagedBPTree.MAX_BRANCHING_FACTOR);
+    		try
+    		{
+    			paged.bulkLoad(keys, values, Constants.IndexFillFactor);
+    		}
+    		finally
+    		{
+    			paged.close();
+    		}
+    	}
+    }
+    
+    /**
+     * Loads the food items and nutrient indexes saved by saveIndexes. Each index 
+     * is bulk loaded straight from the order of its saved copy, rather than from 
+     * sorting the food items by that nutrient. A saved index that's missing, 
+     * can't be read or doesn't match the food items is skipped, and that 
+     * nutrient is sorted instead.
+     * 
+     * @param directory - directory saveIndexes saved to
+     * @throws IOException if the food items can't be read
+     * @see FoodData#saveIndexes(String)
+     */
+    public synchronized void loadIndexes(String directory) throws IOException {
+    	prepareForChange();
+    	File items = new File(directory, INDEXED_ITEMS_FILE);
+    	if (!items.exists())
+    	{
+    		throw new FileNotFoundException(items.getPath());
+    	}
+    	List<String> rawData = loadFromFile(items.getPath());
+    	clearFoodItems();
+    	parseData(rawData);
+    	for (Constants.Nutrient nxt: Constants.Nutrient.values())
+    	{
+    		int[] rows = readIndex(new File(directory, nxt + INDEX_FILE_SUFFIX), nxt);
+    		bulkLoadIndex(nxt, rows != null ? rows : this.columns.sortByAmount(nxt.ordinal()));
+    	}
+    }
+    
+    /**
+     * Reads the row ids from a nutrient index saved by saveIndexes, and checks 
+     * them against the food items just loaded: each row with the nutrient has to 
+     * be there once, in order of the amounts that were loaded, and no other row.
+     * 
+     * @param file - file the index was saved to
+     * @param nutrient - nutrient of the index
+     * @return row ids in order of amount and then row id; null if the file is 
+     * missing, can't be read, or doesn't match the food items
+     */
+    private int[] readIndex(File file, Constants.Nutrient nutrient)
+    {
+    	if (!file.exists())
+    	{
+    		return null;
+    	}
+    	int numRows = this.columns.getNumRows();
+    	int withNutrient = 0;
+    	for (int rowId = 0; rowId < numRows; rowId++)
+    	{
+    		withNutrient += Double.isNaN(this.columns.getAmount(rowId, nutrient.ordinal())) ? 0 : 1;
+    	}
+    	int[] rows = new int[withNutrient];
+    	boolean[] seen = new boolean[numRows];
+    	// number of row ids read, and whether they've all checked out so far
+    	int[] length = new int[1];
+    	boolean[] valid = { true };
+    	try
+    	{
+    		PagedBPTree paged = new PagedBPTree(file.getPath(), PagedBPTree.MAX_BRANCHING_FACTOR);
+    		try
+    		{
+    			if (paged.size() != withNutrient)
+    			{
+    				return null;
+    			}
+    			paged.forEach(Double.NEGATIVE_INFINITY, true, Double.POSITIVE_INFINITY, true, rowId -> 
+    				{
+    					if (!valid[0] || rowId < 0 || rowId >= numRows || seen[rowId] 
+    							|| Double.isNaN(this.columns.getAmount(rowId, nutrient.ordinal())) 
+    							|| (length[0] > 0 && this.columns.getAmount(rows[length[0] - 1], nutrient.ordinal()) 
+    									> this.columns.getAmount(rowId, nutrient.ordinal())))
+    					{
+    						valid[0] = false;
+    						return;
+    					}
+    					seen[rowId] = true;
+    					rows[length[0]++] = rowId;
+    				});
+    		}
+    		finally
+    		{
+    			paged.close();
+    		}
+    	}
+    	catch (IOException | RuntimeException e)
+    	{
+    		// a file that isn't a saved index is no worse than no file
+    		return null;
+    	}
+    	return valid[0] && length[0] == withNutrient ? rows : null;
+    }
+    
     /**
      * Gets all the food items that have name containing the substring - case-insensitive
      * 
@@ -186,56 +506,434 @@ public class FoodData implements FoodDataADT<FoodItem> {
         return rtnList;
     }
 
+    /**
+     * Gets one page of the food items that have name containing the substring - 
+     * case-insensitive. Walks the food items in order of name, and stops at the 
+     * end of the page.
+     * 
+     * @param substring - substring to be searched
+     * @param offset - number of matching food items to skip
+     * @param limit - most food items to return
+     * @return list of up to limit filtered food items; if no food item matched, return empty list
+     * @throws IllegalArgumentException if offset or limit is negative
+     */
+    @Override
+    public List<FoodItem> filterByName(String substring, int offset, int limit) {
+    	checkPage(offset, limit);
+    	substring = substring.toLowerCase();
+    	
+    	List<FoodItem> rtnList = new ArrayList<FoodItem>(Math.min(limit, this.foodItemList.size()));
+    	int skipped = 0;
+    	for (FoodItem nxt: this.foodItemList)
+    	{
+    		if (rtnList.size() == limit)
+    		{
+    			break;
+    		}
+    		if (nxt.getName().toLowerCase().contains(substring) && skipped++ >= offset)
+    		{
+    			rtnList.add(nxt);
+    		}
+    	}
+    	return rtnList;
+    }
+    
     /**
      * Gets all the food items that fulfill ALL the provided rules
      * 
+     * Rules on the same nutrient are merged into a single range first, so 
+     * "protein >= 10" and "protein <= 25" become one scan of the protein 
+     * index from 10 to 25 rather than two scans that get intersected. Ranges 
+     * are then run from the most selective to the least (see filterByRanges).
+     * 
      * @param rules - list of rules
      * @return list of filtered food items; if no food item matched, return empty list
      */
     @Override
     public List<FoodItem> filterByNutrients(List<String> rules) {
-    	HashSet<FoodItem> current = this.foodItemLookup;
-    	HashSet<FoodItem> filtered = null;
+    	LinkedHashMap<String, NutrientRange> ranges = parseRules(rules);
+    	if (ranges == null)
+    	{
+    		return new LinkedList<FoodItem>();
+    	}
+        // return filtered list of food items
+        return new LinkedList<FoodItem>(filterByRanges(ranges));
+    }
+    
+    /**
+     * Gets one page of the food items that fulfill ALL the provided rules, in 
+     * order of the nutrient in the first rule, or of name if there are no rules.
+     * 
+     * Rather than finding every match and then cutting out the page, this walks 
+     * the first rule's nutrient index in order, checks each food item it reaches 
+     * against the other rules, and stops at the end of the page. A page near the 
+     * start costs about as much as the items it skips and returns.
+     * 
+     * @param rules - list of rules
+     * @param offset - number of matching food items to skip
+     * @param limit - most food items to return
+     * @return list of up to limit filtered food items; if no food item matched, return empty list
+     * @throws IllegalArgumentException if offset or limit is negative
+     */
+    @Override
+    public List<FoodItem> filterByNutrients(List<String> rules, int offset, int limit) {
+    	checkPage(offset, limit);
+    	LinkedHashMap<String, NutrientRange> ranges = parseRules(rules);
+    	if (ranges == null)
+    	{
+    		return new ArrayList<FoodItem>();
+    	}
+    	if (ranges.isEmpty())
+    	{
+    		// nothing to filter out, so the page is just a slice of the items in order of name
+    		int from = Math.min(offset, this.foodItemList.size());
+    		int to = (int) Math.min((long) offset + limit, this.foodItemList.size());
+    		return new ArrayList<FoodItem>(this.foodItemList.subList(from, to));
+    	}
+    	return scanIndex(ranges.keySet().iterator().next(), ranges, true, offset, limit);
+    }
+    
+    /**
+     * Make sure a page of results has a valid offset and limit
+     * 
+     * @param offset - number of matching food items to skip
+     * @param limit - most food items to return
+     * @throws IllegalArgumentException if offset or limit is negative
+     */
+    private void checkPage(int offset, int limit)
+    {
+    	if (offset < 0 || limit < 0)
+    	{
+    		throw new IllegalArgumentException("Illegal page: offset " + offset + ", limit " + limit);
+    	}
+    }
+    
+    /**
+     * Gets the count, total, least and greatest amount of every nutrient across
+     * the food items that fulfill ALL the provided rules, in the same format as 
+     * for filterByNutrients. Like "total fat across all items with calories <= 200".
+     * 
+     * When all of the rules are on one nutrient, the summary is put together from 
+     * the summaries kept in that nutrient's index, without visiting the food items.
+     * 
+     * @param rules - list of rules
+     * @return summary of the filtered food items
+     */
+    @Override
+    public NutrientSummary summarizeByNutrients(List<String> rules) {
+    	Aggregator<FoodItem, NutrientSummary> aggregator = NutrientSummary.aggregator();
+    	LinkedHashMap<String, NutrientRange> ranges = parseRules(rules);
+    	if (ranges == null)
+    	{
+    		return aggregator.identity();
+    	}
+    	if (ranges.size() == 1)
+    	{
+    		Map.Entry<String, NutrientRange> only = ranges.entrySet().iterator().next();
+    		return summarizeRange(only.getKey(), only.getValue());
+    	}
+    	if (ranges.isEmpty())
+    	{
+    		// every food item is in an index unless it was added without some nutrient
+    		for (DoubleBPTree<FoodItem> idx: this.indexes.values())
+    		{
+    			if (idx.size() == this.foodItemLookup.size())
+    			{
+    				return idx.aggregate(aggregator, Double.NEGATIVE_INFINITY, true, Double.POSITIVE_INFINITY, true);
+    			}
+    		}
+    	}
+    	
+    	// summaries only cover one nutrient's index, so add up the matching rows' amounts
+    	return NutrientSummary.of(this.columns, filterRowIds(ranges));
+    }
+    
+    /**
+     * Gets the k food items with the least or greatest amount of a nutrient, out 
+     * of those that fulfill ALL the provided rules.
+     * 
+     * Walks the nutrient's index from the low or high end, checks each food item 
+     * it reaches against the rules, and stops as soon as k of them pass. So "20 
+     * items with the most protein under 300 calories" looks at items only until 
+     * it has found 20 under 300 calories. Rules on the nutrient being ordered by 
+     * narrow the walk itself, rather than being checked item by item.
+     * 
+     * @param nutrient - name of the nutrient to order by, case-insensitive
+     * @param k - most food items to return
+     * @param ascending - true for the items with the least of the nutrient, false for the most
+     * @param rules - list of rules
+     * @return up to k filtered food items, in order of the nutrient; if no food item 
+     * matched, or nutrient isn't one we know, return empty list
+     */
+    @Override
+    public List<FoodItem> topK(String nutrient, int k, boolean ascending, List<String> rules) {
+    	LinkedHashMap<String, NutrientRange> ranges = parseRules(rules);
+    	if (ranges == null || nutrient == null || !this.indexes.containsKey(nutrient.toLowerCase()) || k <= 0)
+    	{
+    		return new ArrayList<FoodItem>();
+    	}
+    	return scanIndex(nutrient.toLowerCase(), ranges, ascending, 0, k);
+    }
+    
+    /**
+     * Walk one nutrient's index in order, checking each food item against the 
+     * ranges as we go, and stop once we have enough of them
+     * 
+     * @param nutrient - nutrient whose index to walk
+     * @param ranges - range of amounts to keep for each nutrient - the walk itself 
+     * covers the range for nutrient, so that one is taken out and the rest are checked item by item
+     * @param ascending - true to walk from the least amount up, false from the greatest down
+     * @param offset - number of matching food items to skip
+     * @param limit - most food items to return
+     * @return up to limit matching food items, in order of the nutrient
+     */
+    private List<FoodItem> scanIndex(String nutrient, Map<String, NutrientRange> ranges, boolean ascending, int offset, int limit)
+    {
+    	List<FoodItem> rtnList = new ArrayList<FoodItem>();
+    	DoubleBPTree<FoodItem> idx = this.indexes.get(nutrient);
+    	NutrientRange range = ranges.remove(nutrient);
+    	if (range == null)
+    	{
+    		range = new NutrientRange(Constants.Nutrient.valueOf(nutrient));
+    	}
+    	if (limit == 0)
+    	{
+    		return rtnList;
+    	}
+    	
+    	// the index key is the amount the index was built with, and the others come 
+    	// from the columns by row id, so a snapshot checks the amounts it was taken with
+    	NutrientRange walked = range;
+    	Collection<NutrientRange> others = ranges.values();
+    	FoodColumns columns = this.columns;
+    	idx.scanRowIds(range.lo, range.loInclusive, range.hi, range.hiInclusive, ascending, new RowVisitor()
+    		{
+    			// matching food items passed over so far
+    			int skipped = 0;
+    			
+    			@Override
+    			public boolean visit(double key, int rowId) {
+    				if (!walked.isExcluded(key) && matchesRanges(rowId, others) && this.skipped++ >= offset)
+    				{
+    					rtnList.add(columns.valueOf(rowId));
+    				}
+    				return rtnList.size() < limit;
+    			}
+    		});
+    	return rtnList;
+    }
+    
+    /**
+     * Check a food item's row against a range of each of several nutrients, 
+     * without using the indexes. The amounts come from the columns rather than 
+     * the food item, so a snapshot checks the amounts it was taken with.
+     * 
+     * @param rowId - row id of the food item to check
+     * @param ranges - range of amounts to keep for each nutrient
+     * @return true if the food item has an amount of every nutrient that is in its range
+     */
+    private boolean matchesRanges(int rowId, Collection<NutrientRange> ranges)
+    {
+    	for (NutrientRange nxt: ranges)
+    	{
+    		// an item without the nutrient isn't in its index, so a filter wouldn't find it either
+    		double amt = this.columns.getAmount(rowId, nxt.nutrient.ordinal());
+    		if (Double.isNaN(amt) || !nxt.contains(amt))
+    		{
+    			return false;
+    		}
+    	}
+    	return true;
+    }
+    
+    /**
+     * Summarize the food items in a range of one nutrient from the summaries kept 
+     * in its index. Each != rule splits the range in two around the amount it rules out.
+     * 
+     * @param nutrient - string specifying nutrient to summarize by
+     * @param range - range of amounts to summarize
+     * @return summary of the food items in range
+     */
+    private NutrientSummary summarizeRange(String nutrient, NutrientRange range)
+    {
+    	Aggregator<FoodItem, NutrientSummary> aggregator = NutrientSummary.aggregator();
+    	DoubleBPTree<FoodItem> idx = this.indexes.get(nutrient);
+    	double[] excluded = range.excluded.clone();
+    	Arrays.sort(excluded);
+    	
+    	NutrientSummary total = aggregator.identity();
+    	double lo = range.lo;
+    	boolean loInclusive = range.loInclusive;
+    	for (double nxt: excluded)
+    	{
+    		if (nxt < range.lo || nxt > range.hi)
+    		{
+    			continue;
+    		}
+    		total = aggregator.combine(total, idx.aggregate(aggregator, lo, loInclusive, nxt, false));
+    		lo = nxt;
+    		loInclusive = false;
+    	}
+    	return aggregator.combine(total, idx.aggregate(aggregator, lo, loInclusive, range.hi, range.hiInclusive));
+    }
+    
+    /**
+     * Merge rules into one range per nutrient, keeping the order nutrients first appear in
+     * 
+     * @param rules - list of rules, in the format given for filterByNutrients
+     * @return range for each nutrient with a rule; null if a rule has a nutrient or 
+     * comparator we don't know, so nothing can match
+     */
+    private LinkedHashMap<String, NutrientRange> parseRules(List<String> rules)
+    {
+    	LinkedHashMap<String, NutrientRange> ranges = new LinkedHashMap<String, NutrientRange>();
         for (String rule: rules)
         {
         	String[] pieces = rule.split(" ");
-        	// use rule to filter current list of food items
-        	filtered = filterByOneRule(current, pieces[0], pieces[1], pieces[2]);
-        	current = filtered;
-        }
-        
-        LinkedList<FoodItem> rtnList = new LinkedList<FoodItem>();
-        for(FoodItem nxt: filtered)
-        {
-        	rtnList.add(nxt);
+        	String nutrient = pieces[0].toLowerCase();
+        	Comparison comparison = Comparison.fromSymbol(pieces[1]);
+        	double amt = Double.parseDouble(pieces[2]);
+        	
+        	if (!this.indexes.containsKey(nutrient) || comparison == null)
+        	{
+        		return null;
+        	}
+        	NutrientRange range = ranges.get(nutrient);
+        	if (range == null)
+        	{
+        		range = new NutrientRange(Constants.Nutrient.valueOf(nutrient));
+        		ranges.put(nutrient, range);
+        	}
+        	range.addRule(comparison, amt);
         }
-        // return filtered list of food items
+        return ranges;
+    }
+    
+    /**
+     * Filter the food items by a range of each of several nutrients. 
+     * 
+     * @param ranges - range of amounts to keep for each nutrient
+     * @return food items in every range, in order of row id; all food items if there are no ranges
+     * @see FoodData#filterRowIds(Map)
+     */
+    private Collection<FoodItem> filterByRanges(Map<String, NutrientRange> ranges)
+    {
+    	if (ranges.isEmpty())
+    	{
+    		return this.foodItemLookup;
+    	}
+    	RowBitmap rows = filterRowIds(ranges);
+        List<FoodItem> rtnList = new ArrayList<FoodItem>(rows.cardinality());
+        FoodColumns columns = this.columns;
+        rows.forEach(rowId -> rtnList.add(columns.valueOf(rowId)));
         return rtnList;
     }
+    
     /**
-     * Filter a hashed set of food items based on a rule
+     * Find the row ids of the food items in a range of each of several nutrients. 
+     * 
+     * Ranges are planned from the fewest food items in them to the most, estimated 
+     * from the statistics on each nutrient. The first one gives a bitmap of the row ids in it. Each 
+     * one after that is intersected in from its own index while that costs less 
+     * than checking the food items left, and the rest are checked against each 
+     * remaining row's amounts in the columns. So an unselective rule like "calories >= 0" 
+     * never has its whole range read, wherever it is in the list.
+     * 
+     * Both the indexes and the columns of a snapshot stay as they were when it 
+     * was taken, so changes since then don't move food items in or out of its results.
      * 
-     * @param startingList - initial list of food items to be filtered
-     * @param nutrient - string specifying nutrient to filter by
-     * @param comparator - string specifying comparator
-     * @param amt - string specifying amount 
-     * @return filtered list of food items
+     * @param ranges - range of amounts to keep for each nutrient
+     * @return bitmap of the row ids in every range; every row in use if there are no ranges
+     */
+    private RowBitmap filterRowIds(Map<String, NutrientRange> ranges)
+    {
+    	if (ranges.isEmpty())
+    	{
+    		RowBitmap rows = new RowBitmap();
+    		this.columns.addRowIds(rows);
+    		return rows;
+    	}
+    	List<NutrientRange> plan = new ArrayList<NutrientRange>(ranges.values());
+    	plan.sort(Comparator.comparingInt(this::estimateSize));
+    	
+    	RowBitmap current = filterByRange(plan.get(0));
+    	int next = 1;
+    	while (next < plan.size() && !current.isEmpty() 
+    			&& estimateSize(plan.get(next)) < (long) current.cardinality() * RESIDUAL_COST)
+    	{
+    		current = current.and(filterByRange(plan.get(next++)));
+    	}
+    	if (next == plan.size())
+    	{
+    		return current;
+    	}
+    	List<NutrientRange> residual = plan.subList(next, plan.size());
+    	
+    	RowBitmap rows = new RowBitmap();
+    	current.forEach(rowId -> 
+    		{
+    			if (matchesRanges(rowId, residual))
+    			{
+    				rows.add(rowId);
+    			}
+    		});
+    	return rows;
+    }
+    
+    /**
+     * Estimate the food items in a range of one nutrient from the histogram in 
+     * its statistics, without touching the index. Planning only needs to know 
+     * which ranges are narrower than others, not exact counts.
      * 
+     * @param range - range of amounts to estimate
+     * @return estimated number of food items in range
+     * @see NutrientStatistics#estimateCount(double, boolean, double, boolean)
      */
-    private HashSet<FoodItem> filterByOneRule(HashSet<FoodItem> startingList, String nutrient, String comparator, String amt)
+    private int estimateSize(NutrientRange range)
     {
-    	HashSet<FoodItem> rtnList = new HashSet<FoodItem>();
-    	BPTree<Double, FoodItem> idx = this.indexes.get(nutrient.toString());
-    	Double amtAsDouble = Double.parseDouble(amt);
-    	List<FoodItem> filtered = idx.rangeSearch(amtAsDouble, comparator);
-    	for (FoodItem nxt: filtered)
+    	NutrientStatistics stats = this.statistics.get(range.nutrient);
+    	double size = stats.estimateCount(range.lo, range.loInclusive, range.hi, range.hiInclusive);
+    	double[] excluded = range.excluded.clone();
+    	Arrays.sort(excluded);
+    	for (int i = 0; i < excluded.length; i++)
     	{
-    		if (startingList.contains(nxt))
+    		// a repeated != rule only rules its amount out once
+    		if ((i == 0 || excluded[i] != excluded[i - 1]) && range.isInBounds(excluded[i]))
     		{
-    			rtnList.add(nxt);
+    			size -= stats.estimateCount(excluded[i], true, excluded[i], true);
     		}
     	}
-    	return rtnList;
+    	return (int) Math.round(Math.max(size, 0));
+    }
+    
+    /**
+     * Find the row ids of the food items in a range of one nutrient. Each != rule 
+     * splits the range in two around the amount it rules out.
+     * 
+     * @param range - range of amounts to keep
+     * @return bitmap of the row ids in range
+     */
+    private RowBitmap filterByRange(NutrientRange range)
+    {
+    	RowBitmap rows = new RowBitmap();
+    	DoubleBPTree<FoodItem> idx = this.indexes.get(range.nutrient.toString());
+    	double[] excluded = range.excluded.clone();
+    	Arrays.sort(excluded);
+    	
+    	double lo = range.lo;
+    	boolean loInclusive = range.loInclusive;
+    	for (double nxt: excluded)
+    	{
+    		if (nxt < range.lo || nxt > range.hi)
+    		{
+    			continue;
+    		}
+    		idx.addRowIds(lo, loInclusive, nxt, false, rows);
+    		lo = nxt;
+    		loInclusive = false;
+    	}
+    	idx.addRowIds(lo, loInclusive, range.hi, range.hiInclusive, rows);
+    	return rows;
     }
 
     /**
@@ -243,27 +941,167 @@ public class FoodData implements FoodDataADT<FoodItem> {
      * @param foodItem - the food item instance to be added
      */
     @Override
-    public void addFoodItem(FoodItem foodItem) {
+    public synchronized void addFoodItem(FoodItem foodItem) {
+    	prepareForChange();
         this.foodItemList.add(foodItem);
         this.foodItemLookup.add(foodItem);
-        // add to the nutrient index
-        for (String nutrient: foodItem.getNutrients().keySet())
+        // the columns keep a copy of its amounts, which the indexes are built from
+        int rowId = this.columns.adopt(foodItem);
+        for (Constants.Nutrient nxt: Constants.Nutrient.values())
         {
-        	double amt = foodItem.getNutrientValue(nutrient);
-        	BPTree<Double, FoodItem> idx = this.indexes.get(nutrient);
-        	idx.insert(amt, foodItem);
+        	double amt = this.columns.getAmount(rowId, nxt.ordinal());
+        	if (Double.isNaN(amt))
+        	{
+        		this.statistics.get(nxt).addMissing(1);
+        	}
+        	else
+        	{
+        		DoubleBPTree<FoodItem> idx = this.indexes.get(nxt.toString());
+        		idx.insertDouble(amt, foodItem);
+        		this.statistics.get(nxt).add(amt, idx);
+        	}
         }
     }
 
     /**
-     * Gets the list of all food items.
+     * Removes a food item from the loaded data, and from each nutrient index
+     * @param foodItem - the food item instance to be removed
+     * @return true if the food item was removed, false if it wasn't loaded
+     */
+    @Override
+    public synchronized boolean removeFoodItem(FoodItem foodItem) {
+    	prepareForChange();
+    	if (!this.foodItemLookup.remove(foodItem))
+    	{
+    		return false;
+    	}
+    	this.foodItemList.remove(foodItem);
+    	// the indexes look up the item's row id to remove it, so it has to be released after
+    	int rowId = this.columns.rowIdOf(foodItem);
+    	for (Constants.Nutrient nxt: Constants.Nutrient.values())
+    	{
+    		double amt = this.columns.getAmount(rowId, nxt.ordinal());
+    		if (Double.isNaN(amt))
+    		{
+    			this.statistics.get(nxt).addMissing(-1);
+    		}
+    		else
+    		{
+    			DoubleBPTree<FoodItem> idx = this.indexes.get(nxt.toString());
+    			idx.removeDouble(amt, foodItem);
+    			this.statistics.get(nxt).remove(amt, idx);
+    		}
+    	}
+    	this.columns.release(rowId);
+    	return true;
+    }
+    
+    /**
+     * Changes the amount of a nutrient in a loaded food item, and moves the item
+     * to its new place in that nutrient's index rather than rebuilding the index
+     * @param foodItem - the food item instance to be changed
+     * @param nutrient - name of the nutrient, case-insensitive
+     * @param value - new amount of the nutrient
+     * @return true if the food item was changed, false if it wasn't loaded
+     * or the nutrient or value isn't valid
+     */
+    @Override
+    public synchronized boolean updateNutrient(FoodItem foodItem, String nutrient, double value) {
+    	prepareForChange();
+    	if (nutrient == null || Double.isNaN(value) || !this.foodItemLookup.contains(foodItem))
+    	{
+    		return false;
+    	}
+    	nutrient = nutrient.toLowerCase();
+    	DoubleBPTree<FoodItem> idx = this.indexes.get(nutrient);
+    	if (idx == null)
+    	{
+    		return false;
+    	}
+    	
+    	// an item added with its own storage has a copy of its amounts in the columns, so change both
+    	int rowId = this.columns.rowIdOf(foodItem);
+    	int ordinal = FoodColumns.ordinalOf(nutrient);
+    	double oldValue = this.columns.getAmount(rowId, ordinal);
+    	foodItem.addNutrient(nutrient, value);
+    	this.columns.setAmount(rowId, ordinal, value);
+    	NutrientStatistics stats = this.statistics.get(Constants.Nutrient.values()[ordinal]);
+    	if (Double.isNaN(oldValue))
+    	{
+    		idx.insertDouble(value, foodItem);
+    		stats.addMissing(-1);
+    		stats.add(value, idx);
+    	}
+    	else
+    	{
+    		idx.updateDouble(oldValue, value, foodItem);
+    		if (oldValue != value)
+    		{
+    			stats.remove(oldValue, idx);
+    			stats.add(value, idx);
+    		}
+    	}
+    	// the other indexes summarize this nutrient too, so their summaries of the item are out of date
+    	for (Constants.Nutrient other: Constants.Nutrient.values())
+    	{
+    		double amt = this.columns.getAmount(rowId, other.ordinal());
+    		if (other.ordinal() != ordinal && !Double.isNaN(amt))
+    		{
+    			this.indexes.get(other.toString()).refreshSummaries(amt);
+    		}
+    	}
+    	return true;
+    }
+
+    /**
+     * Gets the list of all food items. A snapshot's list can't be changed, 
+     * since it may be shared.
      * @return list of FoodItem
      */
     @Override
     public List<FoodItem> getAllFoodItems() {
+    	if (this.isSnapshot)
+    	{
+    		return Collections.unmodifiableList(this.foodItemList);
+    	}
     	return this.foodItemList;
     }
     
+    /**
+     * Gets statistics on the amounts of a nutrient across the loaded food items - 
+     * count, least and greatest, distinct amounts, food items without it or with 
+     * none of it, and a histogram for estimating how many food items a range holds
+     * 
+     * @param nutrient - the nutrient
+     * @return copy of the statistics as they are now
+     */
+    public synchronized NutrientStatistics getStatistics(Constants.Nutrient nutrient) {
+    	return new NutrientStatistics(this.statistics.get(nutrient));
+    }
+    
+    /**
+     * Gets the shape and memory use of a nutrient's index, for sizing heaps 
+     * and for metrics
+     * 
+     * @param nutrient - name of the nutrient, case-insensitive
+     * @return stats for the index; null if nutrient isn't one we know
+     * @see DoubleBPTree#stats()
+     */
+    public TreeStats getIndexStats(String nutrient) {
+    	DoubleBPTree<FoodItem> idx = this.indexes.get(nutrient.toLowerCase());
+    	return idx == null ? null : idx.stats();
+    }
+    
+    /**
+     * Gets the index on a nutrient, for tests in this package to read directly
+     * 
+     * @param nutrient - name of the nutrient, case-insensitive
+     * @return the index; null if nutrient isn't one we know
+     */
+    DoubleBPTree<FoodItem> getIndex(String nutrient) {
+    	return this.indexes.get(nutrient.toLowerCase());
+    }
+    
     /**
      * Save the list of food items in ascending order by name
      * 
@@ -307,6 +1145,32 @@ public class FoodData implements FoodDataADT<FoodItem> {
     	
     	return formattedData;
     }
+    /**
+     * translate the data in one row of the columns to a formatted string, with 
+     * exact amounts, for saveIndexes
+     * 
+     * @param rowId - row id of the food item to be formatted
+     * @return string with formatted food item data
+     */
+    private String serializeRow(int rowId)
+    {
+    	StringBuilder sb = new StringBuilder();
+		sb.append(this.columns.getID(rowId));
+		sb.append(",");
+		sb.append(this.columns.getName(rowId));
+		
+		for (Constants.Nutrient nxt: Constants.Nutrient.values())
+		{
+			double amt = this.columns.getAmount(rowId, nxt.ordinal());
+			sb.append(",");
+			sb.append(nxt);
+			sb.append(",");
+			// a missing amount is written as NaN, which parseData reads back as missing
+			sb.append(amt);
+		}
+		return sb.toString();
+    }
+    
     /**
      * translate data about a single food item to a formatted string
      * 
@@ -320,7 +1184,6 @@ public class FoodData implements FoodDataADT<FoodItem> {
 		sb.append(",");
 		sb.append(item.getName());
 		
-		HashMap<String, Double> nutrients = item.getNutrients();
 		Constants.Nutrient[] nutrientList = Constants.Nutrient.values();
 		for (int i = 0; i < nutrientList.length; i++)
 		{
@@ -329,8 +1192,154 @@ public class FoodData implements FoodDataADT<FoodItem> {
 			sb.append(nutrientList[i]);
 			sb.append(",");
 			// amount - use formatter to drop trailing zeros
-			sb.append(this.numFormatter.format(nutrients.get(nutrientList[i].toString())));
+			sb.append(this.numFormatter.format(item.getNutrientValue(nutrientList[i])));
 		}
 		return sb.toString();
     }
+    
+    /**
+     * Range of amounts for one nutrient, built up by narrowing it with each rule
+     * on that nutrient. Starts out unbounded on both sides. != rules can't narrow
+     * the range, so the amounts they rule out are kept separately and checked
+     * against each item in range.
+     */
+    private static class NutrientRange
+    {
+    	// nutrient the range is for
+    	final Constants.Nutrient nutrient;
+    	
+    	// lower bound of the range, and whether amounts equal to it are included
+    	double lo = Double.NEGATIVE_INFINITY;
+    	boolean loInclusive = true;
+    	
+    	// upper bound of the range, and whether amounts equal to it are included
+    	double hi = Double.POSITIVE_INFINITY;
+    	boolean hiInclusive = true;
+    	
+    	// amounts ruled out by != rules
+    	double[] excluded = new double[0];
+    	
+    	/**
+    	 * Constructor for a range that starts out unbounded
+    	 * 
+    	 * @param nutrient - nutrient the range is for
+    	 */
+    	NutrientRange(Constants.Nutrient nutrient)
+    	{
+    		this.nutrient = nutrient;
+    	}
+    	
+    	/**
+    	 * Narrow the range by a rule
+    	 * 
+    	 * @param comparison - comparison from the rule
+    	 * @param amt - amount to compare against
+    	 */
+    	void addRule(Comparison comparison, double amt)
+    	{
+    		switch (comparison)
+    		{
+    			case GreaterThanOrEqual:
+    				raiseLower(amt, true);
+    				break;
+    			case GreaterThan:
+    				raiseLower(amt, false);
+    				break;
+    			case LessThanOrEqual:
+    				lowerUpper(amt, true);
+    				break;
+    			case LessThan:
+    				lowerUpper(amt, false);
+    				break;
+    			case EqualTo:
+    				raiseLower(amt, true);
+    				lowerUpper(amt, true);
+    				break;
+    			case NotEqualTo:
+    				this.excluded = Arrays.copyOf(this.excluded, this.excluded.length + 1);
+    				this.excluded[this.excluded.length - 1] = amt;
+    				break;
+    		}
+    	}
+    	
+    	/**
+    	 * Check an amount against the != rules
+    	 * 
+    	 * @param amt - amount to check
+    	 * @return true if a != rule rules out amt
+    	 */
+    	boolean isExcluded(double amt)
+    	{
+    		for (double nxt: this.excluded)
+    		{
+    			if (nxt == amt)
+    			{
+    				return true;
+    			}
+    		}
+    		return false;
+    	}
+    	
+    	/**
+    	 * Check an amount against the whole range, != rules included
+    	 * 
+    	 * @param amt - amount to check
+    	 * @return true if amt is in range
+    	 */
+    	boolean contains(double amt)
+    	{
+    		return isInBounds(amt) && !isExcluded(amt);
+    	}
+    	
+    	/**
+    	 * Check an amount against the bounds, leaving out the != rules
+    	 * 
+    	 * @param amt - amount to check
+    	 * @return true if amt is between the bounds
+    	 */
+    	boolean isInBounds(double amt)
+    	{
+    		boolean aboveLo = amt > this.lo || (this.loInclusive && amt == this.lo);
+    		boolean belowHi = amt < this.hi || (this.hiInclusive && amt == this.hi);
+    		return aboveLo && belowHi;
+    	}
+    	
+    	/**
+    	 * Move the lower bound up to amt, if that's tighter than what we have
+    	 * 
+    	 * @param amt - new lower bound
+    	 * @param inclusive - whether amt itself is in range
+    	 */
+    	void raiseLower(double amt, boolean inclusive)
+    	{
+    		if (amt > this.lo)
+    		{
+    			this.lo = amt;
+    			this.loInclusive = inclusive;
+    		}
+    		else if (amt == this.lo)
+    		{
+    			this.loInclusive = this.loInclusive && inclusive;
+    		}
+    	}
+    	
+    	/**
+    	 * Move the upper bound down to amt, if that's tighter than what we have
+    	 * 
+    	 * @param amt - new upper bound
+    	 * @param inclusive - whether amt itself is in range
+    	 */
+    	void lowerUpper(double amt, boolean inclusive)
+    	{
+    		if (amt < this.hi)
+    		{
+    			this.hi = amt;
+    			this.hiInclusive = inclusive;
+    		}
+    		else if (amt == this.hi)
+    		{
+    			this.hiInclusive = this.hiInclusive && inclusive;
+    		}
+    	}
+    }
 }
@@ -55,6 +55,22 @@ public interface FoodDataADT<F extends FoodItem> {
     public List<F> filterByName(String substring);
     
     
+    /**
+     * Gets one page of the food items that have name containing
+     * the substring, in order of name. Same as taking the items
+     * from offset to offset + limit of filterByName(substring),
+     * but only finds the items up to the end of the page.
+     * 
+     * @param substring substring to be searched
+     * @param offset number of matching food items to skip
+     * @param limit most food items to return
+     * @return list of up to limit filtered food items; if no food 
+     * item matched, return empty list
+     * @throws IllegalArgumentException if offset or limit is negative
+     */
+    public List<F> filterByName(String substring, int offset, int limit);
+    
+    
     /**
      * Gets all the food items that fulfill ALL the provided rules
      *
@@ -64,7 +80,7 @@ public interface FoodDataADT<F extends FoodItem> {
      * Definition of a rule:
      *     A rule is a string which has three parts separated by a space:
      *         1. <nutrient>: Name of one of the 5 nutrients [CASE-INSENSITIVE]
-     *         2. <comparator>: One of the following comparison operators: <=, >=, ==
+     *         2. <comparator>: One of the following comparison operators: <=, >=, ==, <, >, !=
      *         3. <value>: a double value
      * 
      * Note:
@@ -79,11 +95,89 @@ public interface FoodDataADT<F extends FoodItem> {
     public List<F> filterByNutrients(List<String> rules);
     
     
+    /**
+     * Gets one page of the food items that fulfill ALL the 
+     * provided rules. Rules are in the same format as for 
+     * filterByNutrients.
+     * 
+     * Items come in order of the nutrient in the first rule,
+     * least first, or in order of name if there are no rules,
+     * so asking for the next page with the same rules picks up 
+     * where the last one left off as long as the data hasn't 
+     * changed. Only the items up to the end of the page are found.
+     * 
+     * @param rules list of rules
+     * @param offset number of matching food items to skip
+     * @param limit most food items to return
+     * @return list of up to limit filtered food items; if no food
+     * item matched, return empty list
+     * @throws IllegalArgumentException if offset or limit is negative
+     */
+    public List<F> filterByNutrients(List<String> rules, int offset, int limit);
+    
+    
+    /**
+     * Gets the count, total, least and greatest amount of each
+     * nutrient across the food items that fulfill ALL the 
+     * provided rules. Rules are in the same format as for
+     * filterByNutrients.
+     * 
+     * Example:
+     *     Total fat across all items with calories <= 200
+     *         summarizeByNutrients(["calories <= 200"]).getSum("fat")
+     *
+     * @param rules list of rules
+     * @return summary of the filtered food items
+     */
+    public NutrientSummary summarizeByNutrients(List<String> rules);
+    
+    
+    /**
+     * Gets the k food items with the least or greatest amount
+     * of a nutrient, out of those that fulfill ALL the provided
+     * rules. Rules are in the same format as for filterByNutrients.
+     * 
+     * Example:
+     *     20 items with the most protein under 300 calories
+     *         topK("protein", 20, false, ["calories < 300"])
+     * 
+     * @param nutrient name of one of the 5 nutrients [CASE-INSENSITIVE]
+     * to order the food items by
+     * @param k most food items to return
+     * @param ascending true for the items with the least of the
+     * nutrient, false for the ones with the most
+     * @param rules list of rules
+     * @return list of up to k filtered food items, in order of the
+     * nutrient; if no food item matched, return empty list
+     */
+    public List<F> topK(String nutrient, int k, boolean ascending, List<String> rules);
+    
+    
     /**
      * Adds a food item to the loaded data.
      * @param foodItem the food item instance to be added
      */
     public void addFoodItem(FoodItem foodItem);
+    
+    
+    /**
+     * Removes a food item from the loaded data.
+     * @param foodItem the food item instance to be removed
+     * @return true if the food item was removed, false if it wasn't loaded
+     */
+    public boolean removeFoodItem(FoodItem foodItem);
+    
+    
+    /**
+     * Changes the amount of a nutrient in a loaded food item, keeping
+     * nutrient filtering up to date.
+     * @param foodItem the food item instance to be changed
+     * @param nutrient name of one of the 5 nutrients [CASE-INSENSITIVE]
+     * @param value new amount of the nutrient
+     * @return true if the food item was changed, false if it wasn't loaded
+     * or the nutrient or value isn't valid
+     */
+    public boolean updateNutrient(FoodItem foodItem, String nutrient, double value);
 
     
     /**
@@ -93,6 +187,22 @@ public interface FoodDataADT<F extends FoodItem> {
     public List<FoodItem> getAllFoodItems();
     
     
+    /**
+     * Gets a read-only copy of the loaded data as it is now. 
+     * Filters on the snapshot aren't affected by food items
+     * being added, removed or changed afterwards, and can run
+     * on another thread while that happens.
+     * 
+     * The food items themselves are shared, so a nutrient 
+     * changed with updateNutrient shows in the item, though 
+     * not in which filters the snapshot puts it in.
+     * 
+     * @return snapshot of the loaded data, which throws
+     * UnsupportedOperationException if changed
+     */
+    public FoodDataADT<F> snapshot();
+    
+    
     /**
      * Save the list of food items in ascending order by name
      * 
@@ -15,6 +15,7 @@
  */
 
 package application;
+import java.util.Arrays;
 import java.util.HashMap;
 
 /**
@@ -29,8 +30,15 @@ public class FoodItem {
     // The id of the food item.
     private String id;
 
-    // Map of nutrients and value.
-    private HashMap<String, Double> nutrients;
+    // Amount of each nutrient by Constants.Nutrient ordinal, NaN if not present.
+    private double[] amounts;
+
+    // Nutrients that aren't one of Constants.Nutrient - null until one is added.
+    private HashMap<String, Double> otherNutrients;
+
+    // Columns holding this food item, and its row - null when it has its own storage.
+    private FoodColumns columns;
+    private int rowId;
     
     /**
      * Constructor
@@ -40,7 +48,38 @@ public class FoodItem {
     public FoodItem(String id, String name) {
     	this.id = id;
     	this.name = name;
-    	this.nutrients = new HashMap<String, Double>();
+    	this.amounts = new double[Constants.Nutrient.values().length];
+    	Arrays.fill(this.amounts, Double.NaN);
+    }
+
+    /**
+     * Constructor for a food item that is a view of a row in a FoodData's columns,
+     * with no storage of its own
+     * @param columns columns holding the food item
+     * @param rowId row of the food item
+     */
+    FoodItem(FoodColumns columns, int rowId) {
+    	this.columns = columns;
+    	this.rowId = rowId;
+    }
+
+    /**
+     * Checks whether this food item is a view of a row in the given columns
+     * 
+     * @param columns columns to check
+     * @return true if the food item's values are stored there
+     */
+    boolean isViewOf(FoodColumns columns) {
+    	return this.columns == columns;
+    }
+
+    /**
+     * Gets the row of a food item that is a view of a FoodData's columns
+     * 
+     * @return row id of the food item
+     */
+    int getRowId() {
+    	return this.rowId;
     }
     
     /**
@@ -49,6 +88,10 @@ public class FoodItem {
      * @return name of the food item
      */
     public String getName() {
+    	if (this.columns != null)
+    	{
+    		return this.columns.getName(this.rowId);
+    	}
         return this.name;
     }
 
@@ -58,25 +101,116 @@ public class FoodItem {
      * @return id of the food item
      */
     public String getID() {
+    	if (this.columns != null)
+    	{
+    		return this.columns.getID(this.rowId);
+    	}
         return this.id;
     }
     
     /**
-     * Gets the nutrients of the food item
+     * Gets the nutrients of the food item. This is a copy, so use addNutrient 
+     * to change them.
      * 
      * @return nutrients of the food item
      */
     public HashMap<String, Double> getNutrients() {
-        return this.nutrients;
+    	HashMap<String, Double> copy = new HashMap<String, Double>();
+    	for (Constants.Nutrient nxt: Constants.Nutrient.values())
+    	{
+    		if (hasNutrient(nxt))
+    		{
+    			copy.put(nxt.toString(), amountOf(nxt.ordinal()));
+    		}
+    	}
+    	if (this.otherNutrients != null)
+    	{
+    		copy.putAll(this.otherNutrients);
+    	}
+    	return copy;
+    }
+
+    /**
+     * Checks whether the food item has a value for the given nutrient
+     * 
+     * @param nutrient the nutrient
+     * @return true if the nutrient has been added
+     */
+    public boolean hasNutrient(Constants.Nutrient nutrient) {
+    	return !Double.isNaN(amountOf(nutrient.ordinal()));
+    }
+
+    /**
+     * Checks whether the food item has a value for the given nutrient
+     * 
+     * @param name name of the nutrient
+     * @return true if the nutrient has been added
+     */
+    public boolean hasNutrient(String name) {
+    	int nutrient = FoodColumns.ordinalOf(name);
+    	if (nutrient < 0)
+    	{
+    		return this.otherNutrients != null && this.otherNutrients.containsKey(name);
+    	}
+    	return !Double.isNaN(amountOf(nutrient));
     }
 
     /**
      * Adds a nutrient and its value to this food. 
      * If nutrient already exists, updates its value.
+     * 
+     * @param nutrient the nutrient
+     * @param value amount of the nutrient
+     */
+    public void addNutrient(Constants.Nutrient nutrient, double value) {
+    	if (this.columns != null)
+    	{
+    		this.columns.setAmount(this.rowId, nutrient.ordinal(), value);
+    	}
+    	else
+    	{
+    		this.amounts[nutrient.ordinal()] = value;
+    	}
+    }
+
+    /**
+     * Adds a nutrient and its value to this food. 
+     * If nutrient already exists, updates its value.
+     * 
+     * @throws IllegalArgumentException if the food item was loaded into a FoodData
+     * and name isn't one of Constants.Nutrient
      */
     public void addNutrient(String name, double value) {
     	name = name.toLowerCase();
-        this.nutrients.put(name, value);
+    	int nutrient = FoodColumns.ordinalOf(name);
+    	if (nutrient >= 0)
+    	{
+    		addNutrient(Constants.Nutrient.values()[nutrient], value);
+    	}
+    	else if (this.columns != null)
+    	{
+    		throw new IllegalArgumentException("Unknown nutrient: " + name);
+    	}
+    	else
+    	{
+    		if (this.otherNutrients == null)
+    		{
+    			this.otherNutrients = new HashMap<String, Double>();
+    		}
+    		this.otherNutrients.put(name, value);
+    	}
+    }
+
+    /**
+     * Returns the value of the given nutrient for this food item. 
+     * If not present, then returns 0.
+     * 
+     * @param nutrient the nutrient
+     * @return amount of the nutrient
+     */
+    public double getNutrientValue(Constants.Nutrient nutrient) {
+    	double value = amountOf(nutrient.ordinal());
+    	return Double.isNaN(value) ? 0 : value;
     }
 
     /**
@@ -84,15 +218,28 @@ public class FoodItem {
      * If not present, then returns 0.
      */
     public double getNutrientValue(String name) {
-        Double value = this.nutrients.get(name);
-    	if (value != null)
-        {
-        	return value;
-        }
-    	else
+    	int nutrient = FoodColumns.ordinalOf(name);
+    	if (nutrient < 0)
+    	{
+    		Double value = this.otherNutrients == null ? null : this.otherNutrients.get(name);
+    		return value == null ? 0 : value;
+    	}
+    	double value = amountOf(nutrient);
+    	return Double.isNaN(value) ? 0 : value;
+    }
+
+    /**
+     * Gets the stored amount of a nutrient, wherever this food item keeps it
+     * 
+     * @param nutrient Constants.Nutrient ordinal
+     * @return amount of the nutrient; NaN if not present
+     */
+    private double amountOf(int nutrient) {
+    	if (this.columns != null)
     	{
-    		return 0;
+    		return this.columns.getAmount(this.rowId, nutrient);
     	}
+    	return this.amounts[nutrient];
     }
     
-}
+}
\ No newline at end of file
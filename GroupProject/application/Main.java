@@ -32,6 +32,7 @@ import application.Constants.Nutrient;
 import javafx.application.Application;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
+import javafx.collections.ListChangeListener;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.geometry.Insets;
@@ -170,6 +171,8 @@ public class Main extends Application {
 	    HBox.setHgrow(spacer, Priority.ALWAYS);
 	    this.numItemsLoaded = new Label();
 	    SetNumItemsMsg();
+	    // more food options are fetched as they're scrolled to, so keep the count up to date
+	    controller.GetFoodOptionsListView().getItems().addListener((ListChangeListener<FoodItem>) change -> SetNumItemsMsg());
 		Button btnLoadList = newButton("Load List", "btnLoadList", true);
 		btnLoadList.setTooltip(new Tooltip("Load new options list from a file"));
 		btnLoadList.setOnAction(
@@ -500,7 +503,7 @@ public class Main extends Application {
 		attSelector.setValue(controller.GetDefaultNutrient()); // first entry in the list
 		
 		ComboBox<String> comparatorSelector = new ComboBox<String>();
-		// add all comparators from the Comparators const list: <=, ==, >=
+		// add all comparators from the Comparators const list: <=, ==, >=, <, >, !=
 		comparatorSelector.getItems().addAll(controller.GetAllComparators());
 		comparatorSelector.setValue(controller.GetDefaultComparator()); // first entry in the list
 		// value to compare to
@@ -0,0 +1,395 @@
+/**
+ * Filename:   NutrientStatistics.java
+ * Project:    Group Project
+ * Authors:    sapan (sapan@cs.wisc.edu), Soua Lor, Maria Helgeson, Daniel Walter, & Will Hickman
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400 - Lecutre 46373
+ *
+ * Due Date:   12/16/18
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       No known bugs
+ */
+
+package application;
+import java.util.Arrays;
+import application.Constants.Comparison;
+
+/**
+ * Statistics on the amounts of one nutrient across the loaded food items, so
+ * the UI can tell roughly how many food items a filter will return before
+ * running it, and FoodData can run the narrowest rules of a filter first. Kept by FoodData for each nutrient, and handed out as copies
+ * by FoodData#getStatistics.
+ *
+ * The histogram is equi-depth: each bucket holds about the same number of
+ * food items, so it has narrow buckets where amounts are crowded together and
+ * wide ones where they're spread out. Bucket boundaries are read from the
+ * nutrient's index by rank, which only takes a walk down the tree for each
+ * one. Counts are kept exact as food items are added and removed, and the
+ * boundaries are worked out again once one bucket gets twice as deep as it
+ * should be.
+ *
+ * @author sapan (sapan@cs.wisc.edu), Soua Lor, Maria Helgeson, Daniel Walter, & Will Hickman
+ */
+public class NutrientStatistics {
+
+    // most buckets in the histogram
+    public static final int NUM_BUCKETS = 16;
+
+    // nutrient the statistics are for
+    private Constants.Nutrient nutrient;
+
+    // number of food items with the nutrient, without it, and with none of it
+    private int count;
+    private int missingCount;
+    private int zeroCount;
+
+    // number of different amounts
+    private int distinctCount;
+
+    // least and greatest amount - NaN if no food item has the nutrient
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+
+    // greatest amount in each bucket, in increasing order - the first bucket starts
+    // at min, and each after that just above the bucket before
+    private double[] bounds = new double[0];
+
+    // number of food items in each bucket
+    private int[] counts = new int[0];
+
+    /**
+     * Package constructor for a nutrient no food item has yet
+     *
+     * @param nutrient - nutrient the statistics are for
+     */
+    NutrientStatistics(Constants.Nutrient nutrient) {
+    	this.nutrient = nutrient;
+    }
+
+    /**
+     * Package constructor for a copy, which isn't changed along with the original
+     *
+     * @param source - statistics to copy
+     */
+    NutrientStatistics(NutrientStatistics source) {
+    	this.nutrient = source.nutrient;
+    	this.count = source.count;
+    	this.missingCount = source.missingCount;
+    	this.zeroCount = source.zeroCount;
+    	this.distinctCount = source.distinctCount;
+    	this.min = source.min;
+    	this.max = source.max;
+    	this.bounds = source.bounds.clone();
+    	this.counts = source.counts.clone();
+    }
+
+    /**
+     * Works everything out again from the nutrient's index, after a load
+     *
+     * @param idx - index of the nutrient
+     * @param numItems - number of food items loaded, with the nutrient or not
+     */
+    void rebuild(DoubleBPTree<FoodItem> idx, int numItems) {
+    	this.count = idx.size();
+    	this.missingCount = numItems - this.count;
+    	this.zeroCount = idx.countBy(0, Comparison.EqualTo);
+    	this.distinctCount = (int) idx.stats().getDistinctKeys();
+    	this.min = this.count == 0 ? Double.NaN : amountAt(idx, 0);
+    	this.max = this.count == 0 ? Double.NaN : amountAt(idx, this.count - 1);
+    	rebuildHistogram(idx);
+    }
+
+    /**
+     * Counts a food item that was just added to the nutrient's index
+     *
+     * @param amt - amount of the nutrient in the food item
+     * @param idx - index of the nutrient, with the food item in it
+     */
+    void add(double amt, DoubleBPTree<FoodItem> idx) {
+    	this.count++;
+    	if (amt == 0)
+    	{
+    		this.zeroCount++;
+    	}
+    	if (idx.countBy(amt, Comparison.EqualTo) == 1)
+    	{
+    		this.distinctCount++;
+    	}
+    	if (this.count == 1 || amt < this.min)
+    	{
+    		this.min = amt;
+    	}
+    	if (this.count == 1 || amt > this.max)
+    	{
+    		this.max = amt;
+    	}
+
+    	if (this.bounds.length == 0)
+    	{
+    		rebuildHistogram(idx);
+    		return;
+    	}
+    	int bucket = bucketOf(amt);
+    	if (amt > this.bounds[bucket])
+    	{
+    		// past the last bucket, so it grows to take the amount in
+    		this.bounds[bucket] = amt;
+    	}
+    	this.counts[bucket]++;
+    	// a bucket of just one amount can't be split, however deep it gets
+    	double low = bucket == 0 ? this.min : this.bounds[bucket - 1];
+    	if (this.counts[bucket] > 2 * Math.max(1, this.count / NUM_BUCKETS) && this.bounds[bucket] != low)
+    	{
+    		rebuildHistogram(idx);
+    	}
+    }
+
+    /**
+     * Stops counting a food item that was just removed from the nutrient's index
+     *
+     * @param amt - amount of the nutrient in the food item
+     * @param idx - index of the nutrient, without the food item
+     */
+    void remove(double amt, DoubleBPTree<FoodItem> idx) {
+    	this.count--;
+    	if (amt == 0)
+    	{
+    		this.zeroCount--;
+    	}
+    	if (idx.countBy(amt, Comparison.EqualTo) == 0)
+    	{
+    		this.distinctCount--;
+    	}
+    	if (this.count == 0)
+    	{
+    		this.min = Double.NaN;
+    		this.max = Double.NaN;
+    		this.bounds = new double[0];
+    		this.counts = new int[0];
+    		return;
+    	}
+    	if (amt == this.min)
+    	{
+    		this.min = amountAt(idx, 0);
+    	}
+    	if (amt == this.max)
+    	{
+    		this.max = amountAt(idx, this.count - 1);
+    	}
+    	this.counts[bucketOf(amt)]--;
+    }
+
+    /**
+     * Counts food items added or removed without the nutrient
+     *
+     * @param delta - change in the number of them
+     */
+    void addMissing(int delta) {
+    	this.missingCount += delta;
+    }
+
+    /**
+     * Works out the bucket boundaries again, so each bucket has about the same
+     * number of food items. A run of one amount too long to fit in a bucket
+     * gets a bucket to itself, so there may be fewer than NUM_BUCKETS.
+     *
+     * @param idx - index of the nutrient
+     */
+    private void rebuildHistogram(DoubleBPTree<FoodItem> idx) {
+    	int buckets = Math.min(NUM_BUCKETS, this.count);
+    	double[] newBounds = new double[buckets];
+    	int[] newCounts = new int[buckets];
+    	int used = 0;
+    	int below = 0;
+    	for (int i = 0; i < buckets; i++)
+    	{
+    		double bound = amountAt(idx, (int) ((long) (i + 1) * this.count / buckets) - 1);
+    		if (used > 0 && bound == newBounds[used - 1])
+    		{
+    			continue;
+    		}
+    		int atMost = idx.countBy(bound, Comparison.LessThanOrEqual);
+    		newBounds[used] = bound;
+    		newCounts[used] = atMost - below;
+    		below = atMost;
+    		used++;
+    	}
+    	this.bounds = Arrays.copyOf(newBounds, used);
+    	this.counts = Arrays.copyOf(newCounts, used);
+    }
+
+    /**
+     * Gets the amount of the nutrient at a rank in the index. Reads the index
+     * key rather than the food item, which may have been changed since it was
+     * indexed.
+     *
+     * @param idx - index of the nutrient
+     * @param rank - position in order of amount, starting from 0
+     * @return amount at that rank
+     */
+    private double amountAt(DoubleBPTree<FoodItem> idx, int rank) {
+    	return idx.keyAt(rank);
+    }
+
+    /**
+     * Finds the bucket an amount belongs in
+     *
+     * @param amt - amount to look for
+     * @return first bucket whose greatest amount is no less than amt, or the last one
+     */
+    private int bucketOf(double amt) {
+    	int idx = Arrays.binarySearch(this.bounds, amt);
+    	if (idx < 0)
+    	{
+    		idx = -idx - 1;
+    	}
+    	else
+    	{
+    		// the first of any buckets ending at the same amount
+    		while (idx > 0 && this.bounds[idx - 1] == amt)
+    		{
+    			idx--;
+    		}
+    	}
+    	return Math.min(idx, this.bounds.length - 1);
+    }
+
+    /**
+     * Estimates how many food items have an amount between lo and hi. Assumes
+     * amounts are spread evenly within each bucket, and that each amount is
+     * repeated about the same number of times when asked about just one.
+     *
+     * @param lo - lower bound
+     * @param loInclusive - true if amounts equal to lo are in range
+     * @param hi - upper bound
+     * @param hiInclusive - true if amounts equal to hi are in range
+     * @return estimated number of food items in range
+     */
+    public double estimateCount(double lo, boolean loInclusive, double hi, boolean hiInclusive) {
+    	if (this.count == 0 || !(lo <= hi) || hi < this.min || lo > this.max)
+    	{
+    		return 0;
+    	}
+    	if (lo == hi)
+    	{
+    		return loInclusive && hiInclusive ? (double) this.count / this.distinctCount : 0;
+    	}
+    	double total = 0;
+    	double low = this.min;
+    	for (int i = 0; i < this.bounds.length; i++)
+    	{
+    		double high = this.bounds[i];
+    		if (high == low)
+    		{
+    			// a bucket of just one amount
+    			if (high > lo && high < hi || (high == lo && loInclusive) || (high == hi && hiInclusive))
+    			{
+    				total += this.counts[i];
+    			}
+    		}
+    		else
+    		{
+    			double overlap = Math.min(hi, high) - Math.max(lo, low);
+    			if (overlap > 0)
+    			{
+    				total += this.counts[i] * overlap / (high - low);
+    			}
+    		}
+    		low = high;
+    	}
+    	return total;
+    }
+
+    /**
+     * Gets the nutrient the statistics are for
+     *
+     * @return nutrient
+     */
+    public Constants.Nutrient getNutrient() {
+    	return this.nutrient;
+    }
+
+    /**
+     * Gets the number of food items with the nutrient
+     *
+     * @return number of food items
+     */
+    public int getCount() {
+    	return this.count;
+    }
+
+    /**
+     * Gets the number of food items without the nutrient
+     *
+     * @return number of food items
+     */
+    public int getMissingCount() {
+    	return this.missingCount;
+    }
+
+    /**
+     * Gets the number of food items with none of the nutrient
+     *
+     * @return number of food items with an amount of 0
+     */
+    public int getZeroCount() {
+    	return this.zeroCount;
+    }
+
+    /**
+     * Gets the number of different amounts of the nutrient
+     *
+     * @return number of distinct amounts
+     */
+    public int getDistinctCount() {
+    	return this.distinctCount;
+    }
+
+    /**
+     * Gets the least amount of the nutrient
+     *
+     * @return least amount; NaN if no food item has the nutrient
+     */
+    public double getMin() {
+    	return this.min;
+    }
+
+    /**
+     * Gets the greatest amount of the nutrient
+     *
+     * @return greatest amount; NaN if no food item has the nutrient
+     */
+    public double getMax() {
+    	return this.max;
+    }
+
+    /**
+     * Gets the greatest amount in each bucket of the histogram
+     *
+     * @return bucket boundaries, in increasing order
+     */
+    public double[] getBucketBounds() {
+    	return this.bounds.clone();
+    }
+
+    /**
+     * Gets the number of food items in each bucket of the histogram
+     *
+     * @return bucket counts, in the same order as the boundaries
+     */
+    public int[] getBucketCounts() {
+    	return this.counts.clone();
+    }
+
+    @Override
+    public String toString() {
+    	return this.nutrient + ": count " + this.count + ", missing " + this.missingCount
+    		+ ", zero " + this.zeroCount + ", distinct " + this.distinctCount
+    		+ ", min " + this.min + ", max " + this.max
+    		+ ", buckets " + Arrays.toString(this.bounds) + " " + Arrays.toString(this.counts);
+    }
+}
@@ -0,0 +1,226 @@
+/**
+ * Filename:   NutrientSummary.java
+ * Project:    Group Project
+ * Authors:    sapan (sapan@cs.wisc.edu), Soua Lor, Maria Helgeson, Daniel Walter, & Will Hickman
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400 - Lecutre 46373
+ *
+ * Due Date:   12/16/18
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       No known bugs
+ */
+
+package application;
+
+import java.util.Arrays;
+
+/**
+ * Count, total, least and greatest amount of each nutrient over a group
+ * of food items. Nutrient indexes keep one of these for each of their
+ * nodes, so a range of food items can be summarized without visiting
+ * every item in it.
+ *
+ * Summaries are never changed once made, and are combined through
+ * aggregator().
+ */
+public class NutrientSummary {
+
+	// the one aggregator that all nutrient indexes share
+	private static final Aggregator<FoodItem, NutrientSummary> aggregator = new Aggregator<FoodItem, NutrientSummary>()
+	{
+		// summary of no food items
+		private final NutrientSummary identity = new NutrientSummary();
+
+		@Override
+		public NutrientSummary identity() {
+			return this.identity;
+		}
+
+		@Override
+		public NutrientSummary of(FoodItem value) {
+			return new NutrientSummary(value);
+		}
+
+		@Override
+		public NutrientSummary combine(NutrientSummary left, NutrientSummary right) {
+			if (left.count == 0)
+			{
+				return right;
+			}
+			if (right.count == 0)
+			{
+				return left;
+			}
+			return new NutrientSummary(left, right);
+		}
+	};
+
+	// number of food items summarized
+	private int count;
+
+	// total, least and greatest amount of each nutrient, indexed by Constants.Nutrient ordinal
+	private double[] sums;
+	private double[] mins;
+	private double[] maxes;
+
+	/**
+	 * Private constructor for the summary of no food items
+	 */
+	private NutrientSummary()
+	{
+		int numNutrients = Constants.Nutrient.values().length;
+		this.sums = new double[numNutrients];
+		this.mins = new double[numNutrients];
+		this.maxes = new double[numNutrients];
+		Arrays.fill(this.mins, Double.POSITIVE_INFINITY);
+		Arrays.fill(this.maxes, Double.NEGATIVE_INFINITY);
+	}
+
+	/**
+	 * Private constructor for the summary of one food item
+	 *
+	 * @param item - food item to summarize
+	 */
+	private NutrientSummary(FoodItem item)
+	{
+		this();
+		this.count = 1;
+		for (Constants.Nutrient nxt: Constants.Nutrient.values())
+		{
+			double amt = item.getNutrientValue(nxt);
+			this.sums[nxt.ordinal()] = amt;
+			this.mins[nxt.ordinal()] = amt;
+			this.maxes[nxt.ordinal()] = amt;
+		}
+	}
+
+	/**
+	 * Private constructor for the summary of two groups of food items together
+	 *
+	 * @param left - summary of the first group
+	 * @param right - summary of the second group
+	 */
+	private NutrientSummary(NutrientSummary left, NutrientSummary right)
+	{
+		this();
+		this.count = left.count + right.count;
+		for (int i = 0; i < this.sums.length; i++)
+		{
+			this.sums[i] = left.sums[i] + right.sums[i];
+			this.mins[i] = Math.min(left.mins[i], right.mins[i]);
+			this.maxes[i] = Math.max(left.maxes[i], right.maxes[i]);
+		}
+	}
+
+	/**
+	 * Summarize a group of food items in one pass, adding each amount straight
+	 * from the columns into the totals rather than making and combining a summary
+	 * for every item. A missing amount counts as 0, as it does for a food item.
+	 *
+	 * @param columns - columns holding the food items
+	 * @param rows - row ids of the food items to summarize
+	 * @return summary of the food items
+	 */
+	static NutrientSummary of(FoodColumns columns, RowBitmap rows)
+	{
+		NutrientSummary total = new NutrientSummary();
+		rows.forEach(rowId ->
+			{
+				total.count++;
+				for (int i = 0; i < total.sums.length; i++)
+				{
+					double amt = columns.getAmount(rowId, i);
+					if (Double.isNaN(amt))
+					{
+						amt = 0;
+					}
+					total.sums[i] += amt;
+					total.mins[i] = Math.min(total.mins[i], amt);
+					total.maxes[i] = Math.max(total.maxes[i], amt);
+				}
+			});
+		return total;
+	}
+
+	/**
+	 * Gets the aggregator that makes and combines nutrient summaries
+	 * @return aggregator
+	 */
+	public static Aggregator<FoodItem, NutrientSummary> aggregator()
+	{
+		return aggregator;
+	}
+
+	/**
+	 * Gets the number of food items summarized
+	 * @return number of food items
+	 */
+	public int getCount()
+	{
+		return this.count;
+	}
+
+	/**
+	 * Gets the total amount of a nutrient across the food items
+	 *
+	 * @param nutrient - name of the nutrient, case-insensitive
+	 * @return total amount; 0 if there are no food items
+	 * @throws IllegalArgumentException if nutrient isn't one of Constants.Nutrient
+	 */
+	public double getSum(String nutrient)
+	{
+		return this.sums[ordinalOf(nutrient)];
+	}
+
+	/**
+	 * Gets the least amount of a nutrient in any of the food items
+	 *
+	 * @param nutrient - name of the nutrient, case-insensitive
+	 * @return least amount; NaN if there are no food items
+	 * @throws IllegalArgumentException if nutrient isn't one of Constants.Nutrient
+	 */
+	public double getMin(String nutrient)
+	{
+		return this.count == 0 ? Double.NaN : this.mins[ordinalOf(nutrient)];
+	}
+
+	/**
+	 * Gets the greatest amount of a nutrient in any of the food items
+	 *
+	 * @param nutrient - name of the nutrient, case-insensitive
+	 * @return greatest amount; NaN if there are no food items
+	 * @throws IllegalArgumentException if nutrient isn't one of Constants.Nutrient
+	 */
+	public double getMax(String nutrient)
+	{
+		return this.count == 0 ? Double.NaN : this.maxes[ordinalOf(nutrient)];
+	}
+
+	/**
+	 * Gets the average amount of a nutrient across the food items
+	 *
+	 * @param nutrient - name of the nutrient, case-insensitive
+	 * @return average amount; NaN if there are no food items
+	 * @throws IllegalArgumentException if nutrient isn't one of Constants.Nutrient
+	 */
+	public double getAverage(String nutrient)
+	{
+		return this.count == 0 ? Double.NaN : this.sums[ordinalOf(nutrient)] / this.count;
+	}
+
+	/**
+	 * Position of a nutrient in the summary arrays
+	 *
+	 * @param nutrient - name of the nutrient, case-insensitive
+	 * @return ordinal of the nutrient
+	 * @throws IllegalArgumentException if nutrient isn't one of Constants.Nutrient
+	 */
+	private static int ordinalOf(String nutrient)
+	{
+		return Constants.Nutrient.valueOf(nutrient.toLowerCase()).ordinal();
+	}
+}
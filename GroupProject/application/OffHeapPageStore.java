@@ -0,0 +1,128 @@
+/**
+ * Filename:   OffHeapPageStore.java
+ * Project:    Group Project
+ * Authors:    sapan (sapan@cs.wisc.edu), Soua Lor, Maria Helgeson, Daniel Walter, & Will Hickman
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400 - Lecutre 46373
+ *
+ * Due Date:   12/16/18
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       No known bugs
+ */
+
+package application;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pages kept in direct memory, outside of the heap. A PagedBPTree stored here
+ * holds its keys and values in a handful of large direct buffers rather than
+ * as objects, so however big it gets, the garbage collector only ever sees
+ * the buffers and never has to trace or copy what's in them.
+ *
+ * This is only a PageStore for PagedBPTree, as an alternative to PageFile
+ * when a tree doesn't need to outlive the program. It doesn't back FoodData:
+ * FoodData's indexes are DoubleBPTrees on the heap, and the trees it saves
+ * them to go in PageFiles.
+ *
+ * Nothing is kept once the store is closed or the program ends.
+ *
+ * @author sapan (sapan@cs.wisc.edu), Soua Lor, Maria Helgeson, Daniel Walter, & Will Hickman
+ */
+public class OffHeapPageStore implements PageStore {
+
+    // number of pages allocated together in one direct buffer
+    private static final int PAGES_PER_CHUNK = 256;
+
+    // direct buffers holding the pages, in page order
+    private List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+
+    // number of pages in use, including the header page
+    private int numPages;
+
+    /**
+     * Public constructor - starts out with just the header page
+     */
+    public OffHeapPageStore() {
+    	allocatePage();
+    }
+
+    /**
+     * Gets the part of the header page that is free for the caller to use
+     *
+     * @return buffer over the rest of page 0 after the store's own header
+     */
+    @Override
+    public ByteBuffer getHeader() {
+    	ByteBuffer page = getPage(0);
+    	page.position(HEADER_SIZE);
+    	return page.slice();
+    }
+
+    /**
+     * Gets the number of pages in the store, including the header page
+     *
+     * @return number of pages
+     */
+    @Override
+    public int getNumPages() {
+    	return this.numPages;
+    }
+
+    /**
+     * Adds a page to the end of the store, allocating another chunk of
+     * direct memory if the last one is used up
+     *
+     * @return number of the new page, which starts out all zeros
+     */
+    @Override
+    public int allocatePage() {
+    	if (this.numPages == this.chunks.size() * PAGES_PER_CHUNK)
+    	{
+    		// direct buffers start out zeroed
+    		this.chunks.add(ByteBuffer.allocateDirect(PAGES_PER_CHUNK * PAGE_SIZE));
+    	}
+    	return this.numPages++;
+    }
+
+    /**
+     * Gets a page to read or write
+     *
+     * @param pageNo - number of the page
+     * @return buffer over just that page
+     * @throws IndexOutOfBoundsException if the page hasn't been allocated
+     */
+    @Override
+    public ByteBuffer getPage(int pageNo) {
+    	if (pageNo < 0 || pageNo >= this.numPages)
+    	{
+    		throw new IndexOutOfBoundsException("Page: " + pageNo + ", Pages: " + this.numPages);
+    	}
+    	ByteBuffer page = this.chunks.get(pageNo / PAGES_PER_CHUNK).duplicate();
+    	int offset = (pageNo % PAGES_PER_CHUNK) * PAGE_SIZE;
+    	page.position(offset);
+    	page.limit(offset + PAGE_SIZE);
+    	return page.slice();
+    }
+
+    /**
+     * Nothing to do, since the pages aren't stored anywhere else
+     */
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Lets go of the pages - their memory is freed once the buffers are collected
+     */
+    @Override
+    public void close() {
+    	this.chunks.clear();
+    	this.numPages = 0;
+    }
+}
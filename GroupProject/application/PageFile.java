@@ -0,0 +1,248 @@
+/**
+ * Filename:   PageFile.java
+ * Project:    Group Project
+ * Authors:    sapan (sapan@cs.wisc.edu), Soua Lor, Maria Helgeson, Daniel Walter, & Will Hickman
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400 - Lecutre 46373
+ *
+ * Due Date:   12/16/18
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       No known bugs
+ */
+
+package application;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * File made up of fixed-size pages, for storing B+ tree nodes on disk.
+ *
+ * Pages are read and written through memory-mapped segments of the file, so
+ * the operating system does the actual I/O and caching, and page contents
+ * never take up room on the heap. A segment holds many pages, which keeps the
+ * number of mappings down. Only the most recently used segments are kept
+ * mapped, so a file can be much bigger than the memory that is mapped at once.
+ *
+ * Page 0 is the file's header, and the page size is recorded there so a file
+ * can't be opened with the wrong one.
+ *
+ * @author sapan (sapan@cs.wisc.edu), Soua Lor, Maria Helgeson, Daniel Walter, & Will Hickman
+ */
+public class PageFile implements PageStore {
+
+    // marks a file as a page file, so we don't treat some other file as one
+    private static final int MAGIC = 0x42505046;
+
+    // offsets of the fields in the page file's header
+    private static final int MAGIC_OFFSET = 0;
+    private static final int PAGE_SIZE_OFFSET = 4;
+    private static final int NUM_PAGES_OFFSET = 8;
+
+    // number of pages mapped together as one segment
+    private static final int PAGES_PER_SEGMENT = 256;
+
+    // the open file, and the channel its segments are mapped through
+    private RandomAccessFile file;
+    private FileChannel channel;
+
+    // number of pages in use, including the header page
+    private int numPages;
+
+    // mapped segments by segment number, least recently used first
+    private LinkedHashMap<Integer, MappedByteBuffer> segments;
+
+    /**
+     * Public constructor - opens the page file at the given path, or creates it if
+     * it doesn't exist yet
+     *
+     * @param filePath - path of the page file
+     * @param cacheSegments - most segments to keep mapped at once
+     * @throws IOException if the file can't be opened, or isn't a page file
+     */
+    public PageFile(String filePath, int cacheSegments) throws IOException {
+    	if (cacheSegments < 1)
+    	{
+    		throw new IllegalArgumentException("Illegal cache size: " + cacheSegments);
+    	}
+    	this.segments = new LinkedHashMap<Integer, MappedByteBuffer>(16, 0.75f, true)
+    		{
+    			private static final long serialVersionUID = 1L;
+
+    			@Override
+    			protected boolean removeEldestEntry(Map.Entry<Integer, MappedByteBuffer> eldest)
+    			{
+    				if (size() <= cacheSegments)
+    				{
+    					return false;
+    				}
+    				// write it out now - the mapping goes away whenever the buffer is collected
+    				eldest.getValue().force();
+    				return true;
+    			}
+    		};
+
+    	boolean isNew = !new File(filePath).exists();
+    	// check before mapping the header, which would grow a shorter file
+    	if (!isNew && !isPageFile(new File(filePath)))
+    	{
+    		throw new IOException("Not a page file: " + filePath);
+    	}
+    	this.file = new RandomAccessFile(filePath, "rw");
+    	this.channel = this.file.getChannel();
+    	try
+    	{
+    		ByteBuffer header = getPage(0);
+    		if (isNew)
+    		{
+    			header.putInt(MAGIC_OFFSET, MAGIC);
+    			header.putInt(PAGE_SIZE_OFFSET, PAGE_SIZE);
+    			header.putInt(NUM_PAGES_OFFSET, 1);
+    		}
+    		else if (header.getInt(MAGIC_OFFSET) != MAGIC || header.getInt(PAGE_SIZE_OFFSET) != PAGE_SIZE)
+    		{
+    			throw new IOException("Not a page file: " + filePath);
+    		}
+    		this.numPages = header.getInt(NUM_PAGES_OFFSET);
+    	}
+    	catch (IOException | UncheckedIOException e)
+    	{
+    		this.channel.close();
+    		throw e;
+    	}
+    }
+
+    /**
+     * Checks whether a file starts with a page file's header, without changing it
+     *
+     * @param file - file to check
+     * @return true if the file is a page file
+     * @throws IOException if the file can't be read
+     */
+    public static boolean isPageFile(File file) throws IOException {
+    	if (file.length() < NUM_PAGES_OFFSET)
+    	{
+    		return false;
+    	}
+    	DataInputStream in = new DataInputStream(new FileInputStream(file));
+    	try
+    	{
+    		return in.readInt() == MAGIC && in.readInt() == PAGE_SIZE;
+    	}
+    	finally
+    	{
+    		in.close();
+    	}
+    }
+
+    /**
+     * Gets the part of the header page that is free for the caller to use
+     *
+     * @return buffer over the rest of page 0 after the page file's own header
+     */
+    @Override
+    public ByteBuffer getHeader() {
+    	ByteBuffer page = getPage(0);
+    	page.position(HEADER_SIZE);
+    	return page.slice();
+    }
+
+    /**
+     * Gets the number of pages in the file, including the header page
+     *
+     * @return number of pages
+     */
+    @Override
+    public int getNumPages() {
+    	return this.numPages;
+    }
+
+    /**
+     * Adds a page to the end of the file
+     *
+     * @return number of the new page, which starts out all zeros
+     */
+    @Override
+    public int allocatePage() {
+    	int pageNo = this.numPages++;
+    	getPage(0).putInt(NUM_PAGES_OFFSET, this.numPages);
+    	ByteBuffer page = getPage(pageNo);
+    	for (int i = 0; i < PAGE_SIZE; i += 8)
+    	{
+    		page.putLong(i, 0);
+    	}
+    	return pageNo;
+    }
+
+    /**
+     * Gets a page to read or write. Use absolute gets and puts - offsets are
+     * from the start of the page. Changes are written back to the file by the
+     * operating system, or by flush.
+     *
+     * @param pageNo - number of the page
+     * @return buffer over just that page
+     * @throws UncheckedIOException if the page's segment can't be mapped
+     */
+    @Override
+    public ByteBuffer getPage(int pageNo) {
+    	int segmentNo = pageNo / PAGES_PER_SEGMENT;
+    	MappedByteBuffer segment = this.segments.get(segmentNo);
+    	if (segment == null)
+    	{
+    		try
+    		{
+    			// mapping past the end of the file makes the file bigger
+    			long start = (long) segmentNo * PAGES_PER_SEGMENT * PAGE_SIZE;
+    			segment = this.channel.map(FileChannel.MapMode.READ_WRITE, start, (long) PAGES_PER_SEGMENT * PAGE_SIZE);
+    		}
+    		catch (IOException e)
+    		{
+    			throw new UncheckedIOException(e);
+    		}
+    		this.segments.put(segmentNo, segment);
+    	}
+
+    	ByteBuffer page = segment.duplicate();
+    	int offset = (pageNo % PAGES_PER_SEGMENT) * PAGE_SIZE;
+    	page.position(offset);
+    	page.limit(offset + PAGE_SIZE);
+    	return page.slice();
+    }
+
+    /**
+     * Writes every change made so far out to the file
+     */
+    @Override
+    public void flush() {
+    	for (MappedByteBuffer nxt: this.segments.values())
+    	{
+    		nxt.force();
+    	}
+    }
+
+    /**
+     * Writes every change out to the file, and closes it. The page file
+     * can't be used after this.
+     *
+     * @throws IOException if the file can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+    	flush();
+    	this.segments.clear();
+    	this.channel.close();
+    	this.file.close();
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Filename:   PageStore.java
+ * Project:    Group Project
+ * Authors:    sapan (sapan@cs.wisc.edu), Soua Lor, Maria Helgeson, Daniel Walter, & Will Hickman
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400 - Lecutre 46373
+ *
+ * Due Date:   12/16/18
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       No known bugs
+ */
+
+package application;
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+/**
+ * Storage made up of fixed-size pages, for keeping B+ tree nodes outside
+ * of the heap, either in a file (PageFile) or in direct memory
+ * (OffHeapPageStore).
+ *
+ * Page 0 is the header. The first HEADER_SIZE bytes of it belong to the
+ * store itself, and the rest is for whoever stores pages in it.
+ */
+public interface PageStore extends Closeable {
+
+    /**
+     * Number of bytes in a page
+     */
+    public static final int PAGE_SIZE = 4096;
+
+    /**
+     * Bytes at the start of page 0 used by the store's own header
+     */
+    public static final int HEADER_SIZE = 16;
+
+
+    /**
+     * Gets the part of the header page that is free for the caller to use
+     *
+     * @return buffer over the rest of page 0 after the store's own header
+     */
+    public ByteBuffer getHeader();
+
+
+    /**
+     * Gets the number of pages in the store, including the header page
+     *
+     * @return number of pages
+     */
+    public int getNumPages();
+
+
+    /**
+     * Adds a page to the end of the store
+     *
+     * @return number of the new page, which starts out all zeros
+     */
+    public int allocatePage();
+
+
+    /**
+     * Gets a page to read or write. Use absolute gets and puts -
+     * offsets are from the start of the page.
+     *
+     * @param pageNo number of the page
+     * @return buffer over just that page
+     */
+    public ByteBuffer getPage(int pageNo);
+
+
+    /**
+     * Makes sure every change made so far is stored, for stores
+     * that keep their pages somewhere that outlasts the program
+     */
+    public void flush();
+}
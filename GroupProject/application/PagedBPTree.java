@@ -0,0 +1,1407 @@
+/**
+ * Filename:   PagedBPTree.java
+ * Project:    Group Project
+ * Authors:    sapan (sapan@cs.wisc.edu), Soua Lor, Maria Helgeson, Daniel Walter, & Will Hickman
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400 - Lecutre 46373
+ *
+ * Due Date:   12/16/18
+ * Version:    1.0
+ *
+ * Credits:    Wikipedia, for a definition of the structure
+ *
+ * Bugs:       No known bugs
+ */
+
+package application;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import application.Constants.Comparison;
+
+/**
+ * B+ tree stored one node per page in a PageStore rather than on the heap.
+ * Unlike BPTree, this is meant to be used with file storage: nodes are sized
+ * to fill a page, and read and written in place in their page.
+ *
+ * Stored in a PageFile, an index survives restarts and can be bigger than
+ * the heap. Stored in an OffHeapPageStore, a big index costs the garbage
+ * collector next to nothing, since its nodes aren't objects.
+ *
+ * FoodData doesn't query these trees; its indexes stay DoubleBPTrees on the
+ * heap. It only uses them to save each of its indexes, in
+ * FoodData#saveIndexes, as amounts mapped to the row ids the food items get
+ * when they're loaded back, so FoodData#loadIndexes can rebuild an index
+ * from the saved order instead of sorting again.
+ *
+ * Keys are doubles and values are ints, since both have to be written into
+ * pages. Values are meant to be row ids that the caller looks up in its own
+ * storage, rather than the records themselves.
+ *
+ * Each key-value pair is stored as one entry, and entries are kept in order
+ * of key and then value, so duplicate keys come back in order of value
+ * rather than the order they were inserted. Full nodes are split on the way
+ * down during an insert. Removes don't merge nodes back together, which is
+ * usual for trees on disk; the room left behind is reused by later inserts.
+ *
+ * Changes to a file are written by the operating system as it sees fit, and
+ * all of them by flush or close. There is no log, so a crash partway through
+ * a change can leave the file inconsistent.
+ *
+ * @author sapan (sapan@cs.wisc.edu), Soua Lor, Maria Helgeson, Daniel Walter, & Will Hickman
+ */
+public class PagedBPTree implements BPTreeADT<Double, Integer>, Closeable {
+
+    // where each field is in a page - a page number of 0 means no page, since page 0 is the header
+    private static final int TYPE_OFFSET = 0;
+    private static final int NUM_KEYS_OFFSET = 4;
+    private static final int NEXT_OFFSET = 8;
+    private static final int PREVIOUS_OFFSET = 12;
+    private static final int ENTRIES_OFFSET = 16;
+
+    // leaf entries are a key and a value
+    private static final int LEAF_ENTRY_SIZE = 12;
+
+    // internal pages start with their least child, then each separator key and value is followed by the child to its right
+    private static final int SEPARATORS_OFFSET = ENTRIES_OFFSET + 4;
+    private static final int INTERNAL_ENTRY_SIZE = 16;
+
+    // types of page
+    private static final int LEAF = 1;
+    private static final int INTERNAL = 2;
+
+    // where each field is in the tree's part of the header page
+    private static final int ROOT_OFFSET = 0;
+    private static final int SIZE_OFFSET = 4;
+    private static final int BRANCHING_FACTOR_OFFSET = 8;
+
+    // most segments of the file to keep mapped at once
+    private static final int CACHE_SEGMENTS = 64;
+
+    // largest branching factor that still fits an internal node in a page
+    public static final int MAX_BRANCHING_FACTOR = (PageStore.PAGE_SIZE - SEPARATORS_OFFSET) / INTERNAL_ENTRY_SIZE + 1;
+
+    // pages the nodes are stored in
+    private PageStore pages;
+
+    // the tree's part of the header page - root page, size and branching factor
+    private ByteBuffer header;
+
+    // Branching factor is the number of children nodes
+    // for internal nodes of the tree, and the number of entries in a full leaf
+    private int branchingFactor;
+
+    // number of entries a full leaf gives to its new sibling when it splits
+    private int siblingSize;
+
+    /**
+     * Public constructor - opens the tree stored in the given file, or creates an
+     * empty one if the file doesn't exist yet. An existing tree keeps the branching
+     * factor it was created with.
+     *
+     * @param filePath - path of the file the tree is stored in
+     * @param branchingFactor - branching factor for a new tree, at most MAX_BRANCHING_FACTOR
+     * @throws IOException if the file can't be opened, or isn't a page file
+     */
+    public PagedBPTree(String filePath, int branchingFactor) throws IOException {
+        this(new PageFile(filePath, CACHE_SEGMENTS), branchingFactor);
+    }
+
+    /**
+     * Public constructor - opens the tree stored in the given pages, or creates an
+     * empty one if there's nothing stored there yet. An existing tree keeps the
+     * branching factor it was created with.
+     *
+     * @param pages - where to store the tree, like a PageFile or OffHeapPageStore
+     * @param branchingFactor - branching factor for a new tree, at most MAX_BRANCHING_FACTOR
+     */
+    public PagedBPTree(PageStore pages, int branchingFactor) {
+        if (branchingFactor <= 2 || branchingFactor > MAX_BRANCHING_FACTOR) {
+            throw new IllegalArgumentException("Illegal branching factor: " + branchingFactor);
+        }
+        this.pages = pages;
+        this.header = this.pages.getHeader();
+        if (this.header.getInt(ROOT_OFFSET) == 0)
+        {
+        	// nothing stored yet - start out with an empty leaf as the root
+        	this.header.putInt(BRANCHING_FACTOR_OFFSET, branchingFactor);
+        	setRoot(new LeafPage().pageNo);
+        }
+        this.branchingFactor = this.header.getInt(BRANCHING_FACTOR_OFFSET);
+        this.siblingSize = (this.branchingFactor + 1) / 2;	// integer division, so remainder gets dropped
+    }
+
+    /**
+     * Inserts the key and value in the appropriate nodes in the tree
+     *
+     * @param key
+     * @param value
+     * @throws IllegalArgumentException if key or value is null
+     * @see PagedBPTree#insert(double, int)
+     */
+    @Override
+    public void insert(Double key, Integer value) {
+    	if (key == null || value == null)
+    	{
+    		throw new IllegalArgumentException("Illegal key or value: null");
+    	}
+    	insert(key.doubleValue(), value.intValue());
+    }
+
+    /**
+     * Inserts the key and value in the appropriate nodes in the tree. Any full
+     * node on the way down is split first, so there's always room in its parent
+     * for the new sibling.
+     *
+     * Note: key-value pairs with duplicate keys can be inserted into the tree.
+     *
+     * @param key
+     * @param value
+     * @throws IllegalArgumentException if key is NaN
+     */
+    public void insert(double key, int value) {
+    	if (Double.isNaN(key))
+    	{
+    		throw new IllegalArgumentException("Illegal key: " + key);
+    	}
+
+    	Page node = page(getRoot());
+    	if (node.isFull())
+    	{
+    		// the old root keeps the lower half and becomes the least child of the new root
+    		InternalPage newRoot = new InternalPage();
+    		newRoot.setChild(0, node.pageNo);
+    		splitChild(newRoot, 0, node);
+    		setRoot(newRoot.pageNo);
+    		node = newRoot;
+    	}
+    	while (node instanceof InternalPage)
+    	{
+    		InternalPage asInt = (InternalPage) node;
+    		int idx = asInt.childIndex(key, value);
+    		Page child = page(asInt.getChild(idx));
+    		if (child.isFull())
+    		{
+    			splitChild(asInt, idx, child);
+    			// the entry may belong in the new sibling now
+    			idx = asInt.childIndex(key, value);
+    			child = page(asInt.getChild(idx));
+    		}
+    		node = child;
+    	}
+    	((LeafPage) node).insert(key, value);
+    	setSize(size() + 1);
+    }
+
+    /**
+     * Splits a full child and adds the new sibling to its parent
+     *
+     * @param parent - parent of the child, which has room for another child
+     * @param idx - index of the child in parent
+     * @param child - full child to split
+     */
+    private void splitChild(InternalPage parent, int idx, Page child)
+    {
+    	int mid = child.splitIndex();
+    	double separatorKey = child.getKey(mid);
+    	int separatorValue = child.getValue(mid);
+    	Page sibling = child.split();
+    	parent.insertChild(idx, separatorKey, separatorValue, sibling.pageNo);
+    }
+
+    /**
+     * Fills an empty tree with the given entries, building it bottom-up a page at
+     * a time instead of inserting one entry at a time. Leaves are filled left to
+     * right and linked as they're written, then each level of internal pages is
+     * built over the one below it, with the first entry under each child as its
+     * separator.
+     *
+     * @param keys - keys of the entries, in order of key and then value
+     * @param values - values, parallel to keys
+     * @param fillFactor - fraction of each page to fill, between 0.5 and 1
+     * @throws IllegalArgumentException if the tree isn't empty, keys and values don't
+     * match up, a key is NaN, the entries aren't in order, or fillFactor is out of range
+     */
+    public void bulkLoad(double[] keys, int[] values, double fillFactor) {
+    	if (keys == null || values == null || keys.length != values.length)
+    	{
+    		throw new IllegalArgumentException("Keys and values must be the same size");
+    	}
+    	TreeNode.checkFillFactor(fillFactor);
+    	if (size() != 0)
+    	{
+    		throw new IllegalArgumentException("Can only bulk load an empty tree");
+    	}
+    	for (int i = 0; i < keys.length; i++)
+    	{
+    		if (Double.isNaN(keys[i]))
+    		{
+    			throw new IllegalArgumentException("Illegal key: " + keys[i]);
+    		}
+    		if (i > 0 && compare(keys[i - 1], values[i - 1], keys[i], values[i]) > 0)
+    		{
+    			throw new IllegalArgumentException("Entries must be sorted: " + keys[i] + " follows " + keys[i - 1]);
+    		}
+    	}
+    	if (keys.length == 0)
+    	{
+    		return;
+    	}
+
+    	// leaves, starting with the empty root so its page isn't wasted - each level
+    	// keeps the page numbers of its nodes and the index of the first entry under each
+    	int[] leafSizes = TreeNode.packSizes(keys.length, fillFactor, 1, this.branchingFactor);
+    	int[] level = new int[leafSizes.length];
+    	int[] firstEntry = new int[leafSizes.length];
+    	LeafPage previous = null;
+    	int entry = 0;
+    	for (int i = 0; i < leafSizes.length; i++)
+    	{
+    		LeafPage leaf = previous == null ? (LeafPage) page(getRoot()) : new LeafPage();
+    		for (int j = 0; j < leafSizes[i]; j++)
+    		{
+    			int offset = ENTRIES_OFFSET + j * LEAF_ENTRY_SIZE;
+    			leaf.buf.putDouble(offset, keys[entry + j]);
+    			leaf.buf.putInt(offset + 8, values[entry + j]);
+    		}
+    		leaf.setNumKeys(leafSizes[i]);
+    		if (previous != null)
+    		{
+    			previous.buf.putInt(NEXT_OFFSET, leaf.pageNo);
+    			leaf.buf.putInt(PREVIOUS_OFFSET, previous.pageNo);
+    		}
+    		level[i] = leaf.pageNo;
+    		firstEntry[i] = entry;
+    		entry += leafSizes[i];
+    		previous = leaf;
+    	}
+
+    	// internal pages, a level at a time, until there's only the root left
+    	while (level.length > 1)
+    	{
+    		int[] parentSizes = TreeNode.packSizes(level.length, fillFactor, 2, this.branchingFactor);
+    		int[] parents = new int[parentSizes.length];
+    		int[] parentFirst = new int[parentSizes.length];
+    		int child = 0;
+    		for (int i = 0; i < parentSizes.length; i++)
+    		{
+    			InternalPage parent = new InternalPage();
+    			parent.setChild(0, level[child]);
+    			for (int j = 1; j < parentSizes[i]; j++)
+    			{
+    				int offset = SEPARATORS_OFFSET + (j - 1) * INTERNAL_ENTRY_SIZE;
+    				parent.buf.putDouble(offset, keys[firstEntry[child + j]]);
+    				parent.buf.putInt(offset + 8, values[firstEntry[child + j]]);
+    				parent.buf.putInt(offset + 12, level[child + j]);
+    			}
+    			parent.setNumKeys(parentSizes[i] - 1);
+    			parents[i] = parent.pageNo;
+    			parentFirst[i] = firstEntry[child];
+    			child += parentSizes[i];
+    		}
+    		level = parents;
+    		firstEntry = parentFirst;
+    	}
+    	setRoot(level[0]);
+    	setSize(keys.length);
+    }
+
+    /**
+     * Removes one value stored under the given key
+     *
+     * @param key
+     * @param value
+     * @return true if the value was found and removed, false otherwise
+     * @see PagedBPTree#remove(double, int)
+     */
+    @Override
+    public boolean remove(Double key, Integer value) {
+    	if (key == null || value == null)
+    	{
+    		return false;
+    	}
+    	return remove(key.doubleValue(), value.intValue());
+    }
+
+    /**
+     * Removes one entry with the given key and value. The leaf it was in is left
+     * as it is, even if that leaves it empty.
+     *
+     * @param key - key the value is stored under
+     * @param value - value to remove
+     * @return true if the value was found and removed, false otherwise
+     */
+    public boolean remove(double key, int value) {
+    	if (Double.isNaN(key))
+    	{
+    		return false;
+    	}
+    	// entries equal to a separator can be on either side of it, so start on the left and walk along
+    	LeafPage leaf = findLeaf(key, value);
+    	while (leaf != null)
+    	{
+    		int idx = leaf.lowerBound(key, value);
+    		if (idx < leaf.getNumKeys())
+    		{
+    			if (compare(leaf.getKey(idx), leaf.getValue(idx), key, value) != 0)
+    			{
+    				return false;
+    			}
+    			leaf.removeAt(idx);
+    			setSize(size() - 1);
+    			return true;
+    		}
+    		leaf = leaf.getNext();
+    	}
+    	return false;
+    }
+
+    /**
+     * Moves a value from one key to another
+     *
+     * @param oldKey
+     * @param newKey
+     * @param value
+     * @return true if the value was found and moved, false otherwise
+     * @see PagedBPTree#update(double, double, int)
+     */
+    @Override
+    public boolean update(Double oldKey, Double newKey, Integer value) {
+    	if (oldKey == null || newKey == null || value == null)
+    	{
+    		return false;
+    	}
+    	return update(oldKey.doubleValue(), newKey.doubleValue(), value.intValue());
+    }
+
+    /**
+     * Moves a value from one key to another
+     *
+     * @param oldKey - key the value is stored under now
+     * @param newKey - key the value should be stored under
+     * @param value - value to move
+     * @return true if the value was found and moved, false if it wasn't
+     * found under oldKey or newKey is NaN (in which case nothing changes)
+     */
+    public boolean update(double oldKey, double newKey, int value) {
+    	if (Double.isNaN(newKey) || !remove(oldKey, value))
+    	{
+    		return false;
+    	}
+    	insert(newKey, value);
+    	return true;
+    }
+
+    /**
+     * Gets the values that satisfy the given range
+     * search arguments, in order of key and then value.
+     *
+     * @param key to be searched
+     * @param comparison to compare keys against key with
+     * @return list of values that are the result of the
+     * range search; if nothing found, return empty list
+     */
+    @Override
+    public List<Integer> rangeSearchBy(Double key, Comparison comparison) {
+    	if (key == null || Double.isNaN(key) || comparison == null)
+    	{
+    		return new ArrayList<Integer>();
+    	}
+    	return rangeSearch(new Range(key, comparison));
+    }
+
+    /**
+     * Gets the values with keys between lo and hi, in order of key
+     * and then value. A null bound leaves that side of the range open.
+     *
+     * @param lo - lower bound, or null for no lower bound
+     * @param loInclusive - true if keys equal to lo are in range
+     * @param hi - upper bound, or null for no upper bound
+     * @param hiInclusive - true if keys equal to hi are in range
+     * @return list of values that are the result of the
+     * range search; if nothing found, return empty list
+     * @see PagedBPTree#rangeSearch(double, boolean, double, boolean)
+     */
+    @Override
+    public List<Integer> rangeSearch(Double lo, boolean loInclusive, Double hi, boolean hiInclusive) {
+    	return rangeSearch(lo == null ? Double.NEGATIVE_INFINITY : lo.doubleValue(), loInclusive || lo == null,
+    			hi == null ? Double.POSITIVE_INFINITY : hi.doubleValue(), hiInclusive || hi == null);
+    }
+
+    /**
+     * Gets the values with keys between lo and hi, in order of key and then value.
+     * Use infinite bounds (inclusive) to leave a side of the range open.
+     *
+     * @param lo - lower bound
+     * @param loInclusive - true if keys equal to lo are in range
+     * @param hi - upper bound
+     * @param hiInclusive - true if keys equal to hi are in range
+     * @return list of values that are the result of the
+     * range search; if nothing found, return empty list
+     */
+    public List<Integer> rangeSearch(double lo, boolean loInclusive, double hi, boolean hiInclusive) {
+    	if (Double.isNaN(lo) || Double.isNaN(hi))
+    	{
+    		return new ArrayList<Integer>();
+    	}
+    	return rangeSearch(new Range(lo, loInclusive, hi, hiInclusive));
+    }
+
+    /**
+     * Gets the values in a range, in order of key and then value
+     *
+     * @param range - range of keys to get the values for
+     * @return list of values in range; if nothing found, return empty list
+     */
+    private List<Integer> rangeSearch(Range range) {
+    	List<Integer> rtnList = new ArrayList<Integer>();
+    	forEach(range, value -> rtnList.add(value));
+    	return rtnList;
+    }
+
+    /**
+     * Gets an iterator over the values that satisfy the given range
+     * search arguments, reading pages as it goes
+     *
+     * @param key to be searched
+     * @param comparison to compare keys against key with
+     * @return iterator over the values that are the result of the
+     * range search; empty if the arguments aren't valid
+     */
+    @Override
+    public Iterator<Integer> rangeIteratorBy(Double key, Comparison comparison) {
+    	if (key == null || Double.isNaN(key) || comparison == null)
+    	{
+    		return Collections.emptyIterator();
+    	}
+    	return new RangeIterator(new Range(key, comparison));
+    }
+
+    /**
+     * Performs the given action for each value that satisfies the given
+     * range search arguments, in order of key and then value
+     *
+     * @param key to be searched
+     * @param comparison to compare keys against key with
+     * @param action to perform on each value
+     */
+    @Override
+    public void forEachBy(Double key, Comparison comparison, Consumer<? super Integer> action) {
+    	if (key == null || Double.isNaN(key) || comparison == null)
+    	{
+    		return;
+    	}
+    	forEach(new Range(key, comparison), value -> action.accept(value));
+    }
+
+    /**
+     * Performs the given action for each value with a key between lo and hi,
+     * in order of key and then value, without boxing the values
+     *
+     * @param lo - lower bound
+     * @param loInclusive - true if keys equal to lo are in range
+     * @param hi - upper bound
+     * @param hiInclusive - true if keys equal to hi are in range
+     * @param action to perform on each value
+     */
+    public void forEach(double lo, boolean loInclusive, double hi, boolean hiInclusive, IntConsumer action) {
+    	if (Double.isNaN(lo) || Double.isNaN(hi))
+    	{
+    		return;
+    	}
+    	forEach(new Range(lo, loInclusive, hi, hiInclusive), action);
+    }
+
+    /**
+     * Performs the given action for each value in a range, walking the leaves
+     * from the one the range starts in
+     *
+     * @param range - range of keys to visit the values for
+     * @param action to perform on each value
+     */
+    private void forEach(Range range, IntConsumer action) {
+    	LeafPage leaf = range.startLeaf();
+    	int i = range.startIndex(leaf);
+    	while (leaf != null)
+    	{
+    		for (int n = leaf.getNumKeys(); i < n; i++)
+    		{
+    			double key = leaf.getKey(i);
+    			if (!range.isBelowHi(key))
+    			{
+    				return;
+    			}
+    			// an exclusive lower bound can have entries equal to it at the start of the next leaf
+    			if (key != range.excluded && !range.isBelowLo(key))
+    			{
+    				action.accept(leaf.getValue(i));
+    			}
+    		}
+    		leaf = leaf.getNext();
+    		i = 0;
+    	}
+    }
+
+    /**
+     * Number of values in the tree, kept in the header page
+     *
+     * @return number of values
+     */
+    @Override
+    public int size() {
+    	return this.header.getInt(SIZE_OFFSET);
+    }
+
+    /**
+     * Gets the number of values that satisfy the given range search arguments,
+     * by walking the leaves in range
+     *
+     * @param key to be searched
+     * @param comparison to compare keys against key with
+     * @return number of values that are the result of the range search
+     */
+    @Override
+    public int countBy(Double key, Comparison comparison) {
+    	if (key == null || Double.isNaN(key) || comparison == null)
+    	{
+    		return 0;
+    	}
+    	return count(new Range(key, comparison));
+    }
+
+    /**
+     * Gets the number of values with keys between lo and hi
+     *
+     * @param lo - lower bound, or null for no lower bound
+     * @param loInclusive - true if keys equal to lo are in range
+     * @param hi - upper bound, or null for no upper bound
+     * @param hiInclusive - true if keys equal to hi are in range
+     * @return number of values that are the result of the range search
+     */
+    @Override
+    public int count(Double lo, boolean loInclusive, Double hi, boolean hiInclusive) {
+    	double loKey = lo == null ? Double.NEGATIVE_INFINITY : lo.doubleValue();
+    	double hiKey = hi == null ? Double.POSITIVE_INFINITY : hi.doubleValue();
+    	if (Double.isNaN(loKey) || Double.isNaN(hiKey))
+    	{
+    		return 0;
+    	}
+    	return count(new Range(loKey, loInclusive || lo == null, hiKey, hiInclusive || hi == null));
+    }
+
+    /**
+     * Gets the number of values in a range
+     *
+     * @param range - range of keys to count the values for
+     * @return number of values in range
+     */
+    private int count(Range range) {
+    	int[] total = new int[1];
+    	forEach(range, value -> total[0]++);
+    	return total[0];
+    }
+
+    /**
+     * Gets the number of values with keys less than the given key
+     *
+     * @param key to be ranked
+     * @return number of values with keys less than key; 0 if key is null or NaN
+     */
+    @Override
+    public int rank(Double key) {
+    	if (key == null || Double.isNaN(key))
+    	{
+    		return 0;
+    	}
+    	return count(new Range(Double.NEGATIVE_INFINITY, true, key, false));
+    }
+
+    /**
+     * Gets the value at the given position in order of key and then value,
+     * skipping whole leaves at a time from the left
+     *
+     * @param rank - position of the value, starting from 0
+     * @return value at that position
+     * @throws IndexOutOfBoundsException if rank is negative or not less than size()
+     */
+    @Override
+    public Integer select(int rank) {
+    	if (rank < 0 || rank >= size())
+    	{
+    		throw new IndexOutOfBoundsException("Rank: " + rank + ", Size: " + size());
+    	}
+    	LeafPage leaf = findLeaf(Double.NEGATIVE_INFINITY, Integer.MIN_VALUE);
+    	while (rank >= leaf.getNumKeys())
+    	{
+    		rank -= leaf.getNumKeys();
+    		leaf = leaf.getNext();
+    	}
+    	return leaf.getValue(rank);
+    }
+
+    /**
+     * Writes every change made so far out to the file, if the tree is stored in one
+     */
+    public void flush() {
+    	this.pages.flush();
+    }
+
+    /**
+     * Closes the pages the tree is stored in. The tree can't be used after
+     * this, but one stored in a file can be opened again from the same file.
+     *
+     * @throws IOException if the pages can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+    	this.pages.close();
+    }
+
+    /**
+     * Walk down from the root to the leftmost leaf that could hold the given entry
+     *
+     * @param key - key of the entry to look for
+     * @param value - value of the entry to look for
+     * @return leaf to start looking in
+     */
+    private LeafPage findLeaf(double key, int value)
+    {
+    	Page node = page(getRoot());
+    	while (node instanceof InternalPage)
+    	{
+    		InternalPage asInt = (InternalPage) node;
+    		node = page(asInt.getChild(asInt.childIndex(key, value)));
+    	}
+    	return (LeafPage) node;
+    }
+
+    /**
+     * Gets a node stored in the file
+     *
+     * @param pageNo - number of the page the node is in
+     * @return node in that page
+     */
+    private Page page(int pageNo)
+    {
+    	ByteBuffer buf = this.pages.getPage(pageNo);
+    	if (buf.getInt(TYPE_OFFSET) == LEAF)
+    	{
+    		return new LeafPage(pageNo, buf);
+    	}
+    	return new InternalPage(pageNo, buf);
+    }
+
+    /**
+     * Gets the page number of the root
+     * @return page number
+     */
+    private int getRoot()
+    {
+    	return this.header.getInt(ROOT_OFFSET);
+    }
+
+    /**
+     * Sets the page number of the root
+     * @param pageNo - page number of the new root
+     */
+    private void setRoot(int pageNo)
+    {
+    	this.header.putInt(ROOT_OFFSET, pageNo);
+    }
+
+    /**
+     * Sets the number of values in the tree
+     * @param size - number of values
+     */
+    private void setSize(int size)
+    {
+    	this.header.putInt(SIZE_OFFSET, size);
+    }
+
+    /**
+     * Orders entries by key, and then value
+     *
+     * @param key - key of the first entry
+     * @param value - value of the first entry
+     * @param otherKey - key of the second entry
+     * @param otherValue - value of the second entry
+     * @return negative, zero or positive as the first entry is before, the same as, or after the second
+     */
+    private static int compare(double key, int value, double otherKey, int otherValue)
+    {
+    	if (key < otherKey)
+    	{
+    		return -1;
+    	}
+    	if (key > otherKey)
+    	{
+    		return 1;
+    	}
+    	return Integer.compare(value, otherValue);
+    }
+
+    /**
+     * Copies bytes within or between pages, the same way System.arraycopy
+     * would, so overlapping ranges within a page are handled
+     *
+     * @param src - page to copy from
+     * @param srcPos - offset of the first byte to copy
+     * @param dest - page to copy to
+     * @param destPos - where the first byte goes in dest
+     * @param length - number of bytes to copy
+     */
+    private static void copyBytes(ByteBuffer src, int srcPos, ByteBuffer dest, int destPos, int length)
+    {
+    	if (src == dest && destPos > srcPos)
+    	{
+    		for (int i = length - 1; i >= 0; i--)
+    		{
+    			dest.put(destPos + i, src.get(srcPos + i));
+    		}
+    	}
+    	else
+    	{
+    		for (int i = 0; i < length; i++)
+    		{
+    			dest.put(destPos + i, src.get(srcPos + i));
+    		}
+    	}
+    }
+
+    /*
+     * String representation of the tree, for testing
+     */
+    @Override
+    public String toString() {
+        Queue<List<Integer>> queue = new LinkedList<List<Integer>>();
+        queue.add(Collections.singletonList(getRoot()));
+        StringBuilder sb = new StringBuilder();
+        while (!queue.isEmpty()) {
+            Queue<List<Integer>> nextQueue = new LinkedList<List<Integer>>();
+            while (!queue.isEmpty()) {
+                List<Integer> nodes = queue.remove();
+                sb.append('{');
+                Iterator<Integer> it = nodes.iterator();
+                while (it.hasNext()) {
+                    Page node = page(it.next());
+                    sb.append(node.toString());
+                    if (it.hasNext())
+                        sb.append(", ");
+                    if (node instanceof InternalPage)
+                    {
+                    	List<Integer> children = new ArrayList<Integer>();
+                    	for (int i = 0; i <= node.getNumKeys(); i++)
+                    	{
+                    		children.add(((InternalPage) node).getChild(i));
+                    	}
+                    	nextQueue.add(children);
+                    }
+                }
+                sb.append('}');
+                if (!queue.isEmpty())
+                    sb.append(", ");
+                else {
+                    sb.append('\n');
+                }
+            }
+            queue = nextQueue;
+        }
+        return sb.toString();
+    }
+
+
+    /**
+     * A node of the tree, read and written in place in its page.
+     * This class is a super class of the LeafPage and InternalPage types.
+     */
+    private abstract class Page {
+
+    	// number of the page this node is stored in
+    	int pageNo;
+
+    	// the page itself
+    	ByteBuffer buf;
+
+    	/**
+    	 * Package constructor for a node that's already in the file
+    	 *
+    	 * @param pageNo - number of the page the node is in
+    	 * @param buf - the page
+    	 */
+    	Page(int pageNo, ByteBuffer buf)
+    	{
+    		this.pageNo = pageNo;
+    		this.buf = buf;
+    	}
+
+    	/**
+    	 * Package constructor for a new node, in a new page
+    	 *
+    	 * @param type - LEAF or INTERNAL
+    	 */
+    	Page(int type)
+    	{
+    		this.pageNo = pages.allocatePage();
+    		this.buf = pages.getPage(this.pageNo);
+    		this.buf.putInt(TYPE_OFFSET, type);
+    	}
+
+    	/**
+    	 * Number of keys in this node
+    	 * @return number of keys
+    	 */
+    	int getNumKeys()
+    	{
+    		return this.buf.getInt(NUM_KEYS_OFFSET);
+    	}
+
+    	/**
+    	 * Sets the number of keys in this node
+    	 * @param numKeys - number of keys
+    	 */
+    	void setNumKeys(int numKeys)
+    	{
+    		this.buf.putInt(NUM_KEYS_OFFSET, numKeys);
+    	}
+
+    	/**
+    	 * Gets the key of an entry (leaf) or separator (internal)
+    	 * @param idx - index of the entry
+    	 * @return key
+    	 */
+    	abstract double getKey(int idx);
+
+    	/**
+    	 * Gets the value of an entry (leaf) or separator (internal)
+    	 * @param idx - index of the entry
+    	 * @return value
+    	 */
+    	abstract int getValue(int idx);
+
+    	/**
+    	 * Index of the first entry in this node that is >= the given one
+    	 *
+    	 * @param key - key of the entry to look for
+    	 * @param value - value of the entry to look for
+    	 * @return index of the entry, or where it would go if it's not in this node
+    	 */
+    	int lowerBound(double key, int value)
+    	{
+    		int low = 0;
+    		int high = getNumKeys();
+    		while (low < high)
+    		{
+    			int mid = (low + high) >>> 1;
+    			if (compare(getKey(mid), getValue(mid), key, value) < 0)
+    			{
+    				low = mid + 1;
+    			}
+    			else
+    			{
+    				high = mid;
+    			}
+    		}
+    		return low;
+    	}
+
+    	/**
+    	 * tell parent whether you have to split before anything more is added
+    	 * @return true if full, false otherwise
+    	 */
+    	abstract boolean isFull();
+
+    	/**
+    	 * Index of the entry that goes up to the parent as the separator
+    	 * when this node splits
+    	 * @return index of the entry
+    	 */
+    	abstract int splitIndex();
+
+    	/**
+    	 * Splits node and returns the new sibling, which takes the upper half
+    	 * of the entries and goes to the right of this node
+    	 *
+    	 * @return new sibling
+    	 */
+    	abstract Page split();
+
+    	/**
+    	 * String representation of node's keys
+    	 * @return String representation of node's keys
+    	 */
+    	public String toString() {
+    		StringBuilder sb = new StringBuilder("[");
+    		for (int i = 0; i < getNumKeys(); i++)
+    		{
+    			if (i > 0)
+    			{
+    				sb.append(", ");
+    			}
+    			sb.append(getKey(i));
+    		}
+    		return sb.append(']').toString();
+    	}
+
+    } // End of abstract class Page
+
+    /**
+     * This class represents an internal node of the tree.
+     *
+     * Child i holds the entries from separator i - 1 up to separator i. An entry
+     * equal to a separator can be on either side of it.
+     */
+    private class InternalPage extends Page {
+
+    	/**
+    	 * Package constructor for a node that's already in the file
+    	 *
+    	 * @param pageNo - number of the page the node is in
+    	 * @param buf - the page
+    	 */
+    	InternalPage(int pageNo, ByteBuffer buf)
+    	{
+    		super(pageNo, buf);
+    	}
+
+    	/**
+    	 * Package constructor for a new node, with no children yet
+    	 */
+    	InternalPage()
+    	{
+    		super(INTERNAL);
+    	}
+
+    	double getKey(int idx)
+    	{
+    		return this.buf.getDouble(SEPARATORS_OFFSET + idx * INTERNAL_ENTRY_SIZE);
+    	}
+
+    	int getValue(int idx)
+    	{
+    		return this.buf.getInt(SEPARATORS_OFFSET + idx * INTERNAL_ENTRY_SIZE + 8);
+    	}
+
+    	/**
+    	 * Offset of a child's page number
+    	 * @param idx - index of the child
+    	 * @return offset in the page
+    	 */
+    	private int childOffset(int idx)
+    	{
+    		return idx == 0 ? ENTRIES_OFFSET : SEPARATORS_OFFSET + (idx - 1) * INTERNAL_ENTRY_SIZE + 12;
+    	}
+
+    	/**
+    	 * Gets the page number of a child
+    	 * @param idx - index of the child
+    	 * @return page number
+    	 */
+    	int getChild(int idx)
+    	{
+    		return this.buf.getInt(childOffset(idx));
+    	}
+
+    	/**
+    	 * Sets the page number of a child
+    	 * @param idx - index of the child
+    	 * @param pageNo - page number
+    	 */
+    	void setChild(int idx, int pageNo)
+    	{
+    		this.buf.putInt(childOffset(idx), pageNo);
+    	}
+
+    	/**
+    	 * Index of the leftmost child that could hold the given entry
+    	 *
+    	 * @param key - key of the entry
+    	 * @param value - value of the entry
+    	 * @return index of the child
+    	 */
+    	int childIndex(double key, int value)
+    	{
+    		return lowerBound(key, value);
+    	}
+
+    	/**
+    	 * Adds a new child to the right of the given child index, with the given separator
+    	 *
+    	 * @param idx - index of the child the new child is being added after
+    	 * @param key - key of the separator for the new child
+    	 * @param value - value of the separator for the new child
+    	 * @param pageNo - page number of the new child
+    	 */
+    	void insertChild(int idx, double key, int value, int pageNo)
+    	{
+    		int offset = SEPARATORS_OFFSET + idx * INTERNAL_ENTRY_SIZE;
+    		copyBytes(this.buf, offset, this.buf, offset + INTERNAL_ENTRY_SIZE, (getNumKeys() - idx) * INTERNAL_ENTRY_SIZE);
+    		this.buf.putDouble(offset, key);
+    		this.buf.putInt(offset + 8, value);
+    		this.buf.putInt(offset + 12, pageNo);
+    		setNumKeys(getNumKeys() + 1);
+    	}
+
+    	boolean isFull()
+    	{
+    		return getNumKeys() + 1 >= branchingFactor;
+    	}
+
+    	int splitIndex()
+    	{
+    		return getNumKeys() / 2;
+    	}
+
+    	/**
+    	 * Splits node and returns the new sibling created from the split.
+    	 * The separator between the two halves moves up to the parent.
+    	 *
+    	 * @return new sibling
+    	 */
+    	Page split()
+    	{
+    		InternalPage newSibling = new InternalPage();
+    		int mid = splitIndex();
+    		int moved = getNumKeys() - mid - 1;
+    		// the separator's right child becomes the new sibling's least child
+    		newSibling.setChild(0, getChild(mid + 1));
+    		copyBytes(this.buf, SEPARATORS_OFFSET + (mid + 1) * INTERNAL_ENTRY_SIZE,
+    				newSibling.buf, SEPARATORS_OFFSET, moved * INTERNAL_ENTRY_SIZE);
+    		newSibling.setNumKeys(moved);
+    		setNumKeys(mid);
+    		return newSibling;
+    	}
+
+    } // End of class InternalPage
+
+    /**
+     * This class represents a leaf node of the tree, with links to the leaves
+     * on either side of it.
+     */
+    private class LeafPage extends Page {
+
+    	/**
+    	 * Package constructor for a leaf that's already in the file
+    	 *
+    	 * @param pageNo - number of the page the leaf is in
+    	 * @param buf - the page
+    	 */
+    	LeafPage(int pageNo, ByteBuffer buf)
+    	{
+    		super(pageNo, buf);
+    	}
+
+    	/**
+    	 * Package constructor for a new, empty leaf
+    	 */
+    	LeafPage()
+    	{
+    		super(LEAF);
+    	}
+
+    	double getKey(int idx)
+    	{
+    		return this.buf.getDouble(ENTRIES_OFFSET + idx * LEAF_ENTRY_SIZE);
+    	}
+
+    	int getValue(int idx)
+    	{
+    		return this.buf.getInt(ENTRIES_OFFSET + idx * LEAF_ENTRY_SIZE + 8);
+    	}
+
+    	/**
+    	 * Gets the leaf to the right of this one
+    	 * @return next leaf, or null if this is the last one
+    	 */
+    	LeafPage getNext()
+    	{
+    		int next = this.buf.getInt(NEXT_OFFSET);
+    		return next == 0 ? null : (LeafPage) page(next);
+    	}
+
+    	boolean isFull()
+    	{
+    		return getNumKeys() >= branchingFactor;
+    	}
+
+    	int splitIndex()
+    	{
+    		return getNumKeys() - siblingSize;
+    	}
+
+    	/**
+    	 * Inserts an entry in this leaf, after any equal entries - caller makes sure there's room
+    	 *
+    	 * @param key
+    	 * @param value
+    	 */
+    	void insert(double key, int value)
+    	{
+    		int idx = lowerBound(key, value);
+    		int numKeys = getNumKeys();
+    		while (idx < numKeys && compare(getKey(idx), getValue(idx), key, value) == 0)
+    		{
+    			idx++;
+    		}
+    		int offset = ENTRIES_OFFSET + idx * LEAF_ENTRY_SIZE;
+    		copyBytes(this.buf, offset, this.buf, offset + LEAF_ENTRY_SIZE, (numKeys - idx) * LEAF_ENTRY_SIZE);
+    		this.buf.putDouble(offset, key);
+    		this.buf.putInt(offset + 8, value);
+    		setNumKeys(numKeys + 1);
+    	}
+
+    	/**
+    	 * Removes an entry from this leaf
+    	 *
+    	 * @param idx - index of the entry to remove
+    	 */
+    	void removeAt(int idx)
+    	{
+    		int offset = ENTRIES_OFFSET + idx * LEAF_ENTRY_SIZE;
+    		copyBytes(this.buf, offset + LEAF_ENTRY_SIZE, this.buf, offset, (getNumKeys() - idx - 1) * LEAF_ENTRY_SIZE);
+    		setNumKeys(getNumKeys() - 1);
+    	}
+
+    	/**
+    	 * Splits node and returns the new sibling created from the split. The new
+    	 * sibling takes the upper entries and is linked in right after this leaf.
+    	 *
+    	 * @return new sibling
+    	 */
+    	Page split()
+    	{
+    		LeafPage newSibling = new LeafPage();
+    		int kept = splitIndex();
+    		copyBytes(this.buf, ENTRIES_OFFSET + kept * LEAF_ENTRY_SIZE,
+    				newSibling.buf, ENTRIES_OFFSET, siblingSize * LEAF_ENTRY_SIZE);
+    		newSibling.setNumKeys(siblingSize);
+    		setNumKeys(kept);
+
+    		int next = this.buf.getInt(NEXT_OFFSET);
+    		newSibling.buf.putInt(PREVIOUS_OFFSET, this.pageNo);
+    		newSibling.buf.putInt(NEXT_OFFSET, next);
+    		if (next != 0)
+    		{
+    			pages.getPage(next).putInt(PREVIOUS_OFFSET, newSibling.pageNo);
+    		}
+    		this.buf.putInt(NEXT_OFFSET, newSibling.pageNo);
+    		return newSibling;
+    	}
+
+    } // End of class LeafPage
+
+    /**
+     * Range of keys to search, worked out once from the search arguments
+     *
+     * @see DoubleBPTree.Range
+     */
+    private class Range {
+
+    	// lower bound - negative infinity for no lower bound
+    	double lo = Double.NEGATIVE_INFINITY;
+    	boolean loInclusive = true;
+
+    	// upper bound - positive infinity for no upper bound
+    	double hi = Double.POSITIVE_INFINITY;
+    	boolean hiInclusive = true;
+
+    	// key to skip over - NaN (which never equals any key) unless this is a != search
+    	double excluded = Double.NaN;
+
+    	/**
+    	 * Package constructor for a range between two bounds
+    	 *
+    	 * @param lo - lower bound
+    	 * @param loInclusive - true if keys equal to lo are in range
+    	 * @param hi - upper bound
+    	 * @param hiInclusive - true if keys equal to hi are in range
+    	 */
+    	Range(double lo, boolean loInclusive, double hi, boolean hiInclusive)
+    	{
+    		this.lo = lo;
+    		this.loInclusive = loInclusive;
+    		this.hi = hi;
+    		this.hiInclusive = hiInclusive;
+    	}
+
+    	/**
+    	 * Package constructor for the range matching a comparison with a key
+    	 *
+    	 * @param key to be searched
+    	 * @param comparison to compare keys against key with
+    	 */
+    	Range(double key, Comparison comparison)
+    	{
+    		switch (comparison)
+    		{
+    			case LessThan:
+    				this.hi = key;
+    				this.hiInclusive = false;
+    				break;
+    			case LessThanOrEqual:
+    				this.hi = key;
+    				break;
+    			case EqualTo:
+    				this.lo = key;
+    				this.hi = key;
+    				break;
+    			case NotEqualTo:
+    				this.excluded = key;
+    				break;
+    			case GreaterThanOrEqual:
+    				this.lo = key;
+    				break;
+    			case GreaterThan:
+    				this.lo = key;
+    				this.loInclusive = false;
+    				break;
+    		}
+    	}
+
+    	/**
+    	 * Value to pair with the lower bound to get the first entry that could
+    	 * be in range - entries with the lower bound as their key are all
+    	 * after it if the bound is inclusive, and all up to it otherwise
+    	 *
+    	 * @return value to look for with the lower bound
+    	 */
+    	int startValue()
+    	{
+    		return this.loInclusive ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+    	}
+
+    	/**
+    	 * Find the leaf the range starts in
+    	 *
+    	 * @return leftmost leaf that could hold an entry in range
+    	 */
+    	LeafPage startLeaf()
+    	{
+    		return findLeaf(this.lo, startValue());
+    	}
+
+    	/**
+    	 * Index of the first entry in a leaf that could be inside the lower bound.
+    	 * May be past the end of the leaf, if the range starts in a later one.
+    	 *
+    	 * @param leaf - leaf the range starts in
+    	 * @return index into the leaf's entries
+    	 */
+    	int startIndex(LeafPage leaf)
+    	{
+    		return leaf.lowerBound(this.lo, startValue());
+    	}
+
+    	/**
+    	 * Check a key against the lower bound
+    	 *
+    	 * @param key - key to check
+    	 * @return true if key is before the lower bound
+    	 */
+    	boolean isBelowLo(double key)
+    	{
+    		return key < this.lo || (!this.loInclusive && key == this.lo);
+    	}
+
+    	/**
+    	 * Check a key against the upper bound
+    	 *
+    	 * @param key - key to check
+    	 * @return true if key is not past the upper bound
+    	 */
+    	boolean isBelowHi(double key)
+    	{
+    		return key < this.hi || (this.hiInclusive && key == this.hi);
+    	}
+
+    } // End of class Range
+
+    /**
+     * Iterator over the values in a range of the tree
+     *
+     * @see DoubleBPTree.RangeIterator
+     */
+    private class RangeIterator implements Iterator<Integer> {
+
+    	// range of keys we're iterating over
+    	private Range range;
+
+    	// leaf we're currently in - null once the range is used up
+    	private LeafPage leaf;
+
+    	// index of the next entry to return from leaf
+    	private int idx;
+
+    	/**
+    	 * Package constructor - positions the iterator at the start of the range
+    	 *
+    	 * @param range - range of keys to iterate over
+    	 */
+    	RangeIterator(Range range)
+    	{
+    		this.range = range;
+    		this.leaf = range.startLeaf();
+    		this.idx = range.startIndex(this.leaf);
+    		advance();
+    	}
+
+    	/**
+    	 * Move to the next entry in range, if there is one
+    	 */
+    	private void advance()
+    	{
+    		while (this.leaf != null)
+    		{
+    			if (this.idx >= this.leaf.getNumKeys())
+    			{
+    				this.leaf = this.leaf.getNext();
+    				this.idx = 0;
+    				continue;
+    			}
+    			double key = this.leaf.getKey(this.idx);
+    			if (!this.range.isBelowHi(key))
+    			{
+    				this.leaf = null;
+    			}
+    			else if (key == this.range.excluded || this.range.isBelowLo(key))
+    			{
+    				this.idx++;
+    			}
+    			else
+    			{
+    				return;
+    			}
+    		}
+    	}
+
+    	@Override
+    	public boolean hasNext()
+    	{
+    		return this.leaf != null;
+    	}
+
+    	@Override
+    	public Integer next()
+    	{
+    		if (this.leaf == null)
+    		{
+    			throw new NoSuchElementException();
+    		}
+    		int rtn = this.leaf.getValue(this.idx++);
+    		advance();
+    		return rtn;
+    	}
+
+    } // End of class RangeIterator
+
+} // End of class PagedBPTree
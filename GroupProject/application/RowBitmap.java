@@ -0,0 +1,522 @@
+/**
+ * Filename:   RowBitmap.java
+ * Project:    Group Project
+ * Authors:    sapan (sapan@cs.wisc.edu), Soua Lor, Maria Helgeson, Daniel Walter, & Will Hickman
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400 - Lecutre 46373
+ *
+ * Due Date:   12/16/18
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       No known bugs
+ */
+
+package application;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of row ids, for combining the results of several filters
+ * without a hashed set of food items for each one.
+ *
+ * Row ids are split by their top 16 bits into blocks of 65536, and each block
+ * that has any row ids gets a container. A block with only a few row ids keeps
+ * them in a sorted array of their low 16 bits. Once it has more than 4096, which
+ * is when the array would take up more room, it switches to a bitmap of 1024
+ * longs, one bit per row id. Intersecting or joining two bitmaps goes a long
+ * (64 row ids) at a time.
+ *
+ * @author sapan (sapan@cs.wisc.edu), Soua Lor, Maria Helgeson, Daniel Walter, & Will Hickman
+ */
+public class RowBitmap {
+
+    // most row ids an array container holds before it becomes a bitmap
+    private static final int MAX_ARRAY_SIZE = 4096;
+
+    // number of longs in a bitmap container
+    private static final int BITMAP_WORDS = 1024;
+
+    // top 16 bits of the row ids in each container, in increasing order
+    private char[] keys = new char[4];
+
+    // container for each key
+    private Container[] containers = new Container[4];
+
+    // number of containers in use
+    private int numContainers;
+
+    /**
+     * Adds a row id
+     *
+     * @param rowId - row id to add
+     * @throws IllegalArgumentException if rowId is negative
+     */
+    public void add(int rowId) {
+    	if (rowId < 0)
+    	{
+    		throw new IllegalArgumentException("Illegal row id: " + rowId);
+    	}
+    	char key = (char) (rowId >>> 16);
+    	int idx = Arrays.binarySearch(this.keys, 0, this.numContainers, key);
+    	if (idx < 0)
+    	{
+    		idx = -idx - 1;
+    		insertContainer(idx, key, new ArrayContainer());
+    	}
+    	this.containers[idx] = this.containers[idx].add((char) rowId);
+    }
+
+    /**
+     * Checks for a row id
+     *
+     * @param rowId - row id to look for
+     * @return true if the row id has been added
+     */
+    public boolean contains(int rowId) {
+    	if (rowId < 0)
+    	{
+    		return false;
+    	}
+    	int idx = Arrays.binarySearch(this.keys, 0, this.numContainers, (char) (rowId >>> 16));
+    	return idx >= 0 && this.containers[idx].contains((char) rowId);
+    }
+
+    /**
+     * Gets the number of row ids
+     *
+     * @return number of row ids added
+     */
+    public int cardinality() {
+    	int total = 0;
+    	for (int i = 0; i < this.numContainers; i++)
+    	{
+    		total += this.containers[i].cardinality;
+    	}
+    	return total;
+    }
+
+    /**
+     * Checks whether there are no row ids
+     *
+     * @return true if no row ids have been added
+     */
+    public boolean isEmpty() {
+    	return this.numContainers == 0;
+    }
+
+    /**
+     * Gets the row ids in both this and another bitmap
+     *
+     * @param other - bitmap to intersect with
+     * @return new bitmap with the row ids in both
+     */
+    public RowBitmap and(RowBitmap other) {
+    	RowBitmap result = new RowBitmap();
+    	int i = 0;
+    	int j = 0;
+    	while (i < this.numContainers && j < other.numContainers)
+    	{
+    		if (this.keys[i] < other.keys[j])
+    		{
+    			i++;
+    		}
+    		else if (this.keys[i] > other.keys[j])
+    		{
+    			j++;
+    		}
+    		else
+    		{
+    			Container both = this.containers[i].and(other.containers[j]);
+    			if (both.cardinality > 0)
+    			{
+    				result.insertContainer(result.numContainers, this.keys[i], both);
+    			}
+    			i++;
+    			j++;
+    		}
+    	}
+    	return result;
+    }
+
+    /**
+     * Gets the row ids in either this or another bitmap
+     *
+     * @param other - bitmap to join with
+     * @return new bitmap with the row ids in either
+     */
+    public RowBitmap or(RowBitmap other) {
+    	RowBitmap result = new RowBitmap();
+    	int i = 0;
+    	int j = 0;
+    	while (i < this.numContainers || j < other.numContainers)
+    	{
+    		if (j == other.numContainers || (i < this.numContainers && this.keys[i] < other.keys[j]))
+    		{
+    			result.insertContainer(result.numContainers, this.keys[i], this.containers[i].copy());
+    			i++;
+    		}
+    		else if (i == this.numContainers || this.keys[i] > other.keys[j])
+    		{
+    			result.insertContainer(result.numContainers, other.keys[j], other.containers[j].copy());
+    			j++;
+    		}
+    		else
+    		{
+    			result.insertContainer(result.numContainers, this.keys[i], this.containers[i].or(other.containers[j]));
+    			i++;
+    			j++;
+    		}
+    	}
+    	return result;
+    }
+
+    /**
+     * Performs the given action for each row id, in increasing order
+     *
+     * @param action - action to perform on each row id
+     */
+    public void forEach(IntConsumer action) {
+    	for (int i = 0; i < this.numContainers; i++)
+    	{
+    		this.containers[i].forEach(this.keys[i] << 16, action);
+    	}
+    }
+
+    /**
+     * Puts a container in the list, making room for it if needed
+     *
+     * @param idx - position for the container
+     * @param key - top 16 bits of its row ids
+     * @param container - the container
+     */
+    private void insertContainer(int idx, char key, Container container) {
+    	if (this.numContainers == this.keys.length)
+    	{
+    		this.keys = Arrays.copyOf(this.keys, this.keys.length * 2);
+    		this.containers = Arrays.copyOf(this.containers, this.containers.length * 2);
+    	}
+    	System.arraycopy(this.keys, idx, this.keys, idx + 1, this.numContainers - idx);
+    	System.arraycopy(this.containers, idx, this.containers, idx + 1, this.numContainers - idx);
+    	this.keys[idx] = key;
+    	this.containers[idx] = container;
+    	this.numContainers++;
+    }
+
+    /**
+     * Row ids that share their top 16 bits, stored by their low 16 bits
+     */
+    private abstract static class Container {
+
+    	// number of row ids in the container
+    	int cardinality;
+
+    	/**
+    	 * Adds a row id
+    	 *
+    	 * @param low - low 16 bits of the row id
+    	 * @return this container, or the one that replaces it if it had to change kinds
+    	 */
+    	abstract Container add(char low);
+
+    	/**
+    	 * Checks for a row id
+    	 *
+    	 * @param low - low 16 bits of the row id
+    	 * @return true if it's in the container
+    	 */
+    	abstract boolean contains(char low);
+
+    	/**
+    	 * Gets the row ids in both this and another container
+    	 *
+    	 * @param other - container to intersect with
+    	 * @return new container
+    	 */
+    	abstract Container and(Container other);
+
+    	/**
+    	 * Gets the row ids in either this or another container
+    	 *
+    	 * @param other - container to join with
+    	 * @return new container
+    	 */
+    	abstract Container or(Container other);
+
+    	/**
+    	 * Copies the container
+    	 *
+    	 * @return new container with the same row ids
+    	 */
+    	abstract Container copy();
+
+    	/**
+    	 * Performs the given action for each row id, in increasing order
+    	 *
+    	 * @param high - top 16 bits of the row ids, already shifted into place
+    	 * @param action - action to perform on each row id
+    	 */
+    	abstract void forEach(int high, IntConsumer action);
+    }
+
+    /**
+     * Container with a sorted array of the low 16 bits of its row ids
+     */
+    private static class ArrayContainer extends Container {
+
+    	// low 16 bits of the row ids, in increasing order
+    	char[] values;
+
+    	/**
+    	 * Package constructor for an empty container
+    	 */
+    	ArrayContainer() {
+    		this.values = new char[4];
+    	}
+
+    	/**
+    	 * Package constructor for a container holding the start of an array
+    	 *
+    	 * @param values - low 16 bits of the row ids, in increasing order
+    	 * @param cardinality - number of them to use
+    	 */
+    	ArrayContainer(char[] values, int cardinality) {
+    		this.values = values;
+    		this.cardinality = cardinality;
+    	}
+
+    	@Override
+    	Container add(char low) {
+    		int idx = Arrays.binarySearch(this.values, 0, this.cardinality, low);
+    		if (idx >= 0)
+    		{
+    			return this;
+    		}
+    		if (this.cardinality == MAX_ARRAY_SIZE)
+    		{
+    			return toBitmap().add(low);
+    		}
+    		idx = -idx - 1;
+    		if (this.cardinality == this.values.length)
+    		{
+    			this.values = Arrays.copyOf(this.values, Math.min(Math.max(this.values.length * 2, 4), MAX_ARRAY_SIZE));
+    		}
+    		System.arraycopy(this.values, idx, this.values, idx + 1, this.cardinality - idx);
+    		this.values[idx] = low;
+    		this.cardinality++;
+    		return this;
+    	}
+
+    	@Override
+    	boolean contains(char low) {
+    		return Arrays.binarySearch(this.values, 0, this.cardinality, low) >= 0;
+    	}
+
+    	@Override
+    	Container and(Container other) {
+    		char[] both = new char[Math.min(this.cardinality, other.cardinality)];
+    		int count = 0;
+    		if (other instanceof BitmapContainer)
+    		{
+    			for (int i = 0; i < this.cardinality; i++)
+    			{
+    				if (other.contains(this.values[i]))
+    				{
+    					both[count++] = this.values[i];
+    				}
+    			}
+    			return new ArrayContainer(both, count);
+    		}
+    		ArrayContainer right = (ArrayContainer) other;
+    		int i = 0;
+    		int j = 0;
+    		while (i < this.cardinality && j < right.cardinality)
+    		{
+    			if (this.values[i] < right.values[j])
+    			{
+    				i++;
+    			}
+    			else if (this.values[i] > right.values[j])
+    			{
+    				j++;
+    			}
+    			else
+    			{
+    				both[count++] = this.values[i];
+    				i++;
+    				j++;
+    			}
+    		}
+    		return new ArrayContainer(both, count);
+    	}
+
+    	@Override
+    	Container or(Container other) {
+    		if (other instanceof BitmapContainer)
+    		{
+    			return other.or(this);
+    		}
+    		ArrayContainer right = (ArrayContainer) other;
+    		if (this.cardinality + right.cardinality > MAX_ARRAY_SIZE)
+    		{
+    			return toBitmap().or(right);
+    		}
+    		char[] either = new char[this.cardinality + right.cardinality];
+    		int count = 0;
+    		int i = 0;
+    		int j = 0;
+    		while (i < this.cardinality || j < right.cardinality)
+    		{
+    			if (j == right.cardinality || (i < this.cardinality && this.values[i] < right.values[j]))
+    			{
+    				either[count++] = this.values[i++];
+    			}
+    			else if (i == this.cardinality || this.values[i] > right.values[j])
+    			{
+    				either[count++] = right.values[j++];
+    			}
+    			else
+    			{
+    				either[count++] = this.values[i];
+    				i++;
+    				j++;
+    			}
+    		}
+    		return new ArrayContainer(either, count);
+    	}
+
+    	@Override
+    	Container copy() {
+    		return new ArrayContainer(Arrays.copyOf(this.values, this.cardinality), this.cardinality);
+    	}
+
+    	@Override
+    	void forEach(int high, IntConsumer action) {
+    		for (int i = 0; i < this.cardinality; i++)
+    		{
+    			action.accept(high | this.values[i]);
+    		}
+    	}
+
+    	/**
+    	 * Converts to a bitmap container with the same row ids
+    	 *
+    	 * @return new bitmap container
+    	 */
+    	BitmapContainer toBitmap() {
+    		BitmapContainer bitmap = new BitmapContainer();
+    		for (int i = 0; i < this.cardinality; i++)
+    		{
+    			bitmap.add(this.values[i]);
+    		}
+    		return bitmap;
+    	}
+    }
+
+    /**
+     * Container with one bit for each of the 65536 row ids it could hold
+     */
+    private static class BitmapContainer extends Container {
+
+    	// bit (low % 64) of word (low / 64) is set if the row id is in the container
+    	long[] words = new long[BITMAP_WORDS];
+
+    	@Override
+    	Container add(char low) {
+    		long bit = 1L << low;
+    		if ((this.words[low >>> 6] & bit) == 0)
+    		{
+    			this.words[low >>> 6] |= bit;
+    			this.cardinality++;
+    		}
+    		return this;
+    	}
+
+    	@Override
+    	boolean contains(char low) {
+    		return (this.words[low >>> 6] & (1L << low)) != 0;
+    	}
+
+    	@Override
+    	Container and(Container other) {
+    		if (other instanceof ArrayContainer)
+    		{
+    			return other.and(this);
+    		}
+    		BitmapContainer right = (BitmapContainer) other;
+    		BitmapContainer both = new BitmapContainer();
+    		for (int i = 0; i < BITMAP_WORDS; i++)
+    		{
+    			both.words[i] = this.words[i] & right.words[i];
+    			both.cardinality += Long.bitCount(both.words[i]);
+    		}
+    		return both.cardinality > MAX_ARRAY_SIZE ? both : both.toArray();
+    	}
+
+    	@Override
+    	Container or(Container other) {
+    		BitmapContainer either = (BitmapContainer) copy();
+    		if (other instanceof ArrayContainer)
+    		{
+    			ArrayContainer right = (ArrayContainer) other;
+    			for (int i = 0; i < right.cardinality; i++)
+    			{
+    				either.add(right.values[i]);
+    			}
+    			return either;
+    		}
+    		BitmapContainer right = (BitmapContainer) other;
+    		either.cardinality = 0;
+    		for (int i = 0; i < BITMAP_WORDS; i++)
+    		{
+    			either.words[i] |= right.words[i];
+    			either.cardinality += Long.bitCount(either.words[i]);
+    		}
+    		return either;
+    	}
+
+    	@Override
+    	Container copy() {
+    		BitmapContainer copy = new BitmapContainer();
+    		copy.words = this.words.clone();
+    		copy.cardinality = this.cardinality;
+    		return copy;
+    	}
+
+    	@Override
+    	void forEach(int high, IntConsumer action) {
+    		for (int i = 0; i < BITMAP_WORDS; i++)
+    		{
+    			long word = this.words[i];
+    			while (word != 0)
+    			{
+    				action.accept(high | (i << 6) | Long.numberOfTrailingZeros(word));
+    				// clear the lowest set bit
+    				word &= word - 1;
+    			}
+    		}
+    	}
+
+    	/**
+    	 * Converts to an array container with the same row ids
+    	 *
+    	 * @return new array container
+    	 */
+    	ArrayContainer toArray() {
+    		char[] values = new char[this.cardinality];
+    		int count = 0;
+    		for (int i = 0; i < BITMAP_WORDS; i++)
+    		{
+    			long word = this.words[i];
+    			while (word != 0)
+    			{
+    				values[count++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+    				word &= word - 1;
+    			}
+    		}
+    		return new ArrayContainer(values, count);
+    	}
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * Filename:   RowIds.java
+ * Project:    Group Project
+ * Authors:    sapan (sapan@cs.wisc.edu), Soua Lor, Maria Helgeson, Daniel Walter, & Will Hickman
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400 - Lecutre 46373
+ *
+ * Due Date:   12/16/18
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       No known bugs
+ */
+
+package application;
+
+/**
+ * Numbers each value a B+ tree stores with a small, non-negative row id, so
+ * the tree can keep duplicate keys' values as compact lists of row ids rather
+ * than as lists of references, and turn them back into values only when
+ * they're handed out.
+ *
+ * Row ids should be dense, and are best handed out in increasing order, since
+ * the gaps between a key's row ids are what's stored. A row id must keep
+ * resolving to its value for as long as any tree (or snapshot of one) might
+ * still hold it.
+ *
+ * @param <V> type of values being numbered
+ */
+public interface RowIds<V> {
+
+    /**
+     * Gets the row id of a value
+     *
+     * @param value to look up
+     * @return row id of value; -1 if it doesn't have one
+     */
+    public int rowIdOf(V value);
+
+
+    /**
+     * Gets the value with a row id
+     *
+     * @param rowId row id from rowIdOf
+     * @return value with that row id
+     */
+    public V valueOf(int rowId);
+}
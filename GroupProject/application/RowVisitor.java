@@ -0,0 +1,37 @@
+/**
+ * Filename:   RowVisitor.java
+ * Project:    Group Project
+ * Authors:    sapan (sapan@cs.wisc.edu), Soua Lor, Maria Helgeson, Daniel Walter, & Will Hickman
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400 - Lecutre 46373
+ *
+ * Due Date:   12/16/18
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       No known bugs
+ */
+
+package application;
+
+/**
+ * Visits the keys and row ids of a range of a B+ tree that stores row ids,
+ * one value at a time and in key order, without looking up the values they
+ * stand for. The visitor can stop the walk early, so a scan for the first
+ * few matches reads no further than it has to.
+ *
+ * @see DoubleBPTree#scanRowIds(double, boolean, double, boolean, boolean, RowVisitor)
+ */
+public interface RowVisitor {
+
+    /**
+     * Visits one value
+     *
+     * @param key - key the value is stored under
+     * @param rowId - row id of the value
+     * @return true to keep going, false to stop the walk
+     */
+    public boolean visit(double key, int rowId);
+}
@@ -0,0 +1,176 @@
+/**
+ * Filename:   TreeNode.java
+ * Project:    Group Project
+ * Authors:    sapan (sapan@cs.wisc.edu), Soua Lor, Maria Helgeson, Daniel Walter, & Will Hickman
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400 - Lecutre 46373
+ *
+ * Due Date:   12/16/18
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       No known bugs
+ */
+
+package application;
+import java.util.Arrays;
+
+/**
+ * The parts of a B+ tree node that don't depend on the type of its keys,
+ * shared by the nodes of BPTree and DoubleBPTree: the key count, the
+ * summaries kept for an aggregator, the value counts of internal nodes and
+ * the arithmetic for bulk loading. The nodes themselves are in AbstractBPTree,
+ * which keeps each tree's keys in an array of the tree's own type, since
+ * BPTree compares Comparable keys and DoubleBPTree primitive doubles.
+ *
+ * @author sapan (sapan@cs.wisc.edu), Soua Lor, Maria Helgeson, Daniel Walter, & Will Hickman
+ */
+abstract class TreeNode {
+
+    // number of keys currently stored in the node
+    int numKeys;
+
+    // summary of the values under each key (leaf) or child (internal) - null
+    // if the tree doesn't keep summaries
+    Object[] summaries;
+
+    /**
+     * Package constructor
+     *
+     * @param aggregator - aggregator the tree keeps summaries for, or null
+     * @param slots - number of summary slots to allocate
+     */
+    TreeNode(Aggregator<?, ?> aggregator, int slots) {
+    	if (aggregator != null)
+    	{
+    		this.summaries = new Object[slots];
+    	}
+    }
+
+    /**
+     * Copies summaries from this node into a node (this one or another), the
+     * same way System.arraycopy would. Does nothing if the tree doesn't keep summaries.
+     *
+     * @param srcPos - first summary of this node to copy
+     * @param dest - node to copy into
+     * @param destPos - where the first summary goes in dest
+     * @param length - number of summaries to copy
+     */
+    void copySummaries(int srcPos, TreeNode dest, int destPos, int length)
+    {
+    	if (this.summaries != null)
+    	{
+    		System.arraycopy(this.summaries, srcPos, dest.summaries, destPos, length);
+    	}
+    }
+
+    /**
+     * Drops the summaries in slots [from, to) so the nodes and values they
+     * came from aren't held onto
+     *
+     * @param from - first slot to clear
+     * @param to - slot just past the last one to clear
+     */
+    void clearSummaries(int from, int to)
+    {
+    	if (this.summaries != null)
+    	{
+    		Arrays.fill(this.summaries, from, to, null);
+    	}
+    }
+
+    /**
+     * Combines the summaries in slots [from, to), in order
+     *
+     * @param aggregator - aggregator the tree keeps summaries for
+     * @param from - first slot to combine
+     * @param to - slot just past the last one to combine
+     * @return combined summary
+     */
+    Object combineSummaries(Aggregator<?, Object> aggregator, int from, int to)
+    {
+    	Object total = aggregator.identity();
+    	for (int i = from; i < to; i++)
+    	{
+    		total = aggregator.combine(total, this.summaries[i]);
+    	}
+    	return total;
+    }
+
+    /**
+     * Adds up the value counts of the first few children of an internal node
+     *
+     * @param counts - value counts of the children
+     * @param to - child just past the last one to count
+     * @return number of values under children [0, to)
+     */
+    static int sumCounts(int[] counts, int to)
+    {
+    	int total = 0;
+    	for (int i = 0; i < to; i++)
+    	{
+    		total += counts[i];
+    	}
+    	return total;
+    }
+
+    /**
+     * Make sure a tree keeps summaries for the given aggregator
+     *
+     * @param aggregator - aggregator to check
+     * @param kept - aggregator the tree was made with, or null
+     * @throws IllegalArgumentException if the tree wasn't made with aggregator
+     */
+    static void checkAggregator(Aggregator<?, ?> aggregator, Aggregator<?, ?> kept)
+    {
+    	if (aggregator == null || aggregator != kept)
+    	{
+    		throw new IllegalArgumentException("Tree doesn't keep summaries for this aggregator");
+    	}
+    }
+
+    /**
+     * Make sure a fill factor for bulk loading is between 0.5 and 1
+     *
+     * @param fillFactor - fraction of each node to fill
+     * @throws IllegalArgumentException if fillFactor is out of range
+     */
+    static void checkFillFactor(double fillFactor)
+    {
+    	if (!(fillFactor >= 0.5 && fillFactor <= 1))
+    	{
+    		throw new IllegalArgumentException("Illegal fill factor: " + fillFactor);
+    	}
+    }
+
+    /**
+     * Divides entries as evenly as possible between the fewest nodes that can hold
+     * them at the given fill factor. Used for bulk loading.
+     *
+     * @param total - number of keys (for leaves) or children (for internal nodes) to divide up
+     * @param fillFactor - fraction of each node to fill
+     * @param minPerNode - fewest entries that can go in one node
+     * @param branchingFactor - branching factor of the tree
+     * @return number of entries to put in each node, from left to right
+     */
+    static int[] packSizes(int total, double fillFactor, int minPerNode, int branchingFactor)
+    {
+    	int perNode = Math.max(minPerNode, (int) Math.ceil(fillFactor * branchingFactor));
+    	int numNodes = (total + perNode - 1) / perNode;
+    	if (total / numNodes < minPerNode)
+    	{
+    		numNodes = Math.max(1, total / minPerNode);
+    	}
+
+    	int[] sizes = new int[numNodes];
+    	for (int i = 0; i < numNodes; i++)
+    	{
+    		// spread the remainder over the first few nodes
+    		sizes[i] = total / numNodes + (i < total % numNodes ? 1 : 0);
+    	}
+    	return sizes;
+    }
+
+}
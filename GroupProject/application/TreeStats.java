@@ -0,0 +1,243 @@
+/**
+ * Filename:   TreeStats.java
+ * Project:    Group Project
+ * Authors:    sapan (sapan@cs.wisc.edu), Soua Lor, Maria Helgeson, Daniel Walter, & Will Hickman
+ *
+ * Semester:   Fall 2018
+ * Course:     CS400 - Lecutre 46373
+ *
+ * Due Date:   12/16/18
+ * Version:    1.0
+ *
+ * Credits:    N/A
+ *
+ * Bugs:       No known bugs
+ */
+
+package application;
+import java.util.Arrays;
+
+/**
+ * Shape and memory use of a B+ tree at one point in time, for sizing heaps
+ * and for metrics. Gathered by BPTree#stats and DoubleBPTree#stats, which
+ * visit every node and key once but never the values themselves.
+ *
+ * Byte counts are estimates for a 64-bit JVM with compressed references:
+ * 12-byte object headers, 16-byte array headers, 4-byte references, and
+ * every object padded to a multiple of 8 bytes. They cover what the tree
+ * itself allocates - nodes, their arrays, and the lists of values under
+ * each key - but not objects the tree only points to, like the values,
+ * boxed keys and summaries, which are usually shared with the rest of the
+ * program.
+ *
+ * @author sapan (sapan@cs.wisc.edu), Soua Lor, Maria Helgeson, Daniel Walter, & Will Hickman
+ */
+public class TreeStats {
+
+    // number of buckets in the fill histogram, each covering an equal share from empty to full
+    public static final int FILL_BUCKETS = 10;
+
+    // number of nodes on each level, root first
+    private int[] nodesPerLevel = new int[0];
+
+    // number of nodes in each bucket of fill - how full a node is out of what it can hold
+    private int[] fillHistogram = new int[FILL_BUCKETS];
+
+    // total fill of every node, for the average
+    private double totalFill;
+
+    // bucket i counts the keys with at least 2^i values, and fewer than 2^(i+1)
+    private long[] duplicateHistogram = new long[Integer.SIZE];
+
+    // number of distinct keys, and of values under them
+    private long distinctKeys;
+    private long size;
+
+    // estimate of the bytes the tree takes up
+    private long estimatedBytes;
+
+    /**
+     * Package constructor - starts out with no nodes, for the tree to add to
+     */
+    TreeStats() {
+    }
+
+    /**
+     * Counts a node
+     *
+     * @param level - level of the node, 0 for the root
+     * @param fill - how full the node is, from 0 to 1
+     * @param bytes - estimated bytes the node and its arrays take up
+     */
+    void addNode(int level, double fill, long bytes) {
+    	if (level >= this.nodesPerLevel.length)
+    	{
+    		this.nodesPerLevel = Arrays.copyOf(this.nodesPerLevel, level + 1);
+    	}
+    	this.nodesPerLevel[level]++;
+    	this.fillHistogram[Math.min(FILL_BUCKETS - 1, (int) (fill * FILL_BUCKETS))]++;
+    	this.totalFill += fill;
+    	this.estimatedBytes += bytes;
+    }
+
+    /**
+     * Counts a key in a leaf
+     *
+     * @param numValues - number of values stored under the key
+     * @param bytes - estimated bytes its list of values takes up
+     */
+    void addKey(int numValues, long bytes) {
+    	this.duplicateHistogram[Integer.SIZE - 1 - Integer.numberOfLeadingZeros(numValues)]++;
+    	this.distinctKeys++;
+    	this.size += numValues;
+    	this.estimatedBytes += bytes;
+    }
+
+    /**
+     * Estimates the bytes an object takes up
+     *
+     * @param fieldBytes - total size of its fields, counting the hidden reference
+     * inner class objects keep to their outer object
+     * @return estimated bytes, header and padding included
+     */
+    static long objectBytes(int fieldBytes) {
+    	return align(12 + fieldBytes);
+    }
+
+    /**
+     * Estimates the bytes an array takes up
+     *
+     * @param length - number of elements
+     * @param elementBytes - size of each element - 4 for a reference
+     * @return estimated bytes, header and padding included
+     */
+    static long arrayBytes(int length, int elementBytes) {
+    	return align(16 + (long) length * elementBytes);
+    }
+
+    /**
+     * Rounds a size up to a multiple of 8 bytes
+     *
+     * @param bytes - unpadded size
+     * @return padded size
+     */
+    private static long align(long bytes) {
+    	return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * Gets the number of levels in the tree, counting the root and the leaves
+     *
+     * @return height of the tree
+     */
+    public int getHeight() {
+    	return this.nodesPerLevel.length;
+    }
+
+    /**
+     * Gets the number of nodes on each level
+     *
+     * @return node counts, root level first and leaves last
+     */
+    public int[] getNodesPerLevel() {
+    	return this.nodesPerLevel.clone();
+    }
+
+    /**
+     * Gets the number of nodes in the tree
+     *
+     * @return number of nodes
+     */
+    public int getNodeCount() {
+    	int total = 0;
+    	for (int nxt: this.nodesPerLevel)
+    	{
+    		total += nxt;
+    	}
+    	return total;
+    }
+
+    /**
+     * Gets how many nodes are how full. Bucket i counts the nodes that are
+     * at least i / FILL_BUCKETS full and less than (i + 1) / FILL_BUCKETS
+     * full, with completely full nodes in the last bucket. A leaf is full
+     * when it has as many keys as the branching factor, and an internal node
+     * when it has as many children.
+     *
+     * @return node counts, emptiest bucket first
+     */
+    public int[] getFillHistogram() {
+    	return this.fillHistogram.clone();
+    }
+
+    /**
+     * Gets how full nodes are on average
+     *
+     * @return average fill, from 0 to 1
+     */
+    public double getAverageFill() {
+    	int numNodes = getNodeCount();
+    	return numNodes == 0 ? 0 : this.totalFill / numNodes;
+    }
+
+    /**
+     * Gets how many keys have how many values. Bucket i counts the keys with
+     * at least 2^i values and fewer than 2^(i+1), so bucket 0 is keys with a
+     * single value and bucket 10 is keys with 1024 to 2047 values.
+     *
+     * @return key counts, up to the last bucket that isn't empty
+     */
+    public long[] getDuplicateHistogram() {
+    	int length = this.duplicateHistogram.length;
+    	while (length > 0 && this.duplicateHistogram[length - 1] == 0)
+    	{
+    		length--;
+    	}
+    	return Arrays.copyOf(this.duplicateHistogram, length);
+    }
+
+    /**
+     * Gets the number of distinct keys in the tree
+     *
+     * @return number of keys
+     */
+    public long getDistinctKeys() {
+    	return this.distinctKeys;
+    }
+
+    /**
+     * Gets the number of values in the tree
+     *
+     * @return number of values
+     */
+    public long getSize() {
+    	return this.size;
+    }
+
+    /**
+     * Gets an estimate of the bytes the tree takes up, not counting the
+     * values, boxed keys and summaries it points to
+     *
+     * @return estimated bytes
+     */
+    public long getEstimatedBytes() {
+    	return this.estimatedBytes;
+    }
+
+    /**
+     * Returns a one-line summary, for logs and metrics
+     *
+     * @return summary of the stats
+     */
+    @Override
+    public String toString() {
+    	return "height=" + getHeight()
+    			+ " nodesPerLevel=" + Arrays.toString(this.nodesPerLevel)
+    			+ " averageFill=" + String.format("%.2f", getAverageFill())
+    			+ " fillHistogram=" + Arrays.toString(this.fillHistogram)
+    			+ " distinctKeys=" + this.distinctKeys
+    			+ " size=" + this.size
+    			+ " duplicateHistogram=" + Arrays.toString(getDuplicateHistogram())
+    			+ " estimatedBytes=" + this.estimatedBytes;
+    }
+}
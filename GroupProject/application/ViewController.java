@@ -33,6 +33,7 @@ import java.util.Scanner;
 import java.util.TreeMap;
 import application.Constants.IOMessage;
 import application.Constants.Nutrient;
+import javafx.application.Platform;
 import javafx.beans.property.SimpleListProperty;
 import javafx.collections.FXCollections;
 import javafx.scene.control.ListCell;
@@ -61,6 +62,11 @@ public class ViewController {
 	private ListView<FoodItem> foodOptionsLV; // food options list view instance for use in the UI
 	private ListView<FoodItem> mealLV; // meal list view instance for use in the UI
 	
+	// paging of filtered food options
+	private static final int FOOD_OPTIONS_PAGE = 100; // number of food options to fetch at a time
+	private int filteredOffset; // number of matches of the paged filter fetched so far
+	private boolean moreFiltered; // true if the paged filter may have matches that aren't shown yet
+	
 	public ViewController()
 	{
 		this.sessionData = new FoodData();
@@ -85,6 +91,13 @@ public class ViewController {
 		    protected void updateItem(FoodItem item, boolean empty) {
 		        super.updateItem(item, empty);
 		        setText(item == null ? null : item.getName() );
+		        
+		        // the last food option scrolled into view - fetch the next page, once the list is done updating
+		        int index = getIndex();
+		        if (!empty && moreFiltered && index == foodOptionsProperty.size() - 1)
+		        {
+		        	Platform.runLater(() -> loadMoreIfLast(index));
+		        }
 		    }
 		});
 		
@@ -111,6 +124,7 @@ public class ViewController {
 	private void resetFoodOptionsList()
 	{
 		this.foodOptionsProperty.clear();
+		this.moreFiltered = false;
 		for (FoodItem nxt: this.sessionData.getAllFoodItems())
 		{
 			this.foodOptionsProperty.add(nxt);
@@ -240,10 +254,11 @@ public class ViewController {
 	/**
 	 * Get the value to set in the number of items label in the UI
 	 * @return "### items", if no filters active. "### items (filtered)", if filters are applied. 
+	 * "###+ items" if there are more to fetch than are shown.
 	 */
 	public String GetNumItemsLabelMsg()
 	{
-		String rtnStr = this.foodOptionsProperty.size() + " items";
+		String rtnStr = this.foodOptionsProperty.size() + (this.moreFiltered ? "+" : "") + " items";
 		
 		if (this.allFiltersProperty.size()>0)
 		{
@@ -310,7 +325,7 @@ public class ViewController {
 			double sum = 0;
 			for (FoodItem nxtItm: this.mealListProperty)
 			{
-				sum += nxtItm.getNutrientValue(nxtNutrient.name());
+				sum += nxtItm.getNutrientValue(nxtNutrient);
 			}
 			rtnMap.put(nxtNutrient, sum);
 		}
@@ -349,7 +364,7 @@ public class ViewController {
 	
 	/**
 	 * Get all possible comparators as an array of strings
-	 * @return array with "<=", "==", ">="
+	 * @return array with "<=", "==", ">=", "<", ">", "!="
 	 */
 	public String[] GetAllComparators()
 	{
@@ -396,7 +411,7 @@ public class ViewController {
 	/**
 	 * Add a nutrient rule to our list
 	 * @param attribute - attribute to filter on
-	 * @param compareSymbol - <=, ==, or >=
+	 * @param compareSymbol - <=, ==, >=, <, >, or !=
 	 * @param val - value to compare to
 	 */
 	public void AddRule(String attribute, String compareSymbol, String val)
@@ -420,45 +435,62 @@ public class ViewController {
 	}
 	
 	/**
-	 * Apply filters to our foodoptions ListView
+	 * Apply filters to our foodoptions ListView. Only the first page of matches is 
+	 * fetched here; the rest are fetched a page at a time as they're scrolled to.
 	 */
 	public void ApplyFilters()
 	{
 		this.foodOptionsProperty.clear();
-		
-		List<FoodItem> filtered = null;
-		
-		if (!isNullOrEmpty(this.nameContains))
-		{
-			filtered = this.sessionData.filterByName(this.nameContains);
-		}
-		if (!this.attributeRules.isEmpty())
+		this.filteredOffset = 0;
+		this.moreFiltered = true;
+		LoadMoreFoodOptions();
+	}
+	
+	/**
+	 * Fetch the next page of matches of the filters into our foodoptions ListView.
+	 * A name filter alone is paged in order of name. Otherwise the nutrient rules 
+	 * are paged, in order of the first rule's nutrient, or of name if there are no 
+	 * rules, and a name filter is checked here against each page.
+	 */
+	public void LoadMoreFoodOptions()
+	{
+		String substring = isNullOrEmpty(this.nameContains) ? "" : this.nameContains.toLowerCase();
+		int added = 0;
+		while (this.moreFiltered && added < FOOD_OPTIONS_PAGE)
 		{
-			if (filtered == null)
+			List<FoodItem> page;
+			if (this.attributeRules.isEmpty() && !isNullOrEmpty(this.nameContains))
 			{
-				filtered = this.sessionData.filterByNutrients(this.attributeRules);
+				page = this.sessionData.filterByName(this.nameContains, this.filteredOffset, FOOD_OPTIONS_PAGE);
 			}
 			else
 			{
-				List<FoodItem> byRules = this.sessionData.filterByNutrients(this.attributeRules);
-				if (byRules != null)
+				page = this.sessionData.filterByNutrients(this.attributeRules, this.filteredOffset, FOOD_OPTIONS_PAGE);
+			}
+			this.filteredOffset += page.size();
+			this.moreFiltered = page.size() == FOOD_OPTIONS_PAGE;
+			
+			for (FoodItem nxt: page)
+			{
+				if (nxt.getName().toLowerCase().contains(substring))
 				{
-					filtered.retainAll(byRules);
+					this.foodOptionsProperty.add(nxt);
+					added++;
 				}
 			}
 		}
-		if (filtered == null)
-		{
-			this.foodOptionsProperty.addAll(this.sessionData.getAllFoodItems());
-		}
-		else
+	}
+	
+	/**
+	 * Fetch the next page of matches if the given food option is still the last one 
+	 * shown, so a cell that's updated more than once only fetches one page
+	 * @param index - index of the food option that was scrolled to
+	 */
+	private void loadMoreIfLast(int index)
+	{
+		if (this.moreFiltered && index == this.foodOptionsProperty.size() - 1)
 		{
-			TreeMap<String, FoodItem> sortedByName = new TreeMap<String, FoodItem>();
-			for (FoodItem nxt: filtered)
-			{
-				sortedByName.put(nxt.getName(), nxt);
-			}
-			this.foodOptionsProperty.addAll(sortedByName.values());
+			LoadMoreFoodOptions();
 		}
 	}
 	
@@ -537,7 +569,7 @@ public class ViewController {
 	private void parseNutrient(Nutrient nutrient, String value, FoodItem item) throws NumberFormatException
 	{
 		double parsed = Double.parseDouble(value);
-		item.addNutrient(nutrient.toString(), parsed);
+		item.addNutrient(nutrient, parsed);
 	}
 	
 	/**